@@ -0,0 +1,179 @@
+package me.retrodaredevil.solarthing.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.retrodaredevil.solarthing.annotations.UtilityClass;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.collection.PacketGroup;
+import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
+import me.retrodaredevil.solarthing.packets.instance.InstanceFragmentIndicatorPackets;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePackets;
+import me.retrodaredevil.solarthing.solar.SolarStatusPacket;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Creates data for benchmarks. Synthetic status packet groups are built from the captures in {@code testing/packets} so that they look like
+ * the data that SolarThing stores in the status database.
+ */
+@UtilityClass
+public final class BenchmarkData {
+	private BenchmarkData() { throw new UnsupportedOperationException(); }
+
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+
+	/** The root of the repository. The {@code solarthing.root} system property is set by {@code benchmarks/build.gradle} */
+	public static final File SOLARTHING_ROOT = new File(System.getProperty("solarthing.root", ".."));
+	/** 2022-01-01T00:00:00Z */
+	public static final long START_DATE_MILLIS = 1_640_995_200_000L;
+	/** The time between packet groups of a single fragment */
+	public static final long PERIOD_MILLIS = 10_000L;
+	/** A value that can be used for {@code maxTimeDistance} when sorting synthetic packet groups */
+	public static final long MAX_TIME_DISTANCE_MILLIS = 2 * PERIOD_MILLIS;
+
+	public static final int SOURCE_COUNT = 2;
+	public static final int FRAGMENT_COUNT = 3;
+
+	private static final String[] CAPTURE_DIRECTORY_NAMES = { "fx", "mx", "rover", "tracer" };
+
+	/**
+	 * @return Every status packet capture in {@code testing/packets}
+	 */
+	public static List<File> getCapturedPacketFiles() {
+		List<File> r = new ArrayList<>();
+		for (String directoryName : CAPTURE_DIRECTORY_NAMES) {
+			File[] files = requireNonNull(new File(SOLARTHING_ROOT, "testing/packets/" + directoryName).listFiles(), "Could not find testing/packets in " + SOLARTHING_ROOT.getAbsolutePath() + ". Set the solarthing.root system property to the root of the repository.");
+			Arrays.sort(files);
+			r.addAll(Arrays.asList(files));
+		}
+		return r;
+	}
+
+	private static ObjectNode readCapture(String path) {
+		try {
+			return (ObjectNode) MAPPER.readTree(new File(SOLARTHING_ROOT, path));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	private static SolarStatusPacket toPacket(ObjectNode node) {
+		try {
+			return MAPPER.treeToValue(node, SolarStatusPacket.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Creates status packet groups like the ones uploaded by {@link #SOURCE_COUNT} sources each with {@link #FRAGMENT_COUNT} fragments.
+	 * Fragment 1 of each source has an FX and an MX like a Mate program. Every other fragment has a Rover like a Rover program, whose daily kWh
+	 * follows the sun and resets at midnight UTC. Each fragment uploads every {@link #PERIOD_MILLIS} with some jitter, so fragments are not in sync.
+	 *
+	 * @param duration The amount of time to create packet groups for, starting at {@link #START_DATE_MILLIS}
+	 * @param seed The seed of the random jitter and noise. The same seed gives the same data
+	 * @return Packet groups with instance packets sorted by date, as they would be returned from the database
+	 */
+	public static List<PacketGroup> createStatusPacketGroups(Duration duration, long seed) {
+		Random random = new Random(seed);
+		Packet fx = toPacket(readCapture("testing/packets/fx/fx_1_2021-08-07.json"));
+		Packet mx = toPacket(readCapture("testing/packets/mx/mx_3_2019-07-13.json"));
+		ObjectNode roverTemplate = readCapture("testing/packets/rover/rover_2021-12-30.json");
+		/* Rover packets are cached by their daily kWh (in tenths). There are only so many values, and deserializing is slow */
+		Map<Integer, Packet> roverCache = new HashMap<>();
+
+		long endDateMillis = START_DATE_MILLIS + duration.toMillis();
+		List<PacketGroup> r = new ArrayList<>();
+		for (int sourceIndex = 0; sourceIndex < SOURCE_COUNT; sourceIndex++) {
+			String sourceId = "source" + sourceIndex;
+			for (int fragmentId = 1; fragmentId <= FRAGMENT_COUNT; fragmentId++) {
+				long offsetMillis = random.nextInt((int) PERIOD_MILLIS);
+				float dailyKWH = 0.0f;
+				long lastDay = -1;
+				for (long periodStart = START_DATE_MILLIS; periodStart < endDateMillis; periodStart += PERIOD_MILLIS) {
+					long dateMillis = periodStart + offsetMillis + random.nextInt(500);
+					List<Packet> packets = new ArrayList<>();
+					packets.add(InstanceSourcePackets.create(sourceId));
+					packets.add(InstanceFragmentIndicatorPackets.create(fragmentId));
+					if (fragmentId == 1) {
+						packets.add(fx);
+						packets.add(mx);
+					} else {
+						long day = dateMillis / Duration.ofDays(1).toMillis();
+						if (day != lastDay) {
+							lastDay = day;
+							dailyKWH = 0.0f;
+						}
+						dailyKWH += getSolarKW(dateMillis, random) * PERIOD_MILLIS / (float) Duration.ofHours(1).toMillis();
+						int dailyKWHTenths = (int) (dailyKWH * 10);
+						packets.add(roverCache.computeIfAbsent(dailyKWHTenths, tenths -> {
+							ObjectNode node = roverTemplate.deepCopy();
+							node.put("dailyKWH", tenths / 10.0f);
+							return toPacket(node);
+						}));
+					}
+					r.add(PacketGroups.createPacketGroup(packets, dateMillis));
+				}
+			}
+		}
+		r.sort(Comparator.comparingLong(PacketGroup::getDateMillis));
+		return r;
+	}
+
+	/** @return The power in kW of a 1kW array at {@code dateMillis}, where the sun is up from 06:00 to 18:00 UTC */
+	private static float getSolarKW(long dateMillis, Random random) {
+		double hour = (dateMillis % Duration.ofDays(1).toMillis()) / (double) Duration.ofHours(1).toMillis();
+		if (hour < 6 || hour > 18) {
+			return 0.0f;
+		}
+		double clearSky = Math.sin(Math.PI * (hour - 6) / 12);
+		return (float) (clearSky * (0.7 + 0.3 * random.nextDouble()));
+	}
+
+	/**
+	 * @return A document like the ones in the status database that contains {@code packetGroup}
+	 */
+	public static ObjectNode createDocument(PacketGroup packetGroup, String id) {
+		ObjectNode document = MAPPER.createObjectNode();
+		document.put("_id", id);
+		document.put("_rev", "1-abc");
+		document.put("dateMillis", packetGroup.getDateMillis());
+		ArrayNode packets = document.putArray("packets");
+		for (Packet packet : packetGroup.getPackets()) {
+			packets.add(MAPPER.valueToTree(packet));
+		}
+		return document;
+	}
+
+	/**
+	 * @return A document that contains every capture in {@code testing/packets}
+	 */
+	public static ObjectNode createCapturesDocument() {
+		ObjectNode document = MAPPER.createObjectNode();
+		document.put("_id", "captures");
+		document.put("_rev", "1-abc");
+		document.put("dateMillis", START_DATE_MILLIS);
+		ArrayNode packets = document.putArray("packets");
+		for (File file : getCapturedPacketFiles()) {
+			try {
+				packets.add(MAPPER.readTree(file));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return document;
+	}
+}
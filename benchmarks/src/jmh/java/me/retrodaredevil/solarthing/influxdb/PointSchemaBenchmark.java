@@ -0,0 +1,116 @@
+package me.retrodaredevil.solarthing.influxdb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.ValueNode;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.solar.SolarStatusPacket;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link PointSchema} with building a tree using {@link ObjectMapper#valueToTree(Object)} and flattening it with {@link PointUtil#flattenJsonObject(ObjectNode)}.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PointSchemaBenchmark {
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+
+	/** The file (relative to the root of the repository) of a packet with the type we want to test */
+	@Param({
+			"testing/packets/fx/fx_1_2021-08-07.json",
+			"testing/packets/mx/mx_3_2019-07-13.json",
+			"testing/packets/rover/rover_2021-12-30.json",
+			"testing/packets/tracer/tracer_2021-12-30.json",
+	})
+	public String packetFile;
+
+	private Packet packet;
+
+	@Setup
+	public void setup() throws IOException {
+		packet = MAPPER.readValue(new File("..", packetFile), SolarStatusPacket.class);
+	}
+
+	@Benchmark
+	public void valueToTree(Blackhole blackhole) {
+		Collection<String> tagKeys = PointUtil.getTagKeys(packet.getClass());
+		ObjectNode json = MAPPER.valueToTree(packet);
+		for (Map.Entry<String, ValueNode> entry : PointUtil.flattenJsonObject(json)) {
+			String key = entry.getKey();
+			ValueNode prim = entry.getValue();
+			if (tagKeys.contains(key)) {
+				blackhole.consume(prim.asText());
+			}
+			if (prim.isNumber()) {
+				blackhole.consume(prim.asDouble());
+			} else if (prim.isTextual() || prim.isBinary()) {
+				blackhole.consume(prim.asText());
+			} else if (prim.isBoolean()) {
+				blackhole.consume(prim.asBoolean());
+			}
+		}
+	}
+
+	@Benchmark
+	public void pointSchema(Blackhole blackhole) {
+		PointSchema.write(packet, new BlackholeFieldConsumer(blackhole));
+	}
+
+	private static final class BlackholeFieldConsumer implements PointFieldConsumer {
+		private final Blackhole blackhole;
+
+		private BlackholeFieldConsumer(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void tag(String key, String value) {
+			blackhole.consume(value);
+		}
+
+		@Override
+		public void field(String key, double value) {
+			blackhole.consume(value);
+		}
+
+		@Override
+		public void field(String key, BigDecimal value) {
+			blackhole.consume(value);
+		}
+
+		@Override
+		public void field(String key, String value) {
+			blackhole.consume(value);
+		}
+
+		@Override
+		public void field(String key, boolean value) {
+			blackhole.consume(value);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package me.retrodaredevil.solarthing.packets.collection;
+
+import me.retrodaredevil.solarthing.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PacketGroups#sortPackets(java.util.Collection, DefaultInstanceOptions, long, Long)} and {@link PacketGroups#mergePackets(List, long, Long)}
+ * with synthetic status packet groups from {@link BenchmarkData#createStatusPacketGroups(Duration, long)}.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PacketGroupsBenchmark {
+
+	@Param({"1", "7"})
+	public int days;
+
+	private List<PacketGroup> packetGroups;
+	/** The instance packet groups of a single source */
+	private List<InstancePacketGroup> instancePacketGroups;
+
+	@Setup
+	public void setup() {
+		packetGroups = BenchmarkData.createStatusPacketGroups(Duration.ofDays(days), 1234);
+		Map<String, List<InstancePacketGroup>> sourceMap = PacketGroups.parsePackets(packetGroups, DefaultInstanceOptions.REQUIRE_NO_DEFAULTS);
+		instancePacketGroups = sourceMap.get("source0");
+	}
+
+	@Benchmark
+	public Map<String, List<FragmentedPacketGroup>> sortPackets() {
+		return PacketGroups.sortPackets(packetGroups, DefaultInstanceOptions.REQUIRE_NO_DEFAULTS, BenchmarkData.MAX_TIME_DISTANCE_MILLIS, null);
+	}
+
+	@Benchmark
+	public List<FragmentedPacketGroup> mergePackets() {
+		return PacketGroups.mergePackets(instancePacketGroups, BenchmarkData.MAX_TIME_DISTANCE_MILLIS, null);
+	}
+}
@@ -0,0 +1,106 @@
+package me.retrodaredevil.solarthing.packets.collection.parsing;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.retrodaredevil.solarthing.benchmark.BenchmarkData;
+import me.retrodaredevil.solarthing.packets.collection.PacketGroup;
+import me.retrodaredevil.solarthing.packets.instance.InstancePacket;
+import me.retrodaredevil.solarthing.solar.SolarStatusPacket;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing status documents with {@link SimplePacketGroupParser}, both from a tree and while streaming.
+ * <p>
+ * The "captures" data is a single document containing every capture in {@code testing/packets}. The "synthetic" data is an hour of
+ * synthetic status documents from {@link BenchmarkData#createStatusPacketGroups(Duration, long)}.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimplePacketGroupParserBenchmark {
+	private static final ObjectMapper MAPPER = JacksonUtil.lenientMapper(JacksonUtil.defaultMapper());
+
+	static {
+		MAPPER.getSubtypeResolver().registerSubtypes(SolarStatusPacket.class, InstancePacket.class);
+	}
+
+	@Param({"captures", "synthetic"})
+	public String data;
+
+	private SimplePacketGroupParser parser;
+	private List<ObjectNode> documents;
+	private List<byte[]> documentBytes;
+
+	@Setup
+	public void setup() throws IOException {
+		parser = new SimplePacketGroupParser(MAPPER, PacketParsingErrorHandler.DO_NOTHING);
+		switch (data) {
+			case "captures":
+				documents = Collections.singletonList(BenchmarkData.createCapturesDocument());
+				break;
+			case "synthetic":
+				documents = new ArrayList<>();
+				List<PacketGroup> packetGroups = BenchmarkData.createStatusPacketGroups(Duration.ofHours(1), 1234);
+				for (int i = 0; i < packetGroups.size(); i++) {
+					documents.add(BenchmarkData.createDocument(packetGroups.get(i), "synthetic" + i));
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown data: " + data);
+		}
+		documentBytes = new ArrayList<>(documents.size());
+		for (ObjectNode document : documents) {
+			documentBytes.add(MAPPER.writeValueAsBytes(document));
+		}
+	}
+
+	/** Parses documents that have already been read as trees */
+	@Benchmark
+	public void parseTree(Blackhole blackhole) throws PacketParseException {
+		for (ObjectNode document : documents) {
+			blackhole.consume(parser.parse(document));
+		}
+	}
+
+	/** Reads documents as trees, then parses them, which is what happens when the streaming parser is not used */
+	@Benchmark
+	public void readTreeThenParse(Blackhole blackhole) throws IOException, PacketParseException {
+		for (byte[] bytes : documentBytes) {
+			blackhole.consume(parser.parse((ObjectNode) MAPPER.readTree(bytes)));
+		}
+	}
+
+	@Benchmark
+	public void parseStreaming(Blackhole blackhole) throws IOException, PacketParseException {
+		for (byte[] bytes : documentBytes) {
+			try (JsonParser jsonParser = MAPPER.createParser(bytes)) {
+				blackhole.consume(parser.parse(jsonParser, SimplePacketGroupParser.FieldHandler.IGNORE));
+			}
+		}
+	}
+}
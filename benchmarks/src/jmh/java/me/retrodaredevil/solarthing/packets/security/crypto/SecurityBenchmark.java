@@ -0,0 +1,112 @@
+package me.retrodaredevil.solarthing.packets.security.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures validating a large integrity packet like {@code SecurityPacketReceiver} does, with 1 and 4 threads.
+ * The {@code legacy} benchmarks share a single digest and cipher between threads, like {@link HashUtil} and {@link Decrypt} used to.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh -PjmhIncludes=SecurityBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecurityBenchmark {
+
+	private KeyPair keyPair;
+	/** A payload about the size of a command packet collection */
+	private String payload;
+	private String encryptedHash;
+
+	private MessageDigest legacyDigest;
+	private Cipher legacyCipher;
+
+	@Setup
+	public void setup() throws Exception {
+		keyPair = KeyUtil.generateKeyPair();
+		StringBuilder builder = new StringBuilder("{\"packets\":[");
+		for (int i = 0; i < 20; i++) {
+			builder.append("{\"packetType\":\"REQUEST_HEARTBEAT\",\"data\":{\"name\":\"Heartbeat ").append(i).append("\",\"identifier\":\"heartbeat-").append(i).append("\"}},");
+		}
+		builder.append("{\"packetType\":\"SOURCE\",\"sourceId\":\"default\"}],\"dateMillis\":1640995200000}");
+		payload = builder.toString();
+		encryptedHash = Encrypt.encrypt(keyPair.getPrivate(), Long.toHexString(1640995200000L) + "," + HashUtil.encodedHash(payload));
+
+		legacyDigest = MessageDigest.getInstance("SHA-256");
+		legacyCipher = KeyUtil.createCipher();
+	}
+
+	private byte[] legacyHash() {
+		synchronized (legacyDigest) {
+			legacyDigest.update(payload.getBytes(StandardCharsets.UTF_8));
+			return legacyDigest.digest();
+		}
+	}
+	private String legacyDecrypt() throws InvalidKeyException, DecryptException {
+		synchronized (legacyCipher) {
+			return Decrypt.decrypt(legacyCipher, keyPair.getPublic(), encryptedHash);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public byte[] hash1Thread() {
+		return HashUtil.hash(payload);
+	}
+	@Benchmark
+	@Threads(4)
+	public byte[] hash4Threads() {
+		return HashUtil.hash(payload);
+	}
+	@Benchmark
+	@Threads(1)
+	public byte[] legacyHash1Thread() {
+		return legacyHash();
+	}
+	@Benchmark
+	@Threads(4)
+	public byte[] legacyHash4Threads() {
+		return legacyHash();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String decrypt1Thread() throws InvalidKeyException, DecryptException {
+		return Decrypt.decrypt(keyPair.getPublic(), encryptedHash);
+	}
+	@Benchmark
+	@Threads(4)
+	public String decrypt4Threads() throws InvalidKeyException, DecryptException {
+		return Decrypt.decrypt(keyPair.getPublic(), encryptedHash);
+	}
+	@Benchmark
+	@Threads(1)
+	public String legacyDecrypt1Thread() throws InvalidKeyException, DecryptException {
+		return legacyDecrypt();
+	}
+	@Benchmark
+	@Threads(4)
+	public String legacyDecrypt4Threads() throws InvalidKeyException, DecryptException {
+		return legacyDecrypt();
+	}
+}
@@ -0,0 +1,122 @@
+package me.retrodaredevil.solarthing.program;
+
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.handling.RawPacketReceiver;
+import me.retrodaredevil.solarthing.solar.outback.MatePacketCreator49;
+import me.retrodaredevil.solarthing.util.IgnoreCheckSum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays captured Mate output through {@link SolarReader} using a stream that gives data in small chunks like a serial port does.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SolarReaderBenchmark {
+	/** Output of a Mate with an FX on port 1 and two MXs on ports 3 and 4 */
+	private static final String MATE_OUTPUT = "\n1,10,10,10,100,100,10,03,000,02,282,129,000,999\r" +
+			"\nC,00,10,12,095,034,00,03,000,02,270,0045,00,123\r" +
+			"\nD,00,08,10,094,028,00,03,000,02,270,0039,00,115\r";
+	private static final int REPEAT_COUNT = 100;
+
+	/** The maximum number of bytes given by each read */
+	@Param({"16", "64"})
+	public int chunkSize;
+
+	private byte[] data;
+
+	@Setup
+	public void setup() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < REPEAT_COUNT; i++) {
+			builder.append(MATE_OUTPUT);
+		}
+		data = builder.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	@Benchmark
+	public void replay(Blackhole blackhole) throws IOException {
+		RawPacketReceiver receiver = new RawPacketReceiver() {
+			@Override
+			public void updateGarbledData() {
+				throw new AssertionError("Data should not be garbled!");
+			}
+
+			@Override
+			public void update(Collection<? extends Packet> newPackets) {
+				blackhole.consume(newPackets);
+			}
+
+			@Override
+			public void updateNoNewData() {
+			}
+		};
+		try (SolarReader solarReader = new SolarReader(new ChunkedInputStream(data, chunkSize), new MatePacketCreator49(IgnoreCheckSum.IGNORE_AND_USE_CALCULATED), receiver)) {
+			while (true) {
+				try {
+					solarReader.update();
+				} catch (EOFException e) {
+					break;
+				}
+			}
+		}
+	}
+
+	private static final class ChunkedInputStream extends InputStream {
+		private final byte[] data;
+		private final int chunkSize;
+		private int position = 0;
+
+		private ChunkedInputStream(byte[] data, int chunkSize) {
+			this.data = data;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public int read() {
+			return position < data.length ? data[position++] : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (position >= data.length) {
+				return -1;
+			}
+			int length = Math.min(Math.min(len, chunkSize), data.length - position);
+			System.arraycopy(data, position, b, off, length);
+			position += length;
+			return length;
+		}
+
+		@Override
+		public int available() {
+			return Math.min(chunkSize, data.length - position);
+		}
+	}
+}
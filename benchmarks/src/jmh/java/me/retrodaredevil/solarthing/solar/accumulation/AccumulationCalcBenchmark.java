@@ -0,0 +1,80 @@
+package me.retrodaredevil.solarthing.solar.accumulation;
+
+import me.retrodaredevil.solarthing.benchmark.BenchmarkData;
+import me.retrodaredevil.solarthing.packets.TimestampedPacket;
+import me.retrodaredevil.solarthing.packets.collection.DefaultInstanceOptions;
+import me.retrodaredevil.solarthing.packets.collection.FragmentedPacketGroup;
+import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
+import me.retrodaredevil.solarthing.packets.identification.IdentifierFragment;
+import me.retrodaredevil.solarthing.solar.accumulation.value.FloatAccumulationValue;
+import me.retrodaredevil.solarthing.solar.accumulation.value.FloatAccumulationValueFactory;
+import me.retrodaredevil.solarthing.solar.common.DailyChargeController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calculating the running daily kWh of every charge controller with {@link AccumulationCalc#getTotals(List, TotalGetter, List, AccumulationValueFactory)},
+ * like the GraphQL daily service does.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccumulationCalcBenchmark {
+	private static final TotalGetter<DailyChargeController, FloatAccumulationValue> TOTAL_GETTER = FloatAccumulationValue.convert(DailyChargeController::getDailyKWH);
+
+	@Param({"1", "7"})
+	public int days;
+
+	private AccumulationConfig accumulationConfig;
+	private Map<IdentifierFragment, List<TimestampedPacket<DailyChargeController>>> packetMap;
+	private Map<IdentifierFragment, List<AccumulationPair<DailyChargeController>>> accumulationPairMap;
+
+	@Setup
+	public void setup() {
+		Map<String, List<FragmentedPacketGroup>> sourceMap = PacketGroups.sortPackets(
+				BenchmarkData.createStatusPacketGroups(Duration.ofDays(days), 1234),
+				DefaultInstanceOptions.REQUIRE_NO_DEFAULTS, BenchmarkData.MAX_TIME_DISTANCE_MILLIS, null
+		);
+		accumulationConfig = AccumulationConfig.createDefault(BenchmarkData.START_DATE_MILLIS);
+		packetMap = AccumulationUtil.mapPackets(DailyChargeController.class, sourceMap.get("source0"));
+		accumulationPairMap = new HashMap<>();
+		for (Map.Entry<IdentifierFragment, List<TimestampedPacket<DailyChargeController>>> entry : packetMap.entrySet()) {
+			accumulationPairMap.put(entry.getKey(), AccumulationUtil.getAccumulationPairs(entry.getValue(), accumulationConfig));
+		}
+	}
+
+	@Benchmark
+	public void getAccumulationPairs(Blackhole blackhole) {
+		for (List<TimestampedPacket<DailyChargeController>> packets : packetMap.values()) {
+			blackhole.consume(AccumulationUtil.getAccumulationPairs(packets, accumulationConfig));
+		}
+	}
+
+	@Benchmark
+	public void getTotals(Blackhole blackhole) {
+		for (Map.Entry<IdentifierFragment, List<TimestampedPacket<DailyChargeController>>> entry : packetMap.entrySet()) {
+			blackhole.consume(AccumulationCalc.getTotals(accumulationPairMap.get(entry.getKey()), TOTAL_GETTER, entry.getValue(), FloatAccumulationValueFactory.getInstance()));
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package me.retrodaredevil.solarthing.solar.outback;
+
+import me.retrodaredevil.solarthing.packets.creation.PacketCreationException;
+import me.retrodaredevil.solarthing.solar.outback.fx.FXStatusPackets;
+import me.retrodaredevil.solarthing.solar.outback.mx.MXStatusPackets;
+import me.retrodaredevil.solarthing.util.CheckSumException;
+import me.retrodaredevil.solarthing.util.IgnoreCheckSum;
+import me.retrodaredevil.solarthing.util.ParsePacketAsciiDecimalDigitException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of Mate data with {@link MatePacketCreator49}.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:jmh}. Add {@code -prof gc} to the JMH arguments to see the bytes allocated for each operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatePacketCreator49Benchmark {
+	private static final String FX = "\n1,10,10,10,100,100,10,03,000,02,282,129,000,036\r";
+	private static final String MX = "\nD,00,27,13,054,028,00,00,000,02,247,0000,00,067\r";
+
+	private char[] fxChars;
+	private char[] mxChars;
+	/** One FX packet and one MX packet as they would be received from the Mate */
+	private char[] mateData;
+	private MatePacketCreator49 creator;
+
+	@Setup
+	public void setup() {
+		fxChars = FX.toCharArray();
+		mxChars = MX.toCharArray();
+		mateData = (FX + MX).toCharArray();
+		creator = new MatePacketCreator49(IgnoreCheckSum.DISABLED);
+	}
+
+	@Benchmark
+	public void packetCreator(Blackhole blackhole) throws PacketCreationException {
+		blackhole.consume(creator.add(mateData, 0, mateData.length));
+	}
+
+	@Benchmark
+	public void createFromChars(Blackhole blackhole) throws ParsePacketAsciiDecimalDigitException, CheckSumException {
+		blackhole.consume(FXStatusPackets.createFromChars(fxChars, IgnoreCheckSum.DISABLED));
+		blackhole.consume(MXStatusPackets.createFromChars(mxChars, IgnoreCheckSum.DISABLED));
+	}
+}
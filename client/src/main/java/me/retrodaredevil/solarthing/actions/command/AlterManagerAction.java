@@ -26,7 +26,6 @@ import me.retrodaredevil.solarthing.packets.security.LargeIntegrityPacket;
 import me.retrodaredevil.solarthing.packets.security.crypto.Decrypt;
 import me.retrodaredevil.solarthing.packets.security.crypto.DecryptException;
 import me.retrodaredevil.solarthing.packets.security.crypto.InvalidKeyException;
-import me.retrodaredevil.solarthing.packets.security.crypto.KeyUtil;
 import me.retrodaredevil.solarthing.packets.security.crypto.PublicKeyLookUp;
 import me.retrodaredevil.solarthing.program.SecurityPacketReceiver;
 import me.retrodaredevil.solarthing.reason.ExecutionReason;
@@ -45,9 +44,6 @@ import me.retrodaredevil.solarthing.util.TimeRange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
-import javax.crypto.NoSuchPaddingException;
-import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -60,15 +56,6 @@ import java.util.concurrent.Executors;
 
 public class AlterManagerAction extends SimpleAction {
 	private static final Logger LOGGER = LoggerFactory.getLogger(AlterManagerAction.class);
-	private static final Cipher CIPHER;
-
-	static {
-		try {
-			CIPHER = Cipher.getInstance(KeyUtil.CIPHER_TRANSFORMATION);
-		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-			throw new RuntimeException(e);
-		}
-	}
 	/*
 	I imagine this class is going to get pretty big. A refactor in the future is probably something that will be needed.
 	For now, we will happily add code to this class until we decide something needs to change.
@@ -272,9 +259,7 @@ public class AlterManagerAction extends SimpleAction {
 		String encryptedHash = largeIntegrityPacket.getEncryptedHash();
 		String data;
 		try {
-			synchronized (CIPHER) {
-				data = Decrypt.decrypt(CIPHER, commandManager.getKeyPair().getPublic(), encryptedHash);
-			}
+			data = Decrypt.decrypt(commandManager.getKeyPair().getPublic(), encryptedHash);
 		} catch (InvalidKeyException e) {
 			throw new RuntimeException("Should be a valid key!", e);
 		} catch (DecryptException e) {
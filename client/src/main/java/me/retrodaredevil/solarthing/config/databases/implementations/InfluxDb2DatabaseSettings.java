@@ -1,5 +1,6 @@
 package me.retrodaredevil.solarthing.config.databases.implementations;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -9,6 +10,7 @@ import me.retrodaredevil.okhttp3.OkHttpProperties;
 import me.retrodaredevil.solarthing.config.databases.DatabaseSettings;
 import me.retrodaredevil.solarthing.config.databases.DatabaseType;
 import me.retrodaredevil.solarthing.config.databases.SimpleDatabaseType;
+import me.retrodaredevil.solarthing.influxdb.InfluxBatchSettings;
 
 import static java.util.Objects.requireNonNull;
 
@@ -19,10 +21,15 @@ public class InfluxDb2DatabaseSettings implements DatabaseSettings {
 
 	private final InfluxDb2Properties influxDbProperties;
 	private final OkHttpProperties okHttpProperties;
+	private final InfluxBatchSettings statusBatchSettings;
 
-	public InfluxDb2DatabaseSettings(InfluxDb2Properties influxDbProperties, OkHttpProperties okHttpProperties) {
+	public InfluxDb2DatabaseSettings(InfluxDb2Properties influxDbProperties, OkHttpProperties okHttpProperties, InfluxBatchSettings statusBatchSettings) {
 		requireNonNull(this.influxDbProperties = influxDbProperties);
 		requireNonNull(this.okHttpProperties = okHttpProperties);
+		this.statusBatchSettings = statusBatchSettings;
+	}
+	public InfluxDb2DatabaseSettings(InfluxDb2Properties influxDbProperties, OkHttpProperties okHttpProperties) {
+		this(influxDbProperties, okHttpProperties, null);
 	}
 
 	@Override
@@ -36,6 +43,13 @@ public class InfluxDb2DatabaseSettings implements DatabaseSettings {
 	public OkHttpProperties getOkHttpProperties() {
 		return okHttpProperties;
 	}
+
+	/**
+	 * @return The batch settings for status packets, or null if status packets should be written synchronously
+	 */
+	public InfluxBatchSettings getStatusBatchSettings() {
+		return statusBatchSettings;
+	}
 	static class Deserializer extends UnwrappedDeserializer<InfluxDb2DatabaseSettings, Builder> {
 		Deserializer() {
 			super(Builder.class, Builder::build);
@@ -46,9 +60,11 @@ public class InfluxDb2DatabaseSettings implements DatabaseSettings {
 		private InfluxDb2Properties influxDbProperties;
 		@JsonUnwrapped
 		private OkHttpProperties okHttpProperties;
+		@JsonProperty("status_batch")
+		private InfluxBatchSettings statusBatchSettings;
 
 		public InfluxDb2DatabaseSettings build() {
-			return new InfluxDb2DatabaseSettings(influxDbProperties, okHttpProperties);
+			return new InfluxDb2DatabaseSettings(influxDbProperties, okHttpProperties, statusBatchSettings);
 		}
 
 	}
@@ -10,6 +10,7 @@ import me.retrodaredevil.okhttp3.OkHttpProperties;
 import me.retrodaredevil.solarthing.config.databases.DatabaseSettings;
 import me.retrodaredevil.solarthing.config.databases.DatabaseType;
 import me.retrodaredevil.solarthing.config.databases.SimpleDatabaseType;
+import me.retrodaredevil.solarthing.influxdb.InfluxBatchSettings;
 import me.retrodaredevil.solarthing.influxdb.retention.RetentionPolicySetting;
 import me.retrodaredevil.solarthing.util.frequency.FrequentObject;
 
@@ -30,14 +31,19 @@ public final class InfluxDbDatabaseSettings implements DatabaseSettings {
 	private final List<FrequentObject<RetentionPolicySetting>> frequentStatusRetentionPolicyList;
 
 	private final RetentionPolicySetting eventRetentionPolicySetting;
+	private final InfluxBatchSettings statusBatchSettings;
 
-	public InfluxDbDatabaseSettings(InfluxProperties influxProperties, OkHttpProperties okHttpProperties, String databaseName, String measurementName, Collection<FrequentObject<RetentionPolicySetting>> frequentRetentionPolicies, RetentionPolicySetting eventRetentionPolicySetting) {
+	public InfluxDbDatabaseSettings(InfluxProperties influxProperties, OkHttpProperties okHttpProperties, String databaseName, String measurementName, Collection<FrequentObject<RetentionPolicySetting>> frequentRetentionPolicies, RetentionPolicySetting eventRetentionPolicySetting, InfluxBatchSettings statusBatchSettings) {
 		this.influxProperties = requireNonNull(influxProperties);
 		this.okHttpProperties = requireNonNull(okHttpProperties);
 		this.databaseName = databaseName;
 		this.measurementName = measurementName;
 		this.frequentStatusRetentionPolicyList = Collections.unmodifiableList(new ArrayList<>(frequentRetentionPolicies));
 		this.eventRetentionPolicySetting = eventRetentionPolicySetting;
+		this.statusBatchSettings = statusBatchSettings;
+	}
+	public InfluxDbDatabaseSettings(InfluxProperties influxProperties, OkHttpProperties okHttpProperties, String databaseName, String measurementName, Collection<FrequentObject<RetentionPolicySetting>> frequentRetentionPolicies, RetentionPolicySetting eventRetentionPolicySetting) {
+		this(influxProperties, okHttpProperties, databaseName, measurementName, frequentRetentionPolicies, eventRetentionPolicySetting, null);
 	}
 
 	@Override
@@ -63,6 +69,13 @@ public final class InfluxDbDatabaseSettings implements DatabaseSettings {
 	public RetentionPolicySetting getEventRetentionPolicy(){
 		return eventRetentionPolicySetting;
 	}
+
+	/**
+	 * @return The batch settings for status packets, or null if status packets should be written synchronously
+	 */
+	public InfluxBatchSettings getStatusBatchSettings() {
+		return statusBatchSettings;
+	}
 	static class Deserializer extends UnwrappedDeserializer<InfluxDbDatabaseSettings, Builder> {
 		Deserializer() {
 			super(Builder.class, Builder::build);
@@ -81,9 +94,11 @@ public final class InfluxDbDatabaseSettings implements DatabaseSettings {
 		private List<FrequentObject<RetentionPolicySetting>> frequentStatusRetentionPolicies;
 		@JsonProperty("event_retention_policy")
 		private RetentionPolicySetting eventRetentionPolicySetting;
+		@JsonProperty("status_batch")
+		private InfluxBatchSettings statusBatchSettings;
 
 		public InfluxDbDatabaseSettings build() {
-			return new InfluxDbDatabaseSettings(influxProperties, okHttpProperties, databaseName, measurementName, frequentStatusRetentionPolicies, eventRetentionPolicySetting);
+			return new InfluxDbDatabaseSettings(influxProperties, okHttpProperties, databaseName, measurementName, frequentStatusRetentionPolicies, eventRetentionPolicySetting, statusBatchSettings);
 		}
 	}
 }
@@ -9,6 +9,7 @@ import me.retrodaredevil.solarthing.config.databases.DatabaseSettings;
 import me.retrodaredevil.solarthing.config.databases.DatabaseType;
 import me.retrodaredevil.solarthing.config.databases.SimpleDatabaseType;
 import me.retrodaredevil.solarthing.mqtt.MqttPacketSaver;
+import me.retrodaredevil.solarthing.mqtt.MqttPublishSettings;
 
 import static java.util.Objects.requireNonNull;
 
@@ -22,6 +23,7 @@ public class MqttDatabaseSettings implements DatabaseSettings {
 	private final char[] password;
 	private final String topicFormat;
 	private final boolean retain;
+	private final MqttPublishSettings publishSettings;
 
 	@JsonCreator
 	public MqttDatabaseSettings(
@@ -30,13 +32,27 @@ public class MqttDatabaseSettings implements DatabaseSettings {
 			@JsonProperty(value = "username", required = true) String username,
 			@JsonProperty(value = "password", required = true) char[] password,
 			@JsonProperty("topic") String topicFormat,
-			@JsonProperty("retain") Boolean retain) {
+			@JsonProperty("retain") Boolean retain,
+			@JsonProperty("compact") Boolean compact,
+			@JsonProperty("collection_qos") Integer collectionQos,
+			@JsonProperty("packet_qos") Integer packetQos,
+			@JsonProperty("field_qos") Integer fieldQos,
+			@JsonProperty("max_inflight") Integer maxInflight,
+			@JsonProperty("buffer_size") Integer bufferSize) {
 		requireNonNull(this.broker = broker);
 		this.clientId = clientId;
 		requireNonNull(this.username = username);
 		requireNonNull(this.password = password);
 		this.topicFormat = topicFormat == null ? MqttPacketSaver.DEFAULT_TOPIC_FORMAT : topicFormat;
 		this.retain = retain == null || retain; // default to true
+		publishSettings = new MqttPublishSettings(
+				compact != null && compact,
+				collectionQos == null ? MqttPublishSettings.DEFAULT_COLLECTION_QOS : collectionQos,
+				packetQos == null ? MqttPublishSettings.DEFAULT_PACKET_QOS : packetQos,
+				fieldQos == null ? MqttPublishSettings.DEFAULT_FIELD_QOS : fieldQos,
+				maxInflight == null ? MqttPublishSettings.DEFAULT_MAX_INFLIGHT : maxInflight,
+				bufferSize == null ? MqttPublishSettings.DEFAULT_BUFFER_SIZE : bufferSize
+		);
 	}
 
 	@Override
@@ -67,4 +83,8 @@ public class MqttDatabaseSettings implements DatabaseSettings {
 	public boolean isRetain() {
 		return retain;
 	}
+
+	public @NotNull MqttPublishSettings getPublishSettings() {
+		return publishSettings;
+	}
 }
@@ -1,21 +1,38 @@
 package me.retrodaredevil.solarthing.config.databases.implementations;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import me.retrodaredevil.okhttp3.OkHttpProperties;
+import me.retrodaredevil.solarthing.annotations.Nullable;
 import me.retrodaredevil.solarthing.config.databases.DatabaseSettings;
 import me.retrodaredevil.solarthing.config.databases.DatabaseType;
 import me.retrodaredevil.solarthing.config.databases.SimpleDatabaseType;
+import me.retrodaredevil.solarthing.jackson.UnwrappedDeserializer;
+import me.retrodaredevil.solarthing.packets.handling.implementations.PostBatchSettings;
+
+import static java.util.Objects.requireNonNull;
 
 @JsonTypeName("post")
+@JsonDeserialize(using = PostDatabaseSettings.Deserializer.class)
 public final class PostDatabaseSettings implements DatabaseSettings {
 	public static final DatabaseType TYPE = new SimpleDatabaseType("post");
 
 	private final String url;
+	private final OkHttpProperties okHttpProperties;
+	private final boolean gzip;
+	private final PostBatchSettings batchSettings;
+	private final Integer maxIdleConnections;
+	private final Integer keepAliveMillis;
 
-	@JsonCreator
-	public PostDatabaseSettings(@JsonProperty(value = "url", required = true) String url) {
-		this.url = url;
+	public PostDatabaseSettings(String url, OkHttpProperties okHttpProperties, boolean gzip, PostBatchSettings batchSettings, Integer maxIdleConnections, Integer keepAliveMillis) {
+		this.url = requireNonNull(url, "url is required!");
+		this.okHttpProperties = requireNonNull(okHttpProperties);
+		this.gzip = gzip;
+		this.batchSettings = batchSettings;
+		this.maxIdleConnections = maxIdleConnections;
+		this.keepAliveMillis = keepAliveMillis;
 	}
 
 	@Override
@@ -26,4 +43,58 @@ public final class PostDatabaseSettings implements DatabaseSettings {
 	public String getUrl() {
 		return url;
 	}
+
+	public OkHttpProperties getOkHttpProperties() {
+		return okHttpProperties;
+	}
+
+	/** @return true if request bodies should be compressed with gzip */
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	/**
+	 * @return The batch settings, or null if each packet collection should be posted right away
+	 */
+	public @Nullable PostBatchSettings getBatchSettings() {
+		return batchSettings;
+	}
+
+	/**
+	 * @return The maximum number of idle connections to keep open, or null to use the default
+	 */
+	public @Nullable Integer getMaxIdleConnections() {
+		return maxIdleConnections;
+	}
+
+	/**
+	 * @return The amount of time in milliseconds to keep an idle connection open, or null to use the default
+	 */
+	public @Nullable Integer getKeepAliveMillis() {
+		return keepAliveMillis;
+	}
+
+	static class Deserializer extends UnwrappedDeserializer<PostDatabaseSettings, Builder> {
+		Deserializer() {
+			super(Builder.class, Builder::build);
+		}
+	}
+	public static class Builder {
+		@JsonProperty(value = "url", required = true)
+		private String url;
+		@JsonUnwrapped
+		private OkHttpProperties okHttpProperties;
+		@JsonProperty("gzip")
+		private boolean gzip = false;
+		@JsonProperty("batch")
+		private PostBatchSettings batchSettings;
+		@JsonProperty("max_idle_connections")
+		private Integer maxIdleConnections;
+		@JsonProperty("keep_alive")
+		private Float keepAliveSeconds;
+
+		public PostDatabaseSettings build() {
+			return new PostDatabaseSettings(url, okHttpProperties, gzip, batchSettings, maxIdleConnections, keepAliveSeconds == null ? null : Math.round(keepAliveSeconds * 1000));
+		}
+	}
 }
@@ -42,4 +42,9 @@ public class BatteryVoltageIODataRequester implements DataRequester {
 
 		return new DataRequesterResult(new BatteryVoltageIOListUpdater(ioBundle.getInputStream(), dataId, multiplier, invalidWhenBelow, invalidWhenAbove));
 	}
+
+	@Override
+	public String getResourceKey() {
+		return ConfigUtil.getResourceKey(ioBundleFile);
+	}
 }
@@ -2,6 +2,7 @@ package me.retrodaredevil.solarthing.config.request;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import me.retrodaredevil.solarthing.annotations.Nullable;
 import me.retrodaredevil.solarthing.config.request.modbus.ModbusDataRequester;
 
 @JsonSubTypes({
@@ -16,4 +17,12 @@ public interface DataRequester {
 
 	DataRequesterResult create(RequestObject requestObject);
 
+	/**
+	 * Data requesters with the same resource key share an I/O resource such as a serial port, so they are never run at the same time.
+	 * Data requesters with different resource keys may be run concurrently.
+	 * @return The key representing the I/O resource this uses, or null if this does not share a resource with any other data requester
+	 */
+	default @Nullable String getResourceKey() {
+		return null;
+	}
 }
@@ -37,4 +37,9 @@ public class PzemShuntDataRequester implements DataRequester {
 		ModbusSlave slave = new ImmutableAddressModbusSlave(modbusAddress, bus);
 		return new DataRequesterResult(new PzemShuntPacketListUpdater(dataId, modbusAddress, new PzemShuntModbusSlaveRead(slave)));
 	}
+
+	@Override
+	public String getResourceKey() {
+		return ConfigUtil.getResourceKey(ioBundleFile);
+	}
 }
@@ -2,17 +2,36 @@ package me.retrodaredevil.solarthing.config.request;
 
 import me.retrodaredevil.solarthing.packets.handling.PacketListReceiver;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * Simple class to group data that is needed by {@link DataRequester}s. Note this is mutable.
  */
 public class RequestObject {
 	private final PacketListReceiver eventPacketReceiver;
+	private final Object resourceLock;
 
-	public RequestObject(PacketListReceiver eventPacketReceiver) {
+	/**
+	 * @param resourceLock The lock shared by every {@link DataRequester} with the same {@link DataRequester#getResourceKey()}
+	 */
+	public RequestObject(PacketListReceiver eventPacketReceiver, Object resourceLock) {
 		this.eventPacketReceiver = eventPacketReceiver;
+		requireNonNull(this.resourceLock = resourceLock);
+	}
+	public RequestObject(PacketListReceiver eventPacketReceiver) {
+		this(eventPacketReceiver, new Object());
 	}
 
 	public PacketListReceiver getEventPacketReceiver() {
 		return eventPacketReceiver;
 	}
+
+	/**
+	 * Status packets may be requested on a different thread than the one that runs commands, so a data requester whose I/O resource is also used by commands
+	 * should hold this lock each time it uses that resource.
+	 * @return The lock shared by every {@link DataRequester} that uses the same I/O resource
+	 */
+	public Object getResourceLock() {
+		return resourceLock;
+	}
 }
@@ -14,6 +14,7 @@ import me.retrodaredevil.solarthing.io.ReloadableIOBundle;
 import me.retrodaredevil.solarthing.packets.handling.PacketListReceiver;
 import me.retrodaredevil.solarthing.packets.handling.PacketListReceiverMultiplexer;
 import me.retrodaredevil.solarthing.program.ConfigUtil;
+import me.retrodaredevil.solarthing.program.modbus.LockingModbusSlaveBus;
 
 import java.io.File;
 import java.time.Duration;
@@ -49,9 +50,15 @@ public class ModbusDataRequester implements DataRequester {
 		ModbusRequester first = addressToModbusRequesterMap.values().stream().findFirst().orElseThrow(NoSuchElementException::new);
 		IOConfig ioConfig = ConfigUtil.parseIOConfig(ioBundleFile, first.getDefaultSerialConfig());
 		ReloadableIOBundle ioBundle = new ReloadableIOBundle(ioConfig::createIOBundle);
-		ModbusSlaveBus modbus = new IOModbusSlaveBus(ioBundle, new RtuDataEncoder(rtuInitialTimeoutMillis, rtuEndTimeoutMillis, 4));
+		Object resourceLock = requestObject.getResourceLock();
+		// Commands may write to devices on this bus while status packets are being requested on another thread
+		ModbusSlaveBus modbus = new LockingModbusSlaveBus(new IOModbusSlaveBus(ioBundle, new RtuDataEncoder(rtuInitialTimeoutMillis, rtuEndTimeoutMillis, 4)), resourceLock);
 
-		ReloadIOSuccessReporterHandler reloadIOSuccessReporterHandler = new ReloadIOSuccessReporterHandler(ioBundle::reload);
+		ReloadIOSuccessReporterHandler reloadIOSuccessReporterHandler = new ReloadIOSuccessReporterHandler(() -> {
+			synchronized (resourceLock) {
+				ioBundle.reload();
+			}
+		});
 
 		List<PacketListReceiver> packetListReceiverList = new ArrayList<>();
 		List<EnvironmentUpdater> environmentUpdaterList = new ArrayList<>();
@@ -68,4 +75,9 @@ public class ModbusDataRequester implements DataRequester {
 				new EnvironmentUpdaterMultiplexer(environmentUpdaterList)
 		);
 	}
+
+	@Override
+	public String getResourceKey() {
+		return ConfigUtil.getResourceKey(ioBundleFile);
+	}
 }
@@ -16,6 +16,7 @@ import me.retrodaredevil.solarthing.packets.identification.NumberedIdentifier;
 import me.retrodaredevil.solarthing.program.receiver.ModbusListUpdaterWrapper;
 import me.retrodaredevil.solarthing.program.receiver.RoverPacketListUpdater;
 import me.retrodaredevil.solarthing.program.modbus.ModbusCacheSlave;
+import me.retrodaredevil.solarthing.program.modbus.ModbusReadPlanner;
 import me.retrodaredevil.solarthing.solar.renogy.rover.RoverReadTable;
 import me.retrodaredevil.solarthing.solar.renogy.rover.RoverWriteTable;
 import me.retrodaredevil.solarthing.solar.renogy.rover.modbus.RoverModbusSlaveRead;
@@ -30,6 +31,8 @@ import java.util.List;
 @JsonTypeName("rover")
 public class RoverModbusRequester implements ModbusRequester {
 	private static final Logger LOGGER = LoggerFactory.getLogger(RoverModbusRequester.class);
+	/** Bulk reads of up to 24 registers are known to work. Larger reads that are rejected are split up by {@link ModbusReadPlanner} */
+	private static final int MAX_REGISTERS_PER_READ = 24;
 	private final boolean sendErrorPackets;
 	private final boolean bulkRequest;
 	private final List<String> attachToCommands;
@@ -59,16 +62,10 @@ public class RoverModbusRequester implements ModbusRequester {
 		return RoverReadTable.SERIAL_CONFIG;
 	}
 
-	private static void cacheRegisters(ModbusCacheSlave modbusCacheSlave) {
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x000A, 0x001A);
-
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x0100, 0x0109); // skip 0x010A
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x010B, 0x0122);
-
-		modbusCacheSlave.cacheHoldingRangeInclusive(0xE002, 0xE014);
-		// break here just because they're for different things
-		modbusCacheSlave.cacheHoldingRangeInclusive(0xE015, 0xE021);
-//			modbusCacheSlave.cacheRangeInclusive(0xE022, 0xE02D); these do not work when querying in bulk for some reason
+	private static ModbusReadPlanner createHoldingPlanner() {
+		return new ModbusReadPlanner(MAX_REGISTERS_PER_READ)
+				.exclude(0x010A) // used as the command to turn the street light on/off
+				.excludeRangeInclusive(0xE022, 0xE02D); // these do not work when querying in bulk for some reason
 	}
 
 	@Override
@@ -76,15 +73,16 @@ public class RoverModbusRequester implements ModbusRequester {
 		final RoverReadTable read;
 		final Runnable reloadCache;
 		if (bulkRequest) {
-			ModbusCacheSlave modbusCacheSlave = new ModbusCacheSlave(modbus);
+			ModbusCacheSlave modbusCacheSlave = new ModbusCacheSlave(modbus, createHoldingPlanner(), null);
 			read = new RoverModbusSlaveRead(modbusCacheSlave);
-			reloadCache = () -> cacheRegisters(modbusCacheSlave);
+			reloadCache = modbusCacheSlave::cachePlanned;
 		} else {
 			read = new RoverModbusSlaveRead(modbus);
 			reloadCache = () -> {};
 		}
 		RoverWriteTable write = new RoverModbusSlaveWrite(modbus);
-		RoverModbusEnvironment roverModbusEnvironment = new RoverModbusEnvironment(read, write);
+		// Commands run on a different thread than status requests, so they read from the device directly instead of using the cache, which is not thread safe
+		RoverModbusEnvironment roverModbusEnvironment = new RoverModbusEnvironment(new RoverModbusSlaveRead(modbus), write);
 		final NetCatServerHandler netCatServerHandler;
 		if (configurationServerConfig == null) {
 			netCatServerHandler = null;
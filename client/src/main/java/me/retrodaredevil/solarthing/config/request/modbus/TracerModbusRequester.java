@@ -17,6 +17,7 @@ import me.retrodaredevil.solarthing.packets.identification.NumberedIdentifier;
 import me.retrodaredevil.solarthing.program.receiver.ModbusListUpdaterWrapper;
 import me.retrodaredevil.solarthing.program.receiver.TracerPacketListUpdater;
 import me.retrodaredevil.solarthing.program.modbus.ModbusCacheSlave;
+import me.retrodaredevil.solarthing.program.modbus.ModbusReadPlanner;
 import me.retrodaredevil.solarthing.solar.tracer.TracerReadTable;
 import me.retrodaredevil.solarthing.solar.tracer.TracerWriteTable;
 import me.retrodaredevil.solarthing.solar.tracer.modbus.TracerModbusSlaveRead;
@@ -31,6 +32,8 @@ import java.util.List;
 @JsonTypeName("tracer")
 public class TracerModbusRequester implements ModbusRequester {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TracerModbusRequester.class);
+	/** Bulk reads of up to 22 registers are known to work. Larger reads that are rejected are split up by {@link ModbusReadPlanner} */
+	private static final int MAX_REGISTERS_PER_READ = 22;
 
 	private final boolean sendErrorPackets;
 	private final boolean bulkRequest;
@@ -66,43 +69,22 @@ public class TracerModbusRequester implements ModbusRequester {
 	public SerialConfig getDefaultSerialConfig() {
 		return TracerReadTable.SERIAL_CONFIG;
 	}
-	private static void cacheRegisters(ModbusCacheSlave modbusCacheSlave) {
-		modbusCacheSlave.cacheInputRangeInclusive(0x3000, 0x3008);
-		modbusCacheSlave.cacheInput(0x300E, 1);
-
-		modbusCacheSlave.cacheInputRangeInclusive(0x3100, 0x3107);
-		modbusCacheSlave.cacheInputRangeInclusive(0x310C, 0x3112);
-		modbusCacheSlave.cacheInputRangeInclusive(0x311A, 0x311B);
-		modbusCacheSlave.cacheInput(0x311D, 1);
-
-		modbusCacheSlave.cacheInputRangeInclusive(0x3200, 0x3201);
-
-		modbusCacheSlave.cacheInputRangeInclusive(0x3300, 0x3315);
-		modbusCacheSlave.cacheInputRangeInclusive(0x331B, 0x331E);
-
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x9000, 0x900E);
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x9013, 0x9021);
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x903D, 0x903F);
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x9042, 0x904D);
-		modbusCacheSlave.cacheHolding(0x9065, 1);
-		modbusCacheSlave.cacheHoldingRangeInclusive(0x9069, 0x906E);
-		modbusCacheSlave.cacheHolding(0x9070, 1);
-	}
 
 	@Override
 	public DataRequesterResult create(RequestObject requestObject, SuccessReporter successReporter, ModbusSlave modbus) {
 		final TracerReadTable read;
 		final Runnable reloadCache;
 		if (bulkRequest) {
-			ModbusCacheSlave modbusCacheSlave = new ModbusCacheSlave(modbus);
+			ModbusCacheSlave modbusCacheSlave = new ModbusCacheSlave(modbus, new ModbusReadPlanner(MAX_REGISTERS_PER_READ), new ModbusReadPlanner(MAX_REGISTERS_PER_READ));
 			read = new TracerModbusSlaveRead(modbusCacheSlave);
-			reloadCache = () -> cacheRegisters(modbusCacheSlave);
+			reloadCache = modbusCacheSlave::cachePlanned;
 		} else {
 			read = new TracerModbusSlaveRead(modbus);
 			reloadCache = () -> {};
 		}
 		TracerWriteTable write = new TracerModbusSlaveWrite(modbus);
-		TracerModbusEnvironment tracerModbusEnvironment = new TracerModbusEnvironment(read, write);
+		// Commands run on a different thread than status requests, so they read from the device directly instead of using the cache, which is not thread safe
+		TracerModbusEnvironment tracerModbusEnvironment = new TracerModbusEnvironment(new TracerModbusSlaveRead(modbus), write);
 		final NetCatServerHandler netCatServerHandler;
 		if (configurationServerConfig == null) {
 			netCatServerHandler = null;
@@ -0,0 +1,197 @@
+package me.retrodaredevil.solarthing.couchdb;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.retrodaredevil.couchdbjava.CouchDbDatabase;
+import me.retrodaredevil.couchdbjava.exception.CouchDbException;
+import me.retrodaredevil.solarthing.annotations.JsonExplicit;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.database.couchdb.CouchDbHttpConnection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.handling.BatchPacketHandler;
+import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Uploads packet collections to CouchDB using the {@code _bulk_docs} endpoint.
+ * <p>
+ * Packet collections given to {@link #handleAll(List)} are uploaded in a single request, and a packet collection that cannot be saved does not stop
+ * the others from being saved. The request body is streamed, so packet collections are never serialized to a String.
+ */
+public class CouchDbBulkPacketSaver implements BatchPacketHandler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CouchDbBulkPacketSaver.class);
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+	private static final MediaType JSON = MediaType.get("application/json");
+
+	private final CouchDbDatabase database;
+	private final CouchDbHttpConnection connection;
+	/** A map of document IDs to the current revision of that document or null if we ignore conflicts. Only accessed while synchronized on this */
+	private final Map<String, String> idMap;
+
+	/**
+	 * @param database The database to upload to
+	 * @param connection The connection used to make {@code _bulk_docs} requests
+	 * @param ignoreConflicts true to ignore conflicts, false otherwise. See {@link CouchDbPacketSaver#CouchDbPacketSaver(CouchDbDatabase, boolean)}
+	 */
+	public CouchDbBulkPacketSaver(@NotNull CouchDbDatabase database, @NotNull CouchDbHttpConnection connection, boolean ignoreConflicts) {
+		requireNonNull(this.database = database);
+		requireNonNull(this.connection = connection);
+		idMap = ignoreConflicts ? null : new HashMap<>();
+	}
+
+	@Override
+	public void handle(PacketCollection packetCollection) throws PacketHandleException {
+		PacketHandleException exception = handleAll(Collections.singletonList(packetCollection)).get(0);
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	@Override
+	public synchronized @NotNull List<PacketHandleException> handleAll(@NotNull List<PacketCollection> packetCollections) throws PacketHandleException {
+		List<BulkDocument> documents = new ArrayList<>(packetCollections.size());
+		for (PacketCollection packetCollection : packetCollections) {
+			String id = packetCollection.getDbId();
+			documents.add(new BulkDocument(id, idMap == null ? null : idMap.get(id), packetCollection));
+		}
+		Request request = connection.createRequestBuilder(connection.createDatabaseUrlBuilder(database.getName()).addPathSegment("_bulk_docs").build())
+				.post(new BulkDocsRequestBody(documents))
+				.build();
+		final JsonNode results;
+		try (Response response = connection.getClient().newCall(request).execute()) {
+			ResponseBody body = response.body();
+			if (response.code() == 404) {
+				throw new PacketHandleException("Got 'not found'. Does the database exist? Make sure to run the couchdb-setup!");
+			}
+			if (!response.isSuccessful() || body == null) {
+				throw new PacketHandleException("Unsuccessful _bulk_docs request for database: " + database.getName() + " code: " + response.code());
+			}
+			results = MAPPER.readTree(body.byteStream());
+		} catch (IOException e) {
+			throw new PacketHandleException("Got IOException while uploading to " + database.getName() + ". We probably couldn't reach the database.", e);
+		}
+		if (!results.isArray() || results.size() != documents.size()) {
+			throw new PacketHandleException("Unexpected _bulk_docs response. Expected an array of " + documents.size() + " results. response: " + results);
+		}
+		if (idMap != null) {
+			idMap.clear(); // Same as CouchDbPacketSaver, we only need to remember the revisions of the newest documents
+		}
+		List<PacketHandleException> exceptions = new ArrayList<>(documents.size());
+		int conflictCount = 0;
+		for (int i = 0; i < documents.size(); i++) {
+			BulkDocument document = documents.get(i);
+			JsonNode result = results.get(i);
+			JsonNode rev = result.get("rev");
+			String error = result.path("error").asText(null);
+			if (rev != null && error == null) {
+				if (idMap != null) {
+					idMap.put(document.id, rev.asText());
+				}
+				exceptions.add(null);
+			} else if ("conflict".equals(error)) {
+				conflictCount++;
+				exceptions.add(resolveConflict(document));
+			} else {
+				exceptions.add(new PacketHandleException("Could not save document. id=" + document.id + " error: " + error + " reason: " + result.path("reason").asText(null)));
+			}
+		}
+		LOGGER.debug("Uploaded " + documents.size() + " documents to " + database.getName() + " with " + conflictCount + " conflicts");
+		return exceptions;
+	}
+
+	/**
+	 * @return The exception to give to the caller that tried to save {@code document}, or null if the conflict is ignored
+	 */
+	private @Nullable PacketHandleException resolveConflict(BulkDocument document) {
+		if (idMap == null) { // we are ignoring conflicts
+			LOGGER.debug("Got update conflict for id=" + document.id + ". Ignoring...");
+			return null;
+		}
+		try {
+			String actualRev = database.getCurrentRevision(document.id);
+			idMap.put(document.id, actualRev);
+			LOGGER.debug("We were able to get the actual Revision ID for id=" + document.id + " actual rev=" + actualRev);
+		} catch (CouchDbException revEx) {
+			LOGGER.debug("Unable to get the actual Revision ID for id=" + document.id, revEx);
+		}
+		return new PacketHandleException("Conflict while saving something to couchdb. id=" + document.id + " rev=" + document.revision + ". This usually means we put a packet in the database, but we weren't able to cache its rev id.");
+	}
+
+	private static final class BulkDocsRequestBody extends RequestBody {
+		private final List<BulkDocument> documents;
+
+		private BulkDocsRequestBody(List<BulkDocument> documents) {
+			this.documents = documents;
+		}
+
+		@Override
+		public MediaType contentType() {
+			return JSON;
+		}
+
+		@Override
+		public void writeTo(@NotNull BufferedSink sink) throws IOException {
+			JsonGenerator generator = MAPPER.createGenerator(sink.outputStream());
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET); // OkHttp owns the sink
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("docs");
+			for (BulkDocument document : documents) {
+				generator.writeObject(document);
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+			generator.close();
+		}
+	}
+
+	@JsonExplicit
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private static final class BulkDocument {
+		private final String id;
+		private final @Nullable String revision;
+		private final PacketCollection packetCollection;
+
+		private BulkDocument(String id, @Nullable String revision, PacketCollection packetCollection) {
+			this.id = id;
+			this.revision = revision;
+			this.packetCollection = packetCollection;
+		}
+
+		@JsonProperty("_id")
+		public String getId() {
+			return id;
+		}
+
+		@JsonProperty("_rev")
+		public @Nullable String getRevision() {
+			return revision;
+		}
+
+		@JsonUnwrapped
+		public PacketCollection getPacketCollection() {
+			return packetCollection;
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package me.retrodaredevil.solarthing.couchdb;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import me.retrodaredevil.couchdbjava.CouchDbDatabase;
 import me.retrodaredevil.couchdbjava.exception.CouchDbException;
 import me.retrodaredevil.couchdbjava.exception.CouchDbNotFoundException;
@@ -9,10 +7,10 @@ import me.retrodaredevil.couchdbjava.exception.CouchDbUpdateConflictException;
 import me.retrodaredevil.couchdbjava.json.JsonData;
 import me.retrodaredevil.couchdbjava.json.StringJsonData;
 import me.retrodaredevil.couchdbjava.response.DocumentResponse;
+import me.retrodaredevil.solarthing.packets.collection.EncodedPacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandler;
-import me.retrodaredevil.solarthing.util.JacksonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,7 +20,6 @@ import java.util.Map;
 
 public class CouchDbPacketSaver implements PacketHandler {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CouchDbPacketSaver.class);
-	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
 
 	/** A map of document IDs to the current revision of that document or null if we ignore conflicts */
 	private final Map<String, String> idMap;
@@ -49,12 +46,7 @@ public class CouchDbPacketSaver implements PacketHandler {
 
 		String id = packetCollection.getDbId();
 		String revision = idMap == null ? null : idMap.get(id);
-		final JsonData jsonData;
-		try {
-			jsonData = new StringJsonData(MAPPER.writeValueAsString(packetCollection));
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException("Cannot serialize packet collection! This is bad!", e);
-		}
+		JsonData jsonData = new StringJsonData(EncodedPacketCollection.getJson(packetCollection));
 		try {
 			final DocumentResponse response;
 			if (revision == null) {
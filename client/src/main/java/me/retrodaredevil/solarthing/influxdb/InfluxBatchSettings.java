@@ -0,0 +1,58 @@
+package me.retrodaredevil.solarthing.influxdb;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Settings for writing points asynchronously in batches. When present, points from many packet collections are coalesced into a single write.
+ */
+public final class InfluxBatchSettings {
+	private static final int DEFAULT_SIZE = 500;
+	private static final float DEFAULT_FLUSH_INTERVAL_SECONDS = 1.0f;
+	private static final int DEFAULT_BUFFER_LIMIT = 10_000;
+
+	private final int size;
+	private final int flushIntervalMillis;
+	private final int bufferLimit;
+
+	public InfluxBatchSettings(int size, int flushIntervalMillis, int bufferLimit) {
+		this.size = size;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.bufferLimit = bufferLimit;
+		if (size <= 0) {
+			throw new IllegalArgumentException("size must be greater than 0! size=" + size);
+		}
+		if (flushIntervalMillis <= 0) {
+			throw new IllegalArgumentException("flush_interval must be greater than 0! flushIntervalMillis=" + flushIntervalMillis);
+		}
+		if (bufferLimit < size) {
+			throw new IllegalArgumentException("buffer_limit must be greater than or equal to size! bufferLimit=" + bufferLimit + " size=" + size);
+		}
+	}
+	@JsonCreator
+	private static InfluxBatchSettings create(
+			@JsonProperty("size") Integer size,
+			@JsonProperty("flush_interval") Float flushIntervalSeconds,
+			@JsonProperty("buffer_limit") Integer bufferLimit) {
+		return new InfluxBatchSettings(
+				size == null ? DEFAULT_SIZE : size,
+				Math.round((flushIntervalSeconds == null ? DEFAULT_FLUSH_INTERVAL_SECONDS : flushIntervalSeconds) * 1000),
+				bufferLimit == null ? DEFAULT_BUFFER_LIMIT : bufferLimit
+		);
+	}
+
+	/** @return The maximum number of points to put in a single write */
+	public int getSize() {
+		return size;
+	}
+
+	/** @return The maximum amount of time in milliseconds that a point waits before it is written */
+	public int getFlushIntervalMillis() {
+		return flushIntervalMillis;
+	}
+
+	/** @return The maximum number of points to keep in memory while InfluxDB cannot be written to */
+	public int getBufferLimit() {
+		return bufferLimit;
+	}
+}
@@ -0,0 +1,22 @@
+package me.retrodaredevil.solarthing.influxdb;
+
+import java.math.BigDecimal;
+
+/**
+ * Receives the tags and fields of a single point. Implementations usually add them to a point builder.
+ */
+public interface PointFieldConsumer {
+	void tag(String key, String value);
+
+	/**
+	 * Called for every number that was not serialized as a {@link BigDecimal}. Numbers are always passed as a double because you can never
+	 * change the type from int to float easily
+	 */
+	void field(String key, double value);
+
+	default void field(String key, BigDecimal value) {
+		field(key, value.doubleValue());
+	}
+	void field(String key, String value);
+	void field(String key, boolean value);
+}
@@ -0,0 +1,142 @@
+package me.retrodaredevil.solarthing.influxdb;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Describes how packets of a single class are turned into the tags and fields of a point. A schema is computed once per class and cached
+ * in a {@link ClassValue}, so the tag keys are only found reflectively once and Jackson's serializer for the class is only resolved once.
+ * <p>
+ * Writing a packet does not build an {@link ObjectNode} or an intermediate map. The packet is serialized into a {@link TokenBuffer} (which is what
+ * {@link ObjectMapper#valueToTree(Object)} does internally) and the tokens are flattened straight into a {@link PointFieldConsumer}.
+ * The result is the same as calling {@link PointUtil#flattenJsonObject(ObjectNode)} on the tree of the packet.
+ * <p>
+ * Field names and accessors are not listed by hand because Jackson already resolves them from annotations, mixins and custom serializers.
+ */
+public final class PointSchema {
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+	private static final ClassValue<PointSchema> CACHE = new ClassValue<PointSchema>() {
+		@Override
+		protected PointSchema computeValue(Class<?> type) {
+			return new PointSchema(type);
+		}
+	};
+
+	private final Set<String> tagKeys;
+	private final ObjectWriter writer;
+	private final boolean useBigDecimalForFloats;
+
+	private PointSchema(Class<?> type) {
+		tagKeys = Collections.unmodifiableSet(new HashSet<>(PointUtil.getTagKeys(type)));
+		writer = MAPPER.writerFor(type).without(SerializationFeature.WRAP_ROOT_VALUE);
+		useBigDecimalForFloats = MAPPER.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+	}
+
+	public static @NotNull PointSchema get(Class<?> type) {
+		return CACHE.get(type);
+	}
+
+	/**
+	 * Writes the tags and fields of {@code value} to {@code consumer} using the schema of {@code value}'s class
+	 */
+	public static void write(Object value, PointFieldConsumer consumer) {
+		get(value.getClass()).writeValue(value, consumer);
+	}
+
+	public @NotNull Set<String> getTagKeys() {
+		return tagKeys;
+	}
+
+	/**
+	 * @param value The value to write. Its class must be the class this schema was created for.
+	 * @param consumer The consumer to write tags and fields to
+	 */
+	public void writeValue(Object value, PointFieldConsumer consumer) {
+		TokenBuffer buffer = new TokenBuffer(MAPPER, false);
+		if (useBigDecimalForFloats) {
+			buffer = buffer.forceUseOfBigDecimal(true);
+		}
+		try {
+			writer.writeValue(buffer, value);
+			try (JsonParser parser = buffer.asParser()) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new IllegalArgumentException("value was not serialized as an object! value=" + value);
+				}
+				writeObject(parser, null, consumer);
+			}
+		} catch (IOException e) { // should not happen because a TokenBuffer does no IO
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	private void writeObject(JsonParser parser, String prefix, PointFieldConsumer consumer) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String key = prefix == null ? parser.getCurrentName() : prefix + parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			switch (token) {
+				case START_OBJECT:
+					writeObject(parser, key + ".", consumer);
+					break;
+				case START_ARRAY:
+					parser.skipChildren(); // ignore arrays
+					break;
+				case VALUE_NULL: // ignore nulls
+					break;
+				case VALUE_NUMBER_INT:
+				case VALUE_NUMBER_FLOAT:
+					if (tagKeys.contains(key)) {
+						consumer.tag(key, parser.getText());
+					}
+					if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL
+							|| (useBigDecimalForFloats && token == JsonToken.VALUE_NUMBER_FLOAT && !parser.isNaN())) {
+						consumer.field(key, parser.getDecimalValue());
+					} else {
+						consumer.field(key, parser.getDoubleValue());
+					}
+					break;
+				case VALUE_STRING:
+					String text = parser.getText();
+					if (tagKeys.contains(key)) {
+						consumer.tag(key, text);
+					}
+					consumer.field(key, text);
+					break;
+				case VALUE_TRUE:
+				case VALUE_FALSE:
+					boolean bool = token == JsonToken.VALUE_TRUE;
+					if (tagKeys.contains(key)) {
+						consumer.tag(key, Boolean.toString(bool));
+					}
+					consumer.field(key, bool);
+					break;
+				case VALUE_EMBEDDED_OBJECT:
+					Object embedded = parser.getEmbeddedObject();
+					if (!(embedded instanceof byte[])) {
+						throw new AssertionError("This primitive isn't a number, string/binary or boolean! It's: " + embedded + " class: " + (embedded == null ? null : embedded.getClass()));
+					}
+					String base64 = Base64Variants.getDefaultVariant().encode((byte[]) embedded);
+					if (tagKeys.contains(key)) {
+						consumer.tag(key, base64);
+					}
+					consumer.field(key, base64);
+					break;
+				default:
+					throw new AssertionError("Unexpected token: " + token);
+			}
+		}
+	}
+}
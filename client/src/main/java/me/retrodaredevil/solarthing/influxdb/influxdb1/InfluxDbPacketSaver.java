@@ -1,14 +1,14 @@
 package me.retrodaredevil.solarthing.influxdb.influxdb1;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.ValueNode;
 import me.retrodaredevil.influxdb.influxdb1.InfluxProperties;
 import me.retrodaredevil.okhttp3.OkHttpProperties;
 import me.retrodaredevil.okhttp3.OkHttpUtil;
 import me.retrodaredevil.solarthing.SolarThingConstants;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.influxdb.InfluxBatchSettings;
 import me.retrodaredevil.solarthing.influxdb.NameGetter;
-import me.retrodaredevil.solarthing.influxdb.PointUtil;
+import me.retrodaredevil.solarthing.influxdb.PointFieldConsumer;
+import me.retrodaredevil.solarthing.influxdb.PointSchema;
 import me.retrodaredevil.solarthing.influxdb.retention.RetentionPolicy;
 import me.retrodaredevil.solarthing.influxdb.retention.RetentionPolicyGetter;
 import me.retrodaredevil.solarthing.influxdb.retention.RetentionPolicySetting;
@@ -19,8 +19,8 @@ import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandler;
-import me.retrodaredevil.solarthing.util.JacksonUtil;
 import okhttp3.logging.HttpLoggingInterceptor;
+import org.influxdb.BatchOptions;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBException;
 import org.influxdb.InfluxDBFactory;
@@ -31,9 +31,10 @@ import org.influxdb.dto.QueryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.Objects.requireNonNull;
@@ -42,146 +43,188 @@ import static java.util.Objects.requireNonNull;
  * A {@link PacketHandler} that saves packets to InfluxDB.
  * <p>
  * Note that when saving, with the current implementation, integers are not stored. Only floats are stored.
+ * <p>
+ * A single connection is used for the lifetime of this object. Databases and retention policies are only created or altered the first time they are used,
+ * and are checked again after a write fails. If {@link InfluxBatchSettings} are given, points are written asynchronously in batches, so {@link #handle(PacketCollection)}
+ * will not throw an exception if a write fails.
  */
 public class InfluxDbPacketSaver implements PacketHandler {
 	private static final Logger LOGGER = LoggerFactory.getLogger(InfluxDbPacketSaver.class);
 	private static final Logger INFLUX_LOGGER = LoggerFactory.getLogger("org.influxdb");
-	private static final ObjectMapper OBJECT_MAPPER = JacksonUtil.defaultMapper();
 
 	private final InfluxProperties properties;
 	private final OkHttpProperties okHttpProperties;
 	private final NameGetter databaseNameGetter;
 	private final PacketPointCreator pointCreator;
 	private final RetentionPolicyGetter retentionPolicyGetter;
+	private final InfluxBatchSettings batchSettings;
+
+	/** The databases and retention policies that have already been created or altered*/
+	private final Set<SchemaKey> verifiedSchemas = ConcurrentHashMap.newKeySet();
+	private InfluxDB influxDB = null;
 
 	public InfluxDbPacketSaver(
 			InfluxProperties properties,
 			OkHttpProperties okHttpProperties,
 			NameGetter databaseNameGetter,
 			PacketPointCreator pointCreator,
-			RetentionPolicyGetter retentionPolicyGetter) {
+			RetentionPolicyGetter retentionPolicyGetter,
+			@Nullable InfluxBatchSettings batchSettings) {
 		this.properties = requireNonNull(properties);
 		this.okHttpProperties = requireNonNull(okHttpProperties);
 		this.databaseNameGetter = requireNonNull(databaseNameGetter);
 		this.pointCreator = requireNonNull(pointCreator);
 		this.retentionPolicyGetter = retentionPolicyGetter;
+		this.batchSettings = batchSettings;
+	}
+	public InfluxDbPacketSaver(
+			InfluxProperties properties,
+			OkHttpProperties okHttpProperties,
+			NameGetter databaseNameGetter,
+			PacketPointCreator pointCreator,
+			RetentionPolicyGetter retentionPolicyGetter) {
+		this(properties, okHttpProperties, databaseNameGetter, pointCreator, retentionPolicyGetter, null);
 	}
 
 	@Override
 	public void handle(PacketCollection packetCollection) throws PacketHandleException {
-		try(InfluxDB db = createDatabase()) {
-			final InstancePacketGroup packetGroup = PacketGroups.parseToInstancePacketGroup(packetCollection, DefaultInstanceOptions.REQUIRE_NO_DEFAULTS);
-			DefaultInstanceOptions.requireNoDefaults(packetGroup);
-			final String database = databaseNameGetter.getName(packetGroup);
-			try {
-				QueryResult result = db.query(new Query("CREATE DATABASE " + database, null, true));
-				String error = getError(result);
-				if(error != null){
-					throw new PacketHandleException("Result got error! error: " + result);
-				}
-			} catch (InfluxDBException ex) {
-				throw new PacketHandleException("Unable to query the database!", ex);
+		InfluxDB db = getDatabase();
+		final InstancePacketGroup packetGroup = PacketGroups.parseToInstancePacketGroup(packetCollection, DefaultInstanceOptions.REQUIRE_NO_DEFAULTS);
+		DefaultInstanceOptions.requireNoDefaults(packetGroup);
+		final String database = databaseNameGetter.getName(packetGroup);
+		final RetentionPolicySetting retentionPolicySetting = retentionPolicyGetter.getRetentionPolicySetting();
+		final String retentionPolicyName = retentionPolicySetting == null ? null : retentionPolicySetting.getName();
+		SchemaKey schemaKey = new SchemaKey(database, retentionPolicySetting);
+		if (!verifiedSchemas.contains(schemaKey)) {
+			createSchema(db, database, retentionPolicySetting);
+			verifiedSchemas.add(schemaKey);
+		}
+
+		final long time = packetCollection.getDateMillis();
+		final BatchPoints points = BatchPoints.database(database)
+				.tag("sourceId", packetGroup.getSourceId())
+				.tag("fragmentId", "" + packetGroup.getFragmentId())
+				.consistency(InfluxDB.ConsistencyLevel.ALL)
+				.retentionPolicy(retentionPolicyName) // may be null, but that's OK
+				.build();
+
+		int packetsWritten = 0;
+		for (Packet packet : packetGroup.getPackets()) {
+			Point.Builder pointBuilder = pointCreator.createBuilder(packet).time(time, TimeUnit.MILLISECONDS);
+
+			PointSchema.write(packet, new PointBuilderFieldConsumer(pointBuilder));
+			points.point(pointBuilder.build());
+			packetsWritten++;
+		}
+		if (batchSettings != null) {
+			for (Point point : points.getPoints()) {
+				db.write(database, retentionPolicyName, point); // batching is enabled, so this is added to a buffer and written later
 			}
-			final RetentionPolicySetting retentionPolicySetting = retentionPolicyGetter.getRetentionPolicySetting();
-			final String retentionPolicyName;
-
-			// region Retention Policy Creation Logic
-			if(retentionPolicySetting != null){
-				retentionPolicyName = retentionPolicySetting.getName();
-				if(retentionPolicyName != null){
-					final RetentionPolicy policy = retentionPolicySetting.getRetentionPolicy();
-					if(policy != null){
-						final String policyString = policy.toPolicyStringInfluxDb1(retentionPolicyName, database);
-						final boolean needsAlter;
-						if(retentionPolicySetting.isTryToCreate()){
-							final QueryResult result;
-							final String query = "CREATE " + policyString;
-							try {
-								result = db.query(new Query(query, null, true));
-							} catch(InfluxDBException ex){
-								throw new PacketHandleException("Unable to query database to create retention policy: " + retentionPolicyName + " query: " + query, ex);
-							}
-							String error = getError(result);
-							if(retentionPolicySetting.isIgnoreUnsuccessfulCreate()){
-								if(error != null){
-									LOGGER.debug("We're going to ignore this error we got while trying to create a retention policy. Error: {}", error);
-								}
-								needsAlter = false;
-							} else {
-								if(error != null){
-									LOGGER.debug("Got error while trying to create! Error: " + error);
-								}
-								needsAlter = error != null;
-							}
-							if(needsAlter && !retentionPolicySetting.isAutomaticallyAlter()){
-								throw new PacketHandleException("Got error while trying to create retention policy: " + retentionPolicyName + ". Error: " + error);
+			LOGGER.debug("Queued {} packets to be written to InfluxDB! database={} retention policy={}", packetsWritten, database, retentionPolicyName);
+			return;
+		}
+		try {
+			db.write(points);
+		} catch (InfluxDBException ex) {
+			// Maybe the database or retention policy was deleted, so check them again next time
+			verifiedSchemas.removeIf(key -> key.database.equals(database));
+			throw new PacketHandleException("We were able to query the database, but unable to write the points to it!", ex);
+		}
+		LOGGER.debug("Wrote {} packets to InfluxDB! database={} retention policy={}", packetsWritten, database, retentionPolicyName);
+	}
+	private static final class PointBuilderFieldConsumer implements PointFieldConsumer {
+		private final Point.Builder pointBuilder;
+
+		private PointBuilderFieldConsumer(Point.Builder pointBuilder) {
+			this.pointBuilder = pointBuilder;
+		}
+
+		@Override
+		public void tag(String key, String value) {
+			pointBuilder.tag(key, value);
+		}
+
+		@Override
+		public void field(String key, double value) {
+			// always store as float datatype
+			pointBuilder.addField(key, value);
+		}
+
+		@Override
+		public void field(String key, String value) {
+			pointBuilder.addField(key, value);
+		}
+
+		@Override
+		public void field(String key, boolean value) {
+			pointBuilder.addField(key, value);
+		}
+	}
+	private void createSchema(InfluxDB db, String database, RetentionPolicySetting retentionPolicySetting) throws PacketHandleException {
+		try {
+			QueryResult result = db.query(new Query("CREATE DATABASE " + database, null, true));
+			String error = getError(result);
+			if(error != null){
+				throw new PacketHandleException("Result got error! error: " + result);
+			}
+		} catch (InfluxDBException ex) {
+			throw new PacketHandleException("Unable to query the database!", ex);
+		}
+		// region Retention Policy Creation Logic
+		if(retentionPolicySetting != null){
+			final String retentionPolicyName = retentionPolicySetting.getName();
+			if(retentionPolicyName != null){
+				final RetentionPolicy policy = retentionPolicySetting.getRetentionPolicy();
+				if(policy != null){
+					final String policyString = policy.toPolicyStringInfluxDb1(retentionPolicyName, database);
+					final boolean needsAlter;
+					if(retentionPolicySetting.isTryToCreate()){
+						final QueryResult result;
+						final String query = "CREATE " + policyString;
+						try {
+							result = db.query(new Query(query, null, true));
+						} catch(InfluxDBException ex){
+							throw new PacketHandleException("Unable to query database to create retention policy: " + retentionPolicyName + " query: " + query, ex);
+						}
+						String error = getError(result);
+						if(retentionPolicySetting.isIgnoreUnsuccessfulCreate()){
+							if(error != null){
+								LOGGER.debug("We're going to ignore this error we got while trying to create a retention policy. Error: {}", error);
 							}
+							needsAlter = false;
 						} else {
-							needsAlter = true;
-						}
-						if (needsAlter) {
-							if (retentionPolicySetting.isAutomaticallyAlter()) {
-								final QueryResult alterResult;
-								try {
-									alterResult = db.query(new Query("ALTER " + policyString));
-									LOGGER.info(SolarThingConstants.SUMMARY_MARKER, "Successfully altered {} retention policy!", retentionPolicyName);
-								} catch (InfluxDBException ex) {
-									throw new PacketHandleException("Unable to query database to alter retention policy: " + retentionPolicyName, ex);
-								}
-								String error = getError(alterResult);
-								if (error != null) {
-									throw new PacketHandleException("Unable to alter retention policy: " + retentionPolicyName + ". Error: " + error);
-								}
-							} else {
-								throw new PacketHandleException("Retention policy: " + retentionPolicyName + " needs to be altered but automatically alter is false!");
+							if(error != null){
+								LOGGER.debug("Got error while trying to create! Error: " + error);
 							}
+							needsAlter = error != null;
+						}
+						if(needsAlter && !retentionPolicySetting.isAutomaticallyAlter()){
+							throw new PacketHandleException("Got error while trying to create retention policy: " + retentionPolicyName + ". Error: " + error);
 						}
+					} else {
+						needsAlter = true;
 					}
-				}
-			} else {
-				retentionPolicyName = null;
-			}
-			// endregion
-
-			final long time = packetCollection.getDateMillis();
-			final BatchPoints points = BatchPoints.database(database)
-					.tag("sourceId", packetGroup.getSourceId())
-					.tag("fragmentId", "" + packetGroup.getFragmentId())
-					.consistency(InfluxDB.ConsistencyLevel.ALL)
-					.retentionPolicy(retentionPolicyName) // may be null, but that's OK
-					.build();
-
-			int packetsWritten = 0;
-			for (Packet packet : packetGroup.getPackets()) {
-				Point.Builder pointBuilder = pointCreator.createBuilder(packet).time(time, TimeUnit.MILLISECONDS);
-
-				Collection<String> tagKeys = PointUtil.getTagKeys(packet.getClass());
-				ObjectNode json = OBJECT_MAPPER.valueToTree(packet);
-				for (Map.Entry<String, ValueNode> entry : PointUtil.flattenJsonObject(json)) {
-					String key = entry.getKey();
-					ValueNode prim = entry.getValue();
-					if(tagKeys.contains(key)){
-						pointBuilder.tag(key, prim.asText());
+					if (needsAlter) {
+						if (retentionPolicySetting.isAutomaticallyAlter()) {
+							final QueryResult alterResult;
+							try {
+								alterResult = db.query(new Query("ALTER " + policyString));
+								LOGGER.info(SolarThingConstants.SUMMARY_MARKER, "Successfully altered {} retention policy!", retentionPolicyName);
+							} catch (InfluxDBException ex) {
+								throw new PacketHandleException("Unable to query database to alter retention policy: " + retentionPolicyName, ex);
+							}
+							String error = getError(alterResult);
+							if (error != null) {
+								throw new PacketHandleException("Unable to alter retention policy: " + retentionPolicyName + ". Error: " + error);
+							}
+						} else {
+							throw new PacketHandleException("Retention policy: " + retentionPolicyName + " needs to be altered but automatically alter is false!");
+						}
 					}
-					if (prim.isNumber()) {
-						// always store as float datatype
-						pointBuilder.addField(key, prim.asDouble());
-					} else if (prim.isTextual() || prim.isBinary()) {
-						pointBuilder.addField(key, prim.asText());
-					} else if (prim.isBoolean()) {
-						pointBuilder.addField(key, prim.asBoolean());
-					} else throw new AssertionError("This primitive isn't a number, string/binary or boolean! It's: " + prim + " class: " + prim.getClass() + " text=" + prim.asText());
 				}
-				points.point(pointBuilder.build());
-				packetsWritten++;
 			}
-			try {
-				db.write(points);
-			} catch (InfluxDBException ex) {
-				throw new PacketHandleException("We were able to query the database, but unable to write the points to it!", ex);
-			}
-			LOGGER.debug("Wrote {} packets to InfluxDB! database={} retention policy={}", packetsWritten, database, retentionPolicyName);
 		}
+		// endregion
 	}
 	private String getError(QueryResult queryResult){
 		if(queryResult.hasError()){
@@ -195,6 +238,37 @@ public class InfluxDbPacketSaver implements PacketHandler {
 		}
 		return null;
 	}
+	/**
+	 * Flushes the points that are still buffered and closes the connection. This should be called when the program shuts down, after the last packet collection was handled.
+	 */
+	public synchronized void close() {
+		InfluxDB influxDB = this.influxDB;
+		if (influxDB != null) {
+			influxDB.close();
+			this.influxDB = null;
+		}
+	}
+	private synchronized InfluxDB getDatabase() {
+		InfluxDB influxDB = this.influxDB;
+		if (influxDB == null) {
+			influxDB = createDatabase();
+			if (batchSettings != null) {
+				influxDB.enableBatch(BatchOptions.DEFAULTS
+						.actions(batchSettings.getSize())
+						.flushDuration(batchSettings.getFlushIntervalMillis())
+						.bufferLimit(batchSettings.getBufferLimit())
+						.consistency(InfluxDB.ConsistencyLevel.ALL)
+						.exceptionHandler((failedPoints, throwable) -> {
+							// We don't know which database failed, so check all of them again next time
+							verifiedSchemas.clear();
+							LOGGER.error("Unable to write a batch of points to InfluxDB!", throwable);
+						})
+				);
+			}
+			this.influxDB = influxDB;
+		}
+		return influxDB;
+	}
 	private InfluxDB createDatabase() {
 		return InfluxDBFactory.connect(
 				properties.getUrl(),
@@ -205,4 +279,27 @@ public class InfluxDbPacketSaver implements PacketHandler {
 				InfluxDB.ResponseFormat.JSON
 		).setLogLevel(InfluxDB.LogLevel.NONE);
 	}
+
+	private static final class SchemaKey {
+		private final String database;
+		private final RetentionPolicySetting retentionPolicySetting;
+
+		private SchemaKey(String database, RetentionPolicySetting retentionPolicySetting) {
+			this.database = database;
+			this.retentionPolicySetting = retentionPolicySetting;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			SchemaKey schemaKey = (SchemaKey) o;
+			return database.equals(schemaKey.database) && retentionPolicySetting == schemaKey.retentionPolicySetting;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(database, System.identityHashCode(retentionPolicySetting));
+		}
+	}
 }
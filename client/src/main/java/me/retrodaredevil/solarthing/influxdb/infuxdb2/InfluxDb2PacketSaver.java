@@ -1,23 +1,27 @@
 package me.retrodaredevil.solarthing.influxdb.infuxdb2;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.DecimalNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.ValueNode;
 import com.influxdb.LogLevel;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
 import com.influxdb.client.InfluxDBClientOptions;
+import com.influxdb.client.WriteApi;
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.WriteOptions;
 import com.influxdb.client.domain.Bucket;
 import com.influxdb.client.domain.Organization;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
+import com.influxdb.client.write.events.WriteErrorEvent;
 import com.influxdb.exceptions.InfluxException;
+import com.influxdb.exceptions.NotFoundException;
 import me.retrodaredevil.influxdb.influxdb2.InfluxDb2Properties;
 import me.retrodaredevil.okhttp3.OkHttpProperties;
 import me.retrodaredevil.okhttp3.OkHttpUtil;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.influxdb.InfluxBatchSettings;
 import me.retrodaredevil.solarthing.influxdb.NameGetter;
-import me.retrodaredevil.solarthing.influxdb.PointUtil;
+import me.retrodaredevil.solarthing.influxdb.PointFieldConsumer;
+import me.retrodaredevil.solarthing.influxdb.PointSchema;
 import me.retrodaredevil.solarthing.packets.Packet;
 import me.retrodaredevil.solarthing.packets.collection.DefaultInstanceOptions;
 import me.retrodaredevil.solarthing.packets.collection.InstancePacketGroup;
@@ -25,35 +29,65 @@ import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandler;
-import me.retrodaredevil.solarthing.util.JacksonUtil;
 import okhttp3.logging.HttpLoggingInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Saves packets to InfluxDB 2. The organization and buckets are only looked up (or created) once and are looked up again after InfluxDB
+ * tells us they cannot be found. If {@link InfluxBatchSettings} are given, points are written asynchronously in batches, so
+ * {@link #handle(PacketCollection)} does not wait for (or report failures of) the actual write.
+ */
 public class InfluxDb2PacketSaver implements PacketHandler {
-//	private static final Logger LOGGER = LoggerFactory.getLogger(InfluxDbPacketSaver.class);
+	private static final Logger LOGGER = LoggerFactory.getLogger(InfluxDb2PacketSaver.class);
 	private static final Logger INFLUX_LOGGER = LoggerFactory.getLogger("org.influxdb");
-	private static final ObjectMapper OBJECT_MAPPER = JacksonUtil.defaultMapper();
 
 
 	private final InfluxDBClient client;
+	private final WriteApiBlocking writeApiBlocking;
+	/** The asynchronous write API, or null if points should be written synchronously */
+	private final WriteApi writeApi;
 
 	private final InfluxDb2Properties properties;
 	private final NameGetter bucketNameGetter;
 	private final PacketPoint2Creator pointCreator;
 
-	public InfluxDb2PacketSaver(InfluxDb2Properties properties, OkHttpProperties okHttpProperties, NameGetter bucketNameGetter, PacketPoint2Creator pointCreator) {
+	private final Map<String, Bucket> bucketMap = new ConcurrentHashMap<>();
+	private volatile Organization organization = null;
+
+	public InfluxDb2PacketSaver(InfluxDb2Properties properties, OkHttpProperties okHttpProperties, NameGetter bucketNameGetter, PacketPoint2Creator pointCreator, @Nullable InfluxBatchSettings batchSettings) {
 		client = createClient(properties, okHttpProperties);
 		this.properties = properties;
 		this.bucketNameGetter = bucketNameGetter;
 		this.pointCreator = pointCreator;
+		writeApiBlocking = client.getWriteApiBlocking();
+		if (batchSettings != null) {
+			writeApi = client.makeWriteApi(WriteOptions.builder()
+					.batchSize(batchSettings.getSize())
+					.flushInterval(batchSettings.getFlushIntervalMillis())
+					.bufferLimit(batchSettings.getBufferLimit())
+					.build());
+			writeApi.listenEvents(WriteErrorEvent.class, event -> {
+				Throwable throwable = event.getThrowable();
+				if (throwable instanceof NotFoundException) {
+					invalidateCache();
+				}
+				LOGGER.error("Unable to write a batch of points to InfluxDB!", throwable);
+			});
+		} else {
+			writeApi = null;
+		}
+	}
+	public InfluxDb2PacketSaver(InfluxDb2Properties properties, OkHttpProperties okHttpProperties, NameGetter bucketNameGetter, PacketPoint2Creator pointCreator) {
+		this(properties, okHttpProperties, bucketNameGetter, pointCreator, null);
 	}
 
 	private static InfluxDBClient createClient(InfluxDb2Properties properties, OkHttpProperties okHttpProperties) {
@@ -74,6 +108,35 @@ public class InfluxDb2PacketSaver implements PacketHandler {
 				.setLogLevel(LogLevel.NONE)
 				.enableGzip();
 	}
+	/**
+	 * Flushes the points that are still buffered and closes the client. This should be called when the program shuts down, after the last packet collection was handled.
+	 */
+	public void close() {
+		if (writeApi != null) {
+			writeApi.close(); // flushes the points that are still buffered
+		}
+		client.close();
+	}
+	private void invalidateCache() {
+		organization = null;
+		bucketMap.clear();
+	}
+	private Organization getOrganization() throws PacketHandleException {
+		Organization r = organization;
+		if (r == null) {
+			r = findOrCreateOrg();
+			organization = r;
+		}
+		return r;
+	}
+	private Bucket getBucket(String name) throws PacketHandleException {
+		Bucket r = bucketMap.get(name);
+		if (r == null) {
+			r = findOrCreateBucket(name, getOrganization());
+			bucketMap.put(name, r);
+		}
+		return r;
+	}
 	private Organization findOrCreateOrg() throws PacketHandleException {
 		final List<Organization> organizations;
 		try {
@@ -113,42 +176,51 @@ public class InfluxDb2PacketSaver implements PacketHandler {
 	public void handle(PacketCollection packetCollection) throws PacketHandleException {
 		final InstancePacketGroup packetGroup = PacketGroups.parseToInstancePacketGroup(packetCollection, DefaultInstanceOptions.REQUIRE_NO_DEFAULTS);
 		DefaultInstanceOptions.requireNoDefaults(packetGroup);
-		Organization organization = findOrCreateOrg();
-		Bucket bucket = findOrCreateBucket(bucketNameGetter.getName(packetGroup), organization);
+		Bucket bucket = getBucket(bucketNameGetter.getName(packetGroup));
 
 		final long time = packetCollection.getDateMillis();
 		List<Point> points = new ArrayList<>();
 		for (Packet packet : packetGroup.getPackets()) {
 			Point point = pointCreator.createBuilder(packet).time(time, WritePrecision.MS);
 
-			Collection<String> tagKeys = PointUtil.getTagKeys(packet.getClass());
-			ObjectNode json = OBJECT_MAPPER.valueToTree(packet);
-			for (Map.Entry<String, ValueNode> entry : PointUtil.flattenJsonObject(json)) {
-				String key = entry.getKey();
-				ValueNode prim = entry.getValue();
-				if(tagKeys.contains(key)){
-					point.addTag(key, prim.asText());
+			PointSchema.write(packet, new PointFieldConsumer() {
+				@Override
+				public void tag(String key, String value) {
+					point.addTag(key, value);
 				}
-				if (prim.isNumber()) {
+
+				@Override
+				public void field(String key, double value) {
 					// always store as float datatype because you can never change the type from int to float easily
-					final Number value;
-					if (prim.isBigDecimal()) {
-						DecimalNode decimal = (DecimalNode) prim;
-						value = decimal.decimalValue();
-					} else {
-						value = prim.asDouble();
-					}
 					point.addField(key, value);
-				} else if (prim.isTextual() || prim.isBinary()) {
-					point.addField(key, prim.asText());
-				} else if (prim.isBoolean()) {
-					point.addField(key, prim.asBoolean());
-				} else throw new AssertionError("This primitive isn't a number, string/binary or boolean! It's: " + prim + " class: " + prim.getClass() + " text=" + prim.asText());
-			}
+				}
+
+				@Override
+				public void field(String key, BigDecimal value) {
+					point.addField(key, value);
+				}
+
+				@Override
+				public void field(String key, String value) {
+					point.addField(key, value);
+				}
+
+				@Override
+				public void field(String key, boolean value) {
+					point.addField(key, value);
+				}
+			});
 			points.add(point);
 		}
+		if (writeApi != null) {
+			writeApi.writePoints(bucket.getName(), bucket.getOrgID(), points); // added to a buffer and written later
+			return;
+		}
 		try {
-			client.getWriteApiBlocking().writePoints(bucket.getName(), bucket.getOrgID(), points);
+			writeApiBlocking.writePoints(bucket.getName(), bucket.getOrgID(), points);
+		} catch (NotFoundException exception) {
+			invalidateCache(); // the bucket or organization may have been deleted, so look it up again next time
+			throw new PacketHandleException("Could not write points. Bucket or organization not found.", exception);
 		} catch (InfluxException exception) {
 			throw new PacketHandleException("Could not write points", exception);
 		}
@@ -0,0 +1,89 @@
+package me.retrodaredevil.solarthing.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded buffer of bytes. Writes that do not fit are dropped entirely, so a write never blocks waiting for space.
+ * Readers wait on a {@link Condition} that is signaled when bytes are written.
+ */
+final class ByteRingBuffer {
+	private final byte[] buffer;
+	private final Lock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+
+	/** The index of the first readable byte */
+	private int start = 0;
+	private int size = 0;
+	private long droppedBytes = 0;
+
+	ByteRingBuffer(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be >= 1");
+		}
+		buffer = new byte[capacity];
+	}
+
+	/**
+	 * Writes all of the given bytes, or none of them if there is not enough space
+	 * @return true if the bytes were written, false if they were dropped
+	 */
+	boolean write(byte[] b, int off, int len) {
+		lock.lock();
+		try {
+			if (len > buffer.length - size) {
+				droppedBytes += len;
+				return false;
+			}
+			int end = (start + size) % buffer.length;
+			int firstLength = Math.min(len, buffer.length - end);
+			System.arraycopy(b, off, buffer, end, firstLength);
+			System.arraycopy(b, off + firstLength, buffer, 0, len - firstLength);
+			size += len;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for bytes to be available, then moves as many as possible into {@code destination}
+	 * @return The number of bytes read, or 0 if the timeout passed before any bytes were available
+	 */
+	int read(byte[] destination, long timeout, TimeUnit timeUnit) throws InterruptedException {
+		lock.lock();
+		try {
+			long remainingNanos = timeUnit.toNanos(timeout);
+			while (size == 0) {
+				if (remainingNanos <= 0) {
+					return 0;
+				}
+				remainingNanos = notEmpty.awaitNanos(remainingNanos);
+			}
+			int len = Math.min(size, destination.length);
+			int firstLength = Math.min(len, buffer.length - start);
+			System.arraycopy(buffer, start, destination, 0, firstLength);
+			System.arraycopy(buffer, 0, destination, firstLength, len - firstLength);
+			start = (start + len) % buffer.length;
+			size -= len;
+			return len;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** @return The number of bytes dropped since the last call to this method */
+	long takeDroppedBytes() {
+		lock.lock();
+		try {
+			long r = droppedBytes;
+			droppedBytes = 0;
+			return r;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -14,22 +14,34 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * An appender that sends log output to every client connected to a server socket.
+ * <p>
+ * Log output is put in a bounded {@link ByteRingBuffer}, so logging never waits on clients. If the buffer is full, output is dropped.
+ * Each client has its own buffer and is written to without blocking, so a slow client only drops its own output instead of stalling other clients.
+ */
 @Plugin(name = "ServerSocket", category = "Core", elementType = "appender", printObject = true)
 public class SocketServerAppender extends AbstractOutputStreamAppender<SocketServerAppender.ServerSocketManager> {
+	private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	private static final int CHUNK_SIZE = 16 * 1024;
+	private static final int CLIENT_BUFFER_SIZE = 256 * 1024;
+	/** How often to try writing to clients that have pending output */
+	private static final long PENDING_RETRY_MILLIS = 20;
 
-	private final Queue<Byte> outputQueue;
-	private final List<Socket> activeSockets = new ArrayList<>();
+	private final ByteRingBuffer outputBuffer;
+	/** Only accessed while synchronized on this list */
+	private final List<Client> clients = new ArrayList<>();
 
 	private final String bindAddress;
 	private final int port;
@@ -37,23 +49,22 @@ public class SocketServerAppender extends AbstractOutputStreamAppender<SocketSer
 	private final Thread acceptThread = new Thread(this::runManageServerSocket);
 	private final Thread outputThread = new Thread(this::runOutputHandler);
 
-	private final ServerSocket serverSocket;
+	private final ServerSocketChannel serverSocketChannel;
 	{
 		acceptThread.setDaemon(true);
 		outputThread.setDaemon(true);
 		try {
-			serverSocket = new ServerSocket();
+			serverSocketChannel = ServerSocketChannel.open();
 		} catch (IOException e) {
-			// The default constructor should never throw an exception because it doesn't really do anything
-			throw new RuntimeException(e);
+			throw new RuntimeException("Could not open server socket channel", e);
 		}
 	}
 
 	private volatile boolean stopping = false;
 
-	protected SocketServerAppender(String name, Layout<? extends Serializable> layout, Filter filter, boolean ignoreExceptions, boolean immediateFlush, Property[] properties, ServerSocketManager manager, Queue<Byte> outputQueue, String bindAddress, int port) {
+	protected SocketServerAppender(String name, Layout<? extends Serializable> layout, Filter filter, boolean ignoreExceptions, boolean immediateFlush, Property[] properties, ServerSocketManager manager, ByteRingBuffer outputBuffer, String bindAddress, int port) {
 		super(name, layout, filter, ignoreExceptions, immediateFlush, properties, manager);
-		requireNonNull(this.outputQueue = outputQueue);
+		requireNonNull(this.outputBuffer = outputBuffer);
 		this.bindAddress = bindAddress;
 		this.port = port;
 	}
@@ -66,7 +77,8 @@ public class SocketServerAppender extends AbstractOutputStreamAppender<SocketSer
 			@PluginAttribute("ignoreExceptions") boolean ignoreExceptions,
 			@PluginAttribute(value = "immediateFlush", defaultBoolean = true) boolean immediateFlush,
 			@PluginAttribute("address") String bindAddress,
-			@PluginAttribute("port") String port
+			@PluginAttribute("port") String port,
+			@PluginAttribute(value = "bufferSize", defaultInt = DEFAULT_BUFFER_SIZE) int bufferSize
 	) {
 		if (layout == null) {
 			layout = PatternLayout.createDefaultLayout();
@@ -74,18 +86,21 @@ public class SocketServerAppender extends AbstractOutputStreamAppender<SocketSer
 		if (bindAddress == null) {
 			bindAddress = "localhost";
 		}
-		Queue<Byte> outputQueue = new ConcurrentLinkedDeque<>();
+		ByteRingBuffer outputBuffer = new ByteRingBuffer(bufferSize);
 		OutputStream outputStream = new OutputStream() {
 			@Override
 			public void write(int i) {
-				synchronized (outputQueue) {
-					outputQueue.add((byte) i);
-				}
+				write(new byte[] { (byte) i }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				outputBuffer.write(b, off, len);
 			}
 		};
 		ServerSocketManager manager = new ServerSocketManager(outputStream, layout);
 
-		return new SocketServerAppender(name, layout, filter, ignoreExceptions, immediateFlush, new Property[]{}, manager, outputQueue, bindAddress, Integer.parseInt(port));
+		return new SocketServerAppender(name, layout, filter, ignoreExceptions, immediateFlush, new Property[]{}, manager, outputBuffer, bindAddress, Integer.parseInt(port));
 	}
 
 	@Override
@@ -99,7 +114,7 @@ public class SocketServerAppender extends AbstractOutputStreamAppender<SocketSer
 	protected boolean stop(long timeout, TimeUnit timeUnit, boolean changeLifeCycleState) {
 		stopping = true;
 		try {
-			serverSocket.close();
+			serverSocketChannel.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -126,38 +141,114 @@ public class SocketServerAppender extends AbstractOutputStreamAppender<SocketSer
 	}
 
 	private void runManageServerSocketRaw() throws IOException {
-		serverSocket.bind(new InetSocketAddress(bindAddress, port));
+		serverSocketChannel.bind(new InetSocketAddress(bindAddress, port));
 		while (!Thread.currentThread().isInterrupted()) {
-			Socket socket = serverSocket.accept();
-			synchronized (activeSockets) {
-				activeSockets.add(socket);
+			SocketChannel channel = serverSocketChannel.accept();
+			channel.configureBlocking(false);
+			synchronized (clients) {
+				clients.add(new Client(channel));
 			}
 		}
 	}
 	private void runOutputHandler() {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		boolean hasPending = false;
 		while (!Thread.currentThread().isInterrupted()) {
-			final byte[] b;
-			synchronized (outputQueue) {
-				b = new byte[outputQueue.size()];
-			}
-			for (int i = 0; i < b.length; i++) {
-				b[i] = requireNonNull(outputQueue.poll(), "Got null! Size must not have been " + b.length + "!");
+			final int length;
+			try {
+				length = outputBuffer.read(chunk, hasPending ? PENDING_RETRY_MILLIS : 1000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
 			}
-			synchronized (activeSockets) {
-				for (Iterator<Socket> iterator = activeSockets.iterator(); iterator.hasNext(); ) {
-					Socket socket = iterator.next();
+			long droppedBytes = outputBuffer.takeDroppedBytes();
+			hasPending = false;
+			synchronized (clients) {
+				for (Iterator<Client> iterator = clients.iterator(); iterator.hasNext(); ) {
+					Client client = iterator.next();
 					try {
-						OutputStream outputStream = socket.getOutputStream();
-						outputStream.write(b);
+						if (droppedBytes > 0) {
+							client.write(createDroppedMessage(droppedBytes));
+						}
+						client.write(chunk, 0, length);
+						hasPending |= !client.flush();
 					} catch (IOException e) {
+						client.close();
 						iterator.remove();
 					}
 				}
 			}
+		}
+		synchronized (clients) {
+			for (Client client : clients) {
+				client.close();
+			}
+			clients.clear();
+		}
+	}
+	private static byte[] createDroppedMessage(long droppedBytes) {
+		return ("\n[dropped " + droppedBytes + " bytes of log output]\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A connected client. Output that cannot be written right away is kept in {@link #pending}. If that fills up, output for this client is dropped.
+	 */
+	private static final class Client {
+		private final SocketChannel channel;
+		/** Bytes waiting to be written. Always in "write mode" */
+		private final ByteBuffer pending = ByteBuffer.allocate(CLIENT_BUFFER_SIZE);
+		private long droppedBytes = 0;
+
+		private Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void write(byte[] b) throws IOException {
+			write(b, 0, b.length);
+		}
+		void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			if (flush() && droppedBytes > 0) {
+				byte[] message = createDroppedMessage(droppedBytes);
+				droppedBytes = 0;
+				write(message);
+			}
+			if (pending.position() == 0) {
+				ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+				channel.write(buffer);
+				off = buffer.position();
+				len = buffer.remaining();
+				if (len == 0) {
+					return;
+				}
+			}
+			if (len > pending.remaining()) {
+				droppedBytes += len;
+				return;
+			}
+			pending.put(b, off, len);
+		}
+
+		/**
+		 * Writes as many pending bytes as possible without blocking
+		 * @return true if there are no more pending bytes
+		 */
+		boolean flush() throws IOException {
+			if (pending.position() == 0) {
+				return true;
+			}
+			pending.flip();
+			channel.write(pending);
+			pending.compact();
+			return pending.position() == 0;
+		}
+
+		void close() {
 			try {
-				Thread.sleep(5);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+				channel.close();
+			} catch (IOException ignored) {
 			}
 		}
 	}
@@ -11,9 +11,15 @@ import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandler;
 import me.retrodaredevil.solarthing.packets.identification.Identifiable;
 import me.retrodaredevil.solarthing.util.JacksonUtil;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.slf4j.Logger;
@@ -23,6 +29,15 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Publishes packets to an MQTT broker. A single client is kept connected and reconnects automatically.
+ * <p>
+ * Publishing never blocks: at most {@link MqttPublishSettings#getMaxInflight()} messages can be waiting for the broker, and at most
+ * {@link MqttPublishSettings#getBufferSize()} messages are buffered while connecting or reconnecting. Messages that do not fit are dropped so that a slow broker
+ * cannot stall other packet handlers.
+ */
 public class MqttPacketSaver implements PacketHandler {
 	private static final Logger LOGGER = LoggerFactory.getLogger(MqttPacketSaver.class);
 	private static final ObjectMapper OBJECT_MAPPER = JacksonUtil.defaultMapper();
@@ -31,20 +46,28 @@ public class MqttPacketSaver implements PacketHandler {
 	public static final String DEFAULT_TOPIC_FORMAT = "solarthing/%source/%fragment/%identifier";
 
 	private final MemoryPersistence persistence = new MemoryPersistence();
-	private final MqttClient client;
+	private final MqttAsyncClient client;
 	private final MqttConnectOptions options;
 	/** The topic format similar to "solarthing/%source/%fragment/%identifier" (NO slash at end) */
 	private final String topicFormat;
 	private final String statusTopic;
 	private final boolean retain;
+	private final MqttPublishSettings publishSettings;
+
+	/** true once the first connection has succeeded. After that, {@link #client} reconnects by itself. */
+	private volatile boolean hasConnected = false;
+	/** The token of the latest attempt at the first connection, which may still be in progress, or null. Only accessed while synchronized on this */
+	private IMqttToken connectToken = null;
+	private long droppedCount = 0;
 
-	public MqttPacketSaver(String broker, String clientId, String username, char[] password, String topicFormat, boolean retain, String sourceId, int fragmentId) {
+	public MqttPacketSaver(String broker, String clientId, String username, char[] password, String topicFormat, boolean retain, String sourceId, int fragmentId, MqttPublishSettings publishSettings) {
 		this.topicFormat = topicFormat;
 		this.retain = retain;
+		requireNonNull(this.publishSettings = publishSettings);
 
 //		org.eclipse.paho.client.mqttv3.logging.LoggerFactory.setLogger();
 		try {
-			client = new MqttClient(broker, clientId, persistence);
+			client = new MqttAsyncClient(broker, clientId, persistence);
 		} catch (MqttPersistenceException ex) {
 			throw new RuntimeException("This shouldn't happen when using MemoryPersistence", ex);
 		} catch (MqttException ex) {
@@ -53,6 +76,9 @@ public class MqttPacketSaver implements PacketHandler {
 		options = new MqttConnectOptions();
 		options.setUserName(username);
 		options.setPassword(password);
+		options.setAutomaticReconnect(true);
+		options.setCleanSession(false);
+		options.setMaxInflight(publishSettings.getMaxInflight());
 		statusTopic = topicFormat.replace("%source", sourceId)
 				.replace("%fragment", "" + fragmentId)
 				.replace("%identifier", "status");
@@ -62,71 +88,150 @@ public class MqttPacketSaver implements PacketHandler {
 				1,
 				retain
 		);
+		DisconnectedBufferOptions bufferOptions = new DisconnectedBufferOptions();
+		bufferOptions.setBufferEnabled(true);
+		bufferOptions.setBufferSize(publishSettings.getBufferSize());
+		bufferOptions.setDeleteOldestMessages(true);
+		bufferOptions.setPersistBuffer(false);
+		client.setBufferOpts(bufferOptions);
+		client.setCallback(new MqttCallbackExtended() {
+			@Override
+			public void connectComplete(boolean reconnect, String serverURI) {
+				LOGGER.debug("Connected to " + serverURI + " reconnect=" + reconnect);
+				try {
+					client.publish(statusTopic, "online".getBytes(CHARSET), 1, retain);
+				} catch (MqttException e) {
+					LOGGER.error("Could not publish online status", e);
+				}
+			}
+
+			@Override
+			public void connectionLost(Throwable cause) {
+				LOGGER.info("Lost connection to MQTT broker. Will reconnect automatically.", cause);
+			}
+
+			@Override
+			public void messageArrived(String topic, MqttMessage message) {
+			}
+
+			@Override
+			public void deliveryComplete(IMqttDeliveryToken token) {
+			}
+		});
+	}
+
+	/**
+	 * Publishes the offline status and disconnects. This should be called when the program shuts down, after the last packet collection was handled.
+	 */
+	public void close() {
+		if (!client.isConnected()) {
+			return;
+		}
+		try {
+			// The will message is not sent when we disconnect gracefully
+			client.publish(statusTopic, "offline".getBytes(CHARSET), 1, retain).waitForCompletion(1000);
+			client.disconnect(1000).waitForCompletion(2000);
+		} catch (MqttException e) {
+			LOGGER.error("Could not disconnect cleanly", e);
+		}
 	}
 
 	@Override
 	public void handle(PacketCollection packetCollection) throws PacketHandleException {
 		InstancePacketGroup instancePacketGroup = PacketGroups.parseToInstancePacketGroup(packetCollection, DefaultInstanceOptions.REQUIRE_NO_DEFAULTS);
+		if (!hasConnected) {
+			startConnect();
+		}
+		// While not connected, messages are kept in the disconnected buffer until the connection is up
+		handle(instancePacketGroup, packetCollection);
+	}
+
+	/**
+	 * Starts connecting without waiting for the connection, so that the packet handling loop is never stalled by a broker that is down.
+	 * Another attempt is only started once the last one has failed. Calling connect() while connecting fails with "connect already in progress".
+	 * After the first connection succeeds, {@link #client} reconnects by itself.
+	 */
+	private synchronized void startConnect() throws PacketHandleException {
+		IMqttToken connectToken = this.connectToken;
+		if (hasConnected || (connectToken != null && (!connectToken.isComplete() || connectToken.getException() == null))) {
+			return;
+		}
 		try {
-			handle(instancePacketGroup, packetCollection);
-		} catch (MqttException e) {
-			throw new PacketHandleException("MQTT Exception", e);
-		} finally {
-			if (client.isConnected()) {
-				try {
-					client.disconnect();
-				} catch (MqttException e) {
-					LOGGER.error("We shouldn't get an exception while disconnecting... (Can't throw in finally)", e);
+			this.connectToken = client.connect(options, null, new IMqttActionListener() {
+				@Override
+				public void onSuccess(IMqttToken asyncActionToken) {
+					hasConnected = true;
 				}
-			}
+
+				@Override
+				public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+					LOGGER.warn("Could not connect to MQTT broker. Will try again the next time packets are handled.", exception);
+				}
+			});
+		} catch (MqttException e) {
+			throw new PacketHandleException("Could not connect to MQTT broker", e);
 		}
 	}
-	private void handle(InstancePacketGroup instancePacketGroup, PacketCollection entirePacketCollection) throws MqttException {
+	private void handle(InstancePacketGroup instancePacketGroup, PacketCollection entirePacketCollection) {
 		DefaultInstanceOptions.requireNoDefaults(instancePacketGroup);
 		long dateMillis = instancePacketGroup.getDateMillis();
 		final String partiallyFormattedTopic = topicFormat
 				.replace("%source", instancePacketGroup.getSourceId())
 				.replace("%fragment", "" + instancePacketGroup.getFragmentId());
 
-		client.connect(options);
-		{ // block for entire packet collection
-			final String collectionJson;
-			try {
-				collectionJson = OBJECT_MAPPER.writeValueAsString(entirePacketCollection);
-			} catch (JsonProcessingException e) {
-				throw new RuntimeException("We should be able to serial this to JSON!", e);
-			}
-			client.publish(
-					partiallyFormattedTopic.replace("%identifier", "packetCollection"),
-					collectionJson.getBytes(CHARSET),
-					2,
-					retain
-			);
-		}
-		client.publish(statusTopic, "online".getBytes(CHARSET), 1, retain);
+		int dropped = 0;
+		// The packet collection is usually shared with other packet handlers, so its JSON may already be encoded
+		dropped += publish(partiallyFormattedTopic.replace("%identifier", "packetCollection"), EncodedPacketCollection.getJsonBytes(entirePacketCollection), publishSettings.getCollectionQos());
 
 		for (Packet packet : instancePacketGroup.getPackets()) {
 			if (packet instanceof Identifiable) {
 				Identifiable identifiable = (Identifiable) packet;
 				String topic = partiallyFormattedTopic.replace("%identifier", identifiable.getIdentifier().getRepresentation()) + "/";
 
-
-				final String rawJson;
-				try {
-					rawJson = OBJECT_MAPPER.writeValueAsString(packet);
-				} catch (JsonProcessingException e) {
-					throw new RuntimeException("We should be able to serialize this to JSON!", e);
+				if (publishSettings.isCompact()) {
+					// A single message per packet. The date can be found in the packet collection
+					dropped += publish(topic + "json", toJsonBytes(packet), publishSettings.getPacketQos());
+					continue;
 				}
-				client.publish(topic + "dateMillis", ("" + dateMillis).getBytes(CHARSET), 2, retain);
-				client.publish(topic + "json", rawJson.getBytes(CHARSET), 2, retain);
+				// Serialize the packet once and use the tree for both the raw JSON and the flattened fields
 				ObjectNode json = OBJECT_MAPPER.valueToTree(packet);
+				dropped += publish(topic + "dateMillis", ("" + dateMillis).getBytes(CHARSET), publishSettings.getPacketQos());
+				dropped += publish(topic + "json", toJsonBytes(json), publishSettings.getPacketQos());
 				for (Map.Entry<String, ValueNode> entry : PointUtil.flattenJsonObject(json, "/")) {
 					String key = entry.getKey();
 					ValueNode prim = entry.getValue();
-					// Make individual fields use QoS of 1 because we want them all to go through, but no one should be using them as "event"-like packets
-					client.publish(topic + "packet/" + key, prim.asText().getBytes(CHARSET), 1, retain);
+					dropped += publish(topic + "packet/" + key, prim.asText().getBytes(CHARSET), publishSettings.getFieldQos());
 				}
 			}
 		}
+		if (dropped > 0) {
+			droppedCount += dropped;
+			LOGGER.warn("Dropped " + dropped + " MQTT message(s) because the broker is not keeping up. Total dropped: " + droppedCount);
+		}
+	}
+
+	private static byte[] toJsonBytes(Object value) {
+		try {
+			return OBJECT_MAPPER.writeValueAsBytes(value);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException("We should be able to serialize this to JSON!", e);
+		}
+	}
+
+	/**
+	 * @param payload The payload. This is not modified, so it may be shared
+	 * @return 1 if the message was dropped, 0 otherwise
+	 */
+	private int publish(String topic, byte[] payload, int qos) {
+		try {
+			client.publish(topic, payload, qos, retain);
+			return 0;
+		} catch (MqttException e) {
+			int reasonCode = e.getReasonCode();
+			if (reasonCode != MqttException.REASON_CODE_MAX_INFLIGHT && reasonCode != MqttException.REASON_CODE_DISCONNECTED_BUFFER_FULL && reasonCode != MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
+				LOGGER.error("Could not publish to topic: " + topic, e);
+			}
+			return 1;
+		}
 	}
 }
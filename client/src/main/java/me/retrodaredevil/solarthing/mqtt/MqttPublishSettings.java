@@ -0,0 +1,72 @@
+package me.retrodaredevil.solarthing.mqtt;
+
+/**
+ * Settings for how {@link MqttPacketSaver} publishes messages
+ */
+public final class MqttPublishSettings {
+	public static final int DEFAULT_COLLECTION_QOS = 2;
+	public static final int DEFAULT_PACKET_QOS = 2;
+	/** Individual fields use QoS of 1 because we want them all to go through, but no one should be using them as "event"-like packets */
+	public static final int DEFAULT_FIELD_QOS = 1;
+	public static final int DEFAULT_MAX_INFLIGHT = 100;
+	public static final int DEFAULT_BUFFER_SIZE = 5000;
+	public static final MqttPublishSettings DEFAULT = new MqttPublishSettings(false, DEFAULT_COLLECTION_QOS, DEFAULT_PACKET_QOS, DEFAULT_FIELD_QOS, DEFAULT_MAX_INFLIGHT, DEFAULT_BUFFER_SIZE);
+
+	private final boolean compact;
+	private final int collectionQos;
+	private final int packetQos;
+	private final int fieldQos;
+	private final int maxInflight;
+	private final int bufferSize;
+
+	public MqttPublishSettings(boolean compact, int collectionQos, int packetQos, int fieldQos, int maxInflight, int bufferSize) {
+		this.compact = compact;
+		this.collectionQos = checkQos(collectionQos);
+		this.packetQos = checkQos(packetQos);
+		this.fieldQos = checkQos(fieldQos);
+		this.maxInflight = maxInflight;
+		this.bufferSize = bufferSize;
+		if (maxInflight <= 0) {
+			throw new IllegalArgumentException("maxInflight must be greater than 0! maxInflight=" + maxInflight);
+		}
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be greater than 0! bufferSize=" + bufferSize);
+		}
+	}
+	private static int checkQos(int qos) {
+		if (qos < 0 || qos > 2) {
+			throw new IllegalArgumentException("QoS must be 0, 1, or 2! qos=" + qos);
+		}
+		return qos;
+	}
+
+	/** @return true if a single message should be published for each packet instead of a message for each field */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/** @return The QoS of the message containing the entire packet collection */
+	public int getCollectionQos() {
+		return collectionQos;
+	}
+
+	/** @return The QoS of the "json" and "dateMillis" messages of each packet */
+	public int getPacketQos() {
+		return packetQos;
+	}
+
+	/** @return The QoS of the message for each individual field of each packet */
+	public int getFieldQos() {
+		return fieldQos;
+	}
+
+	/** @return The maximum number of messages that can be waiting for the broker to acknowledge them */
+	public int getMaxInflight() {
+		return maxInflight;
+	}
+
+	/** @return The maximum number of messages to buffer while reconnecting */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+}
@@ -0,0 +1,27 @@
+package me.retrodaredevil.solarthing.packets.handling.implementations;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import okhttp3.MediaType;
+
+/**
+ * Determines how {@link PostPacketHandler} puts many packet collections in a single request body
+ */
+public enum PostBatchFormat {
+	/** A JSON array where each element is a packet collection */
+	@JsonProperty("json_array")
+	JSON_ARRAY(MediaType.get("application/json")),
+	/** Newline delimited JSON where each line is a packet collection */
+	@JsonProperty("ndjson")
+	NDJSON(MediaType.get("application/x-ndjson")),
+	;
+
+	private final MediaType mediaType;
+
+	PostBatchFormat(MediaType mediaType) {
+		this.mediaType = mediaType;
+	}
+
+	public MediaType getMediaType() {
+		return mediaType;
+	}
+}
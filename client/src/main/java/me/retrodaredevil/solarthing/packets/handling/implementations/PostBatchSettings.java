@@ -0,0 +1,60 @@
+package me.retrodaredevil.solarthing.packets.handling.implementations;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Settings for posting many packet collections in a single request. When present, packet collections are held until there are enough of them
+ * or until the oldest one has waited for the flush interval. Held packet collections are posted when the program shuts down,
+ * but are lost if the program is killed. See {@link PostPacketHandler} for what happens when a batch cannot be posted.
+ */
+public final class PostBatchSettings {
+	private static final int DEFAULT_SIZE = 10;
+	private static final float DEFAULT_FLUSH_INTERVAL_SECONDS = 60.0f;
+	private static final PostBatchFormat DEFAULT_FORMAT = PostBatchFormat.JSON_ARRAY;
+
+	private final int size;
+	private final int flushIntervalMillis;
+	private final PostBatchFormat format;
+
+	public PostBatchSettings(int size, int flushIntervalMillis, PostBatchFormat format) {
+		this.size = size;
+		this.flushIntervalMillis = flushIntervalMillis;
+		requireNonNull(this.format = format);
+		if (size <= 0) {
+			throw new IllegalArgumentException("size must be greater than 0! size=" + size);
+		}
+		if (flushIntervalMillis < 0) {
+			throw new IllegalArgumentException("flush_interval must not be negative! flushIntervalMillis=" + flushIntervalMillis);
+		}
+	}
+	@JsonCreator
+	private static PostBatchSettings create(
+			@JsonProperty("size") Integer size,
+			@JsonProperty("flush_interval") Float flushIntervalSeconds,
+			@JsonProperty("format") PostBatchFormat format) {
+		return new PostBatchSettings(
+				size == null ? DEFAULT_SIZE : size,
+				Math.round((flushIntervalSeconds == null ? DEFAULT_FLUSH_INTERVAL_SECONDS : flushIntervalSeconds) * 1000),
+				format == null ? DEFAULT_FORMAT : format
+		);
+	}
+
+	/** @return The maximum number of packet collections to put in a single request */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return The amount of time in milliseconds after the first packet collection of a batch was handled before the batch is posted, even if it is not full
+	 */
+	public int getFlushIntervalMillis() {
+		return flushIntervalMillis;
+	}
+
+	public PostBatchFormat getFormat() {
+		return format;
+	}
+}
@@ -1,38 +1,218 @@
 package me.retrodaredevil.solarthing.packets.handling.implementations;
 
+import me.retrodaredevil.okhttp3.OkHttpProperties;
+import me.retrodaredevil.okhttp3.OkHttpUtil;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.packets.collection.EncodedPacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandler;
+import me.retrodaredevil.solarthing.util.DaemonThreadFactory;
 import okhttp3.*;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Posts packet collections to a URL. One {@link OkHttpClient} is used for every request so that connections are reused.
+ * <p>
+ * When batch settings are given, packet collections are held until a batch is ready, then the whole batch is posted in a single request.
+ * A batch is posted once it is full, once the flush interval has passed (even if nothing else is handled), and when {@link #flush()} is called.
+ * If that request fails, the packet collections are kept and posted with the next batch. At most {@link #MAX_RETAINED_BATCHES} batches
+ * worth of packet collections are kept, so the oldest packet collections are dropped if the server is down for a long time.
+ */
 public class PostPacketHandler implements PacketHandler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PostPacketHandler.class);
+	private static final int MAX_RETAINED_BATCHES = 10;
+
+	private final OkHttpClient client;
 	private final String url;
-	private final StringPacketHandler stringPacketHandler;
+	private final @Nullable StringPacketHandler stringPacketHandler;
 	private final MediaType mediaType;
-	private final OkHttpClient client;
+	private final boolean gzip;
+	private final @Nullable PostBatchSettings batchSettings;
+
+	/** The bodies of packet collections that have not been posted yet. Only accessed while synchronized on itself */
+	private final List<byte[]> batch = new ArrayList<>();
+	/** Identifies the current batch, so that a scheduled flush does not post a batch it was not scheduled for */
+	private long batchNumber = 0;
+	private long batchStartNanos;
 
-	public PostPacketHandler(String url, StringPacketHandler stringPacketHandler, MediaType mediaType) {
-		this.url = url;
+	/**
+	 * @param client The client to use. See {@link #createClient(OkHttpProperties, ConnectionPool)}
+	 * @param stringPacketHandler The {@link StringPacketHandler} to get the body of a packet collection, or null to use the compact JSON from {@link EncodedPacketCollection}.
+	 *                            When batching with {@link PostBatchFormat#NDJSON}, this must not create strings that contain new lines.
+	 * @param mediaType The media type of requests that contain a single packet collection
+	 * @param gzip true to compress request bodies with gzip, false otherwise. The server must support {@code Content-Encoding: gzip}
+	 * @param batchSettings The batch settings, or null to post each packet collection right away
+	 */
+	public PostPacketHandler(@NotNull OkHttpClient client, @NotNull String url, @Nullable StringPacketHandler stringPacketHandler, @NotNull MediaType mediaType, boolean gzip, @Nullable PostBatchSettings batchSettings) {
+		requireNonNull(this.client = client);
+		requireNonNull(this.url = url);
 		this.stringPacketHandler = stringPacketHandler;
-		this.mediaType = mediaType;
+		requireNonNull(this.mediaType = mediaType);
+		this.gzip = gzip;
+		this.batchSettings = batchSettings;
+	}
 
-		client = new OkHttpClient.Builder()
-				.build();
+	/**
+	 * @param stringPacketHandler The {@link StringPacketHandler} to get the body of the request, or null to post the compact JSON from {@link EncodedPacketCollection}
+	 */
+	public PostPacketHandler(String url, @Nullable StringPacketHandler stringPacketHandler, MediaType mediaType) {
+		this(SharedClientHolder.CLIENT, url, stringPacketHandler, mediaType, false, null);
+	}
+
+	/**
+	 * @param connectionPool The connection pool to use, or null to use a connection pool shared with other clients created by this method
+	 * @return A client configured with {@code okHttpProperties} that shares its dispatcher with other clients created by this method
+	 */
+	public static OkHttpClient createClient(OkHttpProperties okHttpProperties, @Nullable ConnectionPool connectionPool) {
+		OkHttpClient.Builder builder = OkHttpUtil.configure(SharedClientHolder.CLIENT.newBuilder(), okHttpProperties);
+		if (connectionPool != null) {
+			builder.connectionPool(connectionPool);
+		}
+		return builder.build();
 	}
 
 	@Override
 	public void handle(PacketCollection packetCollection) throws PacketHandleException {
-		String string = stringPacketHandler.getString(packetCollection);
-		Call call = client.newCall(
-				new Request.Builder()
-						.url(url)
-						.post(RequestBody.create(string, mediaType))
-						.build()
-		);
+		byte[] body = stringPacketHandler == null
+				? EncodedPacketCollection.getJsonBytes(packetCollection)
+				: stringPacketHandler.getString(packetCollection).getBytes(StandardCharsets.UTF_8);
+		PostBatchSettings batchSettings = this.batchSettings;
+		if (batchSettings == null) {
+			Buffer buffer = new Buffer();
+			buffer.write(body);
+			post(buffer, mediaType);
+			return;
+		}
+		final List<byte[]> bodies;
+		synchronized (batch) {
+			if (batch.isEmpty()) {
+				startBatch(batchSettings);
+			}
+			batch.add(body);
+			if (batch.size() < batchSettings.getSize() && System.nanoTime() - batchStartNanos < TimeUnit.MILLISECONDS.toNanos(batchSettings.getFlushIntervalMillis())) {
+				return;
+			}
+			bodies = takeBatch();
+		}
+		postBatch(bodies, batchSettings);
+	}
+
+	/** Must be called while synchronized on {@link #batch} */
+	private void startBatch(PostBatchSettings batchSettings) {
+		long batchNumber = ++this.batchNumber;
+		batchStartNanos = System.nanoTime();
+		if (batchSettings.getFlushIntervalMillis() > 0) { // otherwise handle() posts right away
+			FlushExecutorHolder.EXECUTOR.schedule(() -> flush(batchNumber), batchSettings.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** Must be called while synchronized on {@link #batch} */
+	private List<byte[]> takeBatch() {
+		List<byte[]> bodies = new ArrayList<>(batch);
+		batch.clear();
+		return bodies;
+	}
+
+	private void flush(long batchNumber) {
+		final List<byte[]> bodies;
+		synchronized (batch) {
+			if (batch.isEmpty() || this.batchNumber != batchNumber) {
+				return; // this batch has already been posted
+			}
+			bodies = takeBatch();
+		}
 		try {
-			Response response = call.execute();
+			postBatch(bodies, requireNonNull(batchSettings));
+		} catch (PacketHandleException | RuntimeException e) {
+			LOGGER.error("Could not post batch of " + bodies.size() + " packet collections to " + url + ". Will try again with the next batch.", e);
+		}
+	}
+
+	/** Posts any packet collections that have not been posted yet. This should be called when the program shuts down, after the last packet collection was handled. */
+	public void flush() {
+		final long batchNumber;
+		synchronized (batch) {
+			batchNumber = this.batchNumber;
+		}
+		flush(batchNumber);
+	}
+
+	private void postBatch(List<byte[]> bodies, PostBatchSettings batchSettings) throws PacketHandleException {
+		try {
+			post(createBatchBody(bodies, batchSettings.getFormat()), batchSettings.getFormat().getMediaType());
+		} catch (PacketHandleException | RuntimeException e) {
+			synchronized (batch) {
+				// Put them back in front of anything newer, so they are posted with the next batch in order
+				boolean wasEmpty = batch.isEmpty();
+				batch.addAll(0, bodies);
+				int maxRetained = batchSettings.getSize() * MAX_RETAINED_BATCHES;
+				if (batch.size() > maxRetained) {
+					int dropCount = batch.size() - maxRetained;
+					batch.subList(0, dropCount).clear();
+					LOGGER.warn("Dropped " + dropCount + " packet collections that could not be posted to " + url);
+				}
+				if (wasEmpty) {
+					startBatch(batchSettings);
+				}
+			}
+			throw e;
+		}
+	}
+
+	private static Buffer createBatchBody(List<byte[]> bodies, PostBatchFormat format) {
+		Buffer buffer = new Buffer();
+		if (format == PostBatchFormat.NDJSON) {
+			for (byte[] body : bodies) {
+				buffer.write(body).writeByte('\n');
+			}
+		} else {
+			buffer.writeByte('[');
+			for (int i = 0; i < bodies.size(); i++) {
+				if (i != 0) {
+					buffer.writeByte(',');
+				}
+				buffer.write(bodies.get(i));
+			}
+			buffer.writeByte(']');
+		}
+		return buffer;
+	}
+
+	private void post(Buffer content, MediaType contentType) throws PacketHandleException {
+		Request.Builder request = new Request.Builder().url(url);
+		if (gzip) {
+			Buffer compressed = new Buffer();
+			try (GzipSink gzipSink = new GzipSink(compressed)) {
+				gzipSink.write(content, content.size());
+			} catch (IOException e) {
+				throw new AssertionError("Compressing into a Buffer should not throw an IOException", e);
+			}
+			content = compressed;
+			request.header("Content-Encoding", "gzip");
+		}
+		request.post(RequestBody.create(content.readByteString(), contentType));
+		try (Response response = client.newCall(request.build()).execute()) {
+			ResponseBody body = response.body();
+			if (body != null) {
+				// Reading the whole body lets the connection go back to the pool
+				body.source().readAll(Okio.blackhole());
+			}
 			if (!response.isSuccessful()) {
 				throw new PacketHandleException("Connected with unsuccessful response! code: " + response.code() + " message: " + response.message());
 			}
@@ -40,4 +220,14 @@ public class PostPacketHandler implements PacketHandler {
 			throw new PacketHandleException("Exception while posting!", e);
 		}
 	}
+
+	/** Every client created by this class shares this client's dispatcher, and by default its connection pool. Only created if it is used */
+	private static final class SharedClientHolder {
+		private static final OkHttpClient CLIENT = new OkHttpClient();
+	}
+
+	/** Posts batches once their flush interval has passed. Only created if batching is used */
+	private static final class FlushExecutorHolder {
+		private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("post-packet-handler-flush"));
+	}
 }
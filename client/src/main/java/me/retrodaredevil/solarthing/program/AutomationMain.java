@@ -13,6 +13,7 @@ import me.retrodaredevil.solarthing.FragmentedPacketGroupProvider;
 import me.retrodaredevil.solarthing.SolarThingConstants;
 import me.retrodaredevil.action.node.ActionNode;
 import me.retrodaredevil.solarthing.actions.environment.*;
+import me.retrodaredevil.solarthing.annotations.Nullable;
 import me.retrodaredevil.solarthing.annotations.UtilityClass;
 import me.retrodaredevil.solarthing.config.databases.implementations.CouchDbDatabaseSettings;
 import me.retrodaredevil.solarthing.config.options.AutomationProgramOptions;
@@ -20,9 +21,11 @@ import me.retrodaredevil.solarthing.config.options.DatabaseTimeZoneOptionBase;
 import me.retrodaredevil.solarthing.database.*;
 import me.retrodaredevil.solarthing.database.cache.SimpleDatabaseCache;
 import me.retrodaredevil.solarthing.database.cache.SimplePacketCache;
+import me.retrodaredevil.solarthing.database.couchdb.CouchDbHttpConnection;
 import me.retrodaredevil.solarthing.database.couchdb.CouchDbSolarThingDatabase;
 import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
 import me.retrodaredevil.solarthing.packets.collection.FragmentedPacketGroup;
+import me.retrodaredevil.solarthing.packets.collection.IncrementalPacketGroupMerger;
 import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
 import me.retrodaredevil.solarthing.type.alter.StoredAlterPacket;
 import me.retrodaredevil.solarthing.type.closed.authorization.AuthorizationPacket;
@@ -38,7 +41,10 @@ import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicReference;
 
 
@@ -84,6 +90,38 @@ public final class AutomationMain {
 		}
 	}
 
+	/**
+	 * Keeps a {@link SimpleDatabaseCache} up to date. If the database has a changes feed, changes are fed into the cache and the database is only queried when the feed is not working.
+	 */
+	private static final class DatabaseCacheUpdater {
+		private final MillisDatabase millisDatabase;
+		private final ResourceManager<SimpleDatabaseCache> databaseCacheManager;
+		private final boolean useEndDate;
+		/** Changes are received on a separate thread, and the caches are not thread safe, so changes are queued until {@link #update()} is called */
+		private final Queue<List<StoredPacketGroup>> changesQueue = new ConcurrentLinkedQueue<>();
+		private final @Nullable PacketGroupChangesListener changesListener;
+
+		private DatabaseCacheUpdater(MillisDatabase millisDatabase, ResourceManager<SimpleDatabaseCache> databaseCacheManager, boolean useEndDate, String name) {
+			this.millisDatabase = millisDatabase;
+			this.databaseCacheManager = databaseCacheManager;
+			this.useEndDate = useEndDate;
+			changesListener = PacketGroupChangesListener.startIfSupported(millisDatabase.getChangesFeed(), name, changesQueue::add);
+		}
+
+		public void update() {
+			List<StoredPacketGroup> changedPacketGroups;
+			while ((changedPacketGroups = changesQueue.poll()) != null) {
+				List<StoredPacketGroup> packetGroups = changedPacketGroups;
+				databaseCacheManager.update(databaseCache -> {
+					databaseCache.feedChanges(packetGroups);
+				});
+			}
+			if (changesListener == null || changesListener.shouldQuery()) {
+				queryAndFeed(millisDatabase, databaseCacheManager, useEndDate);
+			}
+		}
+	}
+
 	public static int startAutomation(List<ActionNode> actionNodes, DatabaseTimeZoneOptionBase options, long periodMillis) {
 		LOGGER.info(SolarThingConstants.SUMMARY_MARKER, "Starting automation program.");
 		final CouchDbDatabaseSettings couchSettings;
@@ -93,7 +131,10 @@ public final class AutomationMain {
 			LOGGER.error("(Fatal)", ex);
 			return SolarThingConstants.EXIT_CODE_INVALID_CONFIG;
 		}
-		SolarThingDatabase database = CouchDbSolarThingDatabase.create(CouchDbUtil.createInstance(couchSettings.getCouchProperties(), couchSettings.getOkHttpProperties()));
+		SolarThingDatabase database = CouchDbSolarThingDatabase.create(
+				CouchDbUtil.createInstance(couchSettings.getCouchProperties(), couchSettings.getOkHttpProperties()),
+				CouchDbHttpConnection.create(couchSettings.getCouchProperties(), couchSettings.getOkHttpProperties())
+		);
 
 		VariableEnvironment variableEnvironment = new VariableEnvironment();
 
@@ -102,12 +143,18 @@ public final class AutomationMain {
 		FragmentedPacketGroupProvider fragmentedPacketGroupProvider = latestPacketGroupReference::get; // note this may return null, and that's OK // This is thread safe if needed
 		Clock clock = Clock.systemUTC();
 
-		SimpleDatabaseCache statusDatabaseCache = SimpleDatabaseCache.createDefault(clock);
+		IncrementalPacketGroupMerger statusPacketGroupMerger = PacketUtil.createPacketGroupMerger(options.getDefaultInstanceOptions()); // kept up to date by statusDatabaseCache
+		SimpleDatabaseCache statusDatabaseCache = SimpleDatabaseCache.createDefault(clock, statusPacketGroupMerger);
 		ResourceManager<SimpleDatabaseCache> statusDatabaseCacheManager = new BasicResourceManager<>(statusDatabaseCache); // not thread safe
 		SimpleDatabaseCache eventDatabaseCache = SimpleDatabaseCache.createDefault(clock);
 		ResourceManager<SimpleDatabaseCache> eventDatabaseCacheManager = new ReadWriteResourceManager<>(eventDatabaseCache);
 		SimpleDatabaseCache openDatabaseCache = new SimpleDatabaseCache(Duration.ofMinutes(60), Duration.ofMinutes(40), Duration.ofMinutes(20), Duration.ofMinutes(15), clock);
 		ResourceManager<SimpleDatabaseCache> openDatabaseCacheManager = new BasicResourceManager<>(openDatabaseCache); // not thread safe
+		List<DatabaseCacheUpdater> databaseCacheUpdaters = Arrays.asList(
+				new DatabaseCacheUpdater(database.getStatusDatabase(), statusDatabaseCacheManager, true, "automation-status"),
+				new DatabaseCacheUpdater(database.getEventDatabase(), eventDatabaseCacheManager, true, "automation-event"),
+				new DatabaseCacheUpdater(database.getOpenDatabase(), openDatabaseCacheManager, false, "automation-open")
+		);
 
 		SimplePacketCache<AuthorizationPacket> authorizationPacketCache = new SimplePacketCache<>(Duration.ofSeconds(20), DatabaseDocumentKeyMap.createPacketSourceFromDatabase(database), false);
 		String sourceId = options.getSourceId();
@@ -127,9 +174,9 @@ public final class AutomationMain {
 
 		ActionMultiplexer multiplexer = new Actions.ActionMultiplexerBuilder().build();
 		while (!Thread.currentThread().isInterrupted()) {
-			queryAndFeed(database.getStatusDatabase(), statusDatabaseCacheManager, true);
-			queryAndFeed(database.getEventDatabase(), eventDatabaseCacheManager, true);
-			queryAndFeed(database.getOpenDatabase(), openDatabaseCacheManager, false);
+			for (DatabaseCacheUpdater databaseCacheUpdater : databaseCacheUpdaters) {
+				databaseCacheUpdater.update();
+			}
 			{
 				// Never cache alter packets, because it's always important that we have up-to-date data, or no data at all.
 				List<VersionedPacket<StoredAlterPacket>> alterPackets = null;
@@ -143,9 +190,8 @@ public final class AutomationMain {
 			}
 			authorizationPacketCache.updateIfNeeded(); // we have auto update turned off, so we have to call this
 
-			List<FragmentedPacketGroup> statusPacketGroups = PacketUtil.getPacketGroups(options.getSourceId(), options.getDefaultInstanceOptions(), statusDatabaseCache.getAllCachedPackets());
-			if (statusPacketGroups != null) {
-				FragmentedPacketGroup statusPacketGroup = statusPacketGroups.get(statusPacketGroups.size() - 1);
+			FragmentedPacketGroup statusPacketGroup = PacketUtil.getLatestPacketGroup(options.getSourceId(), options.getDefaultInstanceOptions(), statusPacketGroupMerger);
+			if (statusPacketGroup != null) {
 				latestPacketGroupReference.set(statusPacketGroup);
 			}
 			for (ActionNode actionNode : actionNodes) {
@@ -10,6 +10,7 @@ import me.retrodaredevil.solarthing.config.options.PacketHandlingOption;
 import me.retrodaredevil.solarthing.database.DatabaseDocumentKeyMap;
 import me.retrodaredevil.solarthing.database.MillisQueryBuilder;
 import me.retrodaredevil.solarthing.database.SolarThingDatabase;
+import me.retrodaredevil.solarthing.database.couchdb.CouchDbHttpConnection;
 import me.retrodaredevil.solarthing.database.couchdb.CouchDbSolarThingDatabase;
 import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
@@ -35,7 +36,7 @@ public class CommandUtil {
 			if(CouchDbDatabaseSettings.TYPE.equals(config.getType())){
 				CouchDbDatabaseSettings settings = (CouchDbDatabaseSettings) config.getSettings();
 				CouchDbInstance instance = CouchDbUtil.createInstance(settings.getCouchProperties(), settings.getOkHttpProperties());
-				SolarThingDatabase database = CouchDbSolarThingDatabase.create(instance);
+				SolarThingDatabase database = CouchDbSolarThingDatabase.create(instance, CouchDbHttpConnection.create(settings.getCouchProperties(), settings.getOkHttpProperties()));
 
 				IndividualSettings individualSettings = config.getIndividualSettingsOrDefault(Constants.DATABASE_COMMAND_DOWNLOAD_ID, null);
 				FrequencySettings frequencySettings = individualSettings != null ? individualSettings.getFrequencySettings() : FrequencySettings.NORMAL_SETTINGS;
@@ -50,15 +51,31 @@ public class CommandUtil {
 							options.getSourceId(),
 							database.getEventDatabase()
 					);
+					/** Gives commands to {@link #securityPacketReceiver} as soon as they are uploaded. When null or not working, we fall back to polling. */
+					private final PacketGroupChangesListener changesListener = PacketGroupChangesListener.startIfSupported(
+							database.getOpenDatabase().getChangesFeed(),
+							"command-" + settings.getCouchProperties().getHost(),
+							this::receivePacketGroups
+					);
+
+					private void receivePacketGroups(List<StoredPacketGroup> packetGroups) {
+						synchronized (securityPacketReceiver) { // called from both the changes listener's thread and the polling thread
+							securityPacketReceiver.receivePacketGroups(packetGroups);
+						}
+					}
+
 					@Override
 					public void handle(PacketCollection packetCollection) throws PacketHandleException {
+						if (changesListener != null && !changesListener.shouldQuery()) {
+							return;
+						}
 						final List<StoredPacketGroup> packetGroups;
 						try {
 							packetGroups = database.getOpenDatabase().query(new MillisQueryBuilder().startKey(System.currentTimeMillis() - 5 * 60 * 1000).build());
 						} catch (SolarThingDatabaseException e) {
 							throw new PacketHandleException(e);
 						}
-						securityPacketReceiver.receivePacketGroups(packetGroups);
+						receivePacketGroups(packetGroups);
 					}
 				};
 				commandRequesterHandlerList.add(new ThrottleFactorPacketHandler(new AsyncPacketHandlerWrapper(new PrintPacketHandleExceptionWrapper(
@@ -77,6 +77,18 @@ public final class ConfigUtil {
 		}
 		return config;
 	}
+	/**
+	 * @param ioBundleFile The file that configures an {@link IOBundle}
+	 * @return A key that is the same for every data requester that uses {@code ioBundleFile}
+	 * @see me.retrodaredevil.solarthing.config.request.DataRequester#getResourceKey()
+	 */
+	public static String getResourceKey(File ioBundleFile) {
+		try {
+			return "io:" + ioBundleFile.getCanonicalPath();
+		} catch (IOException e) {
+			return "io:" + ioBundleFile.getAbsolutePath();
+		}
+	}
 	public static IOBundle createIOBundle(File configFile, SerialConfig defaultSerialConfig) {
 		IOConfig config = parseIOConfig(configFile, defaultSerialConfig);
 		try {
@@ -0,0 +1,203 @@
+package me.retrodaredevil.solarthing.program;
+
+import me.retrodaredevil.solarthing.actions.command.EnvironmentUpdater;
+import me.retrodaredevil.solarthing.config.request.DataRequester;
+import me.retrodaredevil.solarthing.config.request.DataRequesterResult;
+import me.retrodaredevil.solarthing.config.request.RequestObject;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.handling.PacketListReceiver;
+import me.retrodaredevil.solarthing.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs the status {@link PacketListReceiver}s of many {@link DataRequester}s.
+ * <p>
+ * Data requesters that share an I/O resource (see {@link DataRequester#getResourceKey()}) are put in the same group and run one after another.
+ * When there is more than one group, each group runs on its own thread and all groups are joined before a deadline. A group that misses the deadline
+ * is reported as timed out and its status packets are not used. That group is not started again until it has finished.
+ * <p>
+ * Commands may use the I/O resource of a group while that group is running, so each group has a lock that is given to its data requesters
+ * through {@link RequestObject#getResourceLock()}.
+ * <p>
+ * Event packets from data requesters are buffered and given to the event receiver on the thread that calls {@link #receive(List)}, so they are never lost
+ * even if they come from a group that timed out.
+ */
+public class DataRequesterRunner implements PacketListReceiver {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DataRequesterRunner.class);
+
+	private final PacketListReceiver eventPacketReceiver;
+	private final Duration timeout;
+
+	private final List<Group> groups = new ArrayList<>();
+	private final Map<String, Group> resourceKeyGroupMap = new HashMap<>();
+	/** Each requester's status receiver in the order they were added */
+	private final List<Requester> requesters = new ArrayList<>();
+	private ExecutorService executorService = null;
+	/** Incremented each time {@link #receive(List)} is called. Used to know which status packets are up to date */
+	private long requestNumber = 0;
+
+	/**
+	 * @param eventPacketReceiver The receiver for event packets. This is only called on the thread that calls {@link #receive(List)}
+	 * @param timeout The maximum amount of time to wait for every group to finish
+	 */
+	public DataRequesterRunner(PacketListReceiver eventPacketReceiver, Duration timeout) {
+		requireNonNull(this.eventPacketReceiver = eventPacketReceiver);
+		requireNonNull(this.timeout = timeout);
+	}
+
+	/**
+	 * Creates the {@link DataRequesterResult} of {@code dataRequester} and adds it to this. This must not be called after {@link #receive(List)} has been called.
+	 * @return The {@link EnvironmentUpdater} of the created {@link DataRequesterResult}
+	 */
+	public EnvironmentUpdater add(DataRequester dataRequester) {
+		if (requestNumber != 0) {
+			throw new IllegalStateException("Cannot add data requesters after receive() has been called!");
+		}
+		String resourceKey = dataRequester.getResourceKey();
+		Group group = resourceKey == null ? null : resourceKeyGroupMap.get(resourceKey);
+		if (group == null) {
+			// requesters that do not share a resource are in their own group
+			group = new Group(resourceKey == null ? dataRequester.getClass().getSimpleName() + "-" + (requesters.size() + 1) : resourceKey);
+			groups.add(group);
+			if (resourceKey != null) {
+				resourceKeyGroupMap.put(resourceKey, group);
+			}
+		}
+		EventBuffer eventBuffer = new EventBuffer();
+		DataRequesterResult result = dataRequester.create(new RequestObject(eventBuffer, group.resourceLock));
+		Requester requester = new Requester(result.getStatusPacketListReceiver(), eventBuffer);
+		requesters.add(requester);
+		group.requesters.add(requester);
+		return result.getEnvironmentUpdater();
+	}
+
+	@Override
+	public void receive(List<Packet> packets) {
+		long requestNumber = ++this.requestNumber;
+		if (groups.size() <= 1) {
+			for (Requester requester : requesters) {
+				requester.receive(requestNumber);
+			}
+		} else {
+			receiveConcurrently(requestNumber);
+		}
+		for (Requester requester : requesters) {
+			List<Packet> statusPackets = requester.takeStatusPackets(requestNumber);
+			if (statusPackets != null) {
+				packets.addAll(statusPackets);
+			}
+			requester.eventBuffer.flush();
+		}
+	}
+
+	private void receiveConcurrently(long requestNumber) {
+		if (executorService == null) {
+			executorService = Executors.newFixedThreadPool(groups.size(), new DaemonThreadFactory("data-requester"));
+		}
+		for (Group group : groups) {
+			if (group.future != null && !group.future.isDone()) {
+				LOGGER.warn("Group: " + group.name + " is still running from a previous request. Not starting it again.");
+				continue;
+			}
+			group.future = executorService.submit(() -> {
+				for (Requester requester : group.requesters) {
+					requester.receive(requestNumber);
+				}
+			});
+		}
+		long deadlineNanos = System.nanoTime() + timeout.toNanos();
+		for (Group group : groups) {
+			Future<?> future = group.future;
+			try {
+				future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+				group.future = null;
+			} catch (TimeoutException e) {
+				LOGGER.warn("Group: " + group.name + " timed out after " + timeout + ". Its packets will not be used.");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				group.future = null;
+				LOGGER.error("Group: " + group.name + " threw an exception", e.getCause());
+			}
+		}
+	}
+
+	private static final class Group {
+		private final String name;
+		private final List<Requester> requesters = new ArrayList<>();
+		private final Object resourceLock = new Object();
+		/** The future of the last time this group was started, or null if it has finished. Only accessed by the receiving thread */
+		private Future<?> future = null;
+
+		private Group(String name) {
+			this.name = name;
+		}
+	}
+
+	private static final class Requester {
+		private final PacketListReceiver statusPacketListReceiver;
+		private final EventBuffer eventBuffer;
+		private List<Packet> statusPackets = null;
+		private long statusPacketsRequestNumber = 0;
+
+		private Requester(PacketListReceiver statusPacketListReceiver, EventBuffer eventBuffer) {
+			this.statusPacketListReceiver = statusPacketListReceiver;
+			this.eventBuffer = eventBuffer;
+		}
+
+		private void receive(long requestNumber) {
+			List<Packet> packets = new ArrayList<>();
+			statusPacketListReceiver.receive(packets);
+			synchronized (this) {
+				statusPackets = packets;
+				statusPacketsRequestNumber = requestNumber;
+			}
+		}
+
+		/** @return The status packets received for {@code requestNumber}, or null. Packets from a request that timed out are out of date, so they are thrown away. */
+		private synchronized List<Packet> takeStatusPackets(long requestNumber) {
+			List<Packet> r = statusPacketsRequestNumber == requestNumber ? statusPackets : null;
+			statusPackets = null;
+			return r;
+		}
+	}
+
+	private final class EventBuffer implements PacketListReceiver {
+		private final List<Packet> packets = new ArrayList<>();
+
+		@Override
+		public void receive(List<Packet> packets) {
+			synchronized (this.packets) {
+				this.packets.addAll(packets);
+			}
+		}
+
+		private void flush() {
+			final List<Packet> eventPackets;
+			synchronized (packets) {
+				if (packets.isEmpty()) {
+					return;
+				}
+				eventPackets = new ArrayList<>(packets);
+				packets.clear();
+			}
+			eventPacketReceiver.receive(eventPackets);
+		}
+	}
+}
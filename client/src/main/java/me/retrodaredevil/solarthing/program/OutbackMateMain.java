@@ -56,6 +56,7 @@ public class OutbackMateMain {
 			EnvironmentUpdater[] environmentUpdaterReference = new EnvironmentUpdater[1];
 			PacketHandlerInit.Result handlersResult = PacketHandlerInit.initHandlers(
 					options,
+					dataDirectory,
 					() -> environmentUpdaterReference[0],
 					Collections.singleton(new MateAnalyticsHandler(analyticsManager))
 			);
@@ -0,0 +1,110 @@
+package me.retrodaredevil.solarthing.program;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.database.PacketGroupChanges;
+import me.retrodaredevil.solarthing.database.PacketGroupChangesFeed;
+import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
+import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Listens to a {@link PacketGroupChangesFeed} on a separate thread and gives changed packet groups to a receiver as soon as they are available.
+ * <p>
+ * The feed resumes from the last sequence it received, so no changes are missed after a connection error. Changes made before the listener starts listening
+ * are not received, so {@link #shouldQuery()} should be checked to know when the database should be queried like normal.
+ */
+public class PacketGroupChangesListener implements AutoCloseable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PacketGroupChangesListener.class);
+	private static final Duration LONGPOLL_TIMEOUT = Duration.ofSeconds(50);
+	private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+	private final PacketGroupChangesFeed feed;
+	private final Consumer<List<StoredPacketGroup>> receiver;
+	private final Thread thread;
+
+	private volatile boolean listening = false;
+	private final AtomicBoolean startedListening = new AtomicBoolean(false);
+
+	/**
+	 * @param receiver Receives changed packet groups. This is called on a separate thread
+	 */
+	public PacketGroupChangesListener(@NotNull PacketGroupChangesFeed feed, @NotNull String name, @NotNull Consumer<List<StoredPacketGroup>> receiver) {
+		requireNonNull(this.feed = feed);
+		requireNonNull(this.receiver = receiver);
+		thread = new Thread(this::run, "changes-" + name);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * @return A started listener for {@code feed}, or null if {@code feed} is null
+	 */
+	public static @Nullable PacketGroupChangesListener startIfSupported(@Nullable PacketGroupChangesFeed feed, @NotNull String name, @NotNull Consumer<List<StoredPacketGroup>> receiver) {
+		if (feed == null) {
+			return null;
+		}
+		PacketGroupChangesListener listener = new PacketGroupChangesListener(feed, name, receiver);
+		listener.start();
+		return listener;
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * If this returns true, the caller should query the database as it would without this listener.
+	 * @return true if the feed is not working, or if the feed started working since the last call to this method
+	 */
+	public boolean shouldQuery() {
+		return startedListening.getAndSet(false) || !listening;
+	}
+
+	private void run() {
+		String since = null;
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				PacketGroupChanges changes = feed.waitForChanges(since, LONGPOLL_TIMEOUT);
+				if (!listening) {
+					LOGGER.info("Listening to changes for " + thread.getName());
+					startedListening.set(true); // set before listening so that shouldQuery() never misses the query that catches up
+					listening = true;
+				}
+				since = changes.getLastSequence();
+				if (!changes.getPacketGroups().isEmpty()) {
+					receiver.accept(changes.getPacketGroups());
+				}
+			} catch (SolarThingDatabaseException e) {
+				if (listening) {
+					LOGGER.warn("Could not get changes for " + thread.getName() + ". Will fall back to polling.", e);
+				} else {
+					LOGGER.debug("Could not get changes for " + thread.getName(), e);
+				}
+				listening = false;
+				try {
+					Thread.sleep(RETRY_DELAY.toMillis());
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			} catch (RuntimeException e) {
+				LOGGER.error("Got unexpected exception while receiving changes for " + thread.getName(), e);
+				listening = false;
+				throw e;
+			}
+		}
+		listening = false;
+	}
+
+	@Override
+	public void close() {
+		thread.interrupt();
+	}
+}
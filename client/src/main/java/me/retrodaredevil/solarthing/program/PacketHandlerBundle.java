@@ -1,16 +1,25 @@
 package me.retrodaredevil.solarthing.program;
 
 import me.retrodaredevil.solarthing.packets.handling.PacketHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
 public final class PacketHandlerBundle {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PacketHandlerBundle.class);
+
 	private final List<PacketHandler> statusPacketHandlers;
 	private final List<PacketHandler> eventPacketHandlers;
+	private final List<Runnable> closeActions;
 
-	public PacketHandlerBundle(List<PacketHandler> statusPacketHandlers, List<PacketHandler> eventPacketHandlers) {
+	/**
+	 * @param closeActions The actions to run in order when {@link #close()} is called. Each action should drain a queue in front of a packet handler before it flushes or closes that packet handler.
+	 */
+	public PacketHandlerBundle(List<PacketHandler> statusPacketHandlers, List<PacketHandler> eventPacketHandlers, List<Runnable> closeActions) {
 		this.statusPacketHandlers = statusPacketHandlers;
 		this.eventPacketHandlers = eventPacketHandlers;
+		this.closeActions = closeActions;
 	}
 
 	public List<PacketHandler> getStatusPacketHandlers() {
@@ -20,4 +29,17 @@ public final class PacketHandlerBundle {
 	public List<PacketHandler> getEventPacketHandlers() {
 		return eventPacketHandlers;
 	}
+
+	/**
+	 * Runs each close action in order. This should be called once when the program shuts down.
+	 */
+	public void close() {
+		for (Runnable closeAction : closeActions) {
+			try {
+				closeAction.run();
+			} catch (RuntimeException e) {
+				LOGGER.error("Could not close a packet handler", e);
+			}
+		}
+	}
 }
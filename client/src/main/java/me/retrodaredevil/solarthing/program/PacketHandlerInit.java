@@ -19,7 +19,8 @@ import me.retrodaredevil.solarthing.config.databases.IndividualSettings;
 import me.retrodaredevil.solarthing.config.databases.implementations.*;
 import me.retrodaredevil.solarthing.config.options.CommandOption;
 import me.retrodaredevil.solarthing.config.options.PacketHandlingOption;
-import me.retrodaredevil.solarthing.couchdb.CouchDbPacketSaver;
+import me.retrodaredevil.solarthing.couchdb.CouchDbBulkPacketSaver;
+import me.retrodaredevil.solarthing.database.couchdb.CouchDbHttpConnection;
 import me.retrodaredevil.solarthing.influxdb.ConstantNameGetter;
 import me.retrodaredevil.solarthing.influxdb.influxdb1.ConstantMeasurementPacketPointCreator;
 import me.retrodaredevil.solarthing.influxdb.influxdb1.DocumentedMeasurementPacketPointCreator;
@@ -29,24 +30,33 @@ import me.retrodaredevil.solarthing.influxdb.infuxdb2.InfluxDb2PacketSaver;
 import me.retrodaredevil.solarthing.influxdb.retention.ConstantRetentionPolicyGetter;
 import me.retrodaredevil.solarthing.influxdb.retention.FrequentRetentionPolicyGetter;
 import me.retrodaredevil.solarthing.mqtt.MqttPacketSaver;
+import me.retrodaredevil.solarthing.packets.collection.parsing.SimplePacketGroupParser;
 import me.retrodaredevil.solarthing.packets.handling.*;
 import me.retrodaredevil.solarthing.packets.handling.implementations.FileWritePacketHandler;
-import me.retrodaredevil.solarthing.packets.handling.implementations.JacksonStringPacketHandler;
 import me.retrodaredevil.solarthing.packets.handling.implementations.PostPacketHandler;
 import me.retrodaredevil.solarthing.program.receiver.ActionNodeDataReceiver;
+import me.retrodaredevil.solarthing.packets.instance.InstancePacket;
 import me.retrodaredevil.solarthing.program.receiver.RequestHeartbeatReceiver;
+import me.retrodaredevil.solarthing.solar.event.SolarEventPacket;
+import me.retrodaredevil.solarthing.solar.outback.command.packets.MateCommandFeedbackPacket;
+import me.retrodaredevil.solarthing.type.event.feedback.FeedbackPacket;
 import me.retrodaredevil.solarthing.util.JacksonUtil;
 import me.retrodaredevil.solarthing.util.frequency.FrequentHandler;
+import okhttp3.ConnectionPool;
 import okhttp3.MediaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 @UtilityClass
@@ -54,45 +64,109 @@ public class PacketHandlerInit {
 	private PacketHandlerInit(){ throw new UnsupportedOperationException(); }
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(PacketHandlerInit.class);
-	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
 	private static final ObjectMapper CONFIG_MAPPER = ActionUtil.registerActionNodes(JacksonUtil.defaultMapper());
+	private static final ObjectMapper EVENT_MAPPER = JacksonUtil.lenientMapper(JacksonUtil.defaultMapper());
+	static {
+		EVENT_MAPPER.getSubtypeResolver().registerSubtypes(SolarEventPacket.class, MateCommandFeedbackPacket.class, FeedbackPacket.class, InstancePacket.class);
+	}
+
+	/**
+	 * @param retryQueueDirectory The directory to store the queue in
+	 * @return A packet handler that retries handling event packet collections, even after a restart
+	 */
+	private static PacketHandler createEventPacketHandler(PacketHandler packetHandler, RetryQueueSettings settings, File retryQueueDirectory) {
+		PacketCollectionQueue queue;
+		try {
+			queue = new DiskPacketCollectionQueue(
+					retryQueueDirectory,
+					EVENT_MAPPER,
+					new SimplePacketGroupParser(EVENT_MAPPER, e -> LOGGER.warn("Could not parse packet from retry queue in " + retryQueueDirectory, e)),
+					settings.getMaxBytes()
+			);
+		} catch (IOException e) {
+			LOGGER.error(SolarThingConstants.SUMMARY_MARKER, "Could not use retry queue in " + retryQueueDirectory + ". Events that cannot be uploaded will only be kept in memory.", e);
+			queue = new MemoryPacketCollectionQueue();
+		}
+		return new AsyncRetryingPacketHandler(packetHandler, queue, settings.getMaxAge(), settings.getReplayConcurrency());
+	}
+
+	/**
+	 * A retry queue is named after the file name of its database configuration, rather than its position in the list of databases,
+	 * so that reordering databases does not orphan a retry queue. Renaming a database configuration file still orphans its retry queue.
+	 * @return The name of the retry queue directory for each database configuration file
+	 */
+	static List<String> getRetryQueueNames(List<File> databaseConfigurationFiles) {
+		List<String> r = new ArrayList<>(databaseConfigurationFiles.size());
+		Set<String> usedNames = new HashSet<>();
+		for (File file : databaseConfigurationFiles) {
+			String baseName = file.getName();
+			if (baseName.endsWith(".json")) {
+				baseName = baseName.substring(0, baseName.length() - ".json".length());
+			}
+			String name = baseName;
+			for (int i = 2; !usedNames.add(name); i++) {
+				name = baseName + "-" + i;
+			}
+			r.add(name);
+		}
+		return r;
+	}
 
-	public static PacketHandlerBundle getPacketHandlerBundle(List<DatabaseConfig> configs, String uniqueStatusName, String uniqueEventName, String sourceId, int fragmentId){
+	/**
+	 * @param retryQueueNames The name of the retry queue directory for each database config. See {@link #getRetryQueueNames(List)}
+	 * @param dataDirectory The directory that retry queues are stored in
+	 * @return The bundle. {@link PacketHandlerBundle#close()} drains the queue of each database before that database's packet handler is flushed or closed
+	 */
+	public static PacketHandlerBundle getPacketHandlerBundle(List<DatabaseConfig> configs, List<String> retryQueueNames, String uniqueStatusName, String uniqueEventName, String sourceId, int fragmentId, File dataDirectory){
+		if (configs.size() != retryQueueNames.size()) {
+			throw new IllegalArgumentException("Each database config needs a retry queue name!");
+		}
 		List<PacketHandler> statusPacketHandlers = new ArrayList<>();
 		List<PacketHandler> eventPacketHandlers = new ArrayList<>();
-		for(DatabaseConfig config : configs) {
+		List<Runnable> closeActions = new ArrayList<>();
+		for (int i = 0; i < configs.size(); i++) {
+			DatabaseConfig config = configs.get(i);
 			IndividualSettings statusIndividualSettings = config.getIndividualSettingsOrDefault(Constants.DATABASE_UPLOAD_ID, null);
 			FrequencySettings statusFrequencySettings = statusIndividualSettings != null ? statusIndividualSettings.getFrequencySettings() : FrequencySettings.NORMAL_SETTINGS;
+			QueueSettings queueSettings = config.getQueueSettings();
+			RetryQueueSettings retryQueueSettings = config.getRetryQueueSettings();
+			File retryQueueDirectory = new File(dataDirectory, "retry_queue/" + retryQueueNames.get(i) + "/" + uniqueEventName);
 
 			if (CouchDbDatabaseSettings.TYPE.equals(config.getType())) {
 				CouchDbDatabaseSettings settings = (CouchDbDatabaseSettings) config.getSettings();
 				CouchDbInstance instance = CouchDbUtil.createInstance(settings.getCouchProperties(), settings.getOkHttpProperties());
-				statusPacketHandlers.add(new ThrottleFactorPacketHandler(
-						new AsyncPacketHandlerWrapper(new PrintPacketHandleExceptionWrapper(new CouchDbPacketSaver(instance.getDatabase(uniqueStatusName), false))),
-						statusFrequencySettings
-				));
-				eventPacketHandlers.add(new AsyncRetryingPacketHandler(new CouchDbPacketSaver(instance.getDatabase(uniqueEventName), true)));
+				CouchDbHttpConnection httpConnection = CouchDbHttpConnection.create(settings.getCouchProperties(), settings.getOkHttpProperties());
+				// Status packet collections that pile up while the database is slow are uploaded together in one _bulk_docs request
+				AsyncPacketHandlerWrapper statusPacketHandler = new AsyncPacketHandlerWrapper(new CouchDbBulkPacketSaver(instance.getDatabase(uniqueStatusName), httpConnection, false), queueSettings);
+				closeActions.add(statusPacketHandler::close);
+				statusPacketHandlers.add(new ThrottleFactorPacketHandler(statusPacketHandler, statusFrequencySettings));
+				// Packet collections replayed from the retry queue are uploaded together in one _bulk_docs request
+				eventPacketHandlers.add(createEventPacketHandler(new CouchDbBulkPacketSaver(instance.getDatabase(uniqueEventName), httpConnection, true), retryQueueSettings, retryQueueDirectory));
 			} else if(InfluxDbDatabaseSettings.TYPE.equals(config.getType())) {
 				LOGGER.info(SolarThingConstants.SUMMARY_MARKER, "You are using InfluxDB 1.X! It is recommended that you switch to 2.0, but is not required.");
 				InfluxDbDatabaseSettings settings = (InfluxDbDatabaseSettings) config.getSettings();
 				String databaseName = settings.getDatabaseName();
 				String measurementName = settings.getMeasurementName();
-				statusPacketHandlers.add(new ThrottleFactorPacketHandler(
-						new AsyncPacketHandlerWrapper(new PrintPacketHandleExceptionWrapper(new InfluxDbPacketSaver(
-								settings.getInfluxProperties(),
-								settings.getOkHttpProperties(),
-								new ConstantNameGetter(databaseName != null ? databaseName : uniqueStatusName),
-								measurementName != null
-										? new ConstantMeasurementPacketPointCreator(measurementName)
-										: (databaseName != null
-												? new ConstantMeasurementPacketPointCreator(uniqueStatusName)
-												: DocumentedMeasurementPacketPointCreator.INSTANCE
-										),
-								new FrequentRetentionPolicyGetter(new FrequentHandler<>(settings.getFrequentStatusRetentionPolicyList()))
-						))),
-						statusFrequencySettings
-				));
-				eventPacketHandlers.add(new AsyncRetryingPacketHandler(new InfluxDbPacketSaver(
+				InfluxDbPacketSaver statusPacketSaver = new InfluxDbPacketSaver(
+						settings.getInfluxProperties(),
+						settings.getOkHttpProperties(),
+						new ConstantNameGetter(databaseName != null ? databaseName : uniqueStatusName),
+						measurementName != null
+								? new ConstantMeasurementPacketPointCreator(measurementName)
+								: (databaseName != null
+										? new ConstantMeasurementPacketPointCreator(uniqueStatusName)
+										: DocumentedMeasurementPacketPointCreator.INSTANCE
+								),
+						new FrequentRetentionPolicyGetter(new FrequentHandler<>(settings.getFrequentStatusRetentionPolicyList())),
+						settings.getStatusBatchSettings()
+				);
+				AsyncPacketHandlerWrapper statusPacketHandler = new AsyncPacketHandlerWrapper(new PrintPacketHandleExceptionWrapper(statusPacketSaver), queueSettings);
+				closeActions.add(() -> {
+					statusPacketHandler.close();
+					statusPacketSaver.close();
+				});
+				statusPacketHandlers.add(new ThrottleFactorPacketHandler(statusPacketHandler, statusFrequencySettings));
+				eventPacketHandlers.add(createEventPacketHandler(new InfluxDbPacketSaver(
 						settings.getInfluxProperties(),
 						settings.getOkHttpProperties(),
 						new ConstantNameGetter(databaseName != null ? databaseName : uniqueEventName),
@@ -103,38 +177,54 @@ public class PacketHandlerInit {
 										: DocumentedMeasurementPacketPointCreator.INSTANCE
 								),
 						new ConstantRetentionPolicyGetter(settings.getEventRetentionPolicy())
-				)));
+				), retryQueueSettings, retryQueueDirectory));
 			} else if(InfluxDb2DatabaseSettings.TYPE.equals(config.getType())) {
 				InfluxDb2DatabaseSettings settings = (InfluxDb2DatabaseSettings) config.getSettings();
-				statusPacketHandlers.add(new ThrottleFactorPacketHandler(
-						new AsyncPacketHandlerWrapper(new PrintPacketHandleExceptionWrapper(new InfluxDb2PacketSaver(
-								settings.getInfluxDbProperties(),
-								settings.getOkHttpProperties(),
-								new ConstantNameGetter(uniqueStatusName),
-								DocumentedMeasurementPacketPoint2Creator.INSTANCE
-						))),
-						statusFrequencySettings
-				));
-				eventPacketHandlers.add(new AsyncRetryingPacketHandler(new InfluxDb2PacketSaver(
+				InfluxDb2PacketSaver statusPacketSaver = new InfluxDb2PacketSaver(
+						settings.getInfluxDbProperties(),
+						settings.getOkHttpProperties(),
+						new ConstantNameGetter(uniqueStatusName),
+						DocumentedMeasurementPacketPoint2Creator.INSTANCE,
+						settings.getStatusBatchSettings()
+				);
+				AsyncPacketHandlerWrapper statusPacketHandler = new AsyncPacketHandlerWrapper(new PrintPacketHandleExceptionWrapper(statusPacketSaver), queueSettings);
+				closeActions.add(() -> {
+					statusPacketHandler.close();
+					statusPacketSaver.close();
+				});
+				statusPacketHandlers.add(new ThrottleFactorPacketHandler(statusPacketHandler, statusFrequencySettings));
+				eventPacketHandlers.add(createEventPacketHandler(new InfluxDb2PacketSaver(
 						settings.getInfluxDbProperties(),
 						settings.getOkHttpProperties(),
 						new ConstantNameGetter(uniqueEventName),
 						DocumentedMeasurementPacketPoint2Creator.INSTANCE
-				)));
+				), retryQueueSettings, retryQueueDirectory));
 			} else if (LatestFileDatabaseSettings.TYPE.equals(config.getType())){
 				LatestFileDatabaseSettings settings = (LatestFileDatabaseSettings) config.getSettings();
 				LOGGER.info(SolarThingConstants.SUMMARY_MARKER, "Adding latest file 'database'. This currently only saves 'status' packets");
 				statusPacketHandlers.add(new ThrottleFactorPacketHandler(
-						new FileWritePacketHandler(settings.getFile(), new JacksonStringPacketHandler(MAPPER), false),
+						new FileWritePacketHandler(settings.getFile(), false),
 						statusFrequencySettings
 				));
 			} else if (PostDatabaseSettings.TYPE.equals(config.getType())) {
 				PostDatabaseSettings settings = (PostDatabaseSettings) config.getSettings();
+				Integer maxIdleConnections = settings.getMaxIdleConnections();
+				Integer keepAliveMillis = settings.getKeepAliveMillis();
+				ConnectionPool connectionPool = maxIdleConnections == null && keepAliveMillis == null
+						? null
+						: new ConnectionPool(maxIdleConnections == null ? 5 : maxIdleConnections, keepAliveMillis == null ? 300_000 : keepAliveMillis, TimeUnit.MILLISECONDS); // OkHttp's defaults are 5 connections and 5 minutes
+				PostPacketHandler postPacketHandler = new PostPacketHandler(
+						PostPacketHandler.createClient(settings.getOkHttpProperties(), connectionPool),
+						settings.getUrl(), null, MediaType.get("application/json"),
+						settings.isGzip(), settings.getBatchSettings()
+				);
 
-				statusPacketHandlers.add(new ThrottleFactorPacketHandler(
-						new AsyncPacketHandlerWrapper(new PostPacketHandler(settings.getUrl(), new JacksonStringPacketHandler(MAPPER), MediaType.get("application/json"))),
-						statusFrequencySettings
-				));
+				AsyncPacketHandlerWrapper statusPacketHandler = new AsyncPacketHandlerWrapper(postPacketHandler, queueSettings);
+				closeActions.add(() -> {
+					statusPacketHandler.close();
+					postPacketHandler.flush(); // posts what the queue handed over after the last batch
+				});
+				statusPacketHandlers.add(new ThrottleFactorPacketHandler(statusPacketHandler, statusFrequencySettings));
 			} else if (MqttDatabaseSettings.TYPE.equals(config.getType())) {
 				MqttDatabaseSettings settings = (MqttDatabaseSettings) config.getSettings();
 
@@ -143,18 +233,23 @@ public class PacketHandlerInit {
 					client = "solarthing-" + sourceId + "-" + fragmentId;
 				}
 
-				statusPacketHandlers.add(new ThrottleFactorPacketHandler(
-						new AsyncPacketHandlerWrapper(new MqttPacketSaver(settings.getBroker(), client, settings.getUsername(), settings.getPassword(), settings.getTopicFormat(), settings.isRetain(), sourceId, fragmentId)),
-						statusFrequencySettings
-				));
+				MqttPacketSaver statusPacketSaver = new MqttPacketSaver(settings.getBroker(), client, settings.getUsername(), settings.getPassword(), settings.getTopicFormat(), settings.isRetain(), sourceId, fragmentId, settings.getPublishSettings());
+				AsyncPacketHandlerWrapper statusPacketHandler = new AsyncPacketHandlerWrapper(statusPacketSaver, queueSettings);
+				closeActions.add(() -> {
+					statusPacketHandler.close();
+					statusPacketSaver.close();
+				});
+				statusPacketHandlers.add(new ThrottleFactorPacketHandler(statusPacketHandler, statusFrequencySettings));
 			}
 		}
-		return new PacketHandlerBundle(statusPacketHandlers, eventPacketHandlers);
+		return new PacketHandlerBundle(statusPacketHandlers, eventPacketHandlers, closeActions);
 	}
 
-	public static <T extends PacketHandlingOption & CommandOption> Result initHandlers(T options, Supplier<? extends EnvironmentUpdater> environmentUpdaterSupplier, Collection<? extends PacketHandler> additionalPacketHandlers) throws IOException {
+	public static <T extends PacketHandlingOption & CommandOption> Result initHandlers(T options, File dataDirectory, Supplier<? extends EnvironmentUpdater> environmentUpdaterSupplier, Collection<? extends PacketHandler> additionalPacketHandlers) throws IOException {
 		List<DatabaseConfig> databaseConfigs = ConfigUtil.getDatabaseConfigs(options);
-		PacketHandlerBundle packetHandlerBundle = PacketHandlerInit.getPacketHandlerBundle(databaseConfigs, SolarThingConstants.STATUS_DATABASE, SolarThingConstants.EVENT_DATABASE, options.getSourceId(), options.getFragmentId());
+		PacketHandlerBundle packetHandlerBundle = PacketHandlerInit.getPacketHandlerBundle(databaseConfigs, getRetryQueueNames(options.getDatabaseConfigurationFiles()), SolarThingConstants.STATUS_DATABASE, SolarThingConstants.EVENT_DATABASE, options.getSourceId(), options.getFragmentId(), dataDirectory);
+		// A single hook, so that queued packet collections are handled before the packet handlers they are queued for are closed
+		Runtime.getRuntime().addShutdownHook(new Thread(packetHandlerBundle::close, "packet-handler-shutdown"));
 		List<PacketHandler> statusPacketHandlers = new ArrayList<>();
 
 		final Runnable updateCommandActions;
@@ -53,6 +53,9 @@ public final class PacketListReceiverHandlerBundle {
 				new PacketListReceiverMultiplexer(
 						sourceAndFragmentUpdater,
 						(packets) -> {
+							if (!LOGGER.isDebugEnabled(SolarThingConstants.NO_CONSOLE)) {
+								return; // don't pretty print packets that won't be logged
+							}
 							LOGGER.debug(SolarThingConstants.NO_CONSOLE, "Debugging event packets");
 							try {
 								LOGGER.debug(SolarThingConstants.NO_CONSOLE, MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(packets));
@@ -74,6 +77,9 @@ public final class PacketListReceiverHandlerBundle {
 				new PacketListReceiverMultiplexer(
 						sourceAndFragmentUpdater,
 						(packets) -> {
+							if (!LOGGER.isDebugEnabled()) {
+								return;
+							}
 							LOGGER.debug("Debugging all packets");
 							try {
 								LOGGER.debug(MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(packets));
@@ -4,6 +4,7 @@ import me.retrodaredevil.solarthing.SolarThingConstants;
 import me.retrodaredevil.solarthing.annotations.UtilityClass;
 import me.retrodaredevil.solarthing.packets.collection.DefaultInstanceOptions;
 import me.retrodaredevil.solarthing.packets.collection.FragmentedPacketGroup;
+import me.retrodaredevil.solarthing.packets.collection.IncrementalPacketGroupMerger;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroup;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
 
@@ -34,4 +35,33 @@ public class PacketUtil {
 		}
 		return packetGroupsMap.get(sourceId);
 	}
+
+	/**
+	 * @return A merger that uses the same time distances as {@link #getPacketGroups(String, DefaultInstanceOptions, List)}
+	 */
+	public static IncrementalPacketGroupMerger createPacketGroupMerger(DefaultInstanceOptions defaultInstanceOptions) {
+		return new IncrementalPacketGroupMerger(
+				defaultInstanceOptions,
+				SolarThingConstants.SHORT_MAX_TIME_DISTANCE.toMillis(), SolarThingConstants.SHORT_MASTER_ID_IGNORE_DISTANCE.toMillis()
+		);
+	}
+
+	/**
+	 * Chooses a source in the same way as {@link #getPacketGroups(String, DefaultInstanceOptions, List)}
+	 * @return The latest packet group from the merger or null
+	 */
+	public static FragmentedPacketGroup getLatestPacketGroup(String sourceId, DefaultInstanceOptions defaultInstanceOptions, IncrementalPacketGroupMerger packetGroupMerger) {
+		if(sourceId == null){ // no preference on the source
+			FragmentedPacketGroup packetGroup = packetGroupMerger.getLatestPacketGroup(defaultInstanceOptions.getDefaultSourceId());
+			if (packetGroup != null) {
+				return packetGroup;
+			}
+			Iterator<String> iterator = packetGroupMerger.getSourceIds().iterator();
+			if(iterator.hasNext()){
+				return packetGroupMerger.getLatestPacketGroup(iterator.next());
+			}
+			return null;
+		}
+		return packetGroupMerger.getLatestPacketGroup(sourceId);
+	}
 }
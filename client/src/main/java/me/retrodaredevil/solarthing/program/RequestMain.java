@@ -11,8 +11,6 @@ import me.retrodaredevil.solarthing.config.options.PacketHandlingOption;
 import me.retrodaredevil.solarthing.config.options.ProgramType;
 import me.retrodaredevil.solarthing.config.options.RequestProgramOptions;
 import me.retrodaredevil.solarthing.config.request.DataRequester;
-import me.retrodaredevil.solarthing.config.request.DataRequesterResult;
-import me.retrodaredevil.solarthing.config.request.RequestObject;
 import me.retrodaredevil.solarthing.misc.common.DataIdentifiablePacketListChecker;
 import me.retrodaredevil.solarthing.packets.Packet;
 import me.retrodaredevil.solarthing.packets.handling.PacketListReceiver;
@@ -37,13 +35,14 @@ public class RequestMain {
 		LOGGER.info(SolarThingConstants.SUMMARY_MARKER, "Beginning request program");
 		AnalyticsManager analyticsManager = new AnalyticsManager(options.isAnalyticsEnabled(), dataDirectory);
 		analyticsManager.sendStartUp(ProgramType.REQUEST);
-		return startRequestProgram(options, analyticsManager, options.getDataRequesterList(), options.getPeriod(), options.getMinimumWait());
+		return startRequestProgram(options, dataDirectory, analyticsManager, options.getDataRequesterList(), options.getPeriod(), options.getMinimumWait());
 	}
 
-	public static <T extends PacketHandlingOption & CommandOption> int startRequestProgram(T options, AnalyticsManager analyticsManager, List<DataRequester> dataRequesterList, long period, long minimumWait) throws Exception {
+	public static <T extends PacketHandlingOption & CommandOption> int startRequestProgram(T options, File dataDirectory, AnalyticsManager analyticsManager, List<DataRequester> dataRequesterList, long period, long minimumWait) throws Exception {
 		EnvironmentUpdater[] environmentUpdaterReference = new EnvironmentUpdater[1];
 		PacketHandlerInit.Result handlersResult = PacketHandlerInit.initHandlers(
 				options,
+				dataDirectory,
 				() -> environmentUpdaterReference[0],
 				Collections.singleton(new RoverAnalyticsHandler(analyticsManager))
 		);
@@ -51,11 +50,12 @@ public class RequestMain {
 
 		List<PacketListReceiver> packetListReceiverList = new ArrayList<>();
 		List<EnvironmentUpdater> environmentUpdaters = new ArrayList<>();
+		// data requesters that use different I/O resources are run concurrently
+		DataRequesterRunner dataRequesterRunner = new DataRequesterRunner(bundle.getEventHandler().getPacketListReceiverAccepter(), Duration.ofMillis(period));
 		for (DataRequester dataRequester : dataRequesterList) {
-			DataRequesterResult result = dataRequester.create(new RequestObject(bundle.getEventHandler().getPacketListReceiverAccepter()));
-			packetListReceiverList.add(result.getStatusPacketListReceiver());
-			environmentUpdaters.add(result.getEnvironmentUpdater());
+			environmentUpdaters.add(dataRequesterRunner.add(dataRequester));
 		}
+		packetListReceiverList.add(dataRequesterRunner);
 		packetListReceiverList.add(new RoverEventUpdaterListReceiver(bundle.getEventHandler().getPacketListReceiverAccepter())); // will add events for each rover packet if there are any to add
 		packetListReceiverList.add(new TracerEventUpdaterListReceiver(bundle.getEventHandler().getPacketListReceiverAccepter())); // will add events for each tracer packet if there are any to add
 		if (options.hasCommands()) {
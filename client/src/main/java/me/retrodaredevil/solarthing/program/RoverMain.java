@@ -37,7 +37,7 @@ public class RoverMain {
 	private static final Logger LOGGER = LoggerFactory.getLogger(RoverMain.class);
 
 
-	private static int doRover(RoverProgramOptions options, AnalyticsManager analyticsManager, List<DataRequester> dataRequesterList) throws Exception {
+	private static int doRover(RoverProgramOptions options, File dataDirectory, AnalyticsManager analyticsManager, List<DataRequester> dataRequesterList) throws Exception {
 		RoverModbusRequester roverModbusRequester = new RoverModbusRequester(
 				options.isSendErrorPackets(), options.isBulkRequest(),
 				options.getCommandInfoList().stream().map(CommandInfo::getName).collect(Collectors.toList()), // attach the given rover modbus environment to all commands
@@ -50,7 +50,7 @@ public class RoverMain {
 		List<DataRequester> list = new ArrayList<>(dataRequesterList);
 		list.add(dataRequester);
 
-		return RequestMain.startRequestProgram(options, analyticsManager, list, options.getPeriod(), options.getMinimumWait());
+		return RequestMain.startRequestProgram(options, dataDirectory, analyticsManager, list, options.getPeriod(), options.getMinimumWait());
 	}
 
 	public static int connectRover(RoverProgramOptions options, File dataDirectory) throws Exception {
@@ -59,7 +59,7 @@ public class RoverMain {
 		analyticsManager.sendStartUp(ProgramType.ROVER);
 
 		List<DataRequester> dataRequesterList = new ArrayList<>(options.getDataRequesterList());
-		return doRover(options, analyticsManager, dataRequesterList);
+		return doRover(options, dataDirectory, analyticsManager, dataRequesterList);
 	}
 	public static int connectRoverSetup(RoverSetupProgramOptions options) {
 		return doRoverProgram(options, RoverSetupProgram::startRoverSetup, null);
@@ -36,9 +36,6 @@ import me.retrodaredevil.solarthing.util.JacksonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
-import javax.crypto.NoSuchPaddingException;
-import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -58,7 +55,6 @@ public class SecurityPacketReceiver {
 
 	private final SimplePacketGroupParser integrityParser;
 
-	private final Cipher cipher;
 	private final long listenStartTime;
 	private final int fragmentId;
 	private final String sourceId;
@@ -93,12 +89,6 @@ public class SecurityPacketReceiver {
 		// Use a DO_NOTHING error handler, because many instances of SecurityPacketReceiver will only have one or a few packetClasses.
 		//   So it's actually very likely that parsing a packet will fail often
 		integrityParser = new SimplePacketGroupParser(integrityMapper, PacketParsingErrorHandler.DO_NOTHING);
-
-		try {
-			cipher = Cipher.getInstance(KeyUtil.CIPHER_TRANSFORMATION);
-		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-			throw new RuntimeException(e);
-		}
 	}
 
 	private String storedIdentifierToDocumentId(StoredIdentifier storedIdentifier) {
@@ -247,7 +237,7 @@ public class SecurityPacketReceiver {
 	private String decryptData(StoredPacketGroup storedPacketGroup, String sender, String base64EncodedData, long expectedDateMillis) {
 		final String data;
 		try {
-			data = Decrypt.decrypt(cipher, publicKeyLookUp, sender, base64EncodedData);
+			data = Decrypt.decrypt(publicKeyLookUp, sender, base64EncodedData);
 		} catch (DecryptException e) {
 			LOGGER.warn(SolarThingConstants.SUMMARY_MARKER, "Someone tried to impersonate " + sender + "! Or that person has a new public key.", e);
 			reject(storedPacketGroup, SecurityRejectPacket.Reason.DECRYPT_ERROR, "Decrypt error");
@@ -50,11 +50,10 @@ public final class SolarMain {
 	private static final Logger LOGGER = LoggerFactory.getLogger(SolarMain.class);
 
 	public static int initReader(InputStream in, Runnable reloadIO, TextPacketCreator packetCreator, RawPacketReceiver rawPacketReceiver) {
-		SolarReader solarReader = new SolarReader(in, packetCreator, rawPacketReceiver);
-		try {
+		try (SolarReader solarReader = new SolarReader(in, packetCreator, rawPacketReceiver)) {
 			while (!Thread.currentThread().isInterrupted()) {
 				try {
-					solarReader.update();
+					solarReader.update(); // waits for data, so there is no need to sleep
 				} catch (EOFException e) {
 					return 0;
 				} catch (IOException e) {
@@ -64,7 +63,6 @@ public final class SolarMain {
 					LOGGER.debug("Reloaded IO bundle");
 					Thread.sleep(1000);
 				}
-				Thread.sleep(5);
 			}
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
@@ -11,71 +11,220 @@ import org.slf4j.LoggerFactory;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.util.Objects.requireNonNull;
 
-public class SolarReader {
+/**
+ * Reads data from an {@link InputStream} and gives it to a {@link TextPacketCreator}.
+ * <p>
+ * A daemon thread blocks on {@link InputStream#read(byte[], int, int)}, so {@link #update()} wakes up as soon as data is received instead of polling
+ * {@link InputStream#available()}. If no data is received before the no data timeout, {@link RawPacketReceiver#updateNoNewData()} is called.
+ * If the stream does not block and returns no data, the read thread waits for the no data timeout before reading again.
+ * <p>
+ * The received bytes are treated as ASCII and are copied into a reused buffer, so nothing is allocated for each read.
+ */
+public class SolarReader implements AutoCloseable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(SolarReader.class);
+	private static final Duration DEFAULT_NO_DATA_TIMEOUT = Duration.ofMillis(20);
+	private static final int READ_BUFFER_SIZE = 1024;
+	private static final int PENDING_BUFFER_SIZE = 8 * READ_BUFFER_SIZE;
 
 	private final InputStream in;
 	private final TextPacketCreator creator;
 	private final RawPacketReceiver rawPacketReceiver;
+	private final long noDataTimeoutNanos;
 
-	private final byte[] buffer = new byte[1024];
+	private final Thread readThread = new Thread(this::runReadThread, "solar-reader");
+	private final Lock lock = new ReentrantLock();
+	/** Signalled when there are pending bytes, an error or an EOF */
+	private final Condition updateCondition = lock.newCondition();
+	/** Signalled when the read thread may be able to read again */
+	private final Condition readCondition = lock.newCondition();
+
+	// These fields are guarded by lock
+	private final byte[] pending = new byte[PENDING_BUFFER_SIZE];
+	private int pendingLength = 0;
+	private IOException error = null;
+	/** true after an error has been thrown from {@link #update()}. The read thread will not read again until the next call to {@link #update()}, which is after the IO has been reloaded */
+	private boolean paused = false;
+	private boolean eof = false;
+	private boolean closed = false;
+
+	/** Only accessed by the thread calling {@link #update()} */
+	private final char[] chars = new char[PENDING_BUFFER_SIZE];
 
 	/**
 	 * @param in The InputStream to read directly from
 	 * @param packetCreator The packet creator that creates packets from bytes
+	 * @param noDataTimeout The amount of time to wait for data before {@link RawPacketReceiver#updateNoNewData()} is called
 	 */
-	public SolarReader(InputStream in, TextPacketCreator packetCreator, RawPacketReceiver rawPacketReceiver) {
+	public SolarReader(InputStream in, TextPacketCreator packetCreator, RawPacketReceiver rawPacketReceiver, Duration noDataTimeout) {
 		this.in = requireNonNull(in);
 		this.creator = requireNonNull(packetCreator);
 		this.rawPacketReceiver = requireNonNull(rawPacketReceiver);
+		this.noDataTimeoutNanos = noDataTimeout.toNanos();
+		readThread.setDaemon(true);
+	}
+	public SolarReader(InputStream in, TextPacketCreator packetCreator, RawPacketReceiver rawPacketReceiver) {
+		this(in, packetCreator, rawPacketReceiver, DEFAULT_NO_DATA_TIMEOUT);
 	}
 
-	private boolean readData() throws IOException {
-		// As of 2019.10.13, we can now detect EOF
-		// stackoverflow: https://stackoverflow.com/q/53291868/5434860
-		// (maybe) thanks to this solution: https://stackoverflow.com/questions/804951/is-it-possible-to-read-from-a-inputstream-with-a-timeout
-		// As of <some time later>: I actually haven't tested this, so I don't know if this fixed the problem. However, this only matters while testing.
+	private void runReadThread() {
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		while (true) {
+			final int maxLength;
+			lock.lock();
+			try {
+				while (!closed && (paused || error != null || pendingLength == pending.length)) {
+					readCondition.await();
+				}
+				if (closed) {
+					return;
+				}
+				maxLength = Math.min(buffer.length, pending.length - pendingLength);
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
 
-		int available = in.available();
+			final int len;
+			try {
+				len = in.read(buffer, 0, maxLength); // blocks until there is data, unless the stream is non-blocking
+				if (len < 0) {
+					checkDisconnected();
+				}
+			} catch (InterruptedIOException e) {
+				// some serial port implementations time out when there is no data
+				continue;
+			} catch (IOException e) {
+				lock.lock();
+				try {
+					error = e;
+					updateCondition.signal();
+				} finally {
+					lock.unlock();
+				}
+				continue;
+			}
+			lock.lock();
+			try {
+				if (len < 0) {
+					eof = true;
+					updateCondition.signal();
+					return;
+				}
+				if (len == 0) {
+					// jSerialComm's InputStream is non-blocking by default and returns 0 right away, so wait instead of spinning
+					long nanos = noDataTimeoutNanos;
+					while (!closed && nanos > 0) {
+						nanos = readCondition.awaitNanos(nanos);
+					}
+					continue;
+				}
+				System.arraycopy(buffer, 0, pending, pendingLength, len);
+				pendingLength += len;
+				updateCondition.signal();
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
 
-		// JSerial implementation ends up returning -1 when disconnected, which isn't part of the contract of InputStream, but we'll deal with it anyway
-		if(available < 0) throw new IOException("available is " + available + ". (Stream has closed)");
+	/**
+	 * jSerialComm's InputStream returns -1 when the serial port is disconnected, which isn't part of the contract of InputStream.
+	 * When that happens, {@link InputStream#available()} is also negative, so that is used to tell a disconnect apart from the actual end of the stream.
+	 * @throws IOException If the stream was disconnected, so that the IO is reloaded
+	 */
+	private void checkDisconnected() throws IOException {
+		int available = in.available();
+		if (available < 0) {
+			throw new IOException("available is " + available + ". (Stream has closed)");
+		}
+	}
 
-		final int len;
-		if(available == 0){ // if nothing is available, we want to try to see if we've reached the end of the file
-			boolean isEOF = in.read(buffer, 0, 0) == -1;
-			if(isEOF) {
-				throw new EOFException();
+	/**
+	 * Waits for data and gives it to the packet creator, or calls {@link RawPacketReceiver#updateNoNewData()} if no data was received.
+	 * <p>
+	 * Should be called continuously
+	 * @throws EOFException If the end of the stream has been reached
+	 * @throws IOException If there was an error reading, or if the stream was disconnected. The next call to this method will start reading again.
+	 */
+	public void update() throws IOException {
+		if (readThread.getState() == Thread.State.NEW) {
+			readThread.start();
+		}
+		final int length;
+		lock.lock();
+		try {
+			if (paused) {
+				paused = false;
+				readCondition.signal();
+			}
+			long nanos = noDataTimeoutNanos;
+			while (pendingLength == 0 && error == null && !eof && nanos > 0) {
+				nanos = updateCondition.awaitNanos(nanos);
 			}
+			length = pendingLength;
+			if (length == 0) {
+				if (error != null) {
+					IOException e = error;
+					error = null;
+					paused = true;
+					throw e;
+				}
+				if (eof) {
+					throw new EOFException();
+				}
+			}
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) (pending[i] & 0xFF);
+			}
+			pendingLength = 0;
+			readCondition.signal();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			lock.unlock();
+		}
+		if (length == 0) {
 			rawPacketReceiver.updateNoNewData();
-			return false;
-		} else {
-			len = in.read(buffer); // read as much as possible
-			if(len == -1) throw new AssertionError("Because we call in.available(), len should never be -1. Did we change the code?");
+			return;
 		}
-		String s = new String(buffer, 0, len);
 		final Collection<? extends Packet> newPackets;
 		try {
-			newPackets = creator.add(s.toCharArray());
+			newPackets = creator.add(chars, 0, length);
 		} catch (PacketCreationException e) {
-			String debugString = OutbackUtil.escapeOutputtedMateData(s);
+			String debugString = OutbackUtil.escapeOutputtedMateData(new String(chars, 0, length));
 			LOGGER.warn("Got a garbled packet! got: '" + debugString + "'", e);
 			rawPacketReceiver.updateGarbledData();
-			return true;
+			return;
 		}
 
 		rawPacketReceiver.update(newPackets);
-		return true;
 	}
 
 	/**
-	 * Should be called continuously
+	 * Stops the read thread. This does not close the {@link InputStream}
 	 */
-	public void update() throws IOException {
-		readData();
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			readCondition.signal();
+		} finally {
+			lock.unlock();
+		}
+		readThread.interrupt();
 	}
 }
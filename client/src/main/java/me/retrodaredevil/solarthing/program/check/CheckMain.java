@@ -62,12 +62,11 @@ public class CheckMain {
 				parsedData[0] = true;
 			};
 			// Note that lots of this code logs. Users don't see much of the debug logs because they run the solarthing command, which does INFO logging by default
-			SolarReader solarReader = new SolarReader(
+			try (SolarReader solarReader = new SolarReader(
 					ioBundle.getInputStream(),
 					new MatePacketCreator49(IgnoreCheckSum.IGNORE_AND_USE_CALCULATED), // we are testing a lot, so we don't care if the checksum is wrong
 					new TimedPacketReceiver(Duration.ofMillis(250), receiver, (firstData, stale) -> gotAnyData[0] = true)
-			);
-			try {
+			)) {
 				for (int i = 0; i < 40; i++) { // do this for about 4 seconds
 					try {
 						solarReader.update();
@@ -0,0 +1,26 @@
+package me.retrodaredevil.solarthing.program.modbus;
+
+import me.retrodaredevil.io.modbus.ModbusMessage;
+import me.retrodaredevil.io.modbus.ModbusSlaveBus;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ModbusSlaveBus} that holds a lock while each request and its response are sent, so that a bus can be used from more than one thread.
+ */
+public class LockingModbusSlaveBus implements ModbusSlaveBus {
+	private final ModbusSlaveBus modbus;
+	private final Object lock;
+
+	public LockingModbusSlaveBus(ModbusSlaveBus modbus, Object lock) {
+		requireNonNull(this.modbus = modbus);
+		requireNonNull(this.lock = lock);
+	}
+
+	@Override
+	public ModbusMessage sendRequestMessage(int address, ModbusMessage message) {
+		synchronized (lock) {
+			return modbus.sendRequestMessage(address, message);
+		}
+	}
+}
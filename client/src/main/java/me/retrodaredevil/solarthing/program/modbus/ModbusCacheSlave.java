@@ -1,19 +1,22 @@
 package me.retrodaredevil.solarthing.program.modbus;
 
 import me.retrodaredevil.io.modbus.ModbusMessage;
+import me.retrodaredevil.io.modbus.ModbusRuntimeException;
 import me.retrodaredevil.io.modbus.ModbusSlave;
-import me.retrodaredevil.io.modbus.handling.BaseReadRegisters;
 import me.retrodaredevil.io.modbus.handling.MessageHandler;
+import me.retrodaredevil.io.modbus.handling.ParsedResponseException;
+import me.retrodaredevil.io.modbus.handling.RawResponseException;
 import me.retrodaredevil.io.modbus.handling.ReadHoldingRegisters;
 import me.retrodaredevil.io.modbus.handling.ReadInputRegisters;
 import me.retrodaredevil.io.modbus.parsing.DefaultMessageParser;
 import me.retrodaredevil.io.modbus.parsing.MessageParseException;
 import me.retrodaredevil.io.modbus.parsing.MessageParser;
+import me.retrodaredevil.solarthing.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiFunction;
 
 /**
@@ -21,26 +24,35 @@ import java.util.function.BiFunction;
  * <p>
  * The advantage to this is that bulk requests can be performed and cached, then smaller requests can use that cache
  * to avoid many unnecessary and inefficient small requests.
+ * <p>
+ * When created with {@link ModbusReadPlanner}s, the registers that are read are recorded, and {@link #cachePlanned()} can be used
+ * to cache them instead of hard coding ranges.
+ * <p>
+ * Cached registers are kept in a {@link RegisterFile}. Reads with a {@link ReadHoldingRegisters} or {@link ReadInputRegisters} given to {@link #sendRequestMessage(MessageHandler)}
+ * are answered directly from it, without creating or parsing any {@link ModbusMessage}s.
  */
 public class ModbusCacheSlave implements ModbusSlave {
 	private static final MessageParser PARSER = new DefaultMessageParser();
 	private static final Logger LOGGER = LoggerFactory.getLogger(ModbusCacheSlave.class);
 
 	private final ModbusSlave modbusSlave;
-	private final Map<Integer, Integer> holdingRegisterCache = new HashMap<>();
-	private final Map<Integer, Integer> inputRegisterCache = new HashMap<>();
+	private final RegisterFile holdingRegisterCache = new RegisterFile();
+	private final RegisterFile inputRegisterCache = new RegisterFile();
+	private final @Nullable ModbusReadPlanner holdingPlanner;
+	private final @Nullable ModbusReadPlanner inputPlanner;
 
-	public ModbusCacheSlave(ModbusSlave modbusSlave) {
+	public ModbusCacheSlave(ModbusSlave modbusSlave, @Nullable ModbusReadPlanner holdingPlanner, @Nullable ModbusReadPlanner inputPlanner) {
 		this.modbusSlave = modbusSlave;
+		this.holdingPlanner = holdingPlanner;
+		this.inputPlanner = inputPlanner;
+	}
+	public ModbusCacheSlave(ModbusSlave modbusSlave) {
+		this(modbusSlave, null, null);
 	}
 
-	private void cache(int startRegister, int numberOfRegisters, Map<Integer, Integer> map, BiFunction<Integer, Integer, MessageHandler<int[]>> messageHandlerCreator) {
+	private void cache(int startRegister, int numberOfRegisters, RegisterFile registerFile, BiFunction<Integer, Integer, MessageHandler<int[]>> messageHandlerCreator) {
 		int[] registers = modbusSlave.sendRequestMessage(messageHandlerCreator.apply(startRegister, numberOfRegisters));
-		for (int i = 0; i < registers.length; i++) {
-			int register = startRegister + i;
-			int value = registers[i];
-			map.put(register, value);
-		}
+		registerFile.put(startRegister, registers);
 	}
 
 	public void cacheHolding(int startRegister, int numberOfRegisters) {
@@ -57,6 +69,88 @@ public class ModbusCacheSlave implements ModbusSlave {
 		cacheInput(startRegister, endRegister - startRegister + 1);
 	}
 
+	/**
+	 * Caches the registers planned by each {@link ModbusReadPlanner}. Values from previous calls are cleared. The registers of a read that fails are not cached.
+	 * <p>
+	 * A read that the device rejects or answers with a bad response is reported to the planner. A read that fails for another reason, such as a timeout,
+	 * is only reported if other reads succeeded, because the device may just be disconnected.
+	 * @throws ModbusRuntimeException The exception of the first failed read, if every read failed
+	 */
+	public void cachePlanned() {
+		List<FailedRead> failedReads = new ArrayList<>();
+		int successfulReads = cachePlanned(holdingPlanner, holdingRegisterCache, ReadHoldingRegisters::new, failedReads)
+				+ cachePlanned(inputPlanner, inputRegisterCache, ReadInputRegisters::new, failedReads);
+		if (failedReads.isEmpty()) {
+			if (holdingPlanner != null) {
+				holdingPlanner.reportSuccessfulPass();
+			}
+			if (inputPlanner != null) {
+				inputPlanner.reportSuccessfulPass();
+			}
+			return;
+		}
+		if (successfulReads == 0) {
+			throw failedReads.get(0).exception;
+		}
+		for (FailedRead failedRead : failedReads) {
+			ModbusReadPlanner planner = failedRead.planner;
+			if (planner != null) {
+				LOGGER.info("Bulk read of " + failedRead.range + " failed while other reads succeeded. It will be split up for future reads.", failedRead.exception);
+				planner.reportFailed(failedRead.range);
+			}
+		}
+	}
+	/**
+	 * @param failedReads Reads that failed without a response from the device are added to this
+	 * @return The number of successful reads
+	 */
+	private int cachePlanned(@Nullable ModbusReadPlanner planner, RegisterFile registerFile, BiFunction<Integer, Integer, MessageHandler<int[]>> messageHandlerCreator, List<FailedRead> failedReads) {
+		if (planner == null) {
+			return 0;
+		}
+		registerFile.clear();
+		int successfulReads = 0;
+		for (ModbusReadPlanner.Range range : planner.getPlan()) {
+			try {
+				cache(range.getStartRegister(), range.getNumberOfRegisters(), registerFile, messageHandlerCreator);
+				successfulReads++;
+			} catch (ParsedResponseException e) {
+				LOGGER.info("Device rejected bulk read of " + range + ". It will be split up for future reads.", e);
+				planner.reportRejected(range);
+				failedReads.add(new FailedRead(null, range, e));
+			} catch (RawResponseException e) {
+				// Some devices respond with a partial response or a bad CRC to a read that is too large
+				LOGGER.info("Got a bad response for bulk read of " + range + ". It will be split up for future reads.", e);
+				planner.reportFailed(range);
+				failedReads.add(new FailedRead(null, range, e));
+			} catch (ModbusRuntimeException e) {
+				failedReads.add(new FailedRead(planner, range, e));
+			}
+		}
+		return successfulReads;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T sendRequestMessage(MessageHandler<T> messageHandler) {
+		// ReadHoldingRegisters and ReadInputRegisters are both MessageHandler<int[]>, so T is int[]
+		if (messageHandler instanceof ReadHoldingRegisters) {
+			ReadHoldingRegisters read = (ReadHoldingRegisters) messageHandler;
+			int[] values = readCached(read.getStartingDataAddress(), read.getNumberOfRegisters(), holdingPlanner, holdingRegisterCache);
+			if (values != null) {
+				return (T) values;
+			}
+		} else if (messageHandler instanceof ReadInputRegisters) {
+			ReadInputRegisters read = (ReadInputRegisters) messageHandler;
+			int[] values = readCached(read.getStartingDataAddress(), read.getNumberOfRegisters(), inputPlanner, inputRegisterCache);
+			if (values != null) {
+				return (T) values;
+			}
+		}
+		// Not cached, so send the request to the actual device. This avoids sendRequestMessage(ModbusMessage) so the read is not recorded twice
+		return modbusSlave.sendRequestMessage(messageHandler);
+	}
+
 	@Override
 	public ModbusMessage sendRequestMessage(ModbusMessage message) {
 		final MessageHandler<?> messageHandler;
@@ -67,27 +161,49 @@ public class ModbusCacheSlave implements ModbusSlave {
 		}
 		if (messageHandler instanceof ReadHoldingRegisters) {
 			ReadHoldingRegisters read = (ReadHoldingRegisters) messageHandler;
-			return readFrom(message, read, holdingRegisterCache);
+			int[] values = readCached(read.getStartingDataAddress(), read.getNumberOfRegisters(), holdingPlanner, holdingRegisterCache);
+			if (values != null) {
+				return read.createResponse(values);
+			}
 		} else if (messageHandler instanceof ReadInputRegisters) {
 			ReadInputRegisters read = (ReadInputRegisters) messageHandler;
-			return readFrom(message, read, inputRegisterCache);
+			int[] values = readCached(read.getStartingDataAddress(), read.getNumberOfRegisters(), inputPlanner, inputRegisterCache);
+			if (values != null) {
+				return read.createResponse(values);
+			}
 		}
 //		LOGGER.debug("Couldn't handle message using messageHandler=" + messageHandler);
 		return modbusSlave.sendRequestMessage(message);
 	}
-	private ModbusMessage readFrom(ModbusMessage message, BaseReadRegisters read, Map<Integer, Integer> map) {
-		int[] values = new int[read.getNumberOfRegisters()];
-		for (int i = 0; i < values.length; i++) {
-			int register = read.getStartingDataAddress() + i;
-			Integer value = map.get(register);
-			if (value == null) {
-				if (i != 0) {
-					LOGGER.debug("Register: " + register + " didn't have a cached value, however some values for this request were cached. i: " + i);
-				}
-				return modbusSlave.sendRequestMessage(message);
+
+	/**
+	 * Records the read with {@code planner} and gets the cached values
+	 * @return The cached values, or null if not every register is cached
+	 */
+	private @Nullable int[] readCached(int startRegister, int numberOfRegisters, @Nullable ModbusReadPlanner planner, RegisterFile registerFile) {
+		if (planner != null) {
+			planner.recordRead(startRegister, numberOfRegisters);
+		}
+		int[] values = registerFile.get(startRegister, numberOfRegisters);
+		if (values == null && LOGGER.isDebugEnabled()) {
+			int firstValidRegister = registerFile.firstValidRegister(startRegister, numberOfRegisters);
+			if (firstValidRegister != -1) {
+				LOGGER.debug("Some registers starting at " + startRegister + " didn't have a cached value, however some values for this request were cached. First cached: " + firstValidRegister);
 			}
-			values[i] = value;
 		}
-		return read.createResponse(values);
+		return values;
+	}
+
+	private static final class FailedRead {
+		/** The planner to report the failure to, or null if it has already been reported */
+		private final @Nullable ModbusReadPlanner planner;
+		private final ModbusReadPlanner.Range range;
+		private final ModbusRuntimeException exception;
+
+		private FailedRead(@Nullable ModbusReadPlanner planner, ModbusReadPlanner.Range range, ModbusRuntimeException exception) {
+			this.planner = planner;
+			this.range = range;
+			this.exception = exception;
+		}
 	}
 }
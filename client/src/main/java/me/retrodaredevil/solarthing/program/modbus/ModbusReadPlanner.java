@@ -0,0 +1,181 @@
+package me.retrodaredevil.solarthing.program.modbus;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plans which bulk reads should be done to cache registers of a single register type (holding or input).
+ * <p>
+ * The registers that are actually read are recorded with {@link #recordRead(int, int)}. The plan is the smallest set of reads of contiguous recorded registers,
+ * where each read is no larger than the maximum number of registers and does not include an excluded register. The plan is reused until a register that
+ * has not been recorded before is read.
+ * <p>
+ * If a device rejects a read, {@link #reportRejected(Range)} should be called, and if a read fails for another reason, {@link #reportFailed(Range)} should be called.
+ * A failed read is split in half for future plans, and a rejected read of a single register
+ * is excluded from future plans. Splits are forgotten after {@link #MERGE_AFTER_SUCCESSFUL_PASSES} successful passes in a row
+ * (reported with {@link #reportSuccessfulPass()}), so that reads split because of a temporary problem can be combined again.
+ * <p>
+ * This is not thread safe.
+ */
+public class ModbusReadPlanner {
+	static final int MERGE_AFTER_SUCCESSFUL_PASSES = 100;
+
+	private final int maxRegistersPerRead;
+	private final BitSet recordedRegisters = new BitSet();
+	/** Registers that are never included in a bulk read */
+	private final BitSet excludedRegisters = new BitSet();
+	/** Registers that cannot be in the same read as the register before them */
+	private final BitSet splitRegisters = new BitSet();
+	/** The number of passes in a row where every planned read succeeded */
+	private int successfulPasses = 0;
+
+	private List<Range> plan = null;
+
+	/**
+	 * @param maxRegistersPerRead The maximum number of registers a single read can request
+	 */
+	public ModbusReadPlanner(int maxRegistersPerRead) {
+		if (maxRegistersPerRead < 1) {
+			throw new IllegalArgumentException("maxRegistersPerRead must be at least 1! maxRegistersPerRead=" + maxRegistersPerRead);
+		}
+		this.maxRegistersPerRead = maxRegistersPerRead;
+	}
+
+	/**
+	 * Makes it so the given registers are never included in a bulk read. Reads of these registers are always sent to the device.
+	 * @return this
+	 */
+	public ModbusReadPlanner excludeRangeInclusive(int startRegister, int endRegister) {
+		excludedRegisters.set(startRegister, endRegister + 1);
+		plan = null;
+		return this;
+	}
+	/** @return this */
+	public ModbusReadPlanner exclude(int register) {
+		return excludeRangeInclusive(register, register);
+	}
+
+	/**
+	 * Records that registers were read.
+	 */
+	public void recordRead(int startRegister, int numberOfRegisters) {
+		int endRegister = startRegister + numberOfRegisters;
+		int nextClear = recordedRegisters.nextClearBit(startRegister);
+		if (nextClear < endRegister) {
+			recordedRegisters.set(startRegister, endRegister);
+			plan = null;
+		}
+	}
+
+	/**
+	 * Should be called when a device rejects the read of {@code range}
+	 */
+	public void reportRejected(Range range) {
+		if (range.numberOfRegisters == 1) {
+			excludedRegisters.set(range.startRegister);
+			plan = null;
+		} else {
+			reportFailed(range);
+		}
+	}
+
+	/**
+	 * Should be called when the read of {@code range} fails without being rejected, such as when it times out. Unlike {@link #reportRejected(Range)},
+	 * a single register is never excluded, because the device may just be disconnected.
+	 */
+	public void reportFailed(Range range) {
+		successfulPasses = 0;
+		if (range.numberOfRegisters > 1) {
+			splitRegisters.set(range.startRegister + range.numberOfRegisters / 2);
+			plan = null;
+		}
+	}
+
+	/**
+	 * Should be called when every read of the plan succeeded
+	 */
+	public void reportSuccessfulPass() {
+		if (splitRegisters.isEmpty()) {
+			return;
+		}
+		successfulPasses++;
+		if (successfulPasses >= MERGE_AFTER_SUCCESSFUL_PASSES) {
+			successfulPasses = 0;
+			splitRegisters.clear();
+			plan = null;
+		}
+	}
+
+	/**
+	 * @return The reads that should be done to cache every recorded register that isn't excluded
+	 */
+	public List<Range> getPlan() {
+		List<Range> plan = this.plan;
+		if (plan == null) {
+			plan = Collections.unmodifiableList(createPlan());
+			this.plan = plan;
+		}
+		return plan;
+	}
+
+	private List<Range> createPlan() {
+		List<Range> r = new ArrayList<>();
+		int start = -1; // the start of the current read, or -1
+		int end = -1; // the end (exclusive) of the current read
+		for (int register = recordedRegisters.nextSetBit(0); register >= 0; register = recordedRegisters.nextSetBit(register + 1)) {
+			boolean excluded = excludedRegisters.get(register);
+			if (start != -1 && (excluded || register != end || splitRegisters.get(register) || register - start == maxRegistersPerRead)) {
+				r.add(new Range(start, end - start));
+				start = -1;
+			}
+			if (!excluded) {
+				if (start == -1) {
+					start = register;
+				}
+				end = register + 1;
+			}
+		}
+		if (start != -1) {
+			r.add(new Range(start, end - start));
+		}
+		return r;
+	}
+
+	public static final class Range {
+		private final int startRegister;
+		private final int numberOfRegisters;
+
+		public Range(int startRegister, int numberOfRegisters) {
+			this.startRegister = startRegister;
+			this.numberOfRegisters = numberOfRegisters;
+		}
+
+		public int getStartRegister() {
+			return startRegister;
+		}
+
+		public int getNumberOfRegisters() {
+			return numberOfRegisters;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Range range = (Range) o;
+			return startRegister == range.startRegister && numberOfRegisters == range.numberOfRegisters;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * startRegister + numberOfRegisters;
+		}
+
+		@Override
+		public String toString() {
+			return "Range(start=" + String.format("0x%04X", startRegister) + " count=" + numberOfRegisters + ")";
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package me.retrodaredevil.solarthing.program.modbus;
+
+import me.retrodaredevil.solarthing.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Stores the values of registers of a single type (holding or input). Each contiguous range of registers that has been stored is kept in a dense {@code int[]}
+ * along with a bitmap of which registers in that range currently have a value.
+ * <p>
+ * Once the ranges that are stored stop changing, storing values does not allocate anything, and reading values only allocates the returned array.
+ * <p>
+ * This is not thread safe.
+ */
+final class RegisterFile {
+	/** Non-overlapping and non-adjacent blocks, sorted by start register */
+	private final List<Block> blocks = new ArrayList<>();
+
+	/**
+	 * Removes every value. The memory used for existing ranges is kept so that it can be reused.
+	 */
+	void clear() {
+		for (Block block : blocks) {
+			block.valid.clear();
+		}
+	}
+
+	void put(int startRegister, int[] values) {
+		if (values.length == 0) {
+			return;
+		}
+		Block block = getOrCreateBlock(startRegister, startRegister + values.length);
+		int offset = startRegister - block.startRegister;
+		System.arraycopy(values, 0, block.values, offset, values.length);
+		block.valid.set(offset, offset + values.length);
+	}
+
+	/**
+	 * @return The values of the given range of registers, or null if a register in that range does not have a value
+	 */
+	@Nullable int[] get(int startRegister, int numberOfRegisters) {
+		Block block = getBlock(startRegister, startRegister + numberOfRegisters);
+		if (block == null) {
+			return null;
+		}
+		int offset = startRegister - block.startRegister;
+		if (block.valid.nextClearBit(offset) < offset + numberOfRegisters) {
+			return null;
+		}
+		int[] r = new int[numberOfRegisters];
+		System.arraycopy(block.values, offset, r, 0, numberOfRegisters);
+		return r;
+	}
+
+	/**
+	 * @return The first register in the given range that has a value, or -1
+	 */
+	int firstValidRegister(int startRegister, int numberOfRegisters) {
+		Block block = getBlock(startRegister, startRegister + numberOfRegisters);
+		if (block == null) {
+			return -1;
+		}
+		int offset = startRegister - block.startRegister;
+		int next = block.valid.nextSetBit(offset);
+		return next == -1 || next >= offset + numberOfRegisters ? -1 : block.startRegister + next;
+	}
+
+	/** @return The block that contains every register from {@code startRegister} (inclusive) to {@code endRegister} (exclusive) or null */
+	private @Nullable Block getBlock(int startRegister, int endRegister) {
+		for (Block block : blocks) {
+			if (block.startRegister <= startRegister && endRegister <= block.getEndRegister()) {
+				return block;
+			}
+			if (block.startRegister > startRegister) {
+				break;
+			}
+		}
+		return null;
+	}
+
+	private Block getOrCreateBlock(int startRegister, int endRegister) {
+		Block existing = getBlock(startRegister, endRegister);
+		if (existing != null) {
+			return existing;
+		}
+		// Merge every block that overlaps or is adjacent to the range into a new block
+		int newStart = startRegister;
+		int newEnd = endRegister;
+		int insertIndex = 0;
+		List<Block> merged = new ArrayList<>();
+		for (Block block : blocks) {
+			if (block.getEndRegister() < startRegister) {
+				insertIndex++;
+			} else if (block.startRegister <= endRegister) {
+				merged.add(block);
+				newStart = Math.min(newStart, block.startRegister);
+				newEnd = Math.max(newEnd, block.getEndRegister());
+			}
+		}
+		Block block = new Block(newStart, newEnd - newStart);
+		for (Block old : merged) {
+			int offset = old.startRegister - newStart;
+			System.arraycopy(old.values, 0, block.values, offset, old.values.length);
+			for (int i = old.valid.nextSetBit(0); i >= 0; i = old.valid.nextSetBit(i + 1)) {
+				block.valid.set(offset + i);
+			}
+		}
+		blocks.removeAll(merged);
+		blocks.add(insertIndex, block);
+		return block;
+	}
+
+	private static final class Block {
+		private final int startRegister;
+		private final int[] values;
+		private final BitSet valid;
+
+		private Block(int startRegister, int numberOfRegisters) {
+			this.startRegister = startRegister;
+			this.values = new int[numberOfRegisters];
+			this.valid = new BitSet(numberOfRegisters);
+		}
+
+		int getEndRegister() {
+			return startRegister + values.length;
+		}
+	}
+}
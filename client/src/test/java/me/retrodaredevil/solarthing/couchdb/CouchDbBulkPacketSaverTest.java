@@ -0,0 +1,120 @@
+package me.retrodaredevil.solarthing.couchdb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.retrodaredevil.couchdbjava.CouchDbAuth;
+import me.retrodaredevil.couchdbjava.CouchDbDatabase;
+import me.retrodaredevil.couchdbjava.okhttp.OkHttpCouchDbInstance;
+import me.retrodaredevil.couchdbjava.okhttp.auth.BasicAuthHandler;
+import me.retrodaredevil.solarthing.database.couchdb.CouchDbHttpConnection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollections;
+import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePackets;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CouchDbBulkPacketSaverTest {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final OkHttpClient CLIENT = new OkHttpClient();
+
+	private MockWebServer server;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = new MockWebServer();
+		server.start();
+	}
+	@AfterEach
+	void stopServer() throws IOException {
+		server.shutdown();
+	}
+
+	private CouchDbBulkPacketSaver createSaver(boolean ignoreConflicts) {
+		HttpUrl url = server.url("/");
+		CouchDbDatabase database = new OkHttpCouchDbInstance(CLIENT, url, new BasicAuthHandler(CouchDbAuth.create("admin", "password"))).getDatabase("solarthing_events");
+		return new CouchDbBulkPacketSaver(database, new CouchDbHttpConnection(CLIENT, url, null), ignoreConflicts);
+	}
+	private static PacketCollection createPacketCollection(String id) {
+		return PacketCollections.create(Instant.ofEpochMilli(1000), Collections.singletonList(InstanceSourcePackets.create("default")), id);
+	}
+	private static MockResponse jsonResponse(String body) {
+		return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+	}
+	/** @return The "docs" of the next _bulk_docs request */
+	private JsonNode takeDocs() throws InterruptedException, IOException {
+		RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+		assertNotNull(request);
+		assertEquals("POST", request.getMethod());
+		assertEquals("/solarthing_events/_bulk_docs", request.getPath());
+		return MAPPER.readTree(request.getBody().readUtf8()).get("docs");
+	}
+
+	@Test
+	void testPerDocumentErrors() throws PacketHandleException, InterruptedException, IOException {
+		CouchDbBulkPacketSaver saver = createSaver(true);
+		server.enqueue(jsonResponse("[" +
+				"{\"ok\":true,\"id\":\"a\",\"rev\":\"1-a\"}," +
+				"{\"id\":\"b\",\"error\":\"conflict\",\"reason\":\"Document update conflict.\"}," +
+				"{\"id\":\"c\",\"error\":\"forbidden\",\"reason\":\"Not allowed\"}" +
+				"]"));
+		List<PacketHandleException> exceptions = saver.handleAll(Arrays.asList(createPacketCollection("a"), createPacketCollection("b"), createPacketCollection("c")));
+
+		assertEquals(3, exceptions.size());
+		assertNull(exceptions.get(0));
+		assertNull(exceptions.get(1)); // conflicts are ignored
+		assertNotNull(exceptions.get(2));
+
+		JsonNode docs = takeDocs();
+		assertEquals(3, docs.size());
+		assertEquals("a", docs.get(0).get("_id").asText());
+		assertFalse(docs.get(0).has("_rev"));
+		assertEquals(1000, docs.get(0).get("dateMillis").asLong());
+	}
+
+	@Test
+	void testConflictIsReported() throws PacketHandleException, InterruptedException, IOException {
+		CouchDbBulkPacketSaver saver = createSaver(false);
+		server.enqueue(jsonResponse("[{\"ok\":true,\"id\":\"a\",\"rev\":\"1-a\"}]"));
+		saver.handle(createPacketCollection("a"));
+		takeDocs();
+
+		server.enqueue(jsonResponse("[{\"ok\":true,\"id\":\"a\",\"rev\":\"2-a\"},{\"id\":\"b\",\"error\":\"conflict\",\"reason\":\"Document update conflict.\"}]"));
+		server.enqueue(new MockResponse().setResponseCode(404)); // the saver may try to get the current revision of "b"
+		List<PacketHandleException> exceptions = saver.handleAll(Arrays.asList(createPacketCollection("a"), createPacketCollection("b")));
+		assertNull(exceptions.get(0));
+		assertNotNull(exceptions.get(1));
+
+		JsonNode docs = takeDocs();
+		assertEquals("1-a", docs.get(0).get("_rev").asText()); // the revision from the first upload is used
+		assertFalse(docs.get(1).has("_rev"));
+	}
+
+	@Test
+	void testUnsuccessfulResponse() {
+		CouchDbBulkPacketSaver saver = createSaver(true);
+		server.enqueue(new MockResponse().setResponseCode(500));
+		assertThrows(PacketHandleException.class, () -> saver.handleAll(Collections.singletonList(createPacketCollection("a"))));
+		server.enqueue(jsonResponse("[]"));
+		assertThrows(PacketHandleException.class, () -> saver.handleAll(Collections.singletonList(createPacketCollection("a")))); // wrong number of results
+	}
+}
@@ -0,0 +1,93 @@
+package me.retrodaredevil.solarthing.influxdb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.ValueNode;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.solar.SolarStatusPacket;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PointSchemaTest {
+	private static final File DIRECTORY_PACKETS = new File("../testing/packets");
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+
+	/** The way packets were turned into points before {@link PointSchema} existed */
+	private static void writeReference(Packet packet, Map<String, Object> tags, Map<String, Object> fields) {
+		Collection<String> tagKeys = PointUtil.getTagKeys(packet.getClass());
+		ObjectNode json = MAPPER.valueToTree(packet);
+		for (Map.Entry<String, ValueNode> entry : PointUtil.flattenJsonObject(json)) {
+			String key = entry.getKey();
+			ValueNode prim = entry.getValue();
+			if (tagKeys.contains(key)) {
+				tags.put(key, prim.asText());
+			}
+			if (prim.isNumber()) {
+				fields.put(key, prim.isBigDecimal() ? ((DecimalNode) prim).decimalValue() : (Object) prim.asDouble());
+			} else if (prim.isTextual() || prim.isBinary()) {
+				fields.put(key, prim.asText());
+			} else if (prim.isBoolean()) {
+				fields.put(key, prim.asBoolean());
+			} else throw new AssertionError();
+		}
+	}
+
+	@Test
+	void testSameAsFlattenJsonObject() throws IOException {
+		int count = 0;
+		for (String directoryName : new String[] { "fx", "mx", "rover", "tracer" }) {
+			for (File file : requireNonNull(new File(DIRECTORY_PACKETS, directoryName).listFiles())) {
+				Packet packet = MAPPER.readValue(file, SolarStatusPacket.class);
+				Map<String, Object> expectedTags = new HashMap<>();
+				Map<String, Object> expectedFields = new HashMap<>();
+				writeReference(packet, expectedTags, expectedFields);
+
+				Map<String, Object> tags = new HashMap<>();
+				Map<String, Object> fields = new HashMap<>();
+				PointSchema.write(packet, new PointFieldConsumer() {
+					@Override
+					public void tag(String key, String value) {
+						tags.put(key, value);
+					}
+
+					@Override
+					public void field(String key, double value) {
+						fields.put(key, value);
+					}
+
+					@Override
+					public void field(String key, BigDecimal value) {
+						fields.put(key, value);
+					}
+
+					@Override
+					public void field(String key, String value) {
+						fields.put(key, value);
+					}
+
+					@Override
+					public void field(String key, boolean value) {
+						fields.put(key, value);
+					}
+				});
+				assertFalse(expectedFields.isEmpty());
+				assertEquals(expectedTags, tags, file.getName());
+				assertEquals(expectedFields, fields, file.getName());
+				count++;
+			}
+		}
+		assertEquals(6, count);
+	}
+}
@@ -0,0 +1,44 @@
+package me.retrodaredevil.solarthing.log;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteRingBufferTest {
+
+	private static boolean write(ByteRingBuffer buffer, String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		return buffer.write(bytes, 0, bytes.length);
+	}
+	private static String read(ByteRingBuffer buffer, int maxLength) throws InterruptedException {
+		byte[] destination = new byte[maxLength];
+		int length = buffer.read(destination, 0, TimeUnit.MILLISECONDS);
+		return new String(destination, 0, length, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testWrapAround() throws InterruptedException {
+		ByteRingBuffer buffer = new ByteRingBuffer(8);
+		assertTrue(write(buffer, "abcdef"));
+		assertEquals("abcd", read(buffer, 4));
+		assertTrue(write(buffer, "ghijkl")); // wraps around the end of the array
+		assertEquals("efghijkl", read(buffer, 100));
+		assertEquals("", read(buffer, 100));
+	}
+
+	@Test
+	void testDropWhenFull() throws InterruptedException {
+		ByteRingBuffer buffer = new ByteRingBuffer(8);
+		assertTrue(write(buffer, "abcde"));
+		assertFalse(write(buffer, "fghij"));
+		assertTrue(write(buffer, "fgh"));
+		assertEquals(5, buffer.takeDroppedBytes());
+		assertEquals(0, buffer.takeDroppedBytes());
+		assertEquals("abcdefgh", read(buffer, 100));
+	}
+}
@@ -0,0 +1,151 @@
+package me.retrodaredevil.solarthing.packets.handling.implementations;
+
+import me.retrodaredevil.okhttp3.OkHttpPropertiesBuilder;
+import me.retrodaredevil.solarthing.packets.collection.EncodedPacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollections;
+import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePackets;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PostPacketHandlerTest {
+	private static final MediaType JSON = MediaType.get("application/json");
+	private static final OkHttpClient CLIENT = PostPacketHandler.createClient(new OkHttpPropertiesBuilder().build(), null);
+
+	private MockWebServer server;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = new MockWebServer();
+		server.start();
+	}
+	@AfterEach
+	void stopServer() throws IOException {
+		server.shutdown();
+	}
+
+	private static PacketCollection createPacketCollection(long dateMillis) {
+		return PacketCollections.create(Instant.ofEpochMilli(dateMillis), Collections.singletonList(InstanceSourcePackets.create("default")), "id" + dateMillis);
+	}
+	private static String json(PacketCollection packetCollection) {
+		return EncodedPacketCollection.getJson(packetCollection);
+	}
+	private RecordedRequest takeRequest() throws InterruptedException {
+		return server.takeRequest(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void testReusesConnection() throws PacketHandleException, InterruptedException {
+		PostPacketHandler handler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, false, null);
+		PacketCollection first = createPacketCollection(1000);
+		PacketCollection second = createPacketCollection(2000);
+		server.enqueue(new MockResponse().setBody("a response body that must be read"));
+		server.enqueue(new MockResponse().setBody("another response body"));
+		handler.handle(first);
+		handler.handle(second);
+
+		RecordedRequest firstRequest = takeRequest();
+		assertEquals(json(first), firstRequest.getBody().readUtf8());
+		assertEquals("application/json", firstRequest.getHeader("Content-Type"));
+		RecordedRequest secondRequest = takeRequest();
+		assertEquals(json(second), secondRequest.getBody().readUtf8());
+		assertEquals(1, secondRequest.getSequenceNumber()); // the second request was made on the same connection
+	}
+
+	@Test
+	void testUnsuccessfulResponse() {
+		PostPacketHandler handler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, false, null);
+		server.enqueue(new MockResponse().setResponseCode(500));
+		assertThrows(PacketHandleException.class, () -> handler.handle(createPacketCollection(1000)));
+	}
+
+	@Test
+	void testBatch() throws PacketHandleException, InterruptedException {
+		PostPacketHandler arrayHandler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, false, new PostBatchSettings(2, 60_000, PostBatchFormat.JSON_ARRAY));
+		PostPacketHandler ndjsonHandler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, false, new PostBatchSettings(2, 60_000, PostBatchFormat.NDJSON));
+		PacketCollection first = createPacketCollection(1000);
+		PacketCollection second = createPacketCollection(2000);
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+
+		arrayHandler.handle(first);
+		assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS)); // the batch is not full yet
+		arrayHandler.handle(second);
+		RecordedRequest arrayRequest = takeRequest();
+		assertEquals("[" + json(first) + "," + json(second) + "]", arrayRequest.getBody().readUtf8());
+
+		ndjsonHandler.handle(first);
+		ndjsonHandler.handle(second);
+		RecordedRequest ndjsonRequest = takeRequest();
+		assertEquals(json(first) + "\n" + json(second) + "\n", ndjsonRequest.getBody().readUtf8());
+		assertEquals("application/x-ndjson", ndjsonRequest.getHeader("Content-Type"));
+	}
+
+	@Test
+	void testFlushInterval() throws PacketHandleException, InterruptedException {
+		PostPacketHandler handler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, false, new PostBatchSettings(100, 0, PostBatchFormat.NDJSON));
+		PacketCollection packetCollection = createPacketCollection(1000);
+		server.enqueue(new MockResponse());
+		handler.handle(packetCollection);
+		assertEquals(json(packetCollection) + "\n", takeRequest().getBody().readUtf8());
+	}
+
+	@Test
+	void testScheduledFlush() throws PacketHandleException, InterruptedException {
+		PostPacketHandler handler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, false, new PostBatchSettings(100, 100, PostBatchFormat.NDJSON));
+		PacketCollection packetCollection = createPacketCollection(1000);
+		server.enqueue(new MockResponse());
+		handler.handle(packetCollection);
+		// posted once the flush interval passes, even though nothing else is handled
+		assertEquals(json(packetCollection) + "\n", takeRequest().getBody().readUtf8());
+	}
+
+	@Test
+	void testFailedBatchIsKept() throws PacketHandleException, InterruptedException {
+		PostPacketHandler handler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, false, new PostBatchSettings(1, 60_000, PostBatchFormat.NDJSON));
+		PacketCollection first = createPacketCollection(1000);
+		PacketCollection second = createPacketCollection(2000);
+		server.enqueue(new MockResponse().setResponseCode(500));
+		server.enqueue(new MockResponse());
+		assertThrows(PacketHandleException.class, () -> handler.handle(first));
+		takeRequest();
+		handler.handle(second);
+		assertEquals(json(first) + "\n" + json(second) + "\n", takeRequest().getBody().readUtf8());
+	}
+
+	@Test
+	void testGzip() throws PacketHandleException, InterruptedException, IOException {
+		PostPacketHandler handler = new PostPacketHandler(CLIENT, server.url("/").toString(), null, JSON, true, null);
+		PacketCollection packetCollection = createPacketCollection(1000);
+		server.enqueue(new MockResponse());
+		handler.handle(packetCollection);
+
+		RecordedRequest request = takeRequest();
+		assertEquals("gzip", request.getHeader("Content-Encoding"));
+		Buffer decompressed = new Buffer();
+		try (GzipSource gzipSource = new GzipSource(request.getBody())) {
+			while (gzipSource.read(decompressed, 8192) != -1) {
+				// keep reading
+			}
+		}
+		assertEquals(json(packetCollection), decompressed.readUtf8());
+	}
+}
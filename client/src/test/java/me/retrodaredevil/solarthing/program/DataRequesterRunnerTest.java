@@ -0,0 +1,119 @@
+package me.retrodaredevil.solarthing.program;
+
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.config.request.DataRequester;
+import me.retrodaredevil.solarthing.config.request.DataRequesterResult;
+import me.retrodaredevil.solarthing.config.request.RequestObject;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.handling.PacketListReceiver;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePacket;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePackets;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataRequesterRunnerTest {
+	private static final PacketListReceiver NO_EVENTS = packets -> {};
+
+	private static DataRequester createDataRequester(@Nullable String resourceKey, Function<RequestObject, PacketListReceiver> statusPacketListReceiverCreator) {
+		return new DataRequester() {
+			@Override
+			public DataRequesterResult create(RequestObject requestObject) {
+				return new DataRequesterResult(statusPacketListReceiverCreator.apply(requestObject));
+			}
+
+			@Override
+			public @Nullable String getResourceKey() {
+				return resourceKey;
+			}
+		};
+	}
+	private static List<String> getSourceIds(List<Packet> packets) {
+		return packets.stream().map(packet -> ((InstanceSourcePacket) packet).getSourceId()).sorted().collect(Collectors.toList());
+	}
+
+	@Test
+	void testGroupsShareThreadAndLock() {
+		Map<String, Thread> threadMap = new HashMap<>();
+		Map<String, Object> lockMap = new HashMap<>();
+		DataRequesterRunner runner = new DataRequesterRunner(NO_EVENTS, Duration.ofSeconds(5));
+		for (String name : Arrays.asList("a1", "a2", "b", "c")) {
+			String resourceKey = name.equals("c") ? null : name.substring(0, 1);
+			runner.add(createDataRequester(resourceKey, requestObject -> {
+				lockMap.put(name, requestObject.getResourceLock());
+				return packets -> {
+					synchronized (threadMap) {
+						threadMap.put(name, Thread.currentThread());
+					}
+					packets.add(InstanceSourcePackets.create(name));
+				};
+			}));
+		}
+		List<Packet> packets = new ArrayList<>();
+		runner.receive(packets);
+
+		assertEquals(Arrays.asList("a1", "a2", "b", "c"), getSourceIds(packets));
+		assertSame(threadMap.get("a1"), threadMap.get("a2"));
+		assertSame(lockMap.get("a1"), lockMap.get("a2"));
+		assertNotSame(lockMap.get("a1"), lockMap.get("b"));
+		assertNotSame(lockMap.get("b"), lockMap.get("c"));
+	}
+
+	@Test
+	void testTimedOutGroupIsNotStartedAgain() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(1);
+		AtomicInteger slowCount = new AtomicInteger();
+		List<Packet> events = Collections.synchronizedList(new ArrayList<>());
+		DataRequesterRunner runner = new DataRequesterRunner(events::addAll, Duration.ofMillis(100));
+		runner.add(createDataRequester("slow", requestObject -> packets -> {
+			requestObject.getEventPacketReceiver().receive(Collections.singletonList(InstanceSourcePackets.create("event")));
+			if (slowCount.incrementAndGet() == 1) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+				finished.countDown();
+			}
+			packets.add(InstanceSourcePackets.create("slow"));
+		}));
+		runner.add(createDataRequester("fast", requestObject -> packets -> packets.add(InstanceSourcePackets.create("fast"))));
+
+		List<Packet> first = new ArrayList<>();
+		runner.receive(first);
+		assertEquals(Collections.singletonList("fast"), getSourceIds(first));
+		assertEquals(Collections.singletonList("event"), getSourceIds(events)); // events from a group that timed out are not lost
+
+		List<Packet> second = new ArrayList<>();
+		runner.receive(second);
+		assertEquals(Collections.singletonList("fast"), getSourceIds(second));
+		assertEquals(1, slowCount.get()); // still running, so it was not started again
+
+		release.countDown();
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		List<Packet> third = new ArrayList<>();
+		for (int i = 0; i < 100 && slowCount.get() == 1; i++) { // the slow group may not be done storing its packets yet
+			third.clear();
+			runner.receive(third);
+			Thread.sleep(10);
+		}
+		assertEquals(Arrays.asList("fast", "slow"), getSourceIds(third));
+	}
+}
@@ -0,0 +1,106 @@
+package me.retrodaredevil.solarthing.program;
+
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.handling.RawPacketReceiver;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SolarReaderTest {
+	private static final RawPacketReceiver RAW_PACKET_RECEIVER = new RawPacketReceiver() {
+		@Override
+		public void updateGarbledData() {
+		}
+
+		@Override
+		public void update(Collection<? extends Packet> newPackets) {
+		}
+
+		@Override
+		public void updateNoNewData() {
+		}
+	};
+
+	/** Calls {@link SolarReader#update()} until it throws an {@link IOException}, then returns that exception */
+	private static IOException updateUntilException(SolarReader solarReader) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < deadline) {
+			try {
+				solarReader.update();
+			} catch (IOException e) {
+				return e;
+			}
+		}
+		throw new AssertionError("update() never threw an exception");
+	}
+
+	@Test
+	void testEndOfStream() {
+		StringBuilder received = new StringBuilder();
+		try (SolarReader solarReader = new SolarReader(new ByteArrayInputStream("abc".getBytes()), chars -> {
+			received.append(chars);
+			return Collections.emptyList();
+		}, RAW_PACKET_RECEIVER, Duration.ofMillis(5))) {
+			assertTrue(updateUntilException(solarReader) instanceof EOFException);
+		}
+		assertEquals("abc", received.toString());
+	}
+
+	@Test
+	void testNonBlockingStreamDoesNotSpin() throws IOException {
+		AtomicInteger readCount = new AtomicInteger();
+		// Like jSerialComm's default non-blocking mode, this returns 0 right away when there is no data
+		InputStream nonBlocking = new InputStream() {
+			@Override
+			public int read() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				readCount.incrementAndGet();
+				return 0;
+			}
+		};
+		try (SolarReader solarReader = new SolarReader(nonBlocking, chars -> Collections.emptyList(), RAW_PACKET_RECEIVER, Duration.ofMillis(20))) {
+			long end = System.currentTimeMillis() + 200;
+			while (System.currentTimeMillis() < end) {
+				solarReader.update();
+			}
+		}
+		assertTrue(readCount.get() > 0);
+		assertTrue(readCount.get() < 50, "The read thread should wait between reads that return nothing. readCount=" + readCount.get());
+	}
+
+	@Test
+	void testDisconnectIsNotEndOfStream() {
+		// Like jSerialComm, this returns -1 from both read() and available() when disconnected
+		InputStream disconnected = new InputStream() {
+			@Override
+			public int read() {
+				return -1;
+			}
+
+			@Override
+			public int available() {
+				return -1;
+			}
+		};
+		try (SolarReader solarReader = new SolarReader(disconnected, chars -> Collections.emptyList(), RAW_PACKET_RECEIVER, Duration.ofMillis(5))) {
+			assertFalse(updateUntilException(solarReader) instanceof EOFException, "A disconnect should reload the IO, not end the program");
+			// The read thread is still alive and reads again after the IO is reloaded
+			assertFalse(updateUntilException(solarReader) instanceof EOFException);
+		}
+	}
+}
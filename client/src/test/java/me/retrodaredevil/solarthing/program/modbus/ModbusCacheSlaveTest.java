@@ -0,0 +1,95 @@
+package me.retrodaredevil.solarthing.program.modbus;
+
+import me.retrodaredevil.io.modbus.ModbusMessage;
+import me.retrodaredevil.io.modbus.ModbusSlave;
+import me.retrodaredevil.io.modbus.ModbusTimeoutException;
+import me.retrodaredevil.io.modbus.handling.MessageHandler;
+import me.retrodaredevil.io.modbus.handling.ReadHoldingRegisters;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModbusCacheSlaveTest {
+
+	/**
+	 * A device that never responds to a read of more than {@code maxRegistersPerRead} registers, or to any read while {@link #offline} is true.
+	 * The value of each register is its address.
+	 */
+	private static final class TimeoutModbusSlave implements ModbusSlave {
+		private final int maxRegistersPerRead;
+		private final List<ModbusReadPlanner.Range> reads = new ArrayList<>();
+		private boolean offline = false;
+
+		private TimeoutModbusSlave(int maxRegistersPerRead) {
+			this.maxRegistersPerRead = maxRegistersPerRead;
+		}
+
+		@Override
+		public ModbusMessage sendRequestMessage(ModbusMessage message) {
+			throw new UnsupportedOperationException();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> T sendRequestMessage(MessageHandler<T> messageHandler) {
+			ReadHoldingRegisters read = (ReadHoldingRegisters) messageHandler;
+			reads.add(new ModbusReadPlanner.Range(read.getStartingDataAddress(), read.getNumberOfRegisters()));
+			if (offline || read.getNumberOfRegisters() > maxRegistersPerRead) {
+				throw new ModbusTimeoutException("Timed out");
+			}
+			int[] values = new int[read.getNumberOfRegisters()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = read.getStartingDataAddress() + i;
+			}
+			return (T) values;
+		}
+	}
+
+	private static ModbusCacheSlave createRecordedCacheSlave(TimeoutModbusSlave device) {
+		ModbusCacheSlave cacheSlave = new ModbusCacheSlave(device, new ModbusReadPlanner(32), null);
+		// not cached yet, so these are sent to the device and recorded
+		cacheSlave.sendRequestMessage(new ReadHoldingRegisters(0x0100, 4));
+		cacheSlave.sendRequestMessage(new ReadHoldingRegisters(0x0104, 4));
+		cacheSlave.sendRequestMessage(new ReadHoldingRegisters(0x0200, 2));
+		device.reads.clear();
+		return cacheSlave;
+	}
+
+	@Test
+	void testTimedOutReadIsSplit() {
+		TimeoutModbusSlave device = new TimeoutModbusSlave(4);
+		ModbusCacheSlave cacheSlave = createRecordedCacheSlave(device);
+
+		cacheSlave.cachePlanned(); // times out, but does not throw because the other read succeeded
+		assertEquals(Arrays.asList(new ModbusReadPlanner.Range(0x0100, 8), new ModbusReadPlanner.Range(0x0200, 2)), device.reads);
+		device.reads.clear();
+
+		cacheSlave.cachePlanned();
+		assertEquals(Arrays.asList(new ModbusReadPlanner.Range(0x0100, 4), new ModbusReadPlanner.Range(0x0104, 4), new ModbusReadPlanner.Range(0x0200, 2)), device.reads);
+		device.reads.clear();
+
+		assertArrayEquals(new int[] { 0x0102, 0x0103, 0x0104, 0x0105 }, cacheSlave.sendRequestMessage(new ReadHoldingRegisters(0x0102, 4)));
+		assertEquals(0, device.reads.size()); // answered from the cache
+	}
+
+	@Test
+	void testOfflineDeviceIsNotSplit() {
+		TimeoutModbusSlave device = new TimeoutModbusSlave(8);
+		ModbusCacheSlave cacheSlave = createRecordedCacheSlave(device);
+		device.offline = true;
+
+		assertThrows(ModbusTimeoutException.class, cacheSlave::cachePlanned);
+		assertThrows(ModbusTimeoutException.class, cacheSlave::cachePlanned);
+		device.offline = false;
+		device.reads.clear();
+
+		cacheSlave.cachePlanned();
+		assertEquals(Arrays.asList(new ModbusReadPlanner.Range(0x0100, 8), new ModbusReadPlanner.Range(0x0200, 2)), device.reads);
+	}
+}
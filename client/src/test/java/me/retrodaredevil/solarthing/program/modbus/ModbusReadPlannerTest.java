@@ -0,0 +1,72 @@
+package me.retrodaredevil.solarthing.program.modbus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ModbusReadPlannerTest {
+
+	private static ModbusReadPlanner.Range range(int startRegister, int endRegister) {
+		return new ModbusReadPlanner.Range(startRegister, endRegister - startRegister + 1);
+	}
+
+	@Test
+	void testContiguousRegistersAreCombined() {
+		ModbusReadPlanner planner = new ModbusReadPlanner(32).exclude(0x010A);
+		for (int register = 0x0100; register <= 0x0122; register++) {
+			planner.recordRead(register, 1);
+		}
+		planner.recordRead(0x000A, 1);
+		planner.recordRead(0x000C, 8);
+		planner.recordRead(0x000B, 1);
+		assertEquals(Arrays.asList(range(0x000A, 0x0013), range(0x0100, 0x0109), range(0x010B, 0x0122)), planner.getPlan());
+	}
+
+	@Test
+	void testMaxRegisters() {
+		ModbusReadPlanner planner = new ModbusReadPlanner(10);
+		planner.recordRead(0x3300, 25);
+		assertEquals(Arrays.asList(range(0x3300, 0x3309), range(0x330A, 0x3313), range(0x3314, 0x3318)), planner.getPlan());
+	}
+
+	@Test
+	void testPlanIsReusedUntilNewRegisterIsRead() {
+		ModbusReadPlanner planner = new ModbusReadPlanner(32);
+		planner.recordRead(0x9000, 4);
+		List<ModbusReadPlanner.Range> plan = planner.getPlan();
+		planner.recordRead(0x9001, 2);
+		assertSame(plan, planner.getPlan());
+		planner.recordRead(0x9004, 1);
+		assertEquals(Arrays.asList(range(0x9000, 0x9004)), planner.getPlan());
+	}
+
+	@Test
+	void testRejectedReadIsSplit() {
+		ModbusReadPlanner planner = new ModbusReadPlanner(32);
+		planner.recordRead(0xE002, 8);
+		planner.reportRejected(range(0xE002, 0xE009));
+		assertEquals(Arrays.asList(range(0xE002, 0xE005), range(0xE006, 0xE009)), planner.getPlan());
+		planner.reportRejected(range(0xE006, 0xE009));
+		planner.reportRejected(range(0xE008, 0xE009));
+		planner.reportRejected(range(0xE009, 0xE009));
+		assertEquals(Arrays.asList(range(0xE002, 0xE005), range(0xE006, 0xE007), range(0xE008, 0xE008)), planner.getPlan());
+	}
+
+	@Test
+	void testSplitsAreForgottenAfterSuccessfulPasses() {
+		ModbusReadPlanner planner = new ModbusReadPlanner(32);
+		planner.recordRead(0x3100, 8);
+		planner.reportFailed(range(0x3100, 0x3107));
+		assertEquals(Arrays.asList(range(0x3100, 0x3103), range(0x3104, 0x3107)), planner.getPlan());
+		for (int i = 1; i < ModbusReadPlanner.MERGE_AFTER_SUCCESSFUL_PASSES; i++) {
+			planner.reportSuccessfulPass();
+		}
+		assertEquals(2, planner.getPlan().size());
+		planner.reportSuccessfulPass();
+		assertEquals(Arrays.asList(range(0x3100, 0x3107)), planner.getPlan());
+	}
+}
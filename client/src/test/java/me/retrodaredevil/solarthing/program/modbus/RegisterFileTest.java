@@ -0,0 +1,40 @@
+package me.retrodaredevil.solarthing.program.modbus;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RegisterFileTest {
+
+	@Test
+	void testPutAndGet() {
+		RegisterFile registerFile = new RegisterFile();
+		registerFile.put(0x000A, new int[] { 1, 2, 3 });
+		registerFile.put(0x0100, new int[] { 7, 8 });
+		assertArrayEquals(new int[] { 2, 3 }, registerFile.get(0x000B, 2));
+		assertArrayEquals(new int[] { 8 }, registerFile.get(0x0101, 1));
+		assertNull(registerFile.get(0x000C, 2));
+		assertNull(registerFile.get(0x0009, 1));
+
+		registerFile.clear();
+		assertNull(registerFile.get(0x000A, 1));
+		registerFile.put(0x000B, new int[] { 5 });
+		assertArrayEquals(new int[] { 5 }, registerFile.get(0x000B, 1));
+		assertNull(registerFile.get(0x000A, 2));
+		assertEquals(0x000B, registerFile.firstValidRegister(0x000A, 3));
+		assertEquals(-1, registerFile.firstValidRegister(0x000C, 1));
+	}
+
+	@Test
+	void testMergeRanges() {
+		RegisterFile registerFile = new RegisterFile();
+		registerFile.put(0x0010, new int[] { 1, 2 });
+		registerFile.put(0x0014, new int[] { 5, 6 });
+		registerFile.put(0x0012, new int[] { 3, 4 }); // fills the gap, so all three ranges become one
+		assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6 }, registerFile.get(0x0010, 6));
+		registerFile.put(0x000F, new int[] { 0, 10 }); // overlaps the start
+		assertArrayEquals(new int[] { 0, 10, 2, 3, 4, 5, 6 }, registerFile.get(0x000F, 7));
+	}
+}
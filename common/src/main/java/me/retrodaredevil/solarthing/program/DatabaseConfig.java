@@ -6,6 +6,8 @@ import me.retrodaredevil.solarthing.annotations.JsonExplicit;
 import me.retrodaredevil.solarthing.config.databases.DatabaseSettings;
 import me.retrodaredevil.solarthing.config.databases.DatabaseType;
 import me.retrodaredevil.solarthing.config.databases.IndividualSettings;
+import me.retrodaredevil.solarthing.packets.handling.QueueSettings;
+import me.retrodaredevil.solarthing.packets.handling.RetryQueueSettings;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -24,19 +26,33 @@ public final class DatabaseConfig {
 	private final DatabaseSettings settings;
 	@JsonProperty("settings")
 	private final Map<String, IndividualSettings> individualSettingsMap;
+	@JsonProperty("queue")
+	private final QueueSettings queueSettings;
+	@JsonProperty("retry_queue")
+	private final RetryQueueSettings retryQueueSettings;
 
 	private DatabaseConfig(){
 		// Jackson will call this constructor and then serialize fields
 		type = null;
 		settings = null;
 		individualSettingsMap = Collections.emptyMap();
+		queueSettings = QueueSettings.DEFAULT_SETTINGS;
+		retryQueueSettings = RetryQueueSettings.DEFAULT_SETTINGS;
 	}
 
-	public DatabaseConfig(DatabaseSettings settings, Map<String, IndividualSettings> frequencySettingsMap) {
+	public DatabaseConfig(DatabaseSettings settings, Map<String, IndividualSettings> frequencySettingsMap, QueueSettings queueSettings, RetryQueueSettings retryQueueSettings) {
 		this.settings = settings;
 		this.individualSettingsMap = Collections.unmodifiableMap(new HashMap<>(frequencySettingsMap));
+		this.queueSettings = queueSettings;
+		this.retryQueueSettings = retryQueueSettings;
 		type = settings.getDatabaseType().getName();
 	}
+	public DatabaseConfig(DatabaseSettings settings, Map<String, IndividualSettings> frequencySettingsMap, QueueSettings queueSettings) {
+		this(settings, frequencySettingsMap, queueSettings, RetryQueueSettings.DEFAULT_SETTINGS);
+	}
+	public DatabaseConfig(DatabaseSettings settings, Map<String, IndividualSettings> frequencySettingsMap) {
+		this(settings, frequencySettingsMap, QueueSettings.DEFAULT_SETTINGS);
+	}
 
 	/**
 	 * @return The {@link DatabaseType}. This determines what type {@link #getSettings()} will return
@@ -60,12 +76,28 @@ public final class DatabaseConfig {
 		return r;
 	}
 
+	/**
+	 * @return The settings for the queues of packet handlers that upload to this database on a separate thread. These are used by every database type except "latest".
+	 */
+	public QueueSettings getQueueSettings() {
+		return queueSettings;
+	}
+
+	/**
+	 * @return The settings for the disk backed queues of packet handlers that retry uploading events to this database. These are used by every database type that events are uploaded to: "couchdb", "influxdb" and "influxdb2".
+	 */
+	public RetryQueueSettings getRetryQueueSettings() {
+		return retryQueueSettings;
+	}
+
 	@Override
 	public String toString() {
 		return "DatabaseConfig(" +
 				"type='" + type + '\'' +
 				", settings=" + settings +
 				", individualSettingsMap=" + individualSettingsMap +
+				", queueSettings=" + queueSettings +
+				", retryQueueSettings=" + retryQueueSettings +
 				')';
 	}
 }
@@ -10,7 +10,15 @@ public final class OkHttpUtil {
 	private OkHttpUtil() { throw new UnsupportedOperationException(); }
 
 	public static OkHttpClient.Builder createBuilder(OkHttpProperties okHttpProperties) {
-		return new OkHttpClient.Builder()
+		return configure(new OkHttpClient.Builder(), okHttpProperties);
+	}
+
+	/**
+	 * Applies {@code okHttpProperties} to {@code builder}. This is useful for builders from {@link OkHttpClient#newBuilder()}, which share resources with an existing client.
+	 * @return {@code builder}
+	 */
+	public static OkHttpClient.Builder configure(OkHttpClient.Builder builder, OkHttpProperties okHttpProperties) {
+		return builder
 				.retryOnConnectionFailure(okHttpProperties.isRetryOnConnectionFailure())
 				.callTimeout(okHttpProperties.getCallTimeoutMillis(), TimeUnit.MILLISECONDS)
 				.connectTimeout(okHttpProperties.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
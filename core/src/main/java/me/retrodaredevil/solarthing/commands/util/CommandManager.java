@@ -18,7 +18,6 @@ import me.retrodaredevil.solarthing.util.JacksonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -39,7 +38,6 @@ import static java.util.Objects.requireNonNull;
 public class CommandManager {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CommandManager.class);
 	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
-	private static final Cipher CIPHER = KeyUtil.createCipher();
 
 	private final Supplier<KeyPair> keyPairSupplier;
 	private final String sender;
@@ -117,9 +115,7 @@ public class CommandManager {
 			String hashString = Long.toHexString(now.toEpochMilli()) + "," + HashUtil.encodedHash(payload);
 			final String encrypted;
 			try {
-				synchronized (CIPHER) { // It's possible we could be in a multi-threaded environment, and you cannot have multiple threads using a single cipher at once
-					encrypted = Encrypt.encrypt(CIPHER, keyPair.getPrivate(), hashString);
-				}
+				encrypted = Encrypt.encrypt(keyPair.getPrivate(), hashString);
 			} catch (InvalidKeyException | EncryptException e) {
 				throw new RuntimeException(e);
 			}
@@ -1,5 +1,6 @@
 package me.retrodaredevil.solarthing.database;
 
+import me.retrodaredevil.solarthing.annotations.Nullable;
 import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
@@ -12,4 +13,9 @@ public interface MillisDatabase {
 	UpdateToken uploadPacketCollection(PacketCollection packetCollection, UpdateToken updateToken) throws SolarThingDatabaseException;
 	VersionedPacket<StoredPacketGroup> getPacketCollection(String documentId) throws SolarThingDatabaseException;
 	UpdateToken getCurrentUpdateToken(String documentId) throws SolarThingDatabaseException;
+
+	/**
+	 * @return A feed that can be used to wait for changes to this database, or null if this database does not support that. When null, this database must be polled with {@link #query(MillisQuery)}.
+	 */
+	default @Nullable PacketGroupChangesFeed getChangesFeed() { return null; }
 }
@@ -0,0 +1,31 @@
+package me.retrodaredevil.solarthing.database;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The packet groups that were added or updated in a {@link MillisDatabase} and the sequence to use to wait for the next changes.
+ */
+public final class PacketGroupChanges {
+	private final List<StoredPacketGroup> packetGroups;
+	private final String lastSequence;
+
+	public PacketGroupChanges(@NotNull List<StoredPacketGroup> packetGroups, @NotNull String lastSequence) {
+		requireNonNull(this.packetGroups = packetGroups);
+		requireNonNull(this.lastSequence = lastSequence);
+	}
+
+	/** @return The added or updated packet groups in the order they were changed. May be empty */
+	public @NotNull List<StoredPacketGroup> getPacketGroups() {
+		return packetGroups;
+	}
+
+	/** @return The sequence that should be passed to the next call of {@link PacketGroupChangesFeed#waitForChanges(String, java.time.Duration)} */
+	public @NotNull String getLastSequence() {
+		return lastSequence;
+	}
+}
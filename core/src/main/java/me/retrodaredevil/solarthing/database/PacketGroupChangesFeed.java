@@ -0,0 +1,26 @@
+package me.retrodaredevil.solarthing.database;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
+
+import java.time.Duration;
+
+/**
+ * Allows waiting for changes to a {@link MillisDatabase} without querying it repeatedly
+ */
+@FunctionalInterface
+public interface PacketGroupChangesFeed {
+	/**
+	 * Waits for packet groups to be added or updated after {@code since}. This may block for up to {@code timeout}.
+	 * <p>
+	 * If {@code since} is null, this returns immediately with no packet groups, and the returned sequence can be used to wait for changes made after this call.
+	 * <p>
+	 * If many packet groups changed, only some of them may be returned. The rest are returned by the next call that uses the returned sequence.
+	 * @param since The sequence returned from a previous call, or null
+	 * @param timeout The maximum amount of time to wait for a change
+	 * @return The changes, which are empty if {@code timeout} was reached
+	 * @throws SolarThingDatabaseException Thrown on connection errors
+	 */
+	@NotNull PacketGroupChanges waitForChanges(@Nullable String since, @NotNull Duration timeout) throws SolarThingDatabaseException;
+}
@@ -0,0 +1,325 @@
+package me.retrodaredevil.solarthing.database.cache;
+
+import me.retrodaredevil.solarthing.database.MillisDatabase;
+import me.retrodaredevil.solarthing.database.MillisQuery;
+import me.retrodaredevil.solarthing.database.MillisQueryBuilder;
+import me.retrodaredevil.solarthing.database.UpdateToken;
+import me.retrodaredevil.solarthing.database.VersionedPacket;
+import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link MillisDatabase} that keeps the results of range queries in memory so that overlapping queries do not have to query the whole range again.
+ * <p>
+ * Packet groups older than the volatile window (the same idea as {@link SimpleDatabaseCache}) are assumed to never change, so ranges of them are cached.
+ * When a query comes in, the parts of its range that are cached are served from memory, and only the parts that are not cached (usually just the
+ * volatile tail) are queried. Cached ranges expire after {@code timeToLive} and the least recently used ranges are evicted once more than
+ * {@code maxPacketGroups} packet groups are cached.
+ * <p>
+ * A packet group that is uploaded by something else with a date older than the volatile window, such as an event replayed from a retry queue,
+ * is not seen until the cached range that contains it expires. Use {@link #createForEvents(MillisDatabase)} for databases where that is common.
+ * <p>
+ * Queries that have a limit, are descending, or do not have both a start and end key are passed straight to the underlying database.
+ * <p>
+ * This is thread safe.
+ */
+public class CachingMillisDatabase implements MillisDatabase {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachingMillisDatabase.class);
+
+	public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+	public static final int DEFAULT_MAX_PACKET_GROUPS = 100_000;
+
+	private final MillisDatabase database;
+	private final Duration volatileWindowDuration;
+	private final Duration timeToLive;
+	private final int maxPacketGroups;
+	private final Clock clock;
+
+	/** Non overlapping segments of cached packet groups, keyed by {@link Segment#startDateMillis}. Must be synchronized on. */
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+	private int packetGroupCount = 0;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public CachingMillisDatabase(MillisDatabase database, Duration volatileWindowDuration, Duration timeToLive, int maxPacketGroups, Clock clock) {
+		requireNonNull(this.database = database);
+		requireNonNull(this.volatileWindowDuration = volatileWindowDuration);
+		requireNonNull(this.timeToLive = timeToLive);
+		this.maxPacketGroups = maxPacketGroups;
+		requireNonNull(this.clock = clock);
+	}
+	public static CachingMillisDatabase createDefault(MillisDatabase database) {
+		return new CachingMillisDatabase(database, SimpleDatabaseCache.DEFAULT_VOLATILE_WINDOW_DURATION, DEFAULT_TIME_TO_LIVE, DEFAULT_MAX_PACKET_GROUPS, Clock.systemUTC());
+	}
+
+	/**
+	 * Events that could not be uploaded right away are uploaded later with their original date, so cached ranges of an event database only live as long as the volatile window.
+	 * This makes it so a late event is seen at most twice the volatile window after it was uploaded.
+	 */
+	public static CachingMillisDatabase createForEvents(MillisDatabase database) {
+		Duration volatileWindowDuration = SimpleDatabaseCache.DEFAULT_VOLATILE_WINDOW_DURATION;
+		return new CachingMillisDatabase(database, volatileWindowDuration, volatileWindowDuration, DEFAULT_MAX_PACKET_GROUPS, Clock.systemUTC());
+	}
+
+	/** @return The number of queries where everything except the most recent part of the range was served from memory */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	/** @return The number of queries that had to query older parts of their range from the database */
+	public long getMissCount() {
+		return missCount.get();
+	}
+	/** @return The number of packet groups currently cached */
+	public int getPacketGroupCount() {
+		synchronized (segments) {
+			return packetGroupCount;
+		}
+	}
+
+	@Override
+	public List<StoredPacketGroup> query(MillisQuery query) throws SolarThingDatabaseException {
+		Long startKey = query.getStartKey();
+		Long endKey = query.getEndKey();
+		if (startKey == null || endKey == null || query.getLimit() != null || query.isDescending()) {
+			missCount.incrementAndGet();
+			return database.query(query);
+		}
+		long from = startKey;
+		long to = query.isInclusiveEnd() ? endKey : endKey - 1;
+		if (from > to) {
+			return database.query(query);
+		}
+		long nowMillis = clock.millis();
+		long immutableEnd = Math.min(to, nowMillis - volatileWindowDuration.toMillis() - 1);
+
+		List<Piece> pieces = new ArrayList<>();
+		long cursor = from;
+		synchronized (segments) {
+			removeExpired(nowMillis);
+			if (cursor <= immutableEnd) {
+				Long floorKey = segments.floorKey(from);
+				for (Segment segment : segments.tailMap(floorKey == null ? from : floorKey, true).values()) {
+					if (segment.endDateMillis < cursor) {
+						continue;
+					}
+					if (segment.startDateMillis > immutableEnd) {
+						break;
+					}
+					if (segment.startDateMillis > cursor) {
+						pieces.add(Piece.notCached(cursor, segment.startDateMillis - 1));
+					}
+					long pieceEnd = Math.min(immutableEnd, segment.endDateMillis);
+					pieces.add(Piece.cached(cursor, pieceEnd, segment.getPacketGroups(cursor, pieceEnd)));
+					segment.lastAccessMillis = nowMillis;
+					cursor = pieceEnd + 1;
+					if (cursor > immutableEnd) {
+						break;
+					}
+				}
+				if (cursor <= immutableEnd) {
+					pieces.add(Piece.notCached(cursor, immutableEnd));
+					cursor = immutableEnd + 1;
+				}
+			}
+		}
+		// A hit is when everything except the most recent part of the range came from memory
+		boolean hit = false;
+		boolean miss = false;
+		List<StoredPacketGroup> r = new ArrayList<>();
+		for (int i = 0; i < pieces.size(); i++) {
+			Piece piece = pieces.get(i);
+			if (piece.packetGroups != null) {
+				r.addAll(piece.packetGroups);
+				hit = true;
+				continue;
+			}
+			boolean lastPiece = i == pieces.size() - 1;
+			if (!lastPiece) {
+				miss = true;
+			}
+			boolean queryTail = lastPiece && cursor <= to;
+			// If this is the last piece, we query the volatile tail at the same time
+			List<StoredPacketGroup> queried = queryRange(piece.startDateMillis, queryTail ? to : piece.endDateMillis);
+			if (queryTail) {
+				cursor = to + 1;
+			}
+			List<StoredPacketGroup> packetGroups = new ArrayList<>();
+			for (StoredPacketGroup packetGroup : queried) {
+				if (packetGroup.getDateMillis() <= piece.endDateMillis) {
+					packetGroups.add(packetGroup);
+				}
+			}
+			addSegment(new Segment(piece.startDateMillis, piece.endDateMillis, packetGroups, nowMillis));
+			r.addAll(queried);
+		}
+		if (cursor <= to) {
+			r.addAll(queryRange(cursor, to));
+		}
+		if (miss || !hit) {
+			missCount.incrementAndGet();
+			hit = false;
+		} else {
+			hitCount.incrementAndGet();
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Queried from {} to {}. hit={} hits={} misses={} cached packet groups={}", from, to, hit, hitCount.get(), missCount.get(), getPacketGroupCount());
+		}
+		return r;
+	}
+	private List<StoredPacketGroup> queryRange(long startDateMillis, long endDateMillis) throws SolarThingDatabaseException {
+		return database.query(new MillisQueryBuilder()
+				.startKey(startDateMillis)
+				.endKey(endDateMillis)
+				.inclusiveEnd(true)
+				.build());
+	}
+
+	private void addSegment(Segment segment) {
+		if (segment.packetGroups.size() > maxPacketGroups) {
+			return;
+		}
+		synchronized (segments) {
+			Map.Entry<Long, Segment> previous = segments.floorEntry(segment.endDateMillis);
+			if (previous != null && previous.getValue().endDateMillis >= segment.startDateMillis) {
+				return; // another thread already cached part of this range
+			}
+			Map.Entry<Long, Segment> next = segments.higherEntry(segment.endDateMillis);
+			Segment merged = segment;
+			if (previous != null && previous.getValue().endDateMillis + 1 == segment.startDateMillis) {
+				merged = Segment.merge(segments.remove(previous.getKey()), merged);
+			}
+			if (next != null && segment.endDateMillis + 1 == next.getKey()) {
+				merged = Segment.merge(merged, segments.remove(next.getKey()));
+			}
+			segments.put(merged.startDateMillis, merged);
+			packetGroupCount += segment.packetGroups.size();
+			while (packetGroupCount > maxPacketGroups) {
+				Segment leastRecentlyUsed = null;
+				for (Segment existing : segments.values()) {
+					if (leastRecentlyUsed == null || existing.lastAccessMillis < leastRecentlyUsed.lastAccessMillis) {
+						leastRecentlyUsed = existing;
+					}
+				}
+				removeSegment(requireNonNull(leastRecentlyUsed));
+			}
+		}
+	}
+	private void removeExpired(long nowMillis) {
+		long ttlMillis = timeToLive.toMillis();
+		for (Iterator<Segment> it = segments.values().iterator(); it.hasNext(); ) {
+			Segment segment = it.next();
+			if (nowMillis - segment.createdMillis > ttlMillis) {
+				it.remove();
+				packetGroupCount -= segment.packetGroups.size();
+			}
+		}
+	}
+	private void removeSegment(Segment segment) {
+		segments.remove(segment.startDateMillis);
+		packetGroupCount -= segment.packetGroups.size();
+	}
+
+	@Override
+	public UpdateToken uploadPacketCollection(PacketCollection packetCollection, UpdateToken updateToken) throws SolarThingDatabaseException {
+		UpdateToken r = database.uploadPacketCollection(packetCollection, updateToken);
+		synchronized (segments) {
+			Map.Entry<Long, Segment> entry = segments.floorEntry(packetCollection.getDateMillis());
+			if (entry != null && entry.getValue().endDateMillis >= packetCollection.getDateMillis()) {
+				removeSegment(entry.getValue());
+			}
+		}
+		return r;
+	}
+
+	@Override
+	public VersionedPacket<StoredPacketGroup> getPacketCollection(String documentId) throws SolarThingDatabaseException {
+		return database.getPacketCollection(documentId);
+	}
+
+	@Override
+	public UpdateToken getCurrentUpdateToken(String documentId) throws SolarThingDatabaseException {
+		return database.getCurrentUpdateToken(documentId);
+	}
+
+	@Override
+	public String toString() {
+		return "CachingMillisDatabase(" + database + ")";
+	}
+
+	private static final class Piece {
+		private final long startDateMillis;
+		private final long endDateMillis;
+		/** The cached packet groups, or null if this piece must be queried */
+		private final List<StoredPacketGroup> packetGroups;
+
+		private Piece(long startDateMillis, long endDateMillis, List<StoredPacketGroup> packetGroups) {
+			this.startDateMillis = startDateMillis;
+			this.endDateMillis = endDateMillis;
+			this.packetGroups = packetGroups;
+		}
+		private static Piece cached(long startDateMillis, long endDateMillis, List<StoredPacketGroup> packetGroups) {
+			return new Piece(startDateMillis, endDateMillis, requireNonNull(packetGroups));
+		}
+		private static Piece notCached(long startDateMillis, long endDateMillis) {
+			return new Piece(startDateMillis, endDateMillis, null);
+		}
+	}
+	private static final class Segment {
+		private final long startDateMillis;
+		private final long endDateMillis;
+		/** The packet groups in this segment, sorted by date millis */
+		private final List<StoredPacketGroup> packetGroups;
+		private final long createdMillis;
+		private long lastAccessMillis;
+
+		private Segment(long startDateMillis, long endDateMillis, List<StoredPacketGroup> packetGroups, long createdMillis) {
+			this.startDateMillis = startDateMillis;
+			this.endDateMillis = endDateMillis;
+			this.packetGroups = packetGroups;
+			this.createdMillis = createdMillis;
+			this.lastAccessMillis = createdMillis;
+		}
+		private static Segment merge(Segment first, Segment second) {
+			List<StoredPacketGroup> packetGroups = new ArrayList<>(first.packetGroups.size() + second.packetGroups.size());
+			packetGroups.addAll(first.packetGroups);
+			packetGroups.addAll(second.packetGroups);
+			Segment r = new Segment(first.startDateMillis, second.endDateMillis, packetGroups, Math.min(first.createdMillis, second.createdMillis));
+			r.lastAccessMillis = Math.max(first.lastAccessMillis, second.lastAccessMillis);
+			return r;
+		}
+
+		/** @return The packet groups with a date millis in the range [start, end] */
+		private List<StoredPacketGroup> getPacketGroups(long start, long end) {
+			return new ArrayList<>(packetGroups.subList(indexOfFirst(start), indexOfFirst(end + 1)));
+		}
+		/** @return The index of the first packet group with a date millis greater than or equal to {@code dateMillis} */
+		private int indexOfFirst(long dateMillis) {
+			int low = 0;
+			int high = packetGroups.size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (packetGroups.get(middle).getDateMillis() < dateMillis) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
@@ -3,6 +3,7 @@ package me.retrodaredevil.solarthing.database.cache;
 import me.retrodaredevil.solarthing.annotations.Nullable;
 import me.retrodaredevil.solarthing.database.MillisQuery;
 import me.retrodaredevil.solarthing.database.MillisQueryBuilder;
+import me.retrodaredevil.solarthing.packets.collection.IncrementalPacketGroupMerger;
 import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
 import me.retrodaredevil.solarthing.util.TimeRange;
 import org.jetbrains.annotations.NotNull;
@@ -12,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.NoSuchElementException;
@@ -38,18 +40,29 @@ public class SimpleDatabaseCache implements DatabaseCache {
 	private final Duration minimumDuration;
 	private final Duration volatileWindowDuration;
 	private final Clock clock;
+	private final @Nullable IncrementalPacketGroupMerger packetGroupMerger;
 
 	private Data data = null;
 
-	public SimpleDatabaseCache(Duration keepMaxDuration, Duration keepDuration, Duration minimumDuration, Duration volatileWindowDuration, Clock clock) {
+	/**
+	 * @param packetGroupMerger If not null, any changes to the packet groups in this cache are also applied to this merger
+	 */
+	public SimpleDatabaseCache(Duration keepMaxDuration, Duration keepDuration, Duration minimumDuration, Duration volatileWindowDuration, Clock clock, @Nullable IncrementalPacketGroupMerger packetGroupMerger) {
 		this.keepMaxDuration = keepMaxDuration;
 		this.keepDuration = keepDuration;
 		this.minimumDuration = minimumDuration;
 		this.volatileWindowDuration = volatileWindowDuration;
 		this.clock = clock;
+		this.packetGroupMerger = packetGroupMerger;
+	}
+	public SimpleDatabaseCache(Duration keepMaxDuration, Duration keepDuration, Duration minimumDuration, Duration volatileWindowDuration, Clock clock) {
+		this(keepMaxDuration, keepDuration, minimumDuration, volatileWindowDuration, clock, null);
+	}
+	public static SimpleDatabaseCache createDefault(Clock clock, @Nullable IncrementalPacketGroupMerger packetGroupMerger) {
+		return new SimpleDatabaseCache(DEFAULT_KEEP_MAX_DURATION, DEFAULT_KEEP_DURATION, DEFAULT_MINIMUM_DURATION, DEFAULT_VOLATILE_WINDOW_DURATION, clock, packetGroupMerger);
 	}
 	public static SimpleDatabaseCache createDefault(Clock clock) {
-		return new SimpleDatabaseCache(DEFAULT_KEEP_MAX_DURATION, DEFAULT_KEEP_DURATION, DEFAULT_MINIMUM_DURATION, DEFAULT_VOLATILE_WINDOW_DURATION, clock);
+		return createDefault(clock, null);
 	}
 	public static SimpleDatabaseCache createDefault() {
 		return createDefault(Clock.systemUTC());
@@ -109,8 +122,7 @@ public class SimpleDatabaseCache implements DatabaseCache {
 			throw new IllegalArgumentException("The query end date must never decrease! We have a packet group with a date millis after the passed queryEndDateMillis=" + queryEndDateMillis);
 		}
 		Instant now = clock.instant();
-		packetGroups.tailSet(new Node(queryStartDateMillis), true).clear();
-		queriedPacketGroups.stream().map(Node::new).collect(Collectors.toCollection(() -> packetGroups));
+		replaceOnOrAfter(queryStartDateMillis, queriedPacketGroups.stream().map(Node::new));
 
 		long lowestPossibleVolatileAfterDateMillis = now.minus(volatileWindowDuration).toEpochMilli();
 		if (queryEndDateMillis != null && queryEndDateMillis < lowestPossibleVolatileAfterDateMillis) {
@@ -135,6 +147,43 @@ public class SimpleDatabaseCache implements DatabaseCache {
 		checkThenMaybePurge(now);
 	}
 
+	/**
+	 * Adds packet groups that were added or updated in the database. These are usually from a {@link me.retrodaredevil.solarthing.database.PacketGroupChangesFeed}.
+	 * A cached packet group with the same date millis as a changed packet group is replaced.
+	 * <p>
+	 * Unlike {@link #feed(List, long, Long)}, this does not change the recommended query.
+	 */
+	public void feedChanges(List<StoredPacketGroup> changedPacketGroups) {
+		if (changedPacketGroups.isEmpty()) {
+			return;
+		}
+		long startDateMillis = Long.MAX_VALUE;
+		for (StoredPacketGroup packetGroup : changedPacketGroups) {
+			startDateMillis = Math.min(startDateMillis, packetGroup.getDateMillis());
+		}
+		// Nodes that are added first take precedence, so changed packet groups replace cached packet groups with the same dateMillis
+		TreeSet<Node> nodes = changedPacketGroups.stream().map(Node::new).collect(Collectors.toCollection(TreeSet::new));
+		nodes.addAll(packetGroups.tailSet(new Node(startDateMillis), true));
+		replaceOnOrAfter(startDateMillis, nodes.stream());
+
+		checkThenMaybePurge(clock.instant());
+	}
+
+	private void replaceOnOrAfter(long startDateMillis, Stream<Node> nodes) {
+		NavigableSet<Node> replacedPacketGroups = packetGroups.tailSet(new Node(startDateMillis), true);
+		List<Node> nodeList = nodes.collect(Collectors.toList()); // collect first because nodes may come from replacedPacketGroups
+		replacedPacketGroups.clear();
+		packetGroups.addAll(nodeList);
+		if (packetGroupMerger != null) {
+			// We give the merger what we actually stored, as packet groups with the same dateMillis are only stored once
+			List<StoredPacketGroup> storedPacketGroups = new ArrayList<>(replacedPacketGroups.size());
+			for (Node node : replacedPacketGroups) {
+				storedPacketGroups.add(node.packetGroup);
+			}
+			packetGroupMerger.replaceOnOrAfter(startDateMillis, storedPacketGroups);
+		}
+	}
+
 	private void checkThenMaybePurge(Instant now) {
 		final Node firstNode;
 		try {
@@ -149,6 +198,9 @@ public class SimpleDatabaseCache implements DatabaseCache {
 	}
 	private void purgeOnOrBefore(Instant instant) {
 		packetGroups.headSet(new Node(instant.toEpochMilli()), true).clear();
+		if (packetGroupMerger != null) {
+			packetGroupMerger.removeOnOrBefore(instant.toEpochMilli());
+		}
 	}
 
 	private static final class Data {
@@ -0,0 +1,59 @@
+package me.retrodaredevil.solarthing.database.couchdb;
+
+import me.retrodaredevil.couchdb.CouchProperties;
+import me.retrodaredevil.okhttp3.OkHttpProperties;
+import me.retrodaredevil.okhttp3.OkHttpUtil;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Contains what is needed to make requests to CouchDB with OkHttp directly, such as requests to a database's {@code _changes} and {@code _bulk_docs} endpoints.
+ * <p>
+ * couchdb-java does not support the {@code _changes} endpoint or streamed request bodies, so those requests are made with OkHttp directly.
+ * Basic authentication is always used for these requests, which CouchDB accepts even when cookie authentication is used for everything else.
+ */
+public final class CouchDbHttpConnection {
+	private final OkHttpClient client;
+	private final HttpUrl serverUrl;
+	private final @Nullable String authorization;
+
+	public CouchDbHttpConnection(@NotNull OkHttpClient client, @NotNull HttpUrl serverUrl, @Nullable String authorization) {
+		requireNonNull(this.client = client);
+		requireNonNull(this.serverUrl = serverUrl);
+		this.authorization = authorization;
+	}
+	public static CouchDbHttpConnection create(CouchProperties couchProperties, OkHttpProperties okHttpProperties) {
+		String username = couchProperties.getUsername();
+		String password = couchProperties.getPassword();
+		String authorization = username == null || password == null ? null : Credentials.basic(username, password);
+		return new CouchDbHttpConnection(OkHttpUtil.createBuilder(okHttpProperties).build(), couchProperties.getHttpUrl(), authorization);
+	}
+
+	public OkHttpClient getClient() {
+		return client;
+	}
+
+	public HttpUrl.Builder createDatabaseUrlBuilder(String databaseName) {
+		return serverUrl.newBuilder()
+				.addPathSegment(databaseName);
+	}
+
+	HttpUrl.Builder createChangesUrlBuilder(String databaseName) {
+		return createDatabaseUrlBuilder(databaseName)
+				.addPathSegment("_changes");
+	}
+
+	public Request.Builder createRequestBuilder(HttpUrl url) {
+		Request.Builder builder = new Request.Builder().url(url);
+		if (authorization != null) {
+			builder.header("Authorization", authorization);
+		}
+		return builder;
+	}
+}
@@ -1,23 +1,29 @@
 package me.retrodaredevil.solarthing.database.couchdb;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import me.retrodaredevil.couchdbjava.CouchDbDatabase;
 import me.retrodaredevil.couchdbjava.exception.CouchDbException;
 import me.retrodaredevil.couchdbjava.json.JsonData;
 import me.retrodaredevil.couchdbjava.json.StringJsonData;
-import me.retrodaredevil.couchdbjava.json.jackson.CouchDbJacksonUtil;
 import me.retrodaredevil.couchdbjava.response.DocumentData;
 import me.retrodaredevil.couchdbjava.response.DocumentResponse;
 import me.retrodaredevil.couchdbjava.response.ViewResponse;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
 import me.retrodaredevil.solarthing.couchdb.SolarThingCouchDb;
 import me.retrodaredevil.solarthing.database.MillisDatabase;
 import me.retrodaredevil.solarthing.database.MillisQuery;
+import me.retrodaredevil.solarthing.database.PacketGroupChanges;
+import me.retrodaredevil.solarthing.database.PacketGroupChangesFeed;
 import me.retrodaredevil.solarthing.database.UpdateToken;
 import me.retrodaredevil.solarthing.database.VersionedPacket;
+import me.retrodaredevil.solarthing.database.exception.NotFoundSolarThingDatabaseException;
 import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
+import me.retrodaredevil.solarthing.database.exception.UnauthorizedSolarThingDatabaseException;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroup;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
@@ -25,41 +31,73 @@ import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
 import me.retrodaredevil.solarthing.packets.collection.parsing.PacketParseException;
 import me.retrodaredevil.solarthing.packets.collection.parsing.PacketParsingErrorHandler;
 import me.retrodaredevil.solarthing.packets.collection.parsing.SimplePacketGroupParser;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class CouchDbMillisDatabase implements MillisDatabase {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CouchDbMillisDatabase.class);
+	/** The amount of time to wait for a response after the longpoll timeout has been reached */
+	private static final Duration CHANGES_TIMEOUT_GRACE_PERIOD = Duration.ofSeconds(15);
+	/** The maximum number of changes to get in a single request. The rest are returned by the next request, which starts at the returned last_seq */
+	private static final int CHANGES_LIMIT = 100;
 
 	private final CouchDbDatabase database;
 	private final ObjectMapper mapper;
 	private final SimplePacketGroupParser parser;
+	private final @Nullable CouchDbHttpConnection httpConnection;
 
-	public CouchDbMillisDatabase(CouchDbDatabase database, ObjectMapper mapper, PacketParsingErrorHandler errorHandler) {
+	/**
+	 * @param httpConnection The connection used to wait for changes, or null if {@link #getChangesFeed()} should return null
+	 */
+	public CouchDbMillisDatabase(CouchDbDatabase database, ObjectMapper mapper, PacketParsingErrorHandler errorHandler, @Nullable CouchDbHttpConnection httpConnection) {
 		this.database = database;
 		this.mapper = mapper;
 		this.parser = new SimplePacketGroupParser(mapper, errorHandler);
+		this.httpConnection = httpConnection;
+	}
+	public CouchDbMillisDatabase(CouchDbDatabase database, ObjectMapper mapper, PacketParsingErrorHandler errorHandler) {
+		this(database, mapper, errorHandler, null);
 	}
 
+	/**
+	 * Parses a document in a single pass. The packets are deserialized as they are read, so we never build a tree of the entire document.
+	 */
 	private VersionedPacket<StoredPacketGroup> jsonDataToStoredPacketGroup(JsonData jsonData) throws SolarThingDatabaseException {
-		final JsonNode jsonNode;
-		try {
-			jsonNode = CouchDbJacksonUtil.getNodeFrom(jsonData);
-		} catch (JsonProcessingException e) {
+		try (JsonParser jsonParser = mapper.createParser(jsonData.getJson())) {
+			return parseStoredPacketGroup(jsonParser);
+		} catch (IOException e) {
 			throw new SolarThingDatabaseException("We couldn't parse some of the data into JSON. This should never happen", e);
 		}
-		if (!jsonNode.isObject()) {
-			throw new SolarThingDatabaseException("Something must be wrong with the packet millis view because we got this jsonNode: " + jsonNode);
-		}
-		ObjectNode objectNode = (ObjectNode) jsonNode;
+	}
+	private VersionedPacket<StoredPacketGroup> parseStoredPacketGroup(JsonParser jsonParser) throws SolarThingDatabaseException, IOException {
+		String[] documentIdAndRevision = new String[2];
 		final PacketGroup packetGroup;
 		try {
-			packetGroup = parser.parse(objectNode);
+			packetGroup = parser.parse(jsonParser, (fieldName, fieldParser) -> {
+				if ("_id".equals(fieldName)) {
+					documentIdAndRevision[0] = fieldParser.getValueAsString();
+				} else if ("_rev".equals(fieldName)) {
+					documentIdAndRevision[1] = fieldParser.getValueAsString();
+				}
+			});
 		} catch (PacketParseException e) {
 			throw new SolarThingDatabaseException(e);
 		}
-		String documentId = objectNode.get("_id").asText();
-		String documentRevision = objectNode.get("_rev").asText();
+		String documentId = documentIdAndRevision[0];
+		String documentRevision = documentIdAndRevision[1];
+		if (documentId == null || documentRevision == null) {
+			throw new SolarThingDatabaseException("Something must be wrong with the packet millis view because a document is missing _id or _rev! documentId=" + documentId + " documentRevision=" + documentRevision);
+		}
 		StoredPacketGroup storedPacketGroup = PacketGroups.createStoredPacketGroup(packetGroup, new CouchDbStoredIdentifier(packetGroup.getDateMillis(), documentId, documentRevision));
 		return new VersionedPacket<>(storedPacketGroup, new RevisionUpdateToken(documentRevision));
 	}
@@ -125,6 +163,118 @@ public class CouchDbMillisDatabase implements MillisDatabase {
 		}
 	}
 
+	@Override
+	public @Nullable PacketGroupChangesFeed getChangesFeed() {
+		return httpConnection == null ? null : this::waitForChanges;
+	}
+
+	private @NotNull PacketGroupChanges waitForChanges(@Nullable String since, @NotNull Duration timeout) throws SolarThingDatabaseException {
+		CouchDbHttpConnection httpConnection = this.httpConnection;
+		assert httpConnection != null;
+		HttpUrl.Builder urlBuilder = httpConnection.createChangesUrlBuilder(database.getName());
+		if (since == null) {
+			urlBuilder.addQueryParameter("since", "now"); // a normal feed returns right away with the current sequence
+		} else {
+			urlBuilder.addQueryParameter("feed", "longpoll")
+					.addQueryParameter("since", since)
+					.addQueryParameter("timeout", Long.toString(timeout.toMillis()))
+					.addQueryParameter("include_docs", "true")
+					.addQueryParameter("limit", Integer.toString(CHANGES_LIMIT));
+		}
+		long readTimeoutMillis = timeout.plus(CHANGES_TIMEOUT_GRACE_PERIOD).toMillis();
+		try (Response response = httpConnection.getClient().newBuilder()
+				.readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+				.callTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+				.build()
+				.newCall(httpConnection.createRequestBuilder(urlBuilder.build()).build())
+				.execute()) {
+			ResponseBody body = response.body();
+			if (!response.isSuccessful() || body == null) {
+				String message = "Unsuccessful _changes request for database: " + database.getName() + " code: " + response.code();
+				if (response.code() == 401 || response.code() == 403) {
+					throw new UnauthorizedSolarThingDatabaseException(message);
+				}
+				if (response.code() == 404) {
+					throw new NotFoundSolarThingDatabaseException(message);
+				}
+				throw new SolarThingDatabaseException(message);
+			}
+			try (JsonParser jsonParser = mapper.createParser(body.byteStream())) {
+				return parseChanges(jsonParser);
+			}
+		} catch (IOException e) {
+			throw new SolarThingDatabaseException("Could not get changes for database: " + database.getName(), e);
+		}
+	}
+
+	/**
+	 * Parses a response from the {@code _changes} endpoint as it is read, so that only one document is in memory at a time
+	 */
+	private PacketGroupChanges parseChanges(JsonParser jsonParser) throws SolarThingDatabaseException, IOException {
+		if (jsonParser.nextToken() != JsonToken.START_OBJECT) {
+			throw new SolarThingDatabaseException("The _changes response was not an object! database: " + database.getName());
+		}
+		List<StoredPacketGroup> packetGroups = new ArrayList<>();
+		String lastSequence = null;
+		while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = jsonParser.getCurrentName();
+			JsonToken token = jsonParser.nextToken();
+			if ("last_seq".equals(fieldName)) {
+				lastSequence = token == JsonToken.VALUE_NULL ? null : jsonParser.getValueAsString();
+			} else if ("results".equals(fieldName) && token == JsonToken.START_ARRAY) {
+				while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+					StoredPacketGroup packetGroup = parseChangesResult(jsonParser);
+					if (packetGroup != null) {
+						packetGroups.add(packetGroup);
+					}
+				}
+			} else {
+				jsonParser.skipChildren();
+			}
+		}
+		if (lastSequence == null) {
+			throw new SolarThingDatabaseException("The _changes response did not have last_seq! database: " + database.getName());
+		}
+		return new PacketGroupChanges(packetGroups, lastSequence);
+	}
+
+	/**
+	 * @param jsonParser The parser, whose current token is the start of a result. When this returns, the current token is the end of that result
+	 * @return The changed packet group, or null if the result is not for a packet group or could not be parsed
+	 */
+	private @Nullable StoredPacketGroup parseChangesResult(JsonParser jsonParser) throws IOException {
+		JsonStreamContext resultContext = jsonParser.getParsingContext();
+		String id = null;
+		boolean deleted = false;
+		StoredPacketGroup packetGroup = null;
+		while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = jsonParser.getCurrentName();
+			JsonToken token = jsonParser.nextToken();
+			if ("id".equals(fieldName)) {
+				id = jsonParser.getValueAsString();
+			} else if ("deleted".equals(fieldName)) {
+				deleted = token == JsonToken.VALUE_TRUE;
+			} else if ("doc".equals(fieldName) && token == JsonToken.START_OBJECT && !deleted && (id == null || !id.startsWith("_design/"))) {
+				try {
+					packetGroup = parseStoredPacketGroup(jsonParser).getPacket();
+				} catch (SolarThingDatabaseException e) {
+					LOGGER.debug("Could not parse changed document with id: " + id + " in database: " + database.getName(), e);
+					while (jsonParser.getParsingContext() != resultContext) { // skip the rest of the document
+						if (jsonParser.nextToken() == null) {
+							throw new EOFException("The _changes response ended in the middle of a document");
+						}
+					}
+				}
+			} else {
+				jsonParser.skipChildren();
+			}
+		}
+		if (deleted || id == null || id.startsWith("_design/")) {
+			return null;
+		}
+		return packetGroup;
+	}
+
 	@Override
 	public String toString() {
 		return "CouchDbMillisDatabase(database name=" + database.getName() + ")";
@@ -58,8 +58,9 @@ public class CouchDbSolarThingDatabase implements SolarThingDatabase {
 	 * @param instance
 	 * @param errorHandler
 	 * @param mapper The object mapper. "Lenient" settings should have already been applied to this
+	 * @param httpConnection The connection used for the changes feeds of the status, event and open databases, or null to not support changes feeds
 	 */
-	public CouchDbSolarThingDatabase(CouchDbInstance instance, PacketParsingErrorHandler errorHandler, ObjectMapper mapper) {
+	public CouchDbSolarThingDatabase(CouchDbInstance instance, PacketParsingErrorHandler errorHandler, ObjectMapper mapper, @Nullable CouchDbHttpConnection httpConnection) {
 		closedDatabase = instance.getDatabase(SolarThingConstants.CLOSED_DATABASE);
 		metaObjectMapper = JacksonUtil.lenientSubTypeMapper(mapper.copy());
 		metaObjectMapper.getSubtypeResolver().registerSubtypes(TargetMetaPacket.class, DeviceInfoPacket.class, DataMetaPacket.class, FXChargingSettingsPacket.class, FXChargingTemperatureAdjustPacket.class);
@@ -67,20 +68,26 @@ public class CouchDbSolarThingDatabase implements SolarThingDatabase {
 
 		ObjectMapper statusMapper = mapper.copy();
 		statusMapper.getSubtypeResolver().registerSubtypes(SolarStatusPacket.class, SolarExtraPacket.class, DevicePacket.class, ErrorPacket.class, WeatherPacket.class, InstancePacket.class, CommandStatusPacket.class);
-		statusDatabase = new CouchDbMillisDatabase(instance.getDatabase(SolarThingConstants.STATUS_DATABASE), statusMapper, errorHandler);
+		statusDatabase = new CouchDbMillisDatabase(instance.getDatabase(SolarThingConstants.STATUS_DATABASE), statusMapper, errorHandler, httpConnection);
 
 		ObjectMapper eventMapper = mapper.copy();
 		eventMapper.getSubtypeResolver().registerSubtypes(SolarEventPacket.class, MateCommandFeedbackPacket.class, FeedbackPacket.class, InstancePacket.class, InstancePacket.class);
-		eventDatabase = new CouchDbMillisDatabase(instance.getDatabase(SolarThingConstants.EVENT_DATABASE), eventMapper, errorHandler);
+		eventDatabase = new CouchDbMillisDatabase(instance.getDatabase(SolarThingConstants.EVENT_DATABASE), eventMapper, errorHandler, httpConnection);
 
 		ObjectMapper openMapper = mapper.copy();
 		openMapper.getSubtypeResolver().registerSubtypes(SecurityPacket.class, InstancePacket.class);
-		openDatabase = new CouchDbMillisDatabase(instance.getDatabase(SolarThingConstants.OPEN_DATABASE), openMapper, errorHandler);
+		openDatabase = new CouchDbMillisDatabase(instance.getDatabase(SolarThingConstants.OPEN_DATABASE), openMapper, errorHandler, httpConnection);
 
 		alterDatabase = new CouchDbAlterDatabase(instance.getDatabase(SolarThingConstants.ALTER_DATABASE), mapper); // we don't need to register any subtypes for the alter database because it's just that cool :)
 	}
+	public CouchDbSolarThingDatabase(CouchDbInstance instance, PacketParsingErrorHandler errorHandler, ObjectMapper mapper) {
+		this(instance, errorHandler, mapper, null);
+	}
 	public static CouchDbSolarThingDatabase create(CouchDbInstance instance) {
-		return new CouchDbSolarThingDatabase(instance, PacketParsingErrorHandler.DO_NOTHING, JacksonUtil.lenientMapper(JacksonUtil.defaultMapper()));
+		return create(instance, null);
+	}
+	public static CouchDbSolarThingDatabase create(CouchDbInstance instance, @Nullable CouchDbHttpConnection httpConnection) {
+		return new CouchDbSolarThingDatabase(instance, PacketParsingErrorHandler.DO_NOTHING, JacksonUtil.lenientMapper(JacksonUtil.defaultMapper()), httpConnection);
 	}
 
 	public static @NotNull RevisionUpdateToken checkUpdateToken(@NotNull UpdateToken updateToken) {
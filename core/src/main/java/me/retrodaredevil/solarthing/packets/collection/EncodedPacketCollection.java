@@ -0,0 +1,111 @@
+package me.retrodaredevil.solarthing.packets.collection;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link PacketCollection} that remembers its compact JSON encoding. The encoding is created the first time it is needed,
+ * so when many packet handlers are given the same instance, the packet collection is only serialized once.
+ * <p>
+ * The JSON is the same as what {@link JacksonUtil#defaultMapper()} would produce. Arrays returned by {@link #getJsonBytes()} are shared and must not be modified.
+ */
+@JsonPropertyOrder({"packets", "dateMillis"})
+public final class EncodedPacketCollection implements PacketCollection {
+	private static final ObjectWriter WRITER = JacksonUtil.defaultMapper().writer();
+
+	private final PacketCollection packetCollection;
+	private volatile byte[] jsonBytes = null;
+	private volatile String json = null;
+
+	private EncodedPacketCollection(PacketCollection packetCollection) {
+		requireNonNull(this.packetCollection = packetCollection);
+	}
+
+	/**
+	 * @param packetCollection The packet collection
+	 * @return {@code packetCollection} if it is already an {@link EncodedPacketCollection}, or a new {@link EncodedPacketCollection} that wraps it
+	 */
+	public static @NotNull EncodedPacketCollection of(@NotNull PacketCollection packetCollection) {
+		if (packetCollection instanceof EncodedPacketCollection) {
+			return (EncodedPacketCollection) packetCollection;
+		}
+		return new EncodedPacketCollection(packetCollection);
+	}
+
+	/**
+	 * @return The compact UTF-8 JSON of {@code packetCollection}, reusing the encoding if {@code packetCollection} is an {@link EncodedPacketCollection}. Must not be modified.
+	 */
+	public static byte[] getJsonBytes(@NotNull PacketCollection packetCollection) {
+		if (packetCollection instanceof EncodedPacketCollection) {
+			return ((EncodedPacketCollection) packetCollection).getJsonBytes();
+		}
+		return encode(packetCollection);
+	}
+	/**
+	 * @return The compact JSON of {@code packetCollection}, reusing the encoding if {@code packetCollection} is an {@link EncodedPacketCollection}
+	 */
+	public static String getJson(@NotNull PacketCollection packetCollection) {
+		if (packetCollection instanceof EncodedPacketCollection) {
+			return ((EncodedPacketCollection) packetCollection).getJson();
+		}
+		return new String(encode(packetCollection), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] encode(PacketCollection packetCollection) {
+		try {
+			return WRITER.writeValueAsBytes(packetCollection);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException("Cannot serialize packet collection! This is bad!", e);
+		}
+	}
+
+	/** @return The compact UTF-8 JSON of this packet collection. The returned array is shared and must not be modified. */
+	public byte[] getJsonBytes() {
+		byte[] jsonBytes = this.jsonBytes;
+		if (jsonBytes == null) {
+			// If two threads get here at the same time, both encode the same bytes. That's OK and cheaper than locking
+			jsonBytes = encode(packetCollection);
+			this.jsonBytes = jsonBytes;
+		}
+		return jsonBytes;
+	}
+
+	/** @return The compact JSON of this packet collection */
+	public String getJson() {
+		String json = this.json;
+		if (json == null) {
+			json = new String(getJsonBytes(), StandardCharsets.UTF_8);
+			this.json = json;
+		}
+		return json;
+	}
+
+	/** @return The packet collection that this wraps */
+	public @NotNull PacketCollection getPacketCollection() {
+		return packetCollection;
+	}
+
+	@Override
+	public List<? extends Packet> getPackets() {
+		return packetCollection.getPackets();
+	}
+
+	@Override
+	public long getDateMillis() {
+		return packetCollection.getDateMillis();
+	}
+
+	@Override
+	public String getDbId() {
+		return packetCollection.getDbId();
+	}
+}
@@ -0,0 +1,281 @@
+package me.retrodaredevil.solarthing.packets.collection;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the result of {@link PacketGroups#sortPackets(java.util.Collection, DefaultInstanceOptions, long, Long, Comparator)} up to date as packet groups are added, changed and removed.
+ * <p>
+ * Whether a packet group is a master packet group and which packet groups get merged into it only depends on the packet groups that are
+ * within {@code maxTimeDistance} or {@code masterIdIgnoreDistance} of it. Because of this, when packet groups in the volatile tail are changed,
+ * only merged packet groups near that tail need to be merged again. The exception is when a fragment is added or completely removed, which changes the
+ * priority of each fragment, so everything for that source is merged again.
+ * <p>
+ * When a fragment has two packet groups that are exactly the same distance away from a master packet group, the one that is chosen may differ from the one that
+ * {@link PacketGroups#mergePackets(List, long, Long, Comparator)} would have chosen.
+ * <p>
+ * Note: Not thread safe
+ */
+public final class IncrementalPacketGroupMerger {
+	private static final Comparator<Node> NODE_COMPARATOR = Comparator.<Node>comparingLong(node -> node.dateMillis).thenComparingLong(node -> node.sequence);
+
+	private final DefaultInstanceOptions defaultInstanceOptions;
+	private final long maxTimeDistance;
+	private final Long masterIdIgnoreDistance;
+	private final Comparator<Integer> fragmentIdComparator;
+	/** The distance from a packet group that a change can affect the merged result */
+	private final long affectDistance;
+
+	private final NavigableSet<Node> nodes = new TreeSet<>(NODE_COMPARATOR);
+	private final Map<String, SourceData> sourceMap = new HashMap<>();
+	private long nextSequence = 0;
+
+	public IncrementalPacketGroupMerger(DefaultInstanceOptions defaultInstanceOptions, long maxTimeDistance, @Nullable Long masterIdIgnoreDistance, Comparator<Integer> fragmentIdComparator) {
+		requireNonNull(this.defaultInstanceOptions = defaultInstanceOptions);
+		this.maxTimeDistance = maxTimeDistance;
+		this.masterIdIgnoreDistance = masterIdIgnoreDistance;
+		requireNonNull(this.fragmentIdComparator = fragmentIdComparator);
+		affectDistance = masterIdIgnoreDistance == null ? maxTimeDistance : Math.max(maxTimeDistance, masterIdIgnoreDistance);
+	}
+	public IncrementalPacketGroupMerger(DefaultInstanceOptions defaultInstanceOptions, long maxTimeDistance, @Nullable Long masterIdIgnoreDistance) {
+		this(defaultInstanceOptions, maxTimeDistance, masterIdIgnoreDistance, FragmentUtil.DEFAULT_FRAGMENT_ID_COMPARATOR);
+	}
+
+	private static long saturatedAdd(long a, long b) {
+		long r = a + b;
+		if (((a ^ r) & (b ^ r)) < 0) { // overflow
+			return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+		return r;
+	}
+
+	/**
+	 * Replaces all packet groups on or after {@code startDateMillis} with {@code packetGroups}. Packet groups that have not changed
+	 * do not cause anything to be merged again.
+	 * @param startDateMillis The start of the range to replace
+	 * @param packetGroups The packet groups on or after {@code startDateMillis}. Should be ordered oldest to newest.
+	 */
+	public void replaceOnOrAfter(long startDateMillis, List<? extends StoredPacketGroup> packetGroups) {
+		List<Node> oldNodes = new ArrayList<>(nodes.tailSet(Node.createKey(startDateMillis, Long.MIN_VALUE), true));
+		int unchangedCount = 0;
+		while (unchangedCount < oldNodes.size() && unchangedCount < packetGroups.size()) {
+			Node oldNode = oldNodes.get(unchangedCount);
+			StoredPacketGroup packetGroup = packetGroups.get(unchangedCount);
+			if (oldNode.dateMillis != packetGroup.getDateMillis() || !oldNode.storedPacketGroup.getStoredIdentifier().equals(packetGroup.getStoredIdentifier())) {
+				break;
+			}
+			unchangedCount++;
+		}
+		Map<SourceData, Long> dirtyMap = new HashMap<>();
+		Set<SourceData> fragmentsChanged = new HashSet<>();
+
+		for (Node node : oldNodes.subList(unchangedCount, oldNodes.size())) {
+			nodes.remove(node);
+			SourceData sourceData = requireNonNull(sourceMap.get(node.instancePacketGroup.getSourceId()));
+			if (sourceData.remove(node)) {
+				fragmentsChanged.add(sourceData);
+			}
+			dirtyMap.merge(sourceData, node.dateMillis, Math::min);
+		}
+		for (StoredPacketGroup packetGroup : packetGroups.subList(unchangedCount, packetGroups.size())) {
+			InstancePacketGroup instancePacketGroup = PacketGroups.parseToInstancePacketGroup(packetGroup, defaultInstanceOptions);
+			Node node = new Node(packetGroup.getDateMillis(), nextSequence++, packetGroup, instancePacketGroup);
+			nodes.add(node);
+			SourceData sourceData = sourceMap.computeIfAbsent(instancePacketGroup.getSourceId(), SourceData::new);
+			if (sourceData.add(node)) {
+				fragmentsChanged.add(sourceData);
+			}
+			dirtyMap.merge(sourceData, node.dateMillis, Math::min);
+		}
+		for (Map.Entry<SourceData, Long> entry : dirtyMap.entrySet()) {
+			SourceData sourceData = entry.getKey();
+			if (fragmentsChanged.contains(sourceData)) {
+				sourceData.mergeAll();
+			} else {
+				sourceData.mergeRange(saturatedAdd(entry.getValue(), -affectDistance), Long.MAX_VALUE);
+			}
+		}
+	}
+
+	/**
+	 * Removes all packet groups on or before {@code dateMillis}
+	 * @param dateMillis The date in millis to remove packet groups on or before
+	 */
+	public void removeOnOrBefore(long dateMillis) {
+		NavigableSet<Node> removeNodes = nodes.headSet(Node.createKey(dateMillis, Long.MAX_VALUE), true);
+		Set<SourceData> affectedSources = new HashSet<>();
+		Set<SourceData> fragmentsChanged = new HashSet<>();
+		for (Node node : removeNodes) {
+			SourceData sourceData = requireNonNull(sourceMap.get(node.instancePacketGroup.getSourceId()));
+			if (sourceData.remove(node)) {
+				fragmentsChanged.add(sourceData);
+			}
+			affectedSources.add(sourceData);
+		}
+		removeNodes.clear();
+		for (SourceData sourceData : affectedSources) {
+			if (fragmentsChanged.contains(sourceData)) {
+				sourceData.mergeAll();
+			} else {
+				sourceData.mergeRange(Long.MIN_VALUE, saturatedAdd(dateMillis, affectDistance + 1));
+			}
+		}
+	}
+
+	/**
+	 * @return A set of the source IDs that currently have packet groups
+	 */
+	public @NotNull Set<String> getSourceIds() {
+		return Collections.unmodifiableSet(sourceMap.keySet());
+	}
+
+	/**
+	 * @param sourceId The source ID
+	 * @return The merged packet groups for {@code sourceId}, ordered oldest to newest, or null if there are no packet groups from that source
+	 */
+	public @Nullable List<FragmentedPacketGroup> getPacketGroups(String sourceId) {
+		SourceData sourceData = sourceMap.get(sourceId);
+		if (sourceData == null) {
+			return null;
+		}
+		return Collections.unmodifiableList(sourceData.mergedPacketGroups);
+	}
+
+	/**
+	 * @param sourceId The source ID
+	 * @return The latest merged packet group for {@code sourceId} or null if there are no packet groups from that source
+	 */
+	public @Nullable FragmentedPacketGroup getLatestPacketGroup(String sourceId) {
+		SourceData sourceData = sourceMap.get(sourceId);
+		if (sourceData == null) {
+			return null;
+		}
+		List<FragmentedPacketGroup> mergedPacketGroups = sourceData.mergedPacketGroups;
+		return mergedPacketGroups.get(mergedPacketGroups.size() - 1);
+	}
+
+	private final class SourceData {
+		private final String sourceId;
+		private final NavigableSet<Node> sourceNodes = new TreeSet<>(NODE_COMPARATOR);
+		private final Map<Integer, NavigableSet<Node>> fragmentMap = new HashMap<>();
+		private final List<FragmentedPacketGroup> mergedPacketGroups = new ArrayList<>();
+
+		private SourceData(String sourceId) {
+			this.sourceId = sourceId;
+		}
+
+		/** @return true if this is the first packet group of its fragment */
+		private boolean add(Node node) {
+			sourceNodes.add(node);
+			NavigableSet<Node> fragmentNodes = fragmentMap.computeIfAbsent(node.instancePacketGroup.getFragmentId(), k -> new TreeSet<>(NODE_COMPARATOR));
+			fragmentNodes.add(node);
+			return fragmentNodes.size() == 1;
+		}
+		/** @return true if this was the last packet group of its fragment */
+		private boolean remove(Node node) {
+			sourceNodes.remove(node);
+			int fragmentId = node.instancePacketGroup.getFragmentId();
+			NavigableSet<Node> fragmentNodes = requireNonNull(fragmentMap.get(fragmentId));
+			fragmentNodes.remove(node);
+			if (fragmentNodes.isEmpty()) {
+				fragmentMap.remove(fragmentId);
+				return true;
+			}
+			return false;
+		}
+
+		private void mergeAll() {
+			mergeRange(Long.MIN_VALUE, Long.MAX_VALUE);
+		}
+
+		/**
+		 * Merges packet groups again so that merged packet groups between {@code startDateMillis} (inclusive) and {@code endDateMillis} (exclusive) are up to date.
+		 * <p>
+		 * Only packet groups within {@link #affectDistance} of the range are merged again. For each fragment, the closest packet group
+		 * outside of that is also included so that each fragment is still present and has the same priority it would if everything was merged.
+		 */
+		private void mergeRange(long startDateMillis, long endDateMillis) {
+			if (sourceNodes.isEmpty()) {
+				sourceMap.remove(sourceId);
+				return;
+			}
+			long queryStartDateMillis = saturatedAdd(startDateMillis, -affectDistance);
+			long queryEndDateMillis = saturatedAdd(endDateMillis, affectDistance);
+			Node startKey = Node.createKey(queryStartDateMillis, Long.MIN_VALUE);
+			Node endKey = Node.createKey(queryEndDateMillis, Long.MIN_VALUE);
+
+			NavigableSet<Node> mergeNodes = new TreeSet<>(NODE_COMPARATOR);
+			mergeNodes.addAll(sourceNodes.subSet(startKey, true, endKey, false));
+			for (NavigableSet<Node> fragmentNodes : fragmentMap.values()) {
+				Node before = fragmentNodes.lower(startKey);
+				if (before != null) {
+					mergeNodes.add(before);
+				}
+				Node after = fragmentNodes.ceiling(endKey);
+				if (after != null) {
+					mergeNodes.add(after);
+				}
+			}
+			List<InstancePacketGroup> instancePacketGroups = new ArrayList<>(mergeNodes.size());
+			for (Node node : mergeNodes) {
+				instancePacketGroups.add(node.instancePacketGroup);
+			}
+			List<FragmentedPacketGroup> merged = PacketGroups.mergePackets(instancePacketGroups, maxTimeDistance, masterIdIgnoreDistance, fragmentIdComparator);
+
+			List<FragmentedPacketGroup> after = new ArrayList<>(mergedPacketGroups.subList(indexOf(endDateMillis), mergedPacketGroups.size()));
+			mergedPacketGroups.subList(indexOf(startDateMillis), mergedPacketGroups.size()).clear();
+			for (FragmentedPacketGroup packetGroup : merged) {
+				long dateMillis = packetGroup.getDateMillis();
+				if (dateMillis >= startDateMillis && dateMillis < endDateMillis) {
+					mergedPacketGroups.add(packetGroup);
+				}
+			}
+			mergedPacketGroups.addAll(after);
+		}
+
+		/** @return The index of the first merged packet group on or after {@code dateMillis}*/
+		private int indexOf(long dateMillis) {
+			int low = 0;
+			int high = mergedPacketGroups.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (mergedPacketGroups.get(mid).getDateMillis() < dateMillis) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+
+	private static final class Node {
+		private final long dateMillis;
+		private final long sequence;
+		private final StoredPacketGroup storedPacketGroup;
+		private final InstancePacketGroup instancePacketGroup;
+
+		private Node(long dateMillis, long sequence, StoredPacketGroup storedPacketGroup, InstancePacketGroup instancePacketGroup) {
+			this.dateMillis = dateMillis;
+			this.sequence = sequence;
+			this.storedPacketGroup = storedPacketGroup;
+			this.instancePacketGroup = instancePacketGroup;
+		}
+		private static Node createKey(long dateMillis, long sequence) {
+			return new Node(dateMillis, sequence, null, null);
+		}
+	}
+}
@@ -1,14 +1,19 @@
 package me.retrodaredevil.solarthing.packets.collection.parsing;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import me.retrodaredevil.solarthing.annotations.NotNull;
 import me.retrodaredevil.solarthing.packets.DocumentedPacket;
 import me.retrodaredevil.solarthing.packets.Packet;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroup;
 import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
 
-import me.retrodaredevil.solarthing.annotations.NotNull;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -53,4 +58,75 @@ public class SimplePacketGroupParser {
 		}
 		return PacketGroups.createPacketGroup(packetList, dateMillis);
 	}
+
+	/**
+	 * Parses a packet group in a single pass without building a tree of the document. Each packet is buffered in a {@link TokenBuffer}
+	 * before it is deserialized, so a packet that cannot be deserialized is given to the {@link PacketParsingErrorHandler} and skipped,
+	 * just like {@link #parse(ObjectNode)}.
+	 * @param parser The parser. Its current token must be {@link JsonToken#START_OBJECT}, or its next token must be {@link JsonToken#START_OBJECT}.
+	 *               When this returns, the current token is the matching {@link JsonToken#END_OBJECT}
+	 * @param fieldHandler Called for each field other than "dateMillis" and "packets". Fields not consumed by the handler are skipped
+	 * @return The parsed packet group
+	 * @throws IOException If the JSON is malformed
+	 */
+	public @NotNull PacketGroup parse(JsonParser parser, FieldHandler fieldHandler) throws PacketParseException, IOException {
+		JsonToken startToken = parser.hasCurrentToken() ? parser.currentToken() : parser.nextToken();
+		if (startToken != JsonToken.START_OBJECT) {
+			throw new PacketParseException("Expected the start of an object! token=" + startToken);
+		}
+		Long dateMillis = null;
+		List<Packet> packetList = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if ("dateMillis".equals(fieldName)) {
+				if (!token.isNumeric()) {
+					throw new PacketParseException("'dateMillis' is not a number! token=" + token);
+				}
+				dateMillis = parser.getLongValue();
+			} else if ("packets".equals(fieldName)) {
+				if (token != JsonToken.START_ARRAY) {
+					throw new PacketParseException("'packets' is not an array! token=" + token);
+				}
+				packetList = new ArrayList<>();
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					TokenBuffer buffer = new TokenBuffer(parser);
+					if (mapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)) {
+						buffer = buffer.forceUseOfBigDecimal(true); // same as reading a tree
+					}
+					buffer.copyCurrentStructure(parser);
+					DocumentedPacket packet = null;
+					try (JsonParser packetParser = buffer.asParser(parser.getCodec())) {
+						packet = mapper.readValue(packetParser, DocumentedPacket.class);
+					} catch (IOException ex) {
+						errorHandler.handleError(ex);
+					}
+					if (packet != null) {
+						packetList.add(packet);
+					}
+				}
+			} else {
+				fieldHandler.handleField(fieldName, parser);
+				parser.skipChildren(); // does nothing if the current token is a scalar value or if the handler consumed the value
+			}
+		}
+		if (dateMillis == null) {
+			throw new PacketParseException("'dateMillis' does not exist!");
+		}
+		if (packetList == null) {
+			throw new PacketParseException("'packets' does not exist!");
+		}
+		return PacketGroups.createPacketGroup(packetList, dateMillis);
+	}
+
+	@FunctionalInterface
+	public interface FieldHandler {
+		/**
+		 * @param fieldName The name of the field
+		 * @param parser The parser, whose current token is the first token of the field's value
+		 */
+		void handleField(String fieldName, JsonParser parser) throws IOException;
+
+		FieldHandler IGNORE = (fieldName, parser) -> {};
+	}
 }
@@ -30,15 +30,21 @@ public abstract class StartEndTextPacketCreator implements TextPacketCreator {
 
 	@Override
 	public Collection<Packet> add(char[] chars) throws PacketCreationException{
-		if(chars.length == 0){
+		return add(chars, 0, chars.length);
+	}
+
+	@Override
+	public Collection<Packet> add(char[] chars, int offset, int length) throws PacketCreationException {
+		if(length == 0){
 			return Collections.emptySet();
 		}
-		char first = chars[0];
+		char first = chars[offset];
 		if(amount == 0 && first != start){
 			return Collections.emptySet(); // gotta wait for the start char
 		}
 		List<Packet> r = null;
-		for(char c : chars){
+		for(int i = offset; i < offset + length; i++){
+			char c = chars[i];
 			if(amount >= bytes.length) {
 				try {
 					throw new PacketTooBigException("The packet will be longer than the maximum size!");
@@ -57,7 +63,7 @@ public abstract class StartEndTextPacketCreator implements TextPacketCreator {
 					}
 				}
 				try{
-					final Collection<Packet> packetsToAdd = create(new String(bytes, 0, amount).toCharArray()); // resets bytes array and amount
+					final Collection<Packet> packetsToAdd = create(bytes, amount);
 
 					if(r == null){
 						r = new ArrayList<>();
@@ -88,9 +94,19 @@ public abstract class StartEndTextPacketCreator implements TextPacketCreator {
 	 */
 	protected abstract Collection<Packet> create(char[] bytes) throws PacketCreationException;
 
+	/**
+	 * Creates packets from the first {@code length} characters of {@code buffer}. By default, this copies those characters and calls {@link #create(char[])}.
+	 * Subclasses may override this to avoid the copy.
+	 * @param buffer The buffer containing the packet. This buffer is reused, so a reference to it should not be kept
+	 * @param length The number of characters in the packet
+	 * @return A Collection usually with a size of 1 representing the packets to add.
+	 * @throws PacketCreationException Should be thrown if something unexpected happens where the program should not crash
+	 */
+	protected Collection<Packet> create(char[] buffer, int length) throws PacketCreationException {
+		return create(Arrays.copyOf(buffer, length));
+	}
+
 	private void reset(){
-		amount = 0;
-		// reset bytes array
-		Arrays.fill(bytes, (char) 0);
+		amount = 0; // characters after amount are never read, so there is no need to clear them
 	}
 }
@@ -2,6 +2,7 @@ package me.retrodaredevil.solarthing.packets.creation;
 
 import me.retrodaredevil.solarthing.packets.Packet;
 
+import java.util.Arrays;
 import java.util.Collection;
 
 /**
@@ -16,5 +17,17 @@ public interface TextPacketCreator {
 	 * @return An empty collection, or if it can be read, a collection of {@link Packet}s
 	 */
 	Collection<? extends Packet> add(char[] bytes) throws PacketCreationException;
-	
+
+	/**
+	 * Same as {@link #add(char[])}, but only reads {@code length} characters starting at {@code offset}. Implementations should override this
+	 * so that callers can reuse a single buffer without copying it.
+	 * @param chars The characters to read from
+	 * @param offset The index of the first character to read
+	 * @param length The number of characters to read
+	 * @return An empty collection, or if it can be read, a collection of {@link Packet}s
+	 */
+	default Collection<? extends Packet> add(char[] chars, int offset, int length) throws PacketCreationException {
+		return add(Arrays.copyOfRange(chars, offset, offset + length));
+	}
+
 }
@@ -1,33 +1,191 @@
 package me.retrodaredevil.solarthing.packets.handling;
 
+import me.retrodaredevil.solarthing.SolarThingConstants;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ExecutorService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Handles packet collections on a separate thread. Packet collections wait in a bounded queue, and {@link QueueSettings#getOverflowPolicy()} determines
+ * what happens when the queue is full. This makes it so a packet handler that hangs only causes its own packet collections to be dropped.
+ * <p>
+ * If the packet handler is a {@link BatchPacketHandler}, every packet collection waiting in the queue (up to {@link #MAX_BATCH_SIZE}) is given to it at once.
+ * <p>
+ * {@link #close()} should be called when the program shuts down so that the queue is drained. It does not close the wrapped packet handler,
+ * so that the wrapped packet handler can be flushed or closed after every queued packet collection has been given to it.
+ */
 public class AsyncPacketHandlerWrapper implements PacketHandler {
 	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPacketHandlerWrapper.class);
+	private static final Duration SHUTDOWN_DRAIN_TIMEOUT = Duration.ofSeconds(5);
+	private static final int MAX_BATCH_SIZE = 100;
 
 	private final PacketHandler packetHandler;
+	private final QueueSettings queueSettings;
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong droppedCount = new AtomicLong();
 
-	private final ExecutorService executorService;
+	public AsyncPacketHandlerWrapper(PacketHandler packetHandler, QueueSettings queueSettings) {
+		requireNonNull(this.packetHandler = packetHandler);
+		requireNonNull(this.queueSettings = queueSettings);
 
+		executor = new ThreadPoolExecutor(
+				1, 1,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSettings.getCapacity()),
+				Executors.defaultThreadFactory(),
+				createRejectedExecutionHandler(queueSettings)
+		);
+	}
 	public AsyncPacketHandlerWrapper(PacketHandler packetHandler) {
-		this.packetHandler = packetHandler;
+		this(packetHandler, QueueSettings.DEFAULT_SETTINGS);
+	}
+
+	private RejectedExecutionHandler createRejectedExecutionHandler(QueueSettings queueSettings) {
+		return (runnable, executor) -> {
+			if (executor.isShutdown()) {
+				drop(1);
+				return;
+			}
+			BlockingQueue<Runnable> queue = executor.getQueue();
+			switch (queueSettings.getOverflowPolicy()) {
+				case DROP_OLDEST:
+					if (queue.poll() != null) {
+						drop(1);
+					}
+					if (!queue.offer(runnable)) {
+						drop(1);
+					}
+					break;
+				case DROP_NEWEST:
+					drop(1);
+					break;
+				case COALESCE:
+					List<Runnable> dropped = new ArrayList<>();
+					queue.drainTo(dropped);
+					drop(dropped.size());
+					if (!queue.offer(runnable)) {
+						drop(1);
+					}
+					break;
+				case BLOCK:
+					try {
+						if (!queue.offer(runnable, queueSettings.getBlockTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+							drop(1);
+						}
+					} catch (InterruptedException e) {
+						drop(1);
+						Thread.currentThread().interrupt();
+					}
+					break;
+				default:
+					throw new AssertionError("Unknown overflow policy: " + queueSettings.getOverflowPolicy());
+			}
+		};
+	}
+
+	private void drop(int count) {
+		if (count == 0) {
+			return;
+		}
+		long previous = droppedCount.getAndAdd(count);
+		if (previous / 100 != (previous + count) / 100 || previous == 0) { // don't spam the logs when a packet handler is down for a long time
+			LOGGER.warn("Queue is full. Have dropped " + (previous + count) + " packet collections for " + packetHandler + " overflowPolicy: " + queueSettings.getOverflowPolicy());
+		}
+	}
+
+	/**
+	 * Stops accepting packet collections and waits up to {@link #SHUTDOWN_DRAIN_TIMEOUT} for queued packet collections to be handled.
+	 */
+	public void close() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+				List<Runnable> notHandled = executor.shutdownNow();
+				LOGGER.warn("Could not handle " + notHandled.size() + " queued packet collections before shutting down for " + packetHandler);
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** @return The number of packet collections that are waiting to be handled */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
 
-		executorService = Executors.newSingleThreadExecutor();
+	/** @return The number of packet collections that have been dropped because the queue was full */
+	public long getDroppedCount() {
+		return droppedCount.get();
 	}
 
 	@Override
 	public void handle(PacketCollection packetCollection) throws PacketHandleException {
-		executorService.execute(() -> {
+		executor.execute(new HandleTask(packetCollection));
+	}
+
+	private void handleAll(BatchPacketHandler batchPacketHandler, PacketCollection first) {
+		List<Runnable> queued = new ArrayList<>();
+		executor.getQueue().drainTo(queued, MAX_BATCH_SIZE - 1);
+		List<PacketCollection> packetCollections = new ArrayList<>(queued.size() + 1);
+		packetCollections.add(first);
+		for (Runnable runnable : queued) {
+			packetCollections.add(((HandleTask) runnable).packetCollection);
+		}
+		try {
+			for (PacketHandleException exception : batchPacketHandler.handleAll(packetCollections)) {
+				if (exception != null) {
+					logException(exception);
+				}
+			}
+		} catch (PacketHandleException e) {
+			logException(e);
+		}
+	}
+
+	private void logException(PacketHandleException e) {
+		// Same as PrintPacketHandleExceptionWrapper, so a database that is down does not fill the console with stack traces
+		LOGGER.error("Caught PacketHandleException from " + packetHandler + " while executing in separate thread. Message: " + e.getMessage() + ". (More info in log file)");
+		LOGGER.debug(SolarThingConstants.NO_CONSOLE, "Caught PacketHandleException from " + packetHandler, e);
+	}
+
+	private final class HandleTask implements Runnable {
+		private final PacketCollection packetCollection;
+
+		private HandleTask(PacketCollection packetCollection) {
+			this.packetCollection = packetCollection;
+		}
+
+		@Override
+		public void run() {
+			if (packetHandler instanceof BatchPacketHandler) {
+				handleAll((BatchPacketHandler) packetHandler, packetCollection);
+				return;
+			}
 			try {
 				packetHandler.handle(packetCollection);
 			} catch (PacketHandleException e) {
-				LOGGER.error("Got PacketHandleException while executing in separate thread.", e);
+				logException(e);
 			}
-		});
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AsyncPacketHandlerWrapper(packetHandler=" + packetHandler + " queueDepth=" + getQueueDepth() + " droppedCount=" + getDroppedCount() + ")";
 	}
 }
@@ -1,89 +1,223 @@
 package me.retrodaredevil.solarthing.packets.handling;
 
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
-import me.retrodaredevil.solarthing.util.PacketGroupNode;
+import me.retrodaredevil.solarthing.packets.handling.PacketCollectionQueue.QueuedPacketCollection;
+import me.retrodaredevil.solarthing.util.DaemonThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Handles packet collections on a separate thread. Packet collections are added to a {@link PacketCollectionQueue} and are only removed from it once they have been
+ * handled successfully, or once they are older than the max age. If a packet collection cannot be handled, it is retried every {@link #DEFAULT_RETRY_DELAY}.
+ * <p>
+ * Packet collections are handled in the order they were given. Up to {@code replayConcurrency} packet collections are handled at the same time.
+ * If the packet handler is a {@link BatchPacketHandler}, up to {@link #MAX_BATCH_SIZE} packet collections are instead given to it at once, regardless of {@code replayConcurrency}.
+ * <p>
+ * A packet collection that fails {@link #MAX_ATTEMPTS_BEFORE_REQUEUE} times in a row is moved to the back of the queue, so that a packet collection
+ * that can never be handled does not stop newer ones from being handled before it expires.
+ */
 public class AsyncRetryingPacketHandler implements PacketHandler {
 	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRetryingPacketHandler.class);
+	private static final Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(10);
+	private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(10);
+	static final int MAX_ATTEMPTS_BEFORE_REQUEUE = 3;
+	static final int MAX_BATCH_SIZE = 100;
 
 	private final PacketHandler packetHandler;
+	private final PacketCollectionQueue queue;
+	private final Duration maxAge;
+	private final int peekCount;
+	private final Duration retryDelay;
+	private final ExecutorService replayExecutorService;
+	/** The number of times in a row that each queued packet collection has failed. Only accessed by the thread that handles packet collections */
+	private final Map<Long, Integer> failedAttemptsMap = new HashMap<>();
+
+	private final Object signalLock = new Object();
+	private boolean signaled = false;
 
-	private final ExecutorService mainExecutorService = Executors.newSingleThreadExecutor();
-	private final ScheduledExecutorService reuploadExecutorService = Executors.newSingleThreadScheduledExecutor();
+	/**
+	 * @param packetHandler The {@link PacketHandler} to use. Note: This should be thread safe, as {@link PacketHandler#handle(PacketCollection)} may be called in parallel.
+	 *                      If this is a {@link BatchPacketHandler}, it is never called in parallel.
+	 * @param queue The queue to store packet collections in until they are handled
+	 * @param maxAge Packet collections older than this are discarded instead of being handled
+	 * @param replayConcurrency The maximum number of packet collections to handle at the same time. Not used if {@code packetHandler} is a {@link BatchPacketHandler}
+	 */
+	public AsyncRetryingPacketHandler(PacketHandler packetHandler, PacketCollectionQueue queue, Duration maxAge, int replayConcurrency) {
+		this(packetHandler, queue, maxAge, replayConcurrency, DEFAULT_RETRY_DELAY);
+	}
+	AsyncRetryingPacketHandler(PacketHandler packetHandler, PacketCollectionQueue queue, Duration maxAge, int replayConcurrency, Duration retryDelay) {
+		requireNonNull(this.packetHandler = packetHandler);
+		requireNonNull(this.queue = queue);
+		requireNonNull(this.maxAge = maxAge);
+		requireNonNull(this.retryDelay = retryDelay);
+		if (replayConcurrency < 1) {
+			throw new IllegalArgumentException("replayConcurrency must be >= 1");
+		}
+		peekCount = packetHandler instanceof BatchPacketHandler ? MAX_BATCH_SIZE : replayConcurrency;
+		replayExecutorService = replayConcurrency == 1 || packetHandler instanceof BatchPacketHandler ? null : Executors.newFixedThreadPool(replayConcurrency, new DaemonThreadFactory("async-retrying-packet-handler-replay"));
 
-	private final NavigableSet<PacketGroupNode<PacketCollection>> packetCollections = new TreeSet<>();
+		Thread thread = new Thread(this::run, "async-retrying-packet-handler");
+		thread.setDaemon(true);
+		thread.start();
+	}
 
 	/**
-	 * @param packetHandler The {@link PacketHandler} to use. Note: This should be thread safe, as {@link PacketHandler#handle(PacketCollection)} may be called in parallel
+	 * Creates an {@link AsyncRetryingPacketHandler} that only keeps packet collections in memory and discards them after 10 minutes
 	 */
 	public AsyncRetryingPacketHandler(PacketHandler packetHandler) {
-		this.packetHandler = packetHandler;
+		this(packetHandler, new MemoryPacketCollectionQueue(), DEFAULT_MAX_AGE, 1);
+	}
 
-		reuploadExecutorService.scheduleWithFixedDelay(
-				() -> {
-					// We don't have to worry about synchronizing at all because our executorService executes on a single thread
-					final List<PacketGroupNode<PacketCollection>> toReupload;
-					long removeBefore = System.currentTimeMillis() - 10 * 60 * 1000; // remove if before 10 minutes ago
-					synchronized (packetCollections) {
-						NavigableSet<PacketGroupNode<PacketCollection>> toRemove = packetCollections.headSet(new PacketGroupNode<>(removeBefore), true);
-						if (!toRemove.isEmpty()) {
-							LOGGER.info("Discarding " + toRemove.size() + " old packets. Will not try to reupload those using " + packetHandler);
-							toRemove.clear();
-						}
+	@Override
+	public void handle(PacketCollection packetCollection) {
+		queue.add(packetCollection);
+		synchronized (signalLock) {
+			signaled = true;
+			signalLock.notifyAll();
+		}
+	}
 
-						if (!packetCollections.isEmpty()) {
-							toReupload = new ArrayList<>(packetCollections);
-						} else {
-							toReupload = Collections.emptyList();
-						}
-					}
-					if (!toReupload.isEmpty()) {
-						LOGGER.debug("Going to try to reupload " + toReupload.size() + " packets using " + packetHandler);
-						List<PacketGroupNode<PacketCollection>> successfullyUploaded = new ArrayList<>();
-						try {
-							for (PacketGroupNode<PacketCollection> node : toReupload) {
-								PacketCollection packetCollection = node.getPacketGroup();
-								packetHandler.handle(packetCollection);
-								successfullyUploaded.add(node);
+	private void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				final boolean success;
+				try {
+					List<QueuedPacketCollection> batch = queue.peek(peekCount);
+					if (batch.isEmpty()) {
+						synchronized (signalLock) {
+							while (!signaled) {
+								signalLock.wait();
 							}
-							LOGGER.debug("Successfully reuploaded all " + toReupload.size() + " packets.");
-						} catch (PacketHandleException ex) {
-							LOGGER.error("Reuploaded " + successfullyUploaded.size() + " / " + toReupload.size() + " packets before getting exception", ex);
-						}
-						synchronized (packetCollections) {
-							successfullyUploaded.forEach(packetCollections::remove);
+							signaled = false;
 						}
+						continue;
 					}
-				},
-				10,
-				10,
-				TimeUnit.SECONDS
-		);
+					success = handleBatch(batch);
+				} catch (RuntimeException e) {
+					// Keep this thread alive, otherwise nothing would be handled until a restart
+					LOGGER.error("Unexpected exception while handling queued packet collections using " + packetHandler, e);
+					Thread.sleep(retryDelay.toMillis());
+					continue;
+				}
+				if (!success) {
+					LOGGER.debug("Will retry " + queue.size() + " packet collections in " + retryDelay.toMillis() + " milliseconds using " + packetHandler);
+					Thread.sleep(retryDelay.toMillis());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
-	@Override
-	public void handle(PacketCollection packetCollection) {
-		mainExecutorService.execute(() -> {
-			try {
-				packetHandler.handle(packetCollection);
-			} catch (PacketHandleException e) {
-				LOGGER.error("Error while uploading packet collection. ID: " + packetCollection.getDbId() + " dateMillis: " + packetCollection.getDateMillis() + ". Will retry using " + packetHandler);
-				synchronized (packetCollection) {
-					packetCollections.add(new PacketGroupNode<>(packetCollection));
+	/**
+	 * @return true if every packet collection in {@code batch} was handled or discarded, false if at least one could not be handled
+	 */
+	private boolean handleBatch(List<QueuedPacketCollection> batch) throws InterruptedException {
+		long removeBefore = System.currentTimeMillis() - maxAge.toMillis();
+		List<QueuedPacketCollection> toHandle = new ArrayList<>(batch.size());
+		for (QueuedPacketCollection queuedPacketCollection : batch) {
+			PacketCollection packetCollection = queuedPacketCollection.getPacketCollection();
+			if (packetCollection.getDateMillis() < removeBefore) {
+				LOGGER.info("Discarding old packet collection. Will not try to upload it using " + packetHandler + ". ID: " + packetCollection.getDbId() + " dateMillis: " + packetCollection.getDateMillis());
+				acknowledge(queuedPacketCollection);
+			} else {
+				toHandle.add(queuedPacketCollection);
+			}
+		}
+		if (toHandle.isEmpty()) {
+			return true;
+		}
+		if (packetHandler instanceof BatchPacketHandler) {
+			return handleAll((BatchPacketHandler) packetHandler, toHandle);
+		}
+		if (replayExecutorService == null || toHandle.size() == 1) {
+			for (QueuedPacketCollection queuedPacketCollection : toHandle) {
+				try {
+					packetHandler.handle(queuedPacketCollection.getPacketCollection());
+				} catch (PacketHandleException | RuntimeException e) {
+					onFailure(queuedPacketCollection, e);
+					return false;
 				}
+				acknowledge(queuedPacketCollection);
+			}
+			return true;
+		}
+		List<Future<?>> futures = new ArrayList<>(toHandle.size());
+		for (QueuedPacketCollection queuedPacketCollection : toHandle) {
+			futures.add(replayExecutorService.submit(() -> {
+				packetHandler.handle(queuedPacketCollection.getPacketCollection());
+				return null;
+			}));
+		}
+		boolean success = true;
+		for (int i = 0; i < toHandle.size(); i++) {
+			QueuedPacketCollection queuedPacketCollection = toHandle.get(i);
+			try {
+				futures.get(i).get();
+				acknowledge(queuedPacketCollection);
+			} catch (ExecutionException e) {
+				onFailure(queuedPacketCollection, e.getCause());
+				success = false;
+			}
+		}
+		return success;
+	}
+
+	private boolean handleAll(BatchPacketHandler batchPacketHandler, List<QueuedPacketCollection> toHandle) {
+		List<PacketCollection> packetCollections = new ArrayList<>(toHandle.size());
+		for (QueuedPacketCollection queuedPacketCollection : toHandle) {
+			packetCollections.add(queuedPacketCollection.getPacketCollection());
+		}
+		final List<PacketHandleException> exceptions;
+		try {
+			exceptions = batchPacketHandler.handleAll(packetCollections);
+		} catch (PacketHandleException | RuntimeException e) {
+			// Nothing was handled, so treat it the same as the first packet collection failing
+			onFailure(toHandle.get(0), e);
+			return false;
+		}
+		if (exceptions.size() != toHandle.size()) {
+			throw new IllegalStateException("Expected " + toHandle.size() + " results, but got " + exceptions.size() + " from " + batchPacketHandler);
+		}
+		boolean success = true;
+		for (int i = 0; i < toHandle.size(); i++) {
+			PacketHandleException exception = exceptions.get(i);
+			if (exception == null) {
+				acknowledge(toHandle.get(i));
+			} else {
+				onFailure(toHandle.get(i), exception);
+				success = false;
 			}
-		});
+		}
+		return success;
+	}
+
+	private void acknowledge(QueuedPacketCollection queuedPacketCollection) {
+		queue.acknowledge(queuedPacketCollection);
+		failedAttemptsMap.remove(queuedPacketCollection.getSequence());
+	}
+
+	private void onFailure(QueuedPacketCollection queuedPacketCollection, Throwable throwable) {
+		PacketCollection packetCollection = queuedPacketCollection.getPacketCollection();
+		int failedAttempts = failedAttemptsMap.merge(queuedPacketCollection.getSequence(), 1, Integer::sum);
+		if (failedAttempts < MAX_ATTEMPTS_BEFORE_REQUEUE) {
+			LOGGER.error("Error while uploading packet collection. ID: " + packetCollection.getDbId() + " dateMillis: " + packetCollection.getDateMillis() + ". Will retry using " + packetHandler, throwable);
+			return;
+		}
+		LOGGER.error("Error while uploading packet collection. ID: " + packetCollection.getDbId() + " dateMillis: " + packetCollection.getDateMillis() + ". It has failed " + failedAttempts + " times, so it will be moved to the back of the queue. Will retry using " + packetHandler, throwable);
+		queue.add(packetCollection);
+		acknowledge(queuedPacketCollection);
 	}
 }
@@ -0,0 +1,21 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+
+import java.util.List;
+
+/**
+ * A {@link PacketHandler} that can handle many packet collections at once, such as with a single request, which is more efficient than handling them one at a time.
+ * <p>
+ * {@link AsyncRetryingPacketHandler} and {@link AsyncPacketHandlerWrapper} give every packet collection that is waiting to be handled to {@link #handleAll(List)}.
+ */
+public interface BatchPacketHandler extends PacketHandler {
+	/**
+	 * Handles the packet collections. Some may be handled even if others could not be.
+	 * @param packetCollections The packet collections to handle
+	 * @return A list the same size as {@code packetCollections}. Each element is null if that packet collection was handled, or is the reason it could not be handled.
+	 * @throws PacketHandleException If none of the packet collections could be handled
+	 */
+	@NotNull List<PacketHandleException> handleAll(@NotNull List<PacketCollection> packetCollections) throws PacketHandleException;
+}
@@ -0,0 +1,404 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollections;
+import me.retrodaredevil.solarthing.packets.collection.PacketGroup;
+import me.retrodaredevil.solarthing.packets.collection.parsing.PacketParseException;
+import me.retrodaredevil.solarthing.packets.collection.parsing.SimplePacketGroupParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link PacketCollectionQueue} that is stored in a directory so that it survives restarts.
+ * <p>
+ * Packet collections are appended to segment files, one JSON object per line. Acknowledged sequences are appended to a separate file.
+ * A segment file is deleted once every packet collection in it has been acknowledged, and the acknowledged file is rewritten every so often
+ * so that it only contains sequences of segments that still exist. If the segments take up more than the maximum number of bytes,
+ * the oldest segment is deleted even if it has packet collections that have not been acknowledged.
+ * <p>
+ * If a packet collection cannot be written, it is kept in memory instead.
+ */
+public class DiskPacketCollectionQueue implements PacketCollectionQueue {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DiskPacketCollectionQueue.class);
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String ACKNOWLEDGED_FILE_NAME = "acknowledged.log";
+	private static final long MAX_SEGMENT_BYTES = 1024 * 1024;
+	/** The number of acknowledgements that can be appended before the acknowledged file is rewritten */
+	private static final int ACKNOWLEDGED_COMPACTION_COUNT = 1000;
+
+	private final File directory;
+	private final ObjectMapper mapper;
+	private final SimplePacketGroupParser parser;
+	private final long maxBytes;
+	private final long segmentBytes;
+
+	/** Each segment mapped by the sequence of its first entry */
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+	/** The entries that have not been acknowledged */
+	private final TreeMap<Long, Entry> pending = new TreeMap<>();
+	private final File acknowledgedFile;
+	private FileOutputStream acknowledgedOutput;
+	private int acknowledgedCountSinceCompaction = 0;
+	private long nextSequence = 0;
+	private long totalBytes = 0;
+
+	/** The segment being appended to, or null. Segments from a previous run are never appended to */
+	private @Nullable Segment activeSegment = null;
+	private @Nullable FileOutputStream activeOutput = null;
+
+	/**
+	 * @param directory The directory to store the queue in. It is created if it does not exist
+	 * @param mapper The mapper used to serialize packet collections
+	 * @param parser The parser used to deserialize packet collections. This should be able to parse every type of packet that is added
+	 * @param maxBytes The maximum number of bytes that the segment files may use
+	 * @throws IOException If the directory cannot be created or if the existing queue cannot be read
+	 */
+	public DiskPacketCollectionQueue(@NotNull File directory, @NotNull ObjectMapper mapper, @NotNull SimplePacketGroupParser parser, long maxBytes) throws IOException {
+		requireNonNull(this.directory = directory);
+		requireNonNull(this.mapper = mapper);
+		requireNonNull(this.parser = parser);
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be >= 1");
+		}
+		this.maxBytes = maxBytes;
+		segmentBytes = Math.max(1, Math.min(MAX_SEGMENT_BYTES, maxBytes / 8));
+		if (!directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create directory: " + directory);
+		}
+		acknowledgedFile = new File(directory, ACKNOWLEDGED_FILE_NAME);
+		load();
+		compactAcknowledged();
+		if (!pending.isEmpty()) {
+			LOGGER.info("Loaded " + pending.size() + " packet collections that have not been handled from " + directory);
+		}
+	}
+
+	private void load() throws IOException {
+		Set<Long> acknowledged = new HashSet<>();
+		if (acknowledgedFile.isFile()) {
+			try (BufferedReader reader = Files.newBufferedReader(acknowledgedFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					try {
+						acknowledged.add(Long.parseLong(line.trim()));
+					} catch (NumberFormatException ignored) { // the last line may be partially written
+					}
+				}
+			}
+		}
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+		if (files == null) {
+			throw new IOException("Could not list files in " + directory);
+		}
+		for (File file : files) {
+			String name = file.getName();
+			final long firstSequence;
+			try {
+				firstSequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				LOGGER.warn("Ignoring unknown file: " + file);
+				continue;
+			}
+			Segment segment = new Segment(firstSequence, file);
+			loadSegment(segment, acknowledged);
+			segments.put(firstSequence, segment);
+			totalBytes += segment.size;
+			nextSequence = Math.max(nextSequence, segment.lastSequence + 1);
+		}
+		for (Iterator<Segment> iterator = segments.values().iterator(); iterator.hasNext(); ) {
+			Segment segment = iterator.next();
+			if (segment.liveCount == 0) {
+				iterator.remove();
+				totalBytes -= segment.size;
+				deleteSegmentFile(segment);
+			}
+		}
+	}
+
+	private void loadSegment(Segment segment, Set<Long> acknowledged) throws IOException {
+		byte[] bytes = Files.readAllBytes(segment.file.toPath());
+		segment.size = bytes.length;
+		int lineStart = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != '\n') {
+				continue;
+			}
+			int length = i + 1 - lineStart;
+			try {
+				JsonNode node = mapper.readTree(bytes, lineStart, length);
+				long sequence = node.get("sequence").asLong();
+				segment.lastSequence = Math.max(segment.lastSequence, sequence);
+				if (!acknowledged.contains(sequence)) {
+					pending.put(sequence, new Entry(sequence, segment, lineStart, length));
+					segment.liveCount++;
+				}
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("Skipping corrupt entry in " + segment.file + " at offset " + lineStart, e);
+			}
+			lineStart = i + 1;
+		}
+		if (lineStart != bytes.length) {
+			LOGGER.warn("Ignoring " + (bytes.length - lineStart) + " bytes at the end of " + segment.file + ". That entry was probably not completely written.");
+		}
+	}
+
+	private void deleteSegmentFile(Segment segment) {
+		if (!segment.file.delete() && segment.file.exists()) {
+			LOGGER.warn("Could not delete " + segment.file);
+		}
+	}
+
+	/** Rewrites the acknowledged file so that it only contains sequences of segments that still exist */
+	private void compactAcknowledged() throws IOException {
+		if (acknowledgedOutput != null) {
+			acknowledgedOutput.close();
+		}
+		File temporaryFile = new File(directory, ACKNOWLEDGED_FILE_NAME + ".tmp");
+		StringBuilder builder = new StringBuilder();
+		for (Segment segment : segments.values()) {
+			for (long sequence = segment.firstSequence; sequence <= segment.lastSequence; sequence++) {
+				if (!pending.containsKey(sequence)) {
+					builder.append(sequence).append('\n');
+				}
+			}
+		}
+		try (FileOutputStream output = new FileOutputStream(temporaryFile)) {
+			output.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+			output.getFD().sync();
+		}
+		Files.move(temporaryFile.toPath(), acknowledgedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		acknowledgedOutput = new FileOutputStream(acknowledgedFile, true);
+		acknowledgedCountSinceCompaction = 0;
+	}
+
+	private byte[] serialize(long sequence, PacketCollection packetCollection) throws IOException {
+		ObjectNode node = mapper.createObjectNode();
+		node.put("sequence", sequence);
+		node.put("id", packetCollection.getDbId());
+		node.set("collection", mapper.valueToTree(packetCollection));
+		byte[] json = mapper.writeValueAsBytes(node);
+		byte[] line = new byte[json.length + 1];
+		System.arraycopy(json, 0, line, 0, json.length);
+		line[json.length] = '\n';
+		return line;
+	}
+
+	private @NotNull FileOutputStream getOutputForAppend(long sequence, int length) throws IOException {
+		Segment activeSegment = this.activeSegment;
+		FileOutputStream activeOutput = this.activeOutput;
+		if (activeSegment != null && activeOutput != null && (activeSegment.size == 0 || activeSegment.size + length <= segmentBytes)) {
+			return activeOutput;
+		}
+		if (activeOutput != null) {
+			activeOutput.close();
+			this.activeOutput = null;
+		}
+		if (activeSegment != null && activeSegment.liveCount == 0) {
+			removeSegment(activeSegment);
+		}
+		Segment segment = new Segment(sequence, new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX)));
+		FileOutputStream output = new FileOutputStream(segment.file, true);
+		segments.put(segment.firstSequence, segment);
+		this.activeSegment = segment;
+		this.activeOutput = output;
+		return output;
+	}
+
+	private void removeSegment(Segment segment) {
+		segments.remove(segment.firstSequence);
+		totalBytes -= segment.size;
+		deleteSegmentFile(segment);
+		if (segment == activeSegment) {
+			activeSegment = null;
+		}
+	}
+
+	@Override
+	public synchronized void add(@NotNull PacketCollection packetCollection) {
+		long sequence = nextSequence++;
+		try {
+			byte[] line = serialize(sequence, packetCollection);
+			FileOutputStream output = getOutputForAppend(sequence, line.length);
+			Segment segment = requireNonNull(activeSegment);
+			output.write(line);
+			output.getFD().sync();
+			pending.put(sequence, new Entry(sequence, segment, segment.size, line.length));
+			segment.size += line.length;
+			segment.lastSequence = sequence;
+			segment.liveCount++;
+			totalBytes += line.length;
+		} catch (IOException e) {
+			LOGGER.error("Could not write packet collection to " + directory + ". It will only be kept in memory. ID: " + packetCollection.getDbId(), e);
+			pending.put(sequence, new Entry(sequence, packetCollection));
+		}
+		enforceMaxBytes();
+	}
+
+	private void enforceMaxBytes() {
+		while (totalBytes > maxBytes && segments.size() > 1) {
+			Segment oldest = segments.firstEntry().getValue();
+			NavigableMap<Long, Entry> dropped = pending.subMap(oldest.firstSequence, true, oldest.lastSequence, true);
+			int droppedCount = 0;
+			for (Iterator<Entry> iterator = dropped.values().iterator(); iterator.hasNext(); ) {
+				Entry entry = iterator.next();
+				if (entry.segment == oldest) {
+					iterator.remove();
+					droppedCount++;
+				}
+			}
+			LOGGER.warn("Queue in " + directory + " is larger than " + maxBytes + " bytes. Dropping " + droppedCount + " of the oldest packet collections.");
+			removeSegment(oldest);
+		}
+	}
+
+	private @Nullable PacketCollection read(Entry entry) {
+		if (entry.packetCollection != null) {
+			return entry.packetCollection;
+		}
+		Segment segment = requireNonNull(entry.segment);
+		byte[] bytes = new byte[entry.length];
+		try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+			file.seek(entry.offset);
+			file.readFully(bytes);
+			JsonNode node = mapper.readTree(bytes);
+			String id = node.get("id").asText();
+			PacketGroup packetGroup = parser.parse((ObjectNode) node.get("collection"));
+			return PacketCollections.create(Instant.ofEpochMilli(packetGroup.getDateMillis()), packetGroup.getPackets(), id);
+		} catch (IOException | PacketParseException | RuntimeException e) {
+			LOGGER.error("Could not read packet collection with sequence " + entry.sequence + " from " + segment.file + ". It will be dropped.", e);
+			return null;
+		}
+	}
+
+	@Override
+	public synchronized @NotNull List<QueuedPacketCollection> peek(int maxCount) {
+		List<QueuedPacketCollection> r = new ArrayList<>(Math.min(maxCount, pending.size()));
+		List<Entry> unreadable = new ArrayList<>();
+		for (Entry entry : pending.values()) {
+			if (r.size() >= maxCount) {
+				break;
+			}
+			PacketCollection packetCollection = read(entry);
+			if (packetCollection == null) {
+				unreadable.add(entry);
+			} else {
+				r.add(new QueuedPacketCollection(entry.sequence, packetCollection));
+			}
+		}
+		for (Entry entry : unreadable) {
+			acknowledge(entry.sequence);
+		}
+		return r;
+	}
+
+	@Override
+	public synchronized void acknowledge(@NotNull QueuedPacketCollection queuedPacketCollection) {
+		acknowledge(queuedPacketCollection.getSequence());
+	}
+
+	private void acknowledge(long sequence) {
+		Entry entry = pending.remove(sequence);
+		if (entry == null || entry.segment == null) {
+			return;
+		}
+		Segment segment = entry.segment;
+		segment.liveCount--;
+		if (segment.liveCount == 0 && segment != activeSegment) {
+			removeSegment(segment);
+			return; // no need to record the acknowledgement when the whole segment is gone
+		}
+		try {
+			acknowledgedOutput.write((sequence + "\n").getBytes(StandardCharsets.UTF_8));
+			acknowledgedCountSinceCompaction++;
+			if (acknowledgedCountSinceCompaction >= ACKNOWLEDGED_COMPACTION_COUNT) {
+				compactAcknowledged();
+			}
+		} catch (IOException e) {
+			LOGGER.error("Could not record acknowledgement in " + acknowledgedFile + ". The packet collection may be handled again after a restart.", e);
+		}
+	}
+
+	@Override
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/** @return The number of bytes used by the segment files */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Closes the files used by this queue. This queue should not be used after this is called.
+	 */
+	public synchronized void close() throws IOException {
+		if (activeOutput != null) {
+			activeOutput.close();
+			activeOutput = null;
+		}
+		acknowledgedOutput.close();
+	}
+
+	private static final class Segment {
+		private final long firstSequence;
+		private final File file;
+		private long lastSequence;
+		private long size = 0;
+		/** The number of entries in this segment that have not been acknowledged */
+		private int liveCount = 0;
+
+		private Segment(long firstSequence, File file) {
+			this.firstSequence = firstSequence;
+			this.file = file;
+			lastSequence = firstSequence;
+		}
+	}
+	private static final class Entry {
+		private final long sequence;
+		private final @Nullable Segment segment;
+		private final long offset;
+		private final int length;
+		/** Only set if this entry could not be written */
+		private final @Nullable PacketCollection packetCollection;
+
+		private Entry(long sequence, Segment segment, long offset, int length) {
+			this.sequence = sequence;
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			packetCollection = null;
+		}
+		private Entry(long sequence, PacketCollection packetCollection) {
+			this.sequence = sequence;
+			segment = null;
+			offset = 0;
+			length = 0;
+			this.packetCollection = packetCollection;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link PacketCollectionQueue} that is only kept in memory
+ */
+public class MemoryPacketCollectionQueue implements PacketCollectionQueue {
+	private final TreeMap<Long, PacketCollection> packetCollections = new TreeMap<>();
+	private long nextSequence = 0;
+
+	@Override
+	public synchronized void add(@NotNull PacketCollection packetCollection) {
+		packetCollections.put(nextSequence++, packetCollection);
+	}
+
+	@Override
+	public synchronized @NotNull List<QueuedPacketCollection> peek(int maxCount) {
+		List<QueuedPacketCollection> r = new ArrayList<>(Math.min(maxCount, packetCollections.size()));
+		for (Map.Entry<Long, PacketCollection> entry : packetCollections.entrySet()) {
+			if (r.size() >= maxCount) {
+				break;
+			}
+			r.add(new QueuedPacketCollection(entry.getKey(), entry.getValue()));
+		}
+		return r;
+	}
+
+	@Override
+	public synchronized void acknowledge(@NotNull QueuedPacketCollection queuedPacketCollection) {
+		packetCollections.remove(queuedPacketCollection.getSequence());
+	}
+
+	@Override
+	public synchronized int size() {
+		return packetCollections.size();
+	}
+}
@@ -0,0 +1,53 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A queue of packet collections that are waiting to be handled. Packet collections stay in the queue until they are acknowledged.
+ * <p>
+ * Implementations must be thread safe.
+ */
+public interface PacketCollectionQueue {
+	/**
+	 * Adds a packet collection to the end of the queue
+	 */
+	void add(@NotNull PacketCollection packetCollection);
+
+	/**
+	 * @param maxCount The maximum number of packet collections to return
+	 * @return The oldest packet collections that have not been acknowledged, in the order they were added
+	 */
+	@NotNull List<QueuedPacketCollection> peek(int maxCount);
+
+	/**
+	 * Removes a packet collection from the queue. This should be called after it has been handled, or when it should no longer be handled.
+	 */
+	void acknowledge(@NotNull QueuedPacketCollection queuedPacketCollection);
+
+	/** @return The number of packet collections that have not been acknowledged */
+	int size();
+
+	final class QueuedPacketCollection {
+		private final long sequence;
+		private final PacketCollection packetCollection;
+
+		public QueuedPacketCollection(long sequence, @NotNull PacketCollection packetCollection) {
+			this.sequence = sequence;
+			requireNonNull(this.packetCollection = packetCollection);
+		}
+
+		/** @return A number that is unique to this entry in the queue. Entries added later have higher sequences */
+		public long getSequence() {
+			return sequence;
+		}
+
+		public @NotNull PacketCollection getPacketCollection() {
+			return packetCollection;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package me.retrodaredevil.solarthing.packets.handling;
 
+import me.retrodaredevil.solarthing.packets.collection.EncodedPacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 
 import java.util.ArrayList;
@@ -12,6 +13,8 @@ import java.util.List;
  * throws a {@link PacketHandleException} or any exception for that matter, it will not call {@link PacketHandler#handle(PacketCollection)}
  * on {@link PacketHandler}s it didn't get to, making order significant if you want to make sure {@link PacketHandler}s that cannot throw exceptions
  * are executed before ones that could throw an exception.
+ * <p>
+ * Each {@link PacketHandler} is given the same {@link EncodedPacketCollection}, so handlers that need JSON can share a single serialization.
  */
 public class PacketHandlerMultiplexer implements PacketHandler {
 	private final List<PacketHandler> packetHandlers;
@@ -25,8 +28,9 @@ public class PacketHandlerMultiplexer implements PacketHandler {
 
 	@Override
 	public void handle(PacketCollection packetCollection) throws PacketHandleException {
+		EncodedPacketCollection encodedPacketCollection = EncodedPacketCollection.of(packetCollection);
 		for(PacketHandler handler : packetHandlers){
-			handler.handle(packetCollection);
+			handler.handle(encodedPacketCollection);
 		}
 	}
 }
@@ -0,0 +1,21 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Determines what happens when a packet collection is given to a {@link AsyncPacketHandlerWrapper} whose queue is full
+ */
+public enum QueueOverflowPolicy {
+	/** The oldest queued packet collection is dropped to make room for the new one */
+	@JsonProperty("drop_oldest")
+	DROP_OLDEST,
+	/** The new packet collection is dropped */
+	@JsonProperty("drop_newest")
+	DROP_NEWEST,
+	/** Every queued packet collection is dropped so that only the newest one is handled next */
+	@JsonProperty("coalesce")
+	COALESCE,
+	/** The caller waits for room in the queue. If there is still no room after the block timeout, the new packet collection is dropped */
+	@JsonProperty("block")
+	BLOCK,
+}
@@ -0,0 +1,80 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Settings for the queue of a {@link AsyncPacketHandlerWrapper}
+ */
+@JsonDeserialize(builder = QueueSettings.Builder.class)
+public final class QueueSettings {
+
+	public static final QueueSettings DEFAULT_SETTINGS = new QueueSettings(50, QueueOverflowPolicy.DROP_OLDEST, Duration.ofSeconds(5));
+
+	private final int capacity;
+	private final QueueOverflowPolicy overflowPolicy;
+	private final Duration blockTimeout;
+
+	public QueueSettings(int capacity, @NotNull QueueOverflowPolicy overflowPolicy, @NotNull Duration blockTimeout) {
+		this.capacity = capacity;
+		requireNonNull(this.overflowPolicy = overflowPolicy);
+		requireNonNull(this.blockTimeout = blockTimeout);
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be >= 1");
+		}
+		if (blockTimeout.isNegative()) {
+			throw new IllegalArgumentException("Block timeout must not be negative");
+		}
+	}
+
+	/** @return The maximum number of packet collections that can be waiting to be handled */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public @NotNull QueueOverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/** @return The maximum amount of time to wait for room in the queue. Only used for {@link QueueOverflowPolicy#BLOCK} */
+	public @NotNull Duration getBlockTimeout() {
+		return blockTimeout;
+	}
+
+	@Override
+	public String toString() {
+		return "QueueSettings(capacity=" + capacity + " overflowPolicy=" + overflowPolicy + " blockTimeout=" + blockTimeout + ")";
+	}
+
+	@JsonPOJOBuilder
+	static class Builder {
+		private int capacity = DEFAULT_SETTINGS.capacity;
+		private QueueOverflowPolicy overflowPolicy = DEFAULT_SETTINGS.overflowPolicy;
+		private Duration blockTimeout = DEFAULT_SETTINGS.blockTimeout;
+
+		@JsonSetter("capacity")
+		public void setCapacity(int capacity) {
+			this.capacity = capacity;
+		}
+
+		@JsonSetter("overflow")
+		public void setOverflowPolicy(QueueOverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+		}
+
+		@JsonSetter("block_timeout")
+		public void setBlockTimeoutSeconds(float blockTimeoutSeconds) {
+			this.blockTimeout = Duration.ofMillis(Math.round(blockTimeoutSeconds * 1000.0));
+		}
+
+		public QueueSettings build() {
+			return new QueueSettings(capacity, overflowPolicy, blockTimeout);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import me.retrodaredevil.solarthing.annotations.NotNull;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Settings for the disk backed queue of a {@link AsyncRetryingPacketHandler}
+ */
+@JsonDeserialize(builder = RetryQueueSettings.Builder.class)
+public final class RetryQueueSettings {
+
+	public static final RetryQueueSettings DEFAULT_SETTINGS = new RetryQueueSettings(64L * 1024 * 1024, Duration.ofDays(7), 2);
+
+	private final long maxBytes;
+	private final Duration maxAge;
+	private final int replayConcurrency;
+
+	public RetryQueueSettings(long maxBytes, @NotNull Duration maxAge, int replayConcurrency) {
+		this.maxBytes = maxBytes;
+		requireNonNull(this.maxAge = maxAge);
+		this.replayConcurrency = replayConcurrency;
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("Max bytes must be >= 1");
+		}
+		if (maxAge.isNegative() || maxAge.isZero()) {
+			throw new IllegalArgumentException("Max age must be positive");
+		}
+		if (replayConcurrency < 1) {
+			throw new IllegalArgumentException("Replay concurrency must be >= 1");
+		}
+	}
+
+	/** @return The maximum number of bytes the queue may use on disk. When this is exceeded, the oldest packet collections are dropped */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** @return The maximum age of a packet collection. Older packet collections are dropped instead of uploaded */
+	public @NotNull Duration getMaxAge() {
+		return maxAge;
+	}
+
+	/** @return The maximum number of packet collections to upload at the same time. Not used for CouchDB, which uploads many packet collections in a single request */
+	public int getReplayConcurrency() {
+		return replayConcurrency;
+	}
+
+	@Override
+	public String toString() {
+		return "RetryQueueSettings(maxBytes=" + maxBytes + " maxAge=" + maxAge + " replayConcurrency=" + replayConcurrency + ")";
+	}
+
+	@JsonPOJOBuilder
+	static class Builder {
+		private long maxBytes = DEFAULT_SETTINGS.maxBytes;
+		private Duration maxAge = DEFAULT_SETTINGS.maxAge;
+		private int replayConcurrency = DEFAULT_SETTINGS.replayConcurrency;
+
+		@JsonSetter("max_megabytes")
+		public void setMaxMegabytes(float maxMegabytes) {
+			this.maxBytes = Math.round(maxMegabytes * 1024.0 * 1024.0);
+		}
+
+		@JsonSetter("max_age")
+		public void setMaxAge(String maxAgeDurationString) {
+			this.maxAge = Duration.parse(maxAgeDurationString);
+		}
+
+		@JsonSetter("replay_concurrency")
+		public void setReplayConcurrency(int replayConcurrency) {
+			this.replayConcurrency = replayConcurrency;
+		}
+
+		public RetryQueueSettings build() {
+			return new RetryQueueSettings(maxBytes, maxAge, replayConcurrency);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package me.retrodaredevil.solarthing.packets.handling.implementations;
 
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.packets.collection.EncodedPacketCollection;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandleException;
 import me.retrodaredevil.solarthing.packets.handling.PacketHandler;
@@ -12,20 +14,28 @@ import java.nio.file.StandardOpenOption;
 
 public class FileWritePacketHandler implements PacketHandler {
 	private final File file;
-	private final StringPacketHandler stringPacketHandler;
+	private final @Nullable StringPacketHandler stringPacketHandler;
 	private final boolean append;
 
-	public FileWritePacketHandler(File file, StringPacketHandler stringPacketHandler, boolean append) {
+	/**
+	 * @param stringPacketHandler The {@link StringPacketHandler} to get the contents to write, or null to write the compact JSON from {@link EncodedPacketCollection}
+	 */
+	public FileWritePacketHandler(File file, @Nullable StringPacketHandler stringPacketHandler, boolean append) {
 		this.file = file;
 		this.stringPacketHandler = stringPacketHandler;
 		this.append = append;
 	}
+	public FileWritePacketHandler(File file, boolean append) {
+		this(file, null, append);
+	}
 
 	@Override
 	public void handle(PacketCollection packetCollection) throws PacketHandleException {
-		String string = stringPacketHandler.getString(packetCollection);
+		byte[] bytes = stringPacketHandler == null
+				? EncodedPacketCollection.getJsonBytes(packetCollection)
+				: stringPacketHandler.getString(packetCollection).getBytes(StandardCharsets.UTF_8);
 		try {
-			Files.write(file.toPath(), string.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.WRITE, (append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING));
+			Files.write(file.toPath(), bytes, StandardOpenOption.CREATE, StandardOpenOption.WRITE, (append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING));
 		} catch (IOException e) {
 			throw new PacketHandleException(e);
 		}
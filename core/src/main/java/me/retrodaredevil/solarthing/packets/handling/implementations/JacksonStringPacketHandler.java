@@ -2,19 +2,20 @@ package me.retrodaredevil.solarthing.packets.handling.implementations;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
 
 public class JacksonStringPacketHandler implements StringPacketHandler {
-	private final ObjectMapper mapper;
+	private final ObjectWriter writer;
 
 	public JacksonStringPacketHandler(ObjectMapper mapper) {
-		this.mapper = mapper;
+		this.writer = mapper.writerWithDefaultPrettyPrinter();
 	}
 
 	@Override
 	public String getString(PacketCollection packetCollection) {
 		try {
-			return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(packetCollection);
+			return writer.writeValueAsString(packetCollection);
 		} catch (JsonProcessingException e) {
 			throw new RuntimeException("Couldn't write to string!", e);
 		}
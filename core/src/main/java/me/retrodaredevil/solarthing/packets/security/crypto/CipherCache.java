@@ -0,0 +1,58 @@
+package me.retrodaredevil.solarthing.packets.security.crypto;
+
+import javax.crypto.Cipher;
+import java.security.Key;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps a {@link Cipher} for each thread and key that is already initialized, so that the same key does not have to initialize a cipher every time it is used.
+ * <p>
+ * A {@link Cipher} goes back to its initialized state after {@link Cipher#doFinal(byte[])}, so it can be reused without calling {@link Cipher#init(int, Key)} again.
+ */
+final class CipherCache {
+	private static final int MAX_KEYS_PER_THREAD = 16;
+
+	private final int opmode;
+	private final ThreadLocal<Map<Key, Cipher>> cipherMap = ThreadLocal.withInitial(() -> new LinkedHashMap<Key, Cipher>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Cipher> eldest) {
+			return size() > MAX_KEYS_PER_THREAD;
+		}
+	});
+
+	/**
+	 * @param opmode The mode to initialize ciphers with, such as {@link Cipher#DECRYPT_MODE}
+	 */
+	CipherCache(int opmode) {
+		this.opmode = opmode;
+	}
+
+	/**
+	 * @return A cipher initialized with {@code key} that may only be used by the current thread
+	 */
+	Cipher getCipher(Key key) throws InvalidKeyException {
+		requireNonNull(key);
+		Map<Key, Cipher> map = cipherMap.get();
+		Cipher cipher = map.get(key);
+		if (cipher == null) {
+			cipher = KeyUtil.createCipher();
+			try {
+				cipher.init(opmode, key);
+			} catch (java.security.InvalidKeyException e) {
+				throw new InvalidKeyException("invalid key!", e);
+			}
+			map.put(key, cipher);
+		}
+		return cipher;
+	}
+
+	/**
+	 * Removes the cipher for {@code key} from the current thread. This should be called if the cipher may be in an unknown state.
+	 */
+	void remove(Key key) {
+		cipherMap.get().remove(key);
+	}
+}
@@ -16,26 +16,54 @@ import static java.util.Objects.requireNonNull;
 public final class Decrypt {
 	private Decrypt(){ throw new UnsupportedOperationException(); }
 
+	private static final CipherCache CIPHER_CACHE = new CipherCache(Cipher.DECRYPT_MODE);
+
+	/**
+	 * Decrypts data using a cipher that is cached for the current thread and {@code sender}'s key. This is safe to call from multiple threads at once.
+	 */
+	public static String decrypt(PublicKeyLookUp publicKeyLookUp, String sender, String base64EncryptedData) throws NotAuthorizedException, DecryptException, InvalidKeyException {
+		return decrypt(getKey(publicKeyLookUp, sender), base64EncryptedData);
+	}
+	/**
+	 * Decrypts data using a cipher that is cached for the current thread and {@code key}. This is safe to call from multiple threads at once.
+	 */
+	public static String decrypt(PublicKey key, String base64EncryptedData) throws InvalidKeyException, DecryptException {
+		requireNonNull(base64EncryptedData);
+		Cipher cipher = CIPHER_CACHE.getCipher(key);
+		try {
+			return doFinal(cipher, base64EncryptedData);
+		} catch (DecryptException | RuntimeException e) {
+			CIPHER_CACHE.remove(key); // the cipher may not be reusable now
+			throw e;
+		}
+	}
+
 	public static String decrypt(Cipher cipher, PublicKeyLookUp publicKeyLookUp, IntegrityPacket packet) throws NotAuthorizedException, DecryptException, InvalidKeyException {
 		return decrypt(cipher, publicKeyLookUp, packet.getSender(), packet.getEncryptedData());
 	}
 	public static String decrypt(Cipher cipher, PublicKeyLookUp publicKeyLookUp, String sender, String base64EncryptedData) throws NotAuthorizedException, DecryptException, InvalidKeyException {
+		return decrypt(cipher, getKey(publicKeyLookUp, sender), base64EncryptedData);
+	}
+	private static PublicKey getKey(PublicKeyLookUp publicKeyLookUp, String sender) throws NotAuthorizedException {
 		PublicKey key = publicKeyLookUp.getKey(sender);
 		if(key == null){
 			throw new NotAuthorizedException(sender + " is not authenticated");
 		}
-		return decrypt(cipher, key, base64EncryptedData);
+		return key;
 	}
 	public static String decrypt(Cipher cipher, PublicKey key, String base64EncryptedData) throws InvalidKeyException, DecryptException {
 		requireNonNull(cipher);
 		requireNonNull(key);
 		requireNonNull(base64EncryptedData);
-		byte[] encryptedData = Base64.getDecoder().decode(base64EncryptedData);
 		try {
 			cipher.init(Cipher.DECRYPT_MODE, key);
 		} catch (java.security.InvalidKeyException e) {
 			throw new InvalidKeyException("invalid key!", e);
 		}
+		return doFinal(cipher, base64EncryptedData);
+	}
+	private static String doFinal(Cipher cipher, String base64EncryptedData) throws DecryptException {
+		byte[] encryptedData = Base64.getDecoder().decode(base64EncryptedData);
 		final byte[] characterByteArray;
 		try {
 			characterByteArray = cipher.doFinal(encryptedData);
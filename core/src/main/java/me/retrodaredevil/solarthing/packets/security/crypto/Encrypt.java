@@ -15,6 +15,22 @@ import static java.util.Objects.requireNonNull;
 public final class Encrypt {
 	private Encrypt(){ throw new UnsupportedOperationException(); }
 
+	private static final CipherCache CIPHER_CACHE = new CipherCache(Cipher.ENCRYPT_MODE);
+
+	/**
+	 * Encrypts data using a cipher that is cached for the current thread and {@code key}. This is safe to call from multiple threads at once.
+	 */
+	public static String encrypt(PrivateKey key, String dataToEncrypt) throws InvalidKeyException, EncryptException {
+		requireNonNull(dataToEncrypt);
+		Cipher cipher = CIPHER_CACHE.getCipher(key);
+		try {
+			return doFinal(cipher, dataToEncrypt);
+		} catch (EncryptException | RuntimeException e) {
+			CIPHER_CACHE.remove(key);
+			throw e;
+		}
+	}
+
 	public static String encrypt(Cipher cipher, PrivateKey key, String dataToEncrypt) throws InvalidKeyException, EncryptException {
 		requireNonNull(cipher);
 		requireNonNull(key);
@@ -24,6 +40,9 @@ public final class Encrypt {
 		} catch (java.security.InvalidKeyException e) {
 			throw new InvalidKeyException(e);
 		}
+		return doFinal(cipher, dataToEncrypt);
+	}
+	private static String doFinal(Cipher cipher, String dataToEncrypt) throws EncryptException {
 		final byte[] encryptedData;
 		try {
 			encryptedData = cipher.doFinal(dataToEncrypt.getBytes(StandardCharsets.UTF_8));
@@ -3,7 +3,6 @@ package me.retrodaredevil.solarthing.packets.security.crypto;
 import com.fasterxml.jackson.core.Base64Variants;
 import me.retrodaredevil.solarthing.annotations.UtilityClass;
 
-import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -11,22 +10,71 @@ import java.security.NoSuchAlgorithmException;
 public final class HashUtil {
 	private HashUtil() { throw new UnsupportedOperationException(); }
 
-	private static final MessageDigest MESSAGE_DIGEST;
+	private static final String ALGORITHM = "SHA-256";
+	private static final int BUFFER_SIZE = 4096;
 
-	static {
-		try {
-			MESSAGE_DIGEST = MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
-	}
+	/** Each thread has its own digest so that threads never wait on each other */
+	private static final ThreadLocal<Hasher> HASHER = ThreadLocal.withInitial(Hasher::new);
+
+	/**
+	 * @return The SHA-256 hash of the UTF-8 encoding of {@code string}. The same as hashing {@code string.getBytes(StandardCharsets.UTF_8)}
+	 */
 	public static byte[] hash(String string) {
-		synchronized (MESSAGE_DIGEST) {
-			MESSAGE_DIGEST.update(string.getBytes(StandardCharsets.UTF_8));
-			return MESSAGE_DIGEST.digest();
-		}
+		return HASHER.get().hash(string);
 	}
 	public static String encodedHash(String string) {
 		return Base64Variants.getDefaultVariant().encode(hash(string));
 	}
+
+	/**
+	 * Encodes a string as UTF-8 into a small reusable buffer that is given to the digest, so the entire string is never copied into a byte array.
+	 */
+	private static final class Hasher {
+		private final MessageDigest digest;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		private Hasher() {
+			try {
+				digest = MessageDigest.getInstance(ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		byte[] hash(String string) {
+			byte[] buffer = this.buffer;
+			int position = 0;
+			int length = string.length();
+			for (int i = 0; i < length; i++) {
+				if (position > BUFFER_SIZE - 4) { // make sure there is always room for the largest encoding
+					digest.update(buffer, 0, position);
+					position = 0;
+				}
+				char c = string.charAt(i);
+				if (c < 0x80) {
+					buffer[position++] = (byte) c;
+				} else if (c < 0x800) {
+					buffer[position++] = (byte) (0xC0 | (c >> 6));
+					buffer[position++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					int codePoint = Character.codePointAt(string, i);
+					if (Character.isSupplementaryCodePoint(codePoint)) {
+						i++;
+						buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+						buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+						buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+						buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+					} else {
+						buffer[position++] = '?'; // unpaired surrogates are replaced like String#getBytes does
+					}
+				} else {
+					buffer[position++] = (byte) (0xE0 | (c >> 12));
+					buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[position++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			digest.update(buffer, 0, position);
+			return digest.digest();
+		}
+	}
 }
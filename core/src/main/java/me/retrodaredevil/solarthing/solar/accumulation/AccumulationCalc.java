@@ -7,7 +7,6 @@ import me.retrodaredevil.solarthing.solar.accumulation.value.AccumulationValueFa
 import me.retrodaredevil.solarthing.solar.common.DailyData;
 import org.jetbrains.annotations.Contract;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -49,34 +48,14 @@ public final class AccumulationCalc {
 	 * @param totalGetter The getter function that gives the desired data point to be summed
 	 * @param packets For each packet, an associated {@link SumNode} is present in the returned list
 	 * @param <T> The type of the packet that is being used to calculate the total
-	 * @return
+	 * @return A list of {@link SumNode}s with the same size as {@code packets}. This is calculated in linear time if {@code packets} is sorted
+	 * @see AccumulationRunningTotal
 	 */
 	@Contract(pure = true)
 	public static <T extends DailyData, U extends AccumulationValue<U>> List<SumNode<U>> getTotals(
 			List<? extends AccumulationPair<T>> accumulationPairs, TotalGetter<T, U> totalGetter, List<? extends TimestampedPacket<T>> packets,
 			AccumulationValueFactory<U> accumulationValueFactory) {
-		if (accumulationPairs.isEmpty()) {
-			throw new IllegalArgumentException("dailyPairs is empty!");
-		}
-		List<SumNode<U>> r = new ArrayList<>();
-		for (TimestampedPacket<T> packet : packets) {
-			long dateMillis = packet.getDateMillis();
-			List<AccumulationPair<T>> previousAccumulationPairs = new ArrayList<>();
-			for (AccumulationPair<T> element : accumulationPairs) {
-				previousAccumulationPairs.add(element);
-				if (dateMillis <= element.getLatestPacket().getDateMillis()) {
-					break;
-				}
-			}
-			if (previousAccumulationPairs.isEmpty()) {
-				throw new AssertionError("We checked to make sure dailyPairs is not empty, so why is previousDailyPairs empty?");
-			}
-			AccumulationPair<T> lastAccumulationPair = previousAccumulationPairs.get(previousAccumulationPairs.size() - 1);
-			previousAccumulationPairs.set(previousAccumulationPairs.size() - 1, new AccumulationPair<>(lastAccumulationPair.getStartPacket(), packet, lastAccumulationPair.getStartPacketType()));
-			U sum = getTotal(previousAccumulationPairs, totalGetter, accumulationValueFactory);
-			r.add(new SumNode<>(sum, dateMillis));
-		}
-		return r;
+		return new AccumulationRunningTotal<>(accumulationPairs, totalGetter, accumulationValueFactory).getTotals(packets);
 	}
 
 	public static final class SumNode<U extends AccumulationValue<U>> {
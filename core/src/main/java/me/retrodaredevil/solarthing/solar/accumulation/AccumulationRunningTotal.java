@@ -0,0 +1,106 @@
+package me.retrodaredevil.solarthing.solar.accumulation;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+import me.retrodaredevil.solarthing.packets.TimestampedPacket;
+import me.retrodaredevil.solarthing.solar.accumulation.value.AccumulationValue;
+import me.retrodaredevil.solarthing.solar.accumulation.value.AccumulationValueFactory;
+import me.retrodaredevil.solarthing.solar.common.DailyData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Calculates the running total for packets in a single pass over a list of {@link AccumulationPair}s.
+ * <p>
+ * The sum of all the pairs before the "current" pair is remembered, so each pair's total is only calculated once. When packets
+ * are fed in ascending order (which is normal), {@link #getTotals(List)} runs in linear time.
+ * <p>
+ * The result of {@link #next(TimestampedPacket)} is identical to building a list of "previous" pairs and calling
+ * {@link AccumulationCalc#getTotal(List, TotalGetter, AccumulationValueFactory)} on it. Values are added in the same order, so even
+ * floating point sums are identical.
+ * <p>
+ * This is not thread safe.
+ * @param <T> The type of the packet that is being used to calculate the total
+ * @param <U> The type of the accumulation value
+ */
+public final class AccumulationRunningTotal<T extends DailyData, U extends AccumulationValue<U>> {
+	private final List<? extends AccumulationPair<T>> accumulationPairs;
+	private final TotalGetter<T, U> totalGetter;
+	private final AccumulationValueFactory<U> accumulationValueFactory;
+
+	/** The index of the pair that the last packet was a part of. */
+	private int pairIndex = 0;
+	/** The sum of the totals of all the pairs before {@link #pairIndex} */
+	private U previousPairsSum;
+	/** The total of the start packet of the pair at {@link #pairIndex}, or null if not yet calculated */
+	private U pairStartTotal = null;
+	private long lastDateMillis = Long.MIN_VALUE;
+
+	public AccumulationRunningTotal(List<? extends AccumulationPair<T>> accumulationPairs, TotalGetter<T, U> totalGetter, AccumulationValueFactory<U> accumulationValueFactory) {
+		requireNonNull(this.accumulationPairs = accumulationPairs);
+		requireNonNull(this.totalGetter = totalGetter);
+		requireNonNull(this.accumulationValueFactory = accumulationValueFactory);
+		if (accumulationPairs.isEmpty()) {
+			throw new IllegalArgumentException("dailyPairs is empty!");
+		}
+		previousPairsSum = accumulationValueFactory.getZero();
+	}
+
+	private void reset() {
+		pairIndex = 0;
+		previousPairsSum = accumulationValueFactory.getZero();
+		pairStartTotal = null;
+	}
+
+	private U getPairTotal(AccumulationPair<? extends T> accumulationPair) {
+		if (accumulationPair.getStartPacketType() == AccumulationPair.StartPacketType.CUT_OFF) {
+			return totalGetter.getTotal(accumulationPair.getLatestPacket().getPacket()).minus(totalGetter.getTotal(accumulationPair.getStartPacket().getPacket()));
+		}
+		return totalGetter.getTotal(accumulationPair.getLatestPacket().getPacket());
+	}
+
+	/**
+	 * @param packet The packet to get the running total at
+	 * @return The {@link AccumulationCalc.SumNode} representing the total up to and including {@code packet}
+	 */
+	public @NotNull AccumulationCalc.SumNode<U> next(TimestampedPacket<T> packet) {
+		long dateMillis = packet.getDateMillis();
+		if (dateMillis < lastDateMillis) {
+			// Packets are not in order, so we cannot assume that the pair this packet is in is at or after the current one
+			reset();
+		}
+		lastDateMillis = dateMillis;
+
+		int lastIndex = accumulationPairs.size() - 1;
+		while (pairIndex < lastIndex && dateMillis > accumulationPairs.get(pairIndex).getLatestPacket().getDateMillis()) {
+			previousPairsSum = previousPairsSum.plus(getPairTotal(accumulationPairs.get(pairIndex)));
+			pairIndex++;
+			pairStartTotal = null;
+		}
+		AccumulationPair<T> currentPair = accumulationPairs.get(pairIndex);
+		final U addAmount;
+		if (currentPair.getStartPacketType() == AccumulationPair.StartPacketType.CUT_OFF) {
+			if (pairStartTotal == null) {
+				pairStartTotal = totalGetter.getTotal(currentPair.getStartPacket().getPacket());
+			}
+			addAmount = totalGetter.getTotal(packet.getPacket()).minus(pairStartTotal);
+		} else {
+			addAmount = totalGetter.getTotal(packet.getPacket());
+		}
+		return new AccumulationCalc.SumNode<>(previousPairsSum.plus(addAmount), dateMillis);
+	}
+
+	/**
+	 * @param packets For each packet, an associated {@link AccumulationCalc.SumNode} is present in the returned list
+	 * @return A list of {@link AccumulationCalc.SumNode}s with the same size as {@code packets}
+	 */
+	public @NotNull List<AccumulationCalc.SumNode<U>> getTotals(List<? extends TimestampedPacket<T>> packets) {
+		List<AccumulationCalc.SumNode<U>> r = new ArrayList<>(packets.size());
+		for (TimestampedPacket<T> packet : packets) {
+			r.add(next(packet));
+		}
+		return r;
+	}
+}
@@ -25,17 +25,24 @@ public final class AccumulationUtil {
 	 */
 	@Contract(pure = true)
 	private static <T extends DailyData> AccumulationPair<T> createAccumulationPair(boolean isFirst, TimestampedPacket<T> firstPacket, TimestampedPacket<T> endPacket, AccumulationConfig accumulationConfig) {
-		final AccumulationPair.StartPacketType startPacketType;
+		return new AccumulationPair<>(firstPacket, endPacket, getStartPacketType(isFirst, firstPacket.getDateMillis(), endPacket.getDateMillis(), accumulationConfig));
+	}
+
+	/**
+	 * @param isFirst true if this is for the first {@link AccumulationPair} in a list
+	 * @param firstDateMillis The date of the start packet of the pair
+	 * @param endDateMillis The date of the latest packet of the pair
+	 * @return The {@link AccumulationPair.StartPacketType} that {@link #getAccumulationPairs(List, AccumulationConfig)} would use for the pair
+	 */
+	@Contract(pure = true)
+	public static AccumulationPair.StartPacketType getStartPacketType(boolean isFirst, long firstDateMillis, long endDateMillis, AccumulationConfig accumulationConfig) {
 		if (isFirst) {
-			if (firstPacket.getDateMillis() < accumulationConfig.getCutOffIfStartBeforeDateMillis() || endPacket.getDateMillis() < accumulationConfig.getCutOffIfEndBeforeDateMillis()) {
-				startPacketType = AccumulationPair.StartPacketType.CUT_OFF;
-			} else {
-				startPacketType = AccumulationPair.StartPacketType.MIDDLE_OF_DAY_CONNECT;
+			if (firstDateMillis < accumulationConfig.getCutOffIfStartBeforeDateMillis() || endDateMillis < accumulationConfig.getCutOffIfEndBeforeDateMillis()) {
+				return AccumulationPair.StartPacketType.CUT_OFF;
 			}
-		} else {
-			startPacketType = AccumulationPair.StartPacketType.FIRST_AFTER_RESET;
+			return AccumulationPair.StartPacketType.MIDDLE_OF_DAY_CONNECT;
 		}
-		return new AccumulationPair<>(firstPacket, endPacket, startPacketType);
+		return AccumulationPair.StartPacketType.FIRST_AFTER_RESET;
 	}
 	@Contract(pure = true)
 	public static <T extends DailyData> List<AccumulationPair<T>> getAccumulationPairs(List<? extends TimestampedPacket<T>> packets, AccumulationConfig accumulationConfig) {
@@ -45,8 +45,19 @@ public class MatePacketCreator49 extends StartEndTextPacketCreator {
 		} else {
 			throw new PacketCreationException("Ascii value: " + value + " not supported. (from: '" + new String(bytes) + "')");
 		}
-		LOGGER.debug("Created outback packet address=" + r.getAddress());
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Created outback packet address=" + r.getAddress());
+		}
 		return Collections.singleton(r);
 	}
 
+	@Override
+	protected Collection<Packet> create(char[] buffer, int length) throws PacketCreationException {
+		if (length != buffer.length) {
+			return super.create(buffer, length);
+		}
+		// The packet is parsed straight into primitives, so it is safe to parse directly from the reused buffer
+		return create(buffer);
+	}
+
 }
@@ -64,7 +64,9 @@ public final class MXStatusPackets {
 			dailyAHOnes = toInt(chars, 40);
 			// , UNUSED UNUSED
 		} else { // we must be on old firmware
-			LOGGER.debug("We must be on old firmware. 41st char(index=40): '" + char41 + "'");
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("We must be on old firmware. 41st char(index=40): '" + char41 + "'");
+			}
 			char char37 = chars[36];
 			if(Character.isDigit(char37)){
 				// if we get inside this if statement, we know the packet is incorrect and data may be incorrect
@@ -0,0 +1,30 @@
+package me.retrodaredevil.solarthing.util;
+
+import me.retrodaredevil.solarthing.annotations.NotNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ThreadFactory} that creates daemon threads, so that an executor that is never shut down does not keep the program running
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+	private final String namePrefix;
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * @param namePrefix The prefix of the name of each thread. Each name ends with a number
+	 */
+	public DaemonThreadFactory(@NotNull String namePrefix) {
+		requireNonNull(this.namePrefix = namePrefix);
+	}
+
+	@Override
+	public Thread newThread(@NotNull Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
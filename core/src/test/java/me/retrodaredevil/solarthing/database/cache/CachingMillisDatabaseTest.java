@@ -0,0 +1,141 @@
+package me.retrodaredevil.solarthing.database.cache;
+
+import me.retrodaredevil.solarthing.database.MillisDatabase;
+import me.retrodaredevil.solarthing.database.MillisQuery;
+import me.retrodaredevil.solarthing.database.MillisQueryBuilder;
+import me.retrodaredevil.solarthing.database.UpdateToken;
+import me.retrodaredevil.solarthing.database.VersionedPacket;
+import me.retrodaredevil.solarthing.database.couchdb.CouchDbStoredIdentifier;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketGroups;
+import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingMillisDatabaseTest {
+	private static final long START_MILLIS = 1_600_000_000_000L;
+	private static final Duration VOLATILE_WINDOW = Duration.ofMinutes(15);
+
+	@Test
+	void testSameAsDatabase() throws Exception {
+		FakeClock clock = new FakeClock();
+		FakeMillisDatabase database = new FakeMillisDatabase();
+		CachingMillisDatabase cachingDatabase = new CachingMillisDatabase(database, VOLATILE_WINDOW, Duration.ofMinutes(30), 2_000, clock);
+		Random random = new Random(9876);
+		long now = START_MILLIS;
+		for (int step = 0; step < 2000; step++) {
+			now += 1_000 + random.nextInt(9_000);
+			clock.millis = now;
+			database.add(now - random.nextInt(3_000));
+
+			final long from;
+			final long to;
+			if (random.nextInt(10) == 0) { // every once in a while, look at a random part of history
+				from = START_MILLIS + (long) (random.nextDouble() * (now - START_MILLIS));
+				to = from + random.nextInt(3 * 60 * 60 * 1000);
+			} else { // usually, look at the last few hours, like a dashboard does
+				to = now;
+				from = now - 3 * 60 * 60 * 1000;
+			}
+			MillisQuery query = new MillisQueryBuilder().startKey(from).endKey(to).inclusiveEnd(random.nextBoolean()).build();
+			assertEquals(database.query(query), cachingDatabase.query(query));
+			assertTrue(cachingDatabase.getPacketGroupCount() <= 2_000);
+		}
+		assertTrue(cachingDatabase.getHitCount() > cachingDatabase.getMissCount());
+	}
+
+	@Test
+	void testLateEventSeenAfterTimeToLive() throws Exception {
+		FakeClock clock = new FakeClock();
+		FakeMillisDatabase database = new FakeMillisDatabase();
+		CachingMillisDatabase cachingDatabase = new CachingMillisDatabase(database, VOLATILE_WINDOW, VOLATILE_WINDOW, 2_000, clock);
+		long now = START_MILLIS;
+		clock.millis = now;
+		database.add(now - Duration.ofHours(2).toMillis());
+		MillisQuery query = new MillisQueryBuilder().startKey(now - Duration.ofHours(3).toMillis()).endKey(now).build();
+		assertEquals(1, cachingDatabase.query(query).size());
+
+		database.add(now - Duration.ofHours(1).toMillis()); // a late event that was uploaded by something else
+		assertEquals(1, cachingDatabase.query(query).size()); // still cached
+
+		clock.millis = now + VOLATILE_WINDOW.toMillis() + 1;
+		assertEquals(database.query(query), cachingDatabase.query(query));
+		assertEquals(2, cachingDatabase.query(query).size());
+	}
+
+	private static final class FakeClock extends Clock {
+		private long millis;
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public long millis() {
+			return millis;
+		}
+	}
+	private static final class FakeMillisDatabase implements MillisDatabase {
+		/** Sorted by date millis */
+		private final List<StoredPacketGroup> packetGroups = new ArrayList<>();
+
+		private void add(long dateMillis) {
+			StoredPacketGroup packetGroup = PacketGroups.createStoredPacketGroup(Collections.emptyList(), dateMillis, new CouchDbStoredIdentifier(dateMillis, "doc" + packetGroups.size(), "1"));
+			int index = packetGroups.size();
+			while (index > 0 && packetGroups.get(index - 1).getDateMillis() > dateMillis) {
+				index--;
+			}
+			packetGroups.add(index, packetGroup);
+		}
+
+		@Override
+		public List<StoredPacketGroup> query(MillisQuery query) {
+			List<StoredPacketGroup> r = new ArrayList<>();
+			for (StoredPacketGroup packetGroup : packetGroups) {
+				long dateMillis = packetGroup.getDateMillis();
+				if (dateMillis >= query.getStartKey() && (query.isInclusiveEnd() ? dateMillis <= query.getEndKey() : dateMillis < query.getEndKey())) {
+					r.add(packetGroup);
+				}
+			}
+			return r;
+		}
+
+		@Override
+		public UpdateToken uploadPacketCollection(PacketCollection packetCollection, UpdateToken updateToken) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public VersionedPacket<StoredPacketGroup> getPacketCollection(String documentId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public UpdateToken getCurrentUpdateToken(String documentId) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
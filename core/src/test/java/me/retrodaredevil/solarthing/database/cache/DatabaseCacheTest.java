@@ -14,6 +14,7 @@ import java.util.Arrays;
 import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DatabaseCacheTest {
@@ -99,6 +100,27 @@ class DatabaseCacheTest {
 		);
 	}
 
+	@Test
+	void testFeedChanges() {
+		Instant instant = Instant.now();
+		Clock clock = Clock.fixed(instant, ZoneOffset.UTC);
+		SimpleDatabaseCache cache = SimpleDatabaseCache.createDefault(clock);
+		MillisQuery query = cache.getRecommendedQuery();
+		cache.feed(Arrays.asList(
+				create(instant.minusSeconds(60)),
+				create(instant.minusSeconds(30))
+		), query.getStartKey(), query.getEndKey());
+
+		StoredPacketGroup updated = create(instant.minusSeconds(30));
+		StoredPacketGroup added = create(instant.minusSeconds(10));
+		cache.feedChanges(Arrays.asList(added, updated));
+		assertEquals(3, cache.getAllCachedPackets().size());
+		assertSame(updated, cache.getCachedPacketsInRange(TimeRange.create(instant.minusSeconds(30), instant.minusSeconds(30)), false).get(0));
+		assertSame(added, cache.getCachedPacketsInRange(TimeRange.create(instant.minusSeconds(20), instant), false).get(0));
+		// changes do not affect the recommended query
+		assertEquals(instant.minus(SimpleDatabaseCache.DEFAULT_VOLATILE_WINDOW_DURATION).toEpochMilli(), cache.getRecommendedQuery().getStartKey());
+	}
+
 	private static StoredPacketGroup create(Instant instant) {
 		return create(instant.toEpochMilli());
 	}
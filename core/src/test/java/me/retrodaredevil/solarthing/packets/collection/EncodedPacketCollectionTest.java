@@ -0,0 +1,36 @@
+package me.retrodaredevil.solarthing.packets.collection;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.retrodaredevil.solarthing.packets.instance.InstanceFragmentIndicatorPackets;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePackets;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EncodedPacketCollectionTest {
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+
+	@Test
+	void testEncodedOnce() throws IOException {
+		PacketCollection packetCollection = PacketCollections.create(
+				Instant.ofEpochMilli(1000),
+				Arrays.asList(InstanceSourcePackets.create("default"), InstanceFragmentIndicatorPackets.create(2)),
+				"id"
+		);
+		EncodedPacketCollection encoded = EncodedPacketCollection.of(packetCollection);
+		assertSame(encoded, EncodedPacketCollection.of(encoded));
+
+		byte[] jsonBytes = encoded.getJsonBytes();
+		assertArrayEquals(MAPPER.writeValueAsBytes(packetCollection), jsonBytes);
+		assertSame(jsonBytes, EncodedPacketCollection.getJsonBytes(encoded));
+		assertSame(encoded.getJson(), EncodedPacketCollection.getJson(encoded));
+		assertEquals(MAPPER.writeValueAsString(packetCollection), MAPPER.writeValueAsString(encoded));
+	}
+}
@@ -0,0 +1,111 @@
+package me.retrodaredevil.solarthing.packets.collection;
+
+import me.retrodaredevil.solarthing.database.couchdb.CouchDbStoredIdentifier;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.instance.InstanceFragmentIndicatorPackets;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePackets;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IncrementalPacketGroupMergerTest {
+	private static final long MAX_TIME_DISTANCE = 4 * 60 * 1000;
+	private static final long MASTER_ID_IGNORE_DISTANCE = 2 * 60 * 1000;
+	private static final long VOLATILE_WINDOW = 15 * 60 * 1000;
+	private static final long KEEP_DURATION = 2 * 60 * 60 * 1000;
+
+	private static StoredPacketGroup create(long dateMillis, String sourceId, int fragmentId, String documentId, int revision) {
+		List<Packet> packets = Arrays.asList(new Packet() {}, InstanceSourcePackets.create(sourceId), InstanceFragmentIndicatorPackets.create(fragmentId));
+		return PacketGroups.createStoredPacketGroup(packets, dateMillis, new CouchDbStoredIdentifier(dateMillis, documentId, "" + revision));
+	}
+
+	private static void assertSameAsSortPackets(Collection<StoredPacketGroup> packetGroups, IncrementalPacketGroupMerger merger) {
+		Map<String, List<FragmentedPacketGroup>> expectedMap = packetGroups.isEmpty()
+				? new HashMap<>()
+				: PacketGroups.sortPackets(packetGroups, DefaultInstanceOptions.REQUIRE_NO_DEFAULTS, MAX_TIME_DISTANCE, MASTER_ID_IGNORE_DISTANCE);
+		assertEquals(expectedMap.keySet(), merger.getSourceIds());
+		for (Map.Entry<String, List<FragmentedPacketGroup>> entry : expectedMap.entrySet()) {
+			List<FragmentedPacketGroup> expected = entry.getValue();
+			List<FragmentedPacketGroup> actual = merger.getPacketGroups(entry.getKey());
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getDateMillis(), actual.get(i).getDateMillis());
+				assertEquals(expected.get(i).getPackets(), actual.get(i).getPackets());
+			}
+			assertEquals(expected.get(expected.size() - 1).getDateMillis(), merger.getLatestPacketGroup(entry.getKey()).getDateMillis());
+		}
+	}
+
+	@Test
+	void testSameAsSortPackets() {
+		Random random = new Random(5678);
+		IncrementalPacketGroupMerger merger = new IncrementalPacketGroupMerger(DefaultInstanceOptions.REQUIRE_NO_DEFAULTS, MAX_TIME_DISTANCE, MASTER_ID_IGNORE_DISTANCE);
+		NavigableSet<StoredPacketGroup> database = new TreeSet<>(Comparator.comparingLong(StoredPacketGroup::getDateMillis));
+		String[] sourceIds = { "default", "other" };
+		int[] fragmentIds = { 1, 2, 3 };
+		Map<String, StoredPacketGroup> latestDocumentMap = new HashMap<>();
+		int documentCounter = 0;
+		int revisionCounter = 0;
+
+		long now = 1_600_000_000_000L;
+		for (int step = 0; step < 1500; step++) {
+			now += 5_000 + random.nextInt(5_000);
+			for (String sourceId : sourceIds) {
+				for (int fragmentId : fragmentIds) {
+					// Each fragment is offline for a while every so often so that we have gaps larger than the master ID ignore distance
+					boolean online = ((step / 40 + fragmentId + sourceId.length()) % 4) != 0 && (fragmentId != 3 || step > 200);
+					if (!online || random.nextInt(3) == 0) {
+						continue;
+					}
+					long dateMillis = now - random.nextInt(3_000);
+					if (database.contains(create(dateMillis, sourceId, fragmentId, "", 0))) {
+						continue;
+					}
+					String key = sourceId + fragmentId;
+					StoredPacketGroup latest = latestDocumentMap.get(key);
+					final StoredPacketGroup packetGroup;
+					if (latest != null && random.nextInt(4) == 0) { // overwrite the latest document, like the status database does
+						database.remove(latest);
+						packetGroup = create(dateMillis, sourceId, fragmentId, ((CouchDbStoredIdentifier) latest.getStoredIdentifier()).getId(), revisionCounter++);
+					} else {
+						packetGroup = create(dateMillis, sourceId, fragmentId, "doc" + documentCounter++, revisionCounter++);
+					}
+					database.add(packetGroup);
+					latestDocumentMap.put(key, packetGroup);
+				}
+			}
+			long queryStart = now - VOLATILE_WINDOW;
+			merger.replaceOnOrAfter(queryStart, new ArrayList<>(database.tailSet(create(queryStart, "", 0, "", 0), true)));
+			if (step % 50 == 0) {
+				long purgeDateMillis = now - KEEP_DURATION;
+				database.headSet(create(purgeDateMillis, "", 0, "", 0), true).clear();
+				merger.removeOnOrBefore(purgeDateMillis);
+			}
+			assertSameAsSortPackets(database, merger);
+		}
+	}
+
+	@Test
+	void testRemoveAll() {
+		IncrementalPacketGroupMerger merger = new IncrementalPacketGroupMerger(DefaultInstanceOptions.REQUIRE_NO_DEFAULTS, MAX_TIME_DISTANCE, MASTER_ID_IGNORE_DISTANCE);
+		merger.replaceOnOrAfter(0, Arrays.asList(create(10, "default", 1, "a", 0), create(20, "default", 2, "b", 0)));
+		assertEquals(10, merger.getLatestPacketGroup("default").getDateMillis());
+		merger.removeOnOrBefore(15);
+		assertEquals(20, merger.getLatestPacketGroup("default").getDateMillis());
+		merger.removeOnOrBefore(20);
+		assertNull(merger.getLatestPacketGroup("default"));
+		assertEquals(0, merger.getSourceIds().size());
+	}
+}
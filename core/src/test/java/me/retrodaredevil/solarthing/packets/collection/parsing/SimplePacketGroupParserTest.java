@@ -0,0 +1,71 @@
+package me.retrodaredevil.solarthing.packets.collection.parsing;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.retrodaredevil.solarthing.PacketTestUtil;
+import me.retrodaredevil.solarthing.packets.collection.PacketGroup;
+import me.retrodaredevil.solarthing.solar.SolarStatusPacket;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SimplePacketGroupParserTest {
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+
+	static {
+		MAPPER.getSubtypeResolver().registerSubtypes(SolarStatusPacket.class);
+	}
+
+	@Test
+	void testStreamingSameAsTree() throws IOException, PacketParseException {
+		ObjectNode document = MAPPER.createObjectNode();
+		document.put("_id", "some_id");
+		document.put("_rev", "1-abc");
+		document.put("dateMillis", 1_600_000_000_000L);
+		ArrayNode packets = document.putArray("packets");
+		for (String directoryName : new String[] { "fx", "mx", "rover", "tracer" }) {
+			for (File file : requireNonNull(new File(PacketTestUtil.SOLARTHING_ROOT, "testing/packets/" + directoryName).listFiles())) {
+				packets.add(MAPPER.readTree(file));
+			}
+		}
+		packets.addObject().put("packetType", "NOT_A_REAL_PACKET_TYPE");
+		document.putObject("extra").putArray("values").add(1).add(2);
+
+		List<Exception> treeErrors = new ArrayList<>();
+		PacketGroup expected = new SimplePacketGroupParser(MAPPER, treeErrors::add).parse(document);
+
+		List<Exception> streamingErrors = new ArrayList<>();
+		List<String> otherFields = new ArrayList<>();
+		final PacketGroup actual;
+		try (JsonParser parser = MAPPER.createParser(MAPPER.writeValueAsString(document))) {
+			actual = new SimplePacketGroupParser(MAPPER, streamingErrors::add).parse(parser, (fieldName, fieldParser) -> {
+				if (fieldName.startsWith("_")) {
+					otherFields.add(fieldParser.getValueAsString());
+				}
+			});
+		}
+		assertEquals(expected.getDateMillis(), actual.getDateMillis());
+		assertEquals(MAPPER.writeValueAsString(expected.getPackets()), MAPPER.writeValueAsString(actual.getPackets()));
+		assertEquals(1, treeErrors.size());
+		assertEquals(1, streamingErrors.size());
+		assertEquals(Arrays.asList("some_id", "1-abc"), otherFields);
+	}
+
+	@Test
+	void testStreamingMissingDateMillis() throws IOException {
+		try (JsonParser parser = MAPPER.createParser("{\"packets\": []}")) {
+			assertThrows(PacketParseException.class, () -> new SimplePacketGroupParser(MAPPER, PacketParsingErrorHandler.DO_NOTHING).parse(parser, SimplePacketGroupParser.FieldHandler.IGNORE));
+		}
+	}
+}
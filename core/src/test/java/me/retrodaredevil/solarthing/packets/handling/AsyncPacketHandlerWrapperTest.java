@@ -0,0 +1,98 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollections;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncPacketHandlerWrapperTest {
+
+	private static PacketCollection create(int id) {
+		return PacketCollections.create(Instant.ofEpochMilli(id), Collections.emptyList(), "id" + id);
+	}
+
+	/**
+	 * Blocks the handler with a first packet collection, then gives it 5 more while the queue has a capacity of 2
+	 * @return The IDs of the packet collections that were handled
+	 */
+	private static List<String> handleWhileBlocked(QueueOverflowPolicy overflowPolicy, int expectedDroppedCount) throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> handled = Collections.synchronizedList(new ArrayList<>());
+		AsyncPacketHandlerWrapper wrapper = new AsyncPacketHandlerWrapper(packetCollection -> {
+			started.countDown();
+			try {
+				assertTrue(release.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			handled.add(packetCollection.getDbId());
+		}, new QueueSettings(2, overflowPolicy, Duration.ofMillis(10)));
+		wrapper.handle(create(0));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i <= 5; i++) {
+			wrapper.handle(create(i));
+		}
+		assertEquals(expectedDroppedCount, wrapper.getDroppedCount());
+		int expectedHandledCount = 6 - expectedDroppedCount;
+		assertEquals(expectedHandledCount - 1, wrapper.getQueueDepth());
+		release.countDown();
+		long end = System.currentTimeMillis() + 5000;
+		while (handled.size() < expectedHandledCount && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		return handled;
+	}
+
+	@Test
+	void testOverflowPolicies() throws Exception {
+		assertEquals(Arrays.asList("id0", "id4", "id5"), handleWhileBlocked(QueueOverflowPolicy.DROP_OLDEST, 3));
+		assertEquals(Arrays.asList("id0", "id1", "id2"), handleWhileBlocked(QueueOverflowPolicy.DROP_NEWEST, 3));
+		assertEquals(Arrays.asList("id0", "id1", "id2"), handleWhileBlocked(QueueOverflowPolicy.BLOCK, 3));
+		// id1 and id2 fill the queue, id3 replaces them, id4 is queued, id5 replaces id3 and id4
+		assertEquals(Arrays.asList("id0", "id5"), handleWhileBlocked(QueueOverflowPolicy.COALESCE, 4));
+	}
+
+	@Test
+	void testCloseHandlesQueued() throws Exception {
+		List<String> handled = Collections.synchronizedList(new ArrayList<>());
+		AsyncPacketHandlerWrapper wrapper = new AsyncPacketHandlerWrapper(packetCollection -> {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			handled.add(packetCollection.getDbId());
+		}, new QueueSettings(10, QueueOverflowPolicy.DROP_NEWEST, Duration.ofMillis(10)));
+		for (int i = 0; i < 3; i++) {
+			wrapper.handle(create(i));
+		}
+		wrapper.close();
+		// everything queued has been handled once close() returns, so the wrapped packet handler can be closed right after
+		assertEquals(Arrays.asList("id0", "id1", "id2"), handled);
+		wrapper.handle(create(3));
+		assertEquals(1, wrapper.getDroppedCount());
+	}
+
+	@Test
+	void testDeserialize() throws Exception {
+		ObjectMapper mapper = JacksonUtil.defaultMapper();
+		QueueSettings settings = mapper.readValue("{\"capacity\": 10, \"overflow\": \"coalesce\", \"block_timeout\": 2.5}", QueueSettings.class);
+		assertEquals(10, settings.getCapacity());
+		assertEquals(QueueOverflowPolicy.COALESCE, settings.getOverflowPolicy());
+		assertEquals(Duration.ofMillis(2500), settings.getBlockTimeout());
+	}
+}
@@ -0,0 +1,147 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollections;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncRetryingPacketHandlerTest {
+	private static final Duration RETRY_DELAY = Duration.ofMillis(1);
+	private static final long TIMEOUT_MILLIS = 5000;
+
+	private static PacketCollection create(String id) {
+		return PacketCollections.create(Instant.now(), Collections.emptyList(), id);
+	}
+
+	/** Waits until {@code handled} has {@code count} elements, then returns a copy of it */
+	private static List<String> waitForHandled(List<String> handled, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		synchronized (handled) {
+			while (handled.size() < count) {
+				long remaining = deadline - System.currentTimeMillis();
+				assertTrue(remaining > 0, "Only handled " + handled);
+				handled.wait(remaining);
+			}
+			return new ArrayList<>(handled);
+		}
+	}
+	/** Waits until {@code queue} has {@code size} packet collections. A packet collection is acknowledged shortly after it is handled */
+	private static void waitForQueueSize(PacketCollectionQueue queue, int size) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (queue.size() != size) {
+			assertTrue(System.currentTimeMillis() < deadline, "Queue size is " + queue.size());
+			Thread.sleep(1);
+		}
+	}
+	private static PacketHandler recordingHandler(List<String> handled, PacketHandler delegate) {
+		return packetCollection -> {
+			delegate.handle(packetCollection);
+			synchronized (handled) {
+				handled.add(packetCollection.getDbId());
+				handled.notifyAll();
+			}
+		};
+	}
+
+	@Test
+	void testHandledInOrder() throws InterruptedException {
+		List<String> handled = new ArrayList<>();
+		MemoryPacketCollectionQueue queue = new MemoryPacketCollectionQueue();
+		AsyncRetryingPacketHandler handler = new AsyncRetryingPacketHandler(recordingHandler(handled, packetCollection -> {}), queue, Duration.ofMinutes(1), 1, RETRY_DELAY);
+		for (int i = 0; i < 5; i++) {
+			handler.handle(create("id" + i));
+		}
+		assertEquals(Arrays.asList("id0", "id1", "id2", "id3", "id4"), waitForHandled(handled, 5));
+	}
+
+	@Test
+	void testPermanentFailureDoesNotBlockNewerPacketCollections() throws InterruptedException {
+		List<String> handled = new ArrayList<>();
+		AtomicInteger badAttempts = new AtomicInteger();
+		MemoryPacketCollectionQueue queue = new MemoryPacketCollectionQueue();
+		AsyncRetryingPacketHandler handler = new AsyncRetryingPacketHandler(recordingHandler(handled, packetCollection -> {
+			if (packetCollection.getDbId().equals("bad")) {
+				badAttempts.incrementAndGet();
+				throw new PacketHandleException("This packet collection can never be handled");
+			}
+		}), queue, Duration.ofMinutes(1), 1, RETRY_DELAY);
+		handler.handle(create("bad"));
+		handler.handle(create("good0"));
+		handler.handle(create("good1"));
+		assertEquals(Arrays.asList("good0", "good1"), waitForHandled(handled, 2));
+		assertTrue(badAttempts.get() >= AsyncRetryingPacketHandler.MAX_ATTEMPTS_BEFORE_REQUEUE);
+		waitForQueueSize(queue, 1); // the bad packet collection is still retried until it expires
+	}
+
+	@Test
+	void testRuntimeExceptionIsRetried() throws InterruptedException {
+		List<String> handled = new ArrayList<>();
+		AtomicInteger attempts = new AtomicInteger();
+		AsyncRetryingPacketHandler handler = new AsyncRetryingPacketHandler(recordingHandler(handled, packetCollection -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new IllegalStateException("Unexpected");
+			}
+		}), new MemoryPacketCollectionQueue(), Duration.ofMinutes(1), 1, RETRY_DELAY);
+		handler.handle(create("id0"));
+		assertEquals(Collections.singletonList("id0"), waitForHandled(handled, 1));
+		handler.handle(create("id1")); // the thread is still alive
+		assertEquals(Arrays.asList("id0", "id1"), waitForHandled(handled, 2));
+	}
+
+	@Test
+	void testBatchPacketHandler() throws InterruptedException {
+		List<List<String>> batches = new ArrayList<>();
+		MemoryPacketCollectionQueue queue = new MemoryPacketCollectionQueue();
+		for (int i = 0; i < 5; i++) {
+			queue.add(create("id" + i)); // already queued when the handler starts, like after a restart
+		}
+		BatchPacketHandler batchPacketHandler = new BatchPacketHandler() {
+			@Override
+			public List<PacketHandleException> handleAll(List<PacketCollection> packetCollections) {
+				List<String> ids = new ArrayList<>();
+				List<PacketHandleException> exceptions = new ArrayList<>();
+				for (PacketCollection packetCollection : packetCollections) {
+					ids.add(packetCollection.getDbId());
+					// id2 fails the first time only
+					exceptions.add(packetCollection.getDbId().equals("id2") && batches.isEmpty() ? new PacketHandleException("Conflict") : null);
+				}
+				synchronized (batches) {
+					batches.add(ids);
+					batches.notifyAll();
+				}
+				return exceptions;
+			}
+
+			@Override
+			public void handle(PacketCollection packetCollection) {
+				throw new AssertionError("Should use handleAll()");
+			}
+		};
+		new AsyncRetryingPacketHandler(batchPacketHandler, queue, Duration.ofMinutes(1), 1, RETRY_DELAY);
+		waitForQueueSize(queue, 0);
+		synchronized (batches) {
+			assertEquals(Arrays.asList(Arrays.asList("id0", "id1", "id2", "id3", "id4"), Collections.singletonList("id2")), batches);
+		}
+	}
+
+	@Test
+	void testOldPacketCollectionsDiscarded() throws InterruptedException {
+		List<String> handled = new ArrayList<>();
+		MemoryPacketCollectionQueue queue = new MemoryPacketCollectionQueue();
+		AsyncRetryingPacketHandler handler = new AsyncRetryingPacketHandler(recordingHandler(handled, packetCollection -> {}), queue, Duration.ofMinutes(1), 2, RETRY_DELAY);
+		handler.handle(PacketCollections.create(Instant.now().minus(Duration.ofHours(1)), Collections.emptyList(), "old"));
+		handler.handle(create("new"));
+		assertEquals(Collections.singletonList("new"), waitForHandled(handled, 1));
+		waitForQueueSize(queue, 0);
+	}
+}
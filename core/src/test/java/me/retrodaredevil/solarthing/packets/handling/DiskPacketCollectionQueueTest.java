@@ -0,0 +1,118 @@
+package me.retrodaredevil.solarthing.packets.handling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollection;
+import me.retrodaredevil.solarthing.packets.collection.PacketCollections;
+import me.retrodaredevil.solarthing.packets.collection.parsing.PacketParsingErrorHandler;
+import me.retrodaredevil.solarthing.packets.collection.parsing.SimplePacketGroupParser;
+import me.retrodaredevil.solarthing.packets.instance.InstanceFragmentIndicatorPackets;
+import me.retrodaredevil.solarthing.packets.instance.InstancePacket;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePackets;
+import me.retrodaredevil.solarthing.solar.event.SolarEventPacket;
+import me.retrodaredevil.solarthing.solar.outback.command.MateCommand;
+import me.retrodaredevil.solarthing.solar.outback.command.packets.ImmutableSuccessMateCommandPacket;
+import me.retrodaredevil.solarthing.solar.outback.command.packets.MateCommandFeedbackPacket;
+import me.retrodaredevil.solarthing.solar.renogy.rover.ChargingState;
+import me.retrodaredevil.solarthing.solar.renogy.rover.RoverIdentifier;
+import me.retrodaredevil.solarthing.solar.renogy.rover.event.ImmutableRoverChargingStateChangePacket;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskPacketCollectionQueueTest {
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+	/** Like the mapper used for event retry queues */
+	private static final ObjectMapper EVENT_MAPPER = JacksonUtil.lenientMapper(JacksonUtil.defaultMapper());
+	static {
+		EVENT_MAPPER.getSubtypeResolver().registerSubtypes(SolarEventPacket.class, MateCommandFeedbackPacket.class, InstancePacket.class);
+	}
+
+	@TempDir
+	File directory;
+
+	private DiskPacketCollectionQueue createQueue(long maxBytes) throws IOException {
+		return new DiskPacketCollectionQueue(directory, MAPPER, new SimplePacketGroupParser(MAPPER, PacketParsingErrorHandler.DO_NOTHING), maxBytes);
+	}
+
+	private static PacketCollection create(int id) {
+		return PacketCollections.create(Instant.ofEpochMilli(id), Collections.emptyList(), "id" + id);
+	}
+
+	private static List<String> peekIds(PacketCollectionQueue queue) {
+		return queue.peek(Integer.MAX_VALUE).stream().map(queuedPacketCollection -> queuedPacketCollection.getPacketCollection().getDbId()).collect(Collectors.toList());
+	}
+
+	@Test
+	void testSurvivesRestart() throws IOException {
+		DiskPacketCollectionQueue queue = createQueue(1024 * 1024);
+		for (int i = 0; i < 5; i++) {
+			queue.add(create(i));
+		}
+		List<PacketCollectionQueue.QueuedPacketCollection> peeked = queue.peek(2);
+		assertEquals(2, peeked.size());
+		queue.acknowledge(peeked.get(0));
+		queue.acknowledge(peeked.get(1));
+		queue.close();
+
+		DiskPacketCollectionQueue reloaded = createQueue(1024 * 1024);
+		assertEquals(3, reloaded.size());
+		assertEquals(Arrays.asList("id2", "id3", "id4"), peekIds(reloaded));
+		assertEquals(2, reloaded.peek(1).get(0).getPacketCollection().getDateMillis());
+
+		reloaded.add(create(5));
+		assertEquals(Arrays.asList("id2", "id3", "id4", "id5"), peekIds(reloaded));
+		for (PacketCollectionQueue.QueuedPacketCollection queuedPacketCollection : reloaded.peek(Integer.MAX_VALUE)) {
+			reloaded.acknowledge(queuedPacketCollection);
+		}
+		assertEquals(0, reloaded.size());
+		reloaded.close();
+
+		assertEquals(0, createQueue(1024 * 1024).size());
+	}
+
+	@Test
+	void testEventPacketsSurviveRestart() throws IOException {
+		List<Packet> packets = Arrays.asList(
+				InstanceSourcePackets.create("default"),
+				InstanceFragmentIndicatorPackets.create(2),
+				new ImmutableRoverChargingStateChangePacket(RoverIdentifier.getFromNumber(1), ChargingState.BOOST.getValueCode(), ChargingState.MPPT.getValueCode()),
+				new ImmutableSuccessMateCommandPacket(null, MateCommand.AUX_ON, "command-source", null)
+		);
+		String expectedJson = MAPPER.writeValueAsString(packets);
+		DiskPacketCollectionQueue queue = new DiskPacketCollectionQueue(directory, EVENT_MAPPER, new SimplePacketGroupParser(EVENT_MAPPER, PacketParsingErrorHandler.DO_NOTHING), 1024 * 1024);
+		queue.add(PacketCollections.create(Instant.ofEpochMilli(1000), packets, "event"));
+		queue.close();
+
+		DiskPacketCollectionQueue reloaded = new DiskPacketCollectionQueue(directory, EVENT_MAPPER, new SimplePacketGroupParser(EVENT_MAPPER, PacketParsingErrorHandler.DO_NOTHING), 1024 * 1024);
+		PacketCollection packetCollection = reloaded.peek(1).get(0).getPacketCollection();
+		assertEquals("event", packetCollection.getDbId());
+		assertEquals(1000, packetCollection.getDateMillis());
+		// Packets that cannot be parsed are skipped by the parser, so make sure every packet made it back
+		assertEquals(expectedJson, MAPPER.writeValueAsString(packetCollection.getPackets()));
+		reloaded.close();
+	}
+
+	@Test
+	void testOldestDroppedWhenFull() throws IOException {
+		DiskPacketCollectionQueue queue = createQueue(2000);
+		for (int i = 0; i < 100; i++) {
+			queue.add(create(i));
+		}
+		assertTrue(queue.getTotalBytes() <= 2000);
+		List<String> ids = peekIds(queue);
+		assertTrue(ids.size() < 100);
+		assertEquals("id99", ids.get(ids.size() - 1));
+	}
+}
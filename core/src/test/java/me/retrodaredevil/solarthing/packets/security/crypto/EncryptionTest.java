@@ -34,4 +34,18 @@ final class EncryptionTest {
 		
 		assertThrows(DecryptException.class, () -> Decrypt.decrypt(cipher, publicKey, encrypted));
 	}
+	@Test
+	void testCachedCipher() throws EncryptException, InvalidKeyException, DecryptException {
+		KeyPair pair = KeyUtil.generateKeyPair();
+		KeyPair otherPair = KeyUtil.generateKeyPair();
+		for (int i = 0; i < 3; i++) {
+			String toEncrypt = "Hello there " + i;
+			assertEquals(toEncrypt, Decrypt.decrypt(pair.getPublic(), Encrypt.encrypt(pair.getPrivate(), toEncrypt)));
+		}
+		String encrypted = Encrypt.encrypt(otherPair.getPrivate(), "Hello");
+		assertThrows(DecryptException.class, () -> Decrypt.decrypt(pair.getPublic(), encrypted));
+		// The cached cipher still works after a failure
+		assertEquals("Hello", Decrypt.decrypt(otherPair.getPublic(), encrypted));
+		assertEquals("Hello", Decrypt.decrypt(pair.getPublic(), Encrypt.encrypt(pair.getPrivate(), "Hello")));
+	}
 }
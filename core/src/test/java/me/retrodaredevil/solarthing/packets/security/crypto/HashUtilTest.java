@@ -0,0 +1,30 @@
+package me.retrodaredevil.solarthing.packets.security.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+final class HashUtilTest {
+	private static void assertSameHash(String string) throws NoSuchAlgorithmException {
+		byte[] expected = MessageDigest.getInstance("SHA-256").digest(string.getBytes(StandardCharsets.UTF_8));
+		assertArrayEquals(expected, HashUtil.hash(string));
+	}
+
+	@Test
+	void testSameAsHashingBytes() throws NoSuchAlgorithmException {
+		assertSameHash("");
+		assertSameHash("hello");
+		assertSameHash("héllo ☀ 😀"); // 2, 3 and 4 byte characters
+		assertSameHash("unpaired surrogate \uD83D end");
+		assertSameHash("\uDE00 low surrogate first, high surrogate last \uD83D");
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			large.append("☀").append(i);
+		}
+		assertSameHash(large.toString()); // larger than the encoding buffer
+	}
+}
@@ -0,0 +1,143 @@
+package me.retrodaredevil.solarthing.solar.accumulation;
+
+import me.retrodaredevil.solarthing.packets.TimestampedPacket;
+import me.retrodaredevil.solarthing.packets.identification.Identifier;
+import me.retrodaredevil.solarthing.packets.identification.IdentityInfo;
+import me.retrodaredevil.solarthing.solar.accumulation.value.AccumulationValue;
+import me.retrodaredevil.solarthing.solar.accumulation.value.AccumulationValueFactory;
+import me.retrodaredevil.solarthing.solar.accumulation.value.BigDecimalAccumulationValue;
+import me.retrodaredevil.solarthing.solar.accumulation.value.BigDecimalAccumulationValueFactory;
+import me.retrodaredevil.solarthing.solar.accumulation.value.FloatAccumulationValue;
+import me.retrodaredevil.solarthing.solar.accumulation.value.FloatAccumulationValueFactory;
+import me.retrodaredevil.solarthing.solar.common.DailyData;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AccumulationCalcTest {
+	private static final long START_DATE_MILLIS = 1_600_000_000_000L;
+	private static final long PERIOD_MILLIS = 5_000L;
+
+	/**
+	 * The original quadratic implementation of {@link AccumulationCalc#getTotals(List, TotalGetter, List, AccumulationValueFactory)}.
+	 */
+	private static <T extends DailyData, U extends AccumulationValue<U>> List<AccumulationCalc.SumNode<U>> getTotalsReference(
+			List<? extends AccumulationPair<T>> accumulationPairs, TotalGetter<T, U> totalGetter, List<? extends TimestampedPacket<T>> packets,
+			AccumulationValueFactory<U> accumulationValueFactory) {
+		List<AccumulationCalc.SumNode<U>> r = new ArrayList<>();
+		for (TimestampedPacket<T> packet : packets) {
+			long dateMillis = packet.getDateMillis();
+			List<AccumulationPair<T>> previousAccumulationPairs = new ArrayList<>();
+			for (AccumulationPair<T> element : accumulationPairs) {
+				previousAccumulationPairs.add(element);
+				if (dateMillis <= element.getLatestPacket().getDateMillis()) {
+					break;
+				}
+			}
+			AccumulationPair<T> lastAccumulationPair = previousAccumulationPairs.get(previousAccumulationPairs.size() - 1);
+			previousAccumulationPairs.set(previousAccumulationPairs.size() - 1, new AccumulationPair<>(lastAccumulationPair.getStartPacket(), packet, lastAccumulationPair.getStartPacketType()));
+			U sum = AccumulationCalc.getTotal(previousAccumulationPairs, totalGetter, accumulationValueFactory);
+			r.add(new AccumulationCalc.SumNode<>(sum, dateMillis));
+		}
+		return r;
+	}
+
+	/**
+	 * @param resetCount The number of times the accumulation resets
+	 * @param startAccumulation The accumulation of the first packet. If non-zero, the first pair is {@link AccumulationPair.StartPacketType#CUT_OFF}
+	 */
+	private static List<TimestampedPacket<TestDailyPacket>> createPackets(Random random, int resetCount, float startAccumulation) {
+		List<TimestampedPacket<TestDailyPacket>> r = new ArrayList<>();
+		long dateMillis = START_DATE_MILLIS;
+		float accumulation = startAccumulation;
+		for (int reset = 0; reset <= resetCount; reset++) {
+			int packetCount = 1 + random.nextInt(200);
+			for (int i = 0; i < packetCount; i++) {
+				accumulation += random.nextFloat() * 0.13f;
+				r.add(new TimestampedPacket<>(new TestDailyPacket(accumulation), dateMillis));
+				dateMillis += PERIOD_MILLIS;
+			}
+			accumulation = 0.0f;
+		}
+		return r;
+	}
+
+	private static void assertSameFloatTotals(List<TimestampedPacket<TestDailyPacket>> packets, List<TimestampedPacket<TestDailyPacket>> pairPackets) {
+		List<AccumulationPair<TestDailyPacket>> accumulationPairs = AccumulationUtil.getAccumulationPairs(pairPackets, AccumulationConfig.createDefault(START_DATE_MILLIS + PERIOD_MILLIS));
+		TotalGetter<TestDailyPacket, FloatAccumulationValue> totalGetter = FloatAccumulationValue.convert(TestDailyPacket::getAccumulation);
+
+		List<AccumulationCalc.SumNode<FloatAccumulationValue>> expected = getTotalsReference(accumulationPairs, totalGetter, packets, FloatAccumulationValueFactory.getInstance());
+		List<AccumulationCalc.SumNode<FloatAccumulationValue>> actual = AccumulationCalc.getTotals(accumulationPairs, totalGetter, packets, FloatAccumulationValueFactory.getInstance());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getDateMillis(), actual.get(i).getDateMillis());
+			// we expect the exact same float because values should be added in the same order
+			assertEquals(expected.get(i).getSum().getValue(), actual.get(i).getSum().getValue(), 0.0f);
+		}
+	}
+	private static void assertSameBigDecimalTotals(List<TimestampedPacket<TestDailyPacket>> packets) {
+		List<AccumulationPair<TestDailyPacket>> accumulationPairs = AccumulationUtil.getAccumulationPairs(packets, AccumulationConfig.createDefault(START_DATE_MILLIS + PERIOD_MILLIS));
+		TotalGetter<TestDailyPacket, BigDecimalAccumulationValue> totalGetter = BigDecimalAccumulationValue.convert(FloatAccumulationValue.convert(TestDailyPacket::getAccumulation));
+
+		List<AccumulationCalc.SumNode<BigDecimalAccumulationValue>> expected = getTotalsReference(accumulationPairs, totalGetter, packets, BigDecimalAccumulationValueFactory.getInstance());
+		List<AccumulationCalc.SumNode<BigDecimalAccumulationValue>> actual = AccumulationCalc.getTotals(accumulationPairs, totalGetter, packets, BigDecimalAccumulationValueFactory.getInstance());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getDateMillis(), actual.get(i).getDateMillis());
+			assertEquals(expected.get(i).getSum().getValue(), actual.get(i).getSum().getValue());
+		}
+	}
+
+	@Test
+	void testSameAsReference() {
+		Random random = new Random(1234);
+		for (int resetCount = 0; resetCount < 6; resetCount++) {
+			for (float startAccumulation : new float[] { 0.0f, 3.7f }) {
+				List<TimestampedPacket<TestDailyPacket>> packets = createPackets(random, resetCount, startAccumulation);
+				assertSameFloatTotals(packets, packets);
+				assertSameBigDecimalTotals(packets);
+			}
+		}
+	}
+
+	@Test
+	void testUnsortedSameAsReference() {
+		Random random = new Random(4321);
+		List<TimestampedPacket<TestDailyPacket>> packets = createPackets(random, 4, 2.5f);
+		List<TimestampedPacket<TestDailyPacket>> shuffledPackets = new ArrayList<>(packets);
+		Collections.shuffle(shuffledPackets, random);
+		assertSameFloatTotals(shuffledPackets, packets);
+	}
+
+	private static final class TestDailyPacket implements DailyData {
+		private final float accumulation;
+
+		private TestDailyPacket(float accumulation) {
+			this.accumulation = accumulation;
+		}
+
+		public float getAccumulation() {
+			return accumulation;
+		}
+
+		@Override
+		public boolean isNewDay(DailyData previousDailyData) {
+			return accumulation < ((TestDailyPacket) previousDailyData).accumulation;
+		}
+
+		@Override
+		public Identifier getIdentifier() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public IdentityInfo getIdentityInfo() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
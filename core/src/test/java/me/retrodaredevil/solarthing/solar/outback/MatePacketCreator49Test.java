@@ -0,0 +1,118 @@
+package me.retrodaredevil.solarthing.solar.outback;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.retrodaredevil.solarthing.PacketTestUtil;
+import me.retrodaredevil.solarthing.packets.Packet;
+import me.retrodaredevil.solarthing.packets.creation.PacketCreationException;
+import me.retrodaredevil.solarthing.solar.outback.fx.FXStatusPacket;
+import me.retrodaredevil.solarthing.solar.outback.fx.FXStatusPackets;
+import me.retrodaredevil.solarthing.solar.outback.mx.MXStatusPacket;
+import me.retrodaredevil.solarthing.solar.outback.mx.MXStatusPackets;
+import me.retrodaredevil.solarthing.util.IgnoreCheckSum;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MatePacketCreator49Test {
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+	private static final File DIRECTORY_FX = new File(PacketTestUtil.SOLARTHING_ROOT, "testing/packets/fx");
+	private static final File DIRECTORY_MX = new File(PacketTestUtil.SOLARTHING_ROOT, "testing/packets/mx");
+
+	/** @return The data the Mate would output for {@code packet} */
+	private static String toMateData(FXStatusPacket packet) {
+		return String.format("\n%d,%02d,%02d,%02d,%03d,%03d,%02d,%02d,%03d,%02d,%03d,%03d,%03d,%03d\r",
+				packet.getAddress(), packet.getInverterCurrentRaw(), packet.getChargerCurrentRaw(), packet.getBuyCurrentRaw(),
+				packet.getInputVoltageRaw(), packet.getOutputVoltageRaw(), packet.getSellCurrentRaw(), packet.getOperationalModeValue(),
+				packet.getErrorModeValue(), packet.getACModeValue(), Math.round(packet.getBatteryVoltage() * 10), packet.getMiscValue(),
+				packet.getWarningModeValue(), packet.getChksum());
+	}
+	/** @return The data the Mate would output for {@code packet} */
+	private static String toMateData(MXStatusPacket packet) {
+		return String.format("\n%c,00,%02d,%02d,%03d,%03d,%02d,%02d,%03d,%02d,%03d,%04d,00,%03d\r",
+				(char) ('A' + packet.getAddress()), packet.getChargerCurrent(), packet.getPVCurrent(), packet.getPVVoltage(),
+				Math.round(packet.getDailyKWH() * 10), Math.round(packet.getAmpChargerCurrent() * 10), packet.getRawAuxModeValue(),
+				packet.getErrorModeValue(), packet.getChargerModeValue(), Math.round(packet.getBatteryVoltage() * 10), packet.getDailyAH(),
+				packet.getChksum());
+	}
+
+	/**
+	 * Gives {@code data} to a {@link MatePacketCreator49} in chunks of {@code chunkSize} and makes sure the created packet is exactly the same as the
+	 * packet created by {@code expected}.
+	 */
+	private static void assertSameAsCreateFromChars(String data, Packet expected, int chunkSize) throws Exception {
+		MatePacketCreator49 creator = new MatePacketCreator49(IgnoreCheckSum.DISABLED);
+		char[] chars = (data + data).toCharArray();
+		List<Packet> packets = new ArrayList<>();
+		for (int offset = 0; offset < chars.length; offset += chunkSize) {
+			packets.addAll(creator.add(chars, offset, Math.min(chunkSize, chars.length - offset)));
+		}
+		assertEquals(2, packets.size(), "chunkSize: " + chunkSize);
+		for (Packet packet : packets) {
+			assertEquals(MAPPER.writeValueAsString(expected), MAPPER.writeValueAsString(packet), "chunkSize: " + chunkSize);
+		}
+	}
+
+	/** Makes sure that the values stored in the capture file (other than the packet version) are the same as the values of {@code packet} */
+	private static void assertSameAsCapture(File file, Packet capture, Packet packet) throws IOException {
+		JsonNode fileNode = MAPPER.readTree(file);
+		ObjectNode captureNode = MAPPER.valueToTree(capture);
+		ObjectNode node = MAPPER.valueToTree(packet);
+		for (Iterator<String> iterator = captureNode.fieldNames(); iterator.hasNext(); ) {
+			String fieldName = iterator.next();
+			if (fieldName.equals("packetVersion") || !fileNode.has(fieldName)) { // older captures do not have some fields
+				continue;
+			}
+			assertEquals(captureNode.get(fieldName), node.get(fieldName), "field: " + fieldName + " file: " + file);
+		}
+	}
+
+	@Test
+	void testFXCaptures() throws Exception {
+		for (File file : requireNonNull(DIRECTORY_FX.listFiles())) {
+			FXStatusPacket capture = MAPPER.readValue(file, FXStatusPacket.class);
+			String data = toMateData(capture);
+			assertEquals(49, data.length());
+			FXStatusPacket expected = FXStatusPackets.createFromChars(data.toCharArray(), IgnoreCheckSum.DISABLED);
+			assertSameAsCapture(file, capture, expected);
+			for (int chunkSize = 1; chunkSize <= 100; chunkSize++) {
+				assertSameAsCreateFromChars(data, expected, chunkSize);
+			}
+		}
+	}
+
+	@Test
+	void testMXCaptures() throws Exception {
+		for (File file : requireNonNull(DIRECTORY_MX.listFiles())) {
+			MXStatusPacket capture = MAPPER.readValue(file, MXStatusPacket.class);
+			String data = toMateData(capture);
+			assertEquals(49, data.length());
+			MXStatusPacket expected = MXStatusPackets.createFromChars(data.toCharArray(), IgnoreCheckSum.DISABLED);
+			assertSameAsCapture(file, capture, expected);
+			for (int chunkSize = 1; chunkSize <= 100; chunkSize++) {
+				assertSameAsCreateFromChars(data, expected, chunkSize);
+			}
+		}
+	}
+
+	@Test
+	void testBadPacketDoesNotAffectNextPacket() throws Exception {
+		MatePacketCreator49 creator = new MatePacketCreator49(IgnoreCheckSum.DISABLED);
+		String good = "\n1,10,10,10,100,100,10,03,000,02,282,129,000,036\r";
+		char[] bad = "\n1,10,10,1".toCharArray();
+		assertEquals(0, creator.add(bad).size());
+		assertEquals(1, creator.add(good.toCharArray()).size());
+		assertThrows(PacketCreationException.class, () -> creator.add("\n1,10,10,10,100,100,10,03,000,02,282,129,000,036,000\r".toCharArray()));
+		assertEquals(1, creator.add(good.toCharArray()).size());
+	}
+}
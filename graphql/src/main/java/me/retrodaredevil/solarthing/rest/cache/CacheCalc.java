@@ -13,7 +13,10 @@ import me.retrodaredevil.solarthing.solar.common.DailyData;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 @UtilityClass
@@ -76,6 +79,74 @@ public final class CacheCalc {
 				lastDataBeforePeriodEnd = sumNode;
 			}
 		}
+		return createNode(
+				identifierFragment,
+				lastDataBeforePreviousPeriodStart, lastDataBeforePeriodStart, firstDataAfterPeriodStart, lastDataBeforePeriodEnd,
+				accumulationValueFactory, converter, dataCreator
+		);
+	}
+
+	/**
+	 * Does the same thing as {@link #calculateCache(IdentifierFragment, List, Instant, Duration, TotalGetter, AccumulationValueFactory, Function, DataCreator)}
+	 * for many periods at once. The running totals are only calculated once for all the periods and each period finds the totals it needs
+	 * with a binary search, so this is much faster than calling {@code calculateCache} once for each period.
+	 *
+	 * @param periodStarts The start of each period in ascending order
+	 * @return A list of {@link IdentificationCacheNode}s with one element for each element in {@code periodStarts}. Each node is identical to what {@code calculateCache} would return.
+	 */
+	public static <DATA extends IdentificationCacheData, PACKET extends DailyData, VALUE extends AccumulationValue<VALUE>, ACCEPTED_VALUE> List<IdentificationCacheNode<DATA>> calculateCaches(
+			IdentifierFragment identifierFragment, List<TimestampedPacket<PACKET>> timestampedPackets, List<Instant> periodStarts, Duration periodDuration,
+			TotalGetter<PACKET, VALUE> totalGetter,
+			AccumulationValueFactory<VALUE> accumulationValueFactory, Function<VALUE, ACCEPTED_VALUE> converter, DataCreator<DATA, ACCEPTED_VALUE> dataCreator) {
+		List<IdentificationCacheNode<DATA>> r = new ArrayList<>(periodStarts.size());
+		if (!isSortedByDate(timestampedPackets)) {
+			for (Instant periodStart : periodStarts) {
+				r.add(calculateCache(identifierFragment, timestampedPackets, periodStart, periodDuration, totalGetter, accumulationValueFactory, converter, dataCreator));
+			}
+			return r;
+		}
+		if (timestampedPackets.isEmpty()) {
+			for (int i = 0; i < periodStarts.size(); i++) {
+				r.add(createNode(identifierFragment, null, null, null, null, accumulationValueFactory, converter, dataCreator));
+			}
+			return r;
+		}
+		// The only thing that changes depending on the period is the StartPacketType of the first accumulation pair
+		List<AccumulationPair<PACKET>> accumulationPairs = AccumulationUtil.getAccumulationPairs(timestampedPackets, AccumulationConfig.createDefault(periodStarts.get(0).toEpochMilli()));
+		AccumulationPair<PACKET> firstPair = accumulationPairs.get(0);
+		Map<AccumulationPair.StartPacketType, List<AccumulationCalc.SumNode<VALUE>>> sumNodesMap = new EnumMap<>(AccumulationPair.StartPacketType.class);
+		for (Instant periodStart : periodStarts) {
+			long periodStartDateMillis = periodStart.toEpochMilli();
+			AccumulationPair.StartPacketType startPacketType = AccumulationUtil.getStartPacketType(
+					true, firstPair.getStartPacket().getDateMillis(), firstPair.getLatestPacket().getDateMillis(),
+					AccumulationConfig.createDefault(periodStartDateMillis)
+			);
+			List<AccumulationCalc.SumNode<VALUE>> sumNodes = sumNodesMap.computeIfAbsent(startPacketType, type -> {
+				List<AccumulationPair<PACKET>> pairs = accumulationPairs;
+				if (type != firstPair.getStartPacketType()) {
+					pairs = new ArrayList<>(accumulationPairs);
+					pairs.set(0, new AccumulationPair<>(firstPair.getStartPacket(), firstPair.getLatestPacket(), type));
+				}
+				return AccumulationCalc.getTotals(pairs, totalGetter, timestampedPackets, accumulationValueFactory);
+			});
+			PeriodIndices indices = new PeriodIndices(timestampedPackets, periodStartDateMillis, periodDuration);
+			r.add(createNode(
+					identifierFragment,
+					indices.lastBeforePreviousPeriodStart == -1 ? null : sumNodes.get(indices.lastBeforePreviousPeriodStart),
+					indices.lastBeforePeriodStart == -1 ? null : sumNodes.get(indices.lastBeforePeriodStart),
+					indices.firstAfterPeriodStart == -1 ? null : sumNodes.get(indices.firstAfterPeriodStart),
+					indices.lastBeforePeriodEnd == -1 ? null : sumNodes.get(indices.lastBeforePeriodEnd),
+					accumulationValueFactory, converter, dataCreator
+			));
+		}
+		return r;
+	}
+
+	private static <DATA extends IdentificationCacheData, VALUE extends AccumulationValue<VALUE>, ACCEPTED_VALUE> IdentificationCacheNode<DATA> createNode(
+			IdentifierFragment identifierFragment,
+			AccumulationCalc.SumNode<VALUE> lastDataBeforePreviousPeriodStart, AccumulationCalc.SumNode<VALUE> lastDataBeforePeriodStart,
+			AccumulationCalc.SumNode<VALUE> firstDataAfterPeriodStart, AccumulationCalc.SumNode<VALUE> lastDataBeforePeriodEnd,
+			AccumulationValueFactory<VALUE> accumulationValueFactory, Function<VALUE, ACCEPTED_VALUE> converter, DataCreator<DATA, ACCEPTED_VALUE> dataCreator) {
 		final DATA data;
 		if (firstDataAfterPeriodStart == null) {
 			assert lastDataBeforePeriodEnd == null;
@@ -110,6 +181,77 @@ public final class CacheCalc {
 		return new IdentificationCacheNode<>(identifierFragment.getFragmentId(), data);
 	}
 
+	/**
+	 * @return true if the date of each packet is greater than or equal to the date of the packet before it
+	 */
+	public static boolean isSortedByDate(List<? extends TimestampedPacket<?>> timestampedPackets) {
+		long lastDateMillis = Long.MIN_VALUE;
+		for (TimestampedPacket<?> packet : timestampedPackets) {
+			long dateMillis = packet.getDateMillis();
+			if (dateMillis < lastDateMillis) {
+				return false;
+			}
+			lastDateMillis = dateMillis;
+		}
+		return true;
+	}
+
+	/**
+	 * @param timestampedPackets Packets sorted by date
+	 * @return The index of the first packet whose date is greater than or equal to {@code dateMillis}, or the size of the list if there is no such packet
+	 */
+	private static int firstIndexAtOrAfter(List<? extends TimestampedPacket<?>> timestampedPackets, long dateMillis) {
+		int low = 0;
+		int high = timestampedPackets.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestampedPackets.get(middle).getDateMillis() < dateMillis) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * The indices of the packets that are important to a single period. Each index is -1 if there is no such packet.
+	 * These are the same packets that {@link #calculateCache(IdentifierFragment, List, Instant, Duration, TotalGetter, AccumulationValueFactory, Function, DataCreator)} finds
+	 * by iterating over every packet, and they are only valid if the packets are sorted.
+	 */
+	public static final class PeriodIndices {
+		public final int lastBeforePreviousPeriodStart;
+		public final int lastBeforePeriodStart;
+		public final int firstAfterPeriodStart;
+		public final int lastBeforePeriodEnd;
+
+		public PeriodIndices(List<? extends TimestampedPacket<?>> sortedPackets, long periodStartDateMillis, Duration periodDuration) {
+			long previousPeriodStartDateMillis = periodStartDateMillis - periodDuration.toMillis();
+			long unknownCutOffDateMillis = periodStartDateMillis - CacheHandler.INFO_DURATION.toMillis();
+			long periodEndDateMillis = periodStartDateMillis + periodDuration.toMillis();
+
+			int previousPeriodStartIndex = firstIndexAtOrAfter(sortedPackets, previousPeriodStartDateMillis);
+			int periodStartIndex = firstIndexAtOrAfter(sortedPackets, periodStartDateMillis);
+			int periodEndIndex = firstIndexAtOrAfter(sortedPackets, periodEndDateMillis);
+
+			lastBeforePreviousPeriodStart = indexIfAtOrAfter(sortedPackets, previousPeriodStartIndex - 1, unknownCutOffDateMillis);
+			lastBeforePeriodStart = indexIfAtOrAfter(sortedPackets, periodStartIndex - 1, Math.max(previousPeriodStartDateMillis, unknownCutOffDateMillis));
+			if (periodStartIndex < periodEndIndex) {
+				firstAfterPeriodStart = periodStartIndex;
+				lastBeforePeriodEnd = periodEndIndex - 1;
+			} else {
+				firstAfterPeriodStart = -1;
+				lastBeforePeriodEnd = -1;
+			}
+		}
+		private static int indexIfAtOrAfter(List<? extends TimestampedPacket<?>> sortedPackets, int index, long dateMillis) {
+			if (index < 0 || sortedPackets.get(index).getDateMillis() < dateMillis) {
+				return -1;
+			}
+			return index;
+		}
+	}
+
 	@FunctionalInterface
 	public interface DataCreator<T, U> {
 		T create(Identifier identifier, U mainData, Long firstDateMillis, Long lastDateMillis, U unknownData, Long unknownStartDateMillis);
@@ -0,0 +1,131 @@
+package me.retrodaredevil.solarthing.rest.cache;
+
+import me.retrodaredevil.solarthing.annotations.Nullable;
+import me.retrodaredevil.solarthing.type.cache.packets.CacheDataPacket;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * An in memory LRU cache for documents of the solarthing_cache database, keyed by document ID. Only documents of finalized periods should be put in this
+ * because those documents never change once they have been calculated.
+ * <p>
+ * The size of each document is estimated using the length of its JSON. Once the total size is greater than the limit, the least recently used documents are evicted.
+ * <p>
+ * This is thread safe.
+ */
+public class CacheDocumentMemoryCache {
+	private static final long DEFAULT_MAX_SIZE_BYTES = 64L * 1024 * 1024;
+	/** The estimated overhead of a single entry */
+	private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+	private final long maxSizeBytes;
+
+	/** Must be synchronized on */
+	private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+	private long sizeBytes = 0;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	/**
+	 * @param maxSizeBytes The maximum estimated size of all cached documents in bytes. If 0, nothing is cached.
+	 */
+	public CacheDocumentMemoryCache(long maxSizeBytes) {
+		if (maxSizeBytes < 0) {
+			throw new IllegalArgumentException("maxSizeBytes cannot be negative! maxSizeBytes=" + maxSizeBytes);
+		}
+		this.maxSizeBytes = maxSizeBytes;
+	}
+	public static CacheDocumentMemoryCache createDefault() {
+		return new CacheDocumentMemoryCache(DEFAULT_MAX_SIZE_BYTES);
+	}
+
+	/**
+	 * @param documentId The document ID
+	 * @return The cached document, or null if it is not cached
+	 */
+	public @Nullable CacheDataPacket get(String documentId) {
+		synchronized (map) {
+			Entry entry = map.get(documentId);
+			if (entry == null) {
+				missCount++;
+				return null;
+			}
+			hitCount++;
+			return entry.packet;
+		}
+	}
+
+	/**
+	 * @param documentId The document ID
+	 * @param packet The deserialized document
+	 * @param jsonLength The length of the JSON of the document. Used to estimate the amount of memory the document uses
+	 */
+	public void put(String documentId, CacheDataPacket packet, int jsonLength) {
+		long entrySizeBytes = ENTRY_OVERHEAD_BYTES + 2L * (documentId.length() + jsonLength);
+		if (entrySizeBytes > maxSizeBytes) {
+			return;
+		}
+		synchronized (map) {
+			Entry previous = map.put(documentId, new Entry(packet, entrySizeBytes));
+			if (previous != null) {
+				sizeBytes -= previous.sizeBytes;
+			}
+			sizeBytes += entrySizeBytes;
+			for (Iterator<Entry> iterator = map.values().iterator(); sizeBytes > maxSizeBytes && iterator.hasNext(); ) {
+				Entry eldest = iterator.next();
+				iterator.remove();
+				sizeBytes -= eldest.sizeBytes;
+				evictionCount++;
+			}
+		}
+	}
+
+	/** @return The number of documents currently cached */
+	public int getDocumentCount() {
+		synchronized (map) {
+			return map.size();
+		}
+	}
+	/** @return The estimated size in bytes of all the cached documents */
+	public long getSizeBytes() {
+		synchronized (map) {
+			return sizeBytes;
+		}
+	}
+	public long getHitCount() {
+		synchronized (map) {
+			return hitCount;
+		}
+	}
+	public long getMissCount() {
+		synchronized (map) {
+			return missCount;
+		}
+	}
+	/** @return The number of documents that have been evicted because the cache was full */
+	public long getEvictionCount() {
+		synchronized (map) {
+			return evictionCount;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (map) {
+			return "CacheDocumentMemoryCache(documents=" + map.size() + " sizeBytes=" + sizeBytes + " maxSizeBytes=" + maxSizeBytes +
+					" hits=" + hitCount + " misses=" + missCount + " evictions=" + evictionCount + ")";
+		}
+	}
+
+	private static final class Entry {
+		private final CacheDataPacket packet;
+		private final long sizeBytes;
+
+		private Entry(CacheDataPacket packet, long sizeBytes) {
+			this.packet = packet;
+			this.sizeBytes = sizeBytes;
+		}
+	}
+}
@@ -22,8 +22,10 @@ import me.retrodaredevil.solarthing.annotations.JsonExplicit;
 import me.retrodaredevil.solarthing.rest.cache.creators.BatteryRecordCacheNodeCreator;
 import me.retrodaredevil.solarthing.type.cache.CacheUtil;
 import me.retrodaredevil.solarthing.type.cache.packets.CacheDataPacket;
-import me.retrodaredevil.solarthing.database.MillisQuery;
-import me.retrodaredevil.solarthing.database.MillisQueryBuilder;
+import me.retrodaredevil.solarthing.type.cache.packets.IdentificationCacheDataPacket;
+import me.retrodaredevil.solarthing.type.cache.packets.data.BatteryRecordDataCache;
+import me.retrodaredevil.solarthing.type.cache.packets.data.ChargeControllerAccumulationDataCache;
+import me.retrodaredevil.solarthing.type.cache.packets.data.FXAccumulationDataCache;
 import me.retrodaredevil.solarthing.database.SolarThingDatabase;
 import me.retrodaredevil.solarthing.database.couchdb.CouchDbSolarThingDatabase;
 import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
@@ -37,18 +39,28 @@ import me.retrodaredevil.solarthing.rest.cache.creators.DefaultIdentificationCac
 import me.retrodaredevil.solarthing.rest.cache.creators.FXAccumulationCacheNodeCreator;
 import me.retrodaredevil.solarthing.rest.exceptions.DatabaseException;
 import me.retrodaredevil.solarthing.rest.exceptions.UnexpectedResponseException;
+import me.retrodaredevil.solarthing.util.DaemonThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import static java.util.Objects.requireNonNull;
 
 public class CacheHandler {
 	private final Logger LOGGER = LoggerFactory.getLogger(CacheHandler.class);
 	private static final int QUERY_PERIOD_COUNT = 4 * 24; // we can request data a day at a time, but we won't do more than that
+	/** The maximum number of chunks that may be queried or calculated at the same time for a single source. This keeps CouchDB from being overloaded */
+	private static final int MAX_CONCURRENT_CHUNKS_PER_SOURCE = 2;
 	/** This duration represents the amount of time to go "backwards" for calculating data for a single given period. If this is 4 and the period is from 10:00 to 11:00, then
 	 * that period actually requires data from 6:00 to 11:00 */
 	public static final Duration INFO_DURATION = Duration.ofHours(4);
@@ -63,13 +75,20 @@ public class CacheHandler {
 	private final DefaultInstanceOptions defaultInstanceOptions;
 	private final SolarThingDatabase database;
 	private final CouchDbDatabase cacheDatabase;
+	private final CacheDocumentMemoryCache memoryCache;
+	private final ExecutorService chunkExecutorService = Executors.newFixedThreadPool(4, new DaemonThreadFactory("cache-handler-chunk"));
+	private final Map<String, Semaphore> sourceSemaphoreMap = new ConcurrentHashMap<>();
 
-	public CacheHandler(ObjectMapper mapper, DefaultInstanceOptions defaultInstanceOptions, CouchDbInstance couchDbInstance) {
+	public CacheHandler(ObjectMapper mapper, DefaultInstanceOptions defaultInstanceOptions, CouchDbInstance couchDbInstance, CacheDocumentMemoryCache memoryCache) {
 		this.mapper = mapper;
 		this.defaultInstanceOptions = defaultInstanceOptions;
 		database = CouchDbSolarThingDatabase.create(couchDbInstance);
 
 		cacheDatabase = couchDbInstance.getDatabase(SolarThingConstants.CACHE_DATABASE);
+		requireNonNull(this.memoryCache = memoryCache);
+	}
+	public CacheHandler(ObjectMapper mapper, DefaultInstanceOptions defaultInstanceOptions, CouchDbInstance couchDbInstance) {
+		this(mapper, defaultInstanceOptions, couchDbInstance, CacheDocumentMemoryCache.createDefault());
 	}
 
 	public Duration getDuration() {
@@ -107,18 +126,88 @@ public class CacheHandler {
 		endPeriodNumber = Math.min(endPeriodNumber, maxPeriodNumber);
 
 		if (endPeriodNumber - startPeriodNumber + 1 <= QUERY_PERIOD_COUNT) {
-			return queryOrCalculateCaches(typeReference, cacheName, sourceId, startPeriodNumber, endPeriodNumber);
+			return queryOrCalculateCaches(typeReference, cacheName, sourceId, startPeriodNumber, endPeriodNumber, new SharedStatusQuerier(database.getStatusDatabase()));
 		}
+		// Chunks are calculated on chunkExecutorService so that the status query of one chunk overlaps the calculation and upload of another.
+		//   The status querier is shared between chunks so that the INFO_DURATION lookback of a chunk reuses packets queried by the previous chunk.
+		SharedStatusQuerier statusQuerier = new SharedStatusQuerier(database.getStatusDatabase());
+		Semaphore semaphore = sourceSemaphoreMap.computeIfAbsent(sourceId, key -> new Semaphore(MAX_CONCURRENT_CHUNKS_PER_SOURCE));
+		List<Long> chunkStartPeriodNumbers = new ArrayList<>();
+		List<Future<List<T>>> futures = new ArrayList<>();
 		List<T> r = new ArrayList<>();
-		for (long periodNumber = startPeriodNumber; periodNumber <= endPeriodNumber; ) {
-			long start = periodNumber;
-			periodNumber += QUERY_PERIOD_COUNT;
-			long end = Math.min(endPeriodNumber, periodNumber);
-			periodNumber++; // increment periodNumber because we are going to fetch [start, end], and next time want to get [end + 1, ...]
-			r.addAll(queryOrCalculateCaches(typeReference, cacheName, sourceId, start, end));
+		int collectedCount = 0;
+		try {
+			for (long periodNumber = startPeriodNumber; periodNumber <= endPeriodNumber; ) {
+				long start = periodNumber;
+				periodNumber += QUERY_PERIOD_COUNT;
+				long end = Math.min(endPeriodNumber, periodNumber);
+				periodNumber++; // increment periodNumber because we are going to fetch [start, end], and next time want to get [end + 1, ...]
+
+				try {
+					semaphore.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new DatabaseException("Interrupted while waiting to calculate caches", e);
+				}
+				try {
+					futures.add(chunkExecutorService.submit(() -> {
+						try {
+							return queryOrCalculateCaches(typeReference, cacheName, sourceId, start, end, statusQuerier);
+						} finally {
+							semaphore.release();
+						}
+					}));
+				} catch (RejectedExecutionException e) {
+					semaphore.release();
+					throw e;
+				}
+				chunkStartPeriodNumbers.add(start);
+				while (collectedCount < futures.size() - 1 && futures.get(collectedCount).isDone()) {
+					collectChunk(r, futures, chunkStartPeriodNumbers, collectedCount, statusQuerier);
+					collectedCount++;
+				}
+			}
+			while (collectedCount < futures.size()) {
+				collectChunk(r, futures, chunkStartPeriodNumbers, collectedCount, statusQuerier);
+				collectedCount++;
+			}
+		} finally {
+			for (int i = collectedCount; i < futures.size(); i++) {
+				futures.get(i).cancel(true);
+			}
 		}
 		return r;
 	}
+	private <T extends CacheDataPacket> void collectChunk(List<T> r, List<Future<List<T>>> futures, List<Long> chunkStartPeriodNumbers, int index, SharedStatusQuerier statusQuerier) {
+		try {
+			r.addAll(futures.get(index).get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException("Interrupted while waiting for caches", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		if (index + 1 < chunkStartPeriodNumbers.size()) {
+			// Status packets before the lookback of the next chunk are not needed by any chunk that has not been collected yet
+			statusQuerier.removeBefore(getPeriodStartFromNumber(chunkStartPeriodNumbers.get(index + 1)).minus(INFO_DURATION).toEpochMilli());
+		}
+	}
+	/**
+	 * Queries every type of cache for the given range so that finalized periods are calculated and kept in memory.
+	 */
+	public void warmUp(String sourceId, long startMillis, long endMillis) {
+		getCachesFromDateMillis(new TypeReference<IdentificationCacheDataPacket<ChargeControllerAccumulationDataCache>>() {}, ChargeControllerAccumulationDataCache.CACHE_NAME, sourceId, startMillis, endMillis);
+		getCachesFromDateMillis(new TypeReference<IdentificationCacheDataPacket<FXAccumulationDataCache>>() {}, FXAccumulationDataCache.CACHE_NAME, sourceId, startMillis, endMillis);
+		getCachesFromDateMillis(new TypeReference<IdentificationCacheDataPacket<BatteryRecordDataCache>>() {}, BatteryRecordDataCache.CACHE_NAME, sourceId, startMillis, endMillis);
+		LOGGER.info("Warmed up caches for sourceId=" + sourceId + ". " + memoryCache);
+	}
+	public CacheDocumentMemoryCache getMemoryCache() {
+		return memoryCache;
+	}
 	private String getRevisionFromJsonData(JsonData jsonData) {
 		final JsonNode node;
 		try {
@@ -139,15 +228,30 @@ public class CacheHandler {
 		}
 		return revisionNode.asText();
 	}
-	private <T extends CacheDataPacket> List<T> queryOrCalculateCaches(TypeReference<T> typeReference, String cacheName, String sourceId, long startPeriodNumber, long endPeriodNumber) {
-		List<String> documentIds = new ArrayList<>(); // the document IDs needed to return data
+	private <T extends CacheDataPacket> List<T> queryOrCalculateCaches(TypeReference<T> typeReference, String cacheName, String sourceId, long startPeriodNumber, long endPeriodNumber, SharedStatusQuerier statusQuerier) {
+		long maxPeriodNumber = getMaxPeriodNumber(); // periods at or before this are finalized and can be kept in memoryCache
+		List<String> documentIds = new ArrayList<>(); // the document IDs needed to return data that are not in memoryCache
 		Map<String, Long> documentIdPeriodNumberMap = new HashMap<>(); // a map from a document ID to a period number
+		Map<Long, T> periodNumberPacketMap = new TreeMap<>(); // Map for period number -> cached data. This helps us make sure we only return a single piece of data for each period
+		Set<String> doNotUpdateDocumentIdsSet = new HashSet<>(); // Set for document IDs that we already have and do not need to be updated
 
 		for (long periodNumber = startPeriodNumber; periodNumber <= endPeriodNumber; periodNumber++) {
 			Instant periodStart = getPeriodStartFromNumber(periodNumber);
 			String documentId = CacheUtil.getDocumentId(periodStart, duration, sourceId, cacheName);
-			documentIds.add(documentId);
 			documentIdPeriodNumberMap.put(documentId, periodNumber);
+			CacheDataPacket memoryValue = periodNumber <= maxPeriodNumber ? memoryCache.get(documentId) : null;
+			if (memoryValue != null) {
+				@SuppressWarnings("unchecked")
+				T value = (T) memoryValue; // the cache name is part of the document ID, so this is the correct type
+				periodNumberPacketMap.put(periodNumber, value);
+				doNotUpdateDocumentIdsSet.add(documentId);
+			} else {
+				documentIds.add(documentId);
+			}
+		}
+		if (documentIds.isEmpty()) {
+			LOGGER.trace("Got all caches from memory");
+			return new ArrayList<>(periodNumberPacketMap.values());
 		}
 		BulkGetRequest request = BulkGetRequest.from(documentIds);
 		final BulkGetResponse response;
@@ -157,8 +261,6 @@ public class CacheHandler {
 			throw new DatabaseException("CouchDB exception | message: " + e.getMessage(), e);
 		}
 		Map<String, String> documentIdRevisionMapForUpdate = new HashMap<>(); // map for documents that need to be updated. The value represents the revision that needs to be used to update it
-		Map<Long, T> periodNumberPacketMap = new TreeMap<>(); // Map for period number -> cached data. This helps us make sure we only return a single piece of data for each period
-		Set<String> doNotUpdateDocumentIdsSet = new HashSet<>(); // Set for document IDs that we already have and do not need to be updated
 		Long queryStartPeriodNumber = null;
 		Long queryEndPeriodNumber = null;
 		for (BulkGetResponse.Result result : response.getResults()) {
@@ -178,6 +280,9 @@ public class CacheHandler {
 					value = CouchDbJacksonUtil.readValue(mapper, jsonData, typeReference);
 					if (value.getSourceId().equals(sourceId) && value.getCacheName().equals(cacheName)) {
 						periodNumberPacketMap.put(periodNumber, value);
+						if (periodNumber <= maxPeriodNumber) {
+							memoryCache.put(result.getDocumentId(), value, jsonData.getJson().length());
+						}
 					}
 					doNotUpdateDocumentIdsSet.add(value.getDbId());
 				} catch (JsonProcessingException ex) {
@@ -199,9 +304,11 @@ public class CacheHandler {
 			}
 		}
 		if (queryStartPeriodNumber != null) {
-			List<CacheDataPacket> calculatedPackets = calculatePeriod(queryStartPeriodNumber, queryEndPeriodNumber);
+			List<CacheDataPacket> calculatedPackets = calculatePeriod(queryStartPeriodNumber, queryEndPeriodNumber, statusQuerier);
 
 			List<JsonData> calculatedPacketsJsonDataList = new ArrayList<>();
+			Map<String, CacheDataPacket> postedPacketMap = new HashMap<>(); // document ID -> packet that was posted
+			Map<String, Integer> postedJsonLengthMap = new HashMap<>(); // document ID -> length of the JSON that was posted
 			int updateAttemptCount = 0;
 			for (CacheDataPacket packet : calculatedPackets) {
 				if (doNotUpdateDocumentIdsSet.contains(packet.getDbId())) {
@@ -216,19 +323,21 @@ public class CacheHandler {
 					// This is the same with different cache names, we don't know which ones we need to update and which ones we cannot
 					continue;
 				}
-				JsonData json;
+				String json;
 				try {
 					String revision = documentIdRevisionMapForUpdate.get(packet.getDbId());
 					if (revision == null) {
-						json = new StringJsonData(mapper.writeValueAsString(packet));
+						json = mapper.writeValueAsString(packet);
 					} else {
-						json = new StringJsonData(mapper.writeValueAsString(new DocumentRevisionWrapper(revision, packet)));
+						json = mapper.writeValueAsString(new DocumentRevisionWrapper(revision, packet));
 						updateAttemptCount++;
 					}
 				} catch (JsonProcessingException e) {
 					throw new RuntimeException("Should be able to serialize!", e);
 				}
-				calculatedPacketsJsonDataList.add(json);
+				calculatedPacketsJsonDataList.add(new StringJsonData(json));
+				postedPacketMap.put(packet.getDbId(), packet);
+				postedJsonLengthMap.put(packet.getDbId(), json.length());
 			}
 			final List<BulkDocumentResponse> postResponse;
 			try {
@@ -241,12 +350,17 @@ public class CacheHandler {
 			for (BulkDocumentResponse documentResponse : postResponse) {
 				if (documentResponse.isOk()) {
 					successCount++;
+					CacheDataPacket postedPacket = postedPacketMap.get(documentResponse.getId());
+					Long periodNumber = documentIdPeriodNumberMap.get(documentResponse.getId());
+					if (postedPacket != null && periodNumber != null && periodNumber <= maxPeriodNumber) {
+						memoryCache.put(documentResponse.getId(), postedPacket, postedJsonLengthMap.get(documentResponse.getId()));
+					}
 				} else {
 					failCount++;
 					LOGGER.info("Error: " + documentResponse.getError() + " reason: " + documentResponse.getReason() + " on id: " + documentResponse.getId());
 				}
 			}
-			LOGGER.debug("(Cache updating) Success: " + successCount + " fail: " + failCount + ". Tried to update: " + updateAttemptCount);
+			LOGGER.debug("(Cache updating) Success: " + successCount + " fail: " + failCount + ". Tried to update: " + updateAttemptCount + ". " + memoryCache);
 
 			int numberOfWantedType = 0;
 			for (CacheDataPacket cacheDataPacket : calculatedPackets) {
@@ -268,34 +382,37 @@ public class CacheHandler {
 
 		return new ArrayList<>(periodNumberPacketMap.values());
 	}
-	private List<CacheDataPacket> calculatePeriod(long startPeriodNumber, long endPeriodNumber) {
+	private List<CacheDataPacket> calculatePeriod(long startPeriodNumber, long endPeriodNumber, SharedStatusQuerier statusQuerier) {
 		Instant firstPeriodStart = getPeriodStartFromNumber(startPeriodNumber);
 		Instant lastPeriodEnd = getPeriodStartFromNumber(endPeriodNumber).plus(duration);
 		Instant queryStart = firstPeriodStart.minus(INFO_DURATION);
 
-		MillisQuery millisQuery = new MillisQueryBuilder()
-				.startKey(queryStart.toEpochMilli())
-				.endKey(lastPeriodEnd.toEpochMilli())
-				.inclusiveEnd(false)
-				.build();
 		final List<? extends PacketGroup> packetGroups;
 		try {
-			packetGroups = database.getStatusDatabase().query(millisQuery);
+			packetGroups = statusQuerier.query(queryStart.toEpochMilli(), lastPeriodEnd.toEpochMilli());
 		} catch (SolarThingDatabaseException e) {
 			// (Was TO-DO)
 			// The consumers of this API may be ok if there are holes in the data rather than getting no data at all, so maybe change this later?
 			throw new DatabaseException("Couldn't query status packets for period. startPeriodNumber: " + startPeriodNumber + " endPeriodNumber: " + endPeriodNumber + " firstPeriodStart: " + firstPeriodStart, e);
 		}
+		List<Instant> periodStarts = new ArrayList<>();
+		for (long periodNumber = startPeriodNumber; periodNumber <= endPeriodNumber; periodNumber++) {
+			periodStarts.add(getPeriodStartFromNumber(periodNumber));
+		}
 		List<CacheDataPacket> r = new ArrayList<>();
 		Map<String, List<InstancePacketGroup>> sourceMap = PacketGroups.parsePackets(packetGroups, defaultInstanceOptions);
 		for (Map.Entry<String, List<InstancePacketGroup>> entry : sourceMap.entrySet()) {
 			String sourceId = entry.getKey();
 			List<InstancePacketGroup> packets = entry.getValue();
 
-			for (long periodNumber = startPeriodNumber; periodNumber <= endPeriodNumber; periodNumber++) {
-				Instant periodStart = getPeriodStartFromNumber(periodNumber);
-				for (CacheCreator creator : CACHE_CREATORS) {
-					r.add(creator.createFrom(sourceId, packets, periodStart, duration));
+			// Each creator goes through the packets once for all the periods rather than once for each period
+			List<List<? extends CacheDataPacket>> creatorPacketsList = new ArrayList<>(CACHE_CREATORS.size());
+			for (CacheCreator creator : CACHE_CREATORS) {
+				creatorPacketsList.add(creator.createFrom(sourceId, packets, periodStarts, duration));
+			}
+			for (int i = 0; i < periodStarts.size(); i++) {
+				for (List<? extends CacheDataPacket> creatorPackets : creatorPacketsList) {
+					r.add(creatorPackets.get(i));
 				}
 			}
 		}
@@ -4,14 +4,26 @@ import me.retrodaredevil.couchdb.CouchDbUtil;
 import me.retrodaredevil.couchdbjava.CouchDbInstance;
 import me.retrodaredevil.solarthing.config.databases.implementations.CouchDbDatabaseSettings;
 import me.retrodaredevil.solarthing.packets.collection.DefaultInstanceOptions;
+import me.retrodaredevil.solarthing.packets.instance.InstanceSourcePacket;
 import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.time.Duration;
 
 @Component
 public class CacheHandlerProvider {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CacheHandlerProvider.class);
+
+	@Value("${solarthing.config.cache_memory_limit_mb:64}")
+	private long cacheMemoryLimitMegabytes;
+	/** The number of days of caches to load into memory on startup. 0 to disable */
+	@Value("${solarthing.config.cache_warm_up_days:0}")
+	private int cacheWarmUpDays;
 
 	private final DefaultInstanceOptions defaultInstanceOptions;
 	private final CouchDbDatabaseSettings couchDbDatabaseSettings;
@@ -26,8 +38,24 @@ public class CacheHandlerProvider {
 	@PostConstruct
 	public void init() {
 		CouchDbInstance instance = CouchDbUtil.createInstance(couchDbDatabaseSettings.getCouchProperties(), couchDbDatabaseSettings.getOkHttpProperties());
-		cacheHandler = new CacheHandler(JacksonUtil.defaultMapper(), defaultInstanceOptions, instance);
-
+		cacheHandler = new CacheHandler(JacksonUtil.defaultMapper(), defaultInstanceOptions, instance, new CacheDocumentMemoryCache(cacheMemoryLimitMegabytes * 1024 * 1024));
+		if (cacheWarmUpDays > 0) {
+			String sourceId = defaultInstanceOptions.getDefaultSourceId();
+			if (InstanceSourcePacket.UNUSED_SOURCE_ID.equals(sourceId)) {
+				sourceId = InstanceSourcePacket.DEFAULT_SOURCE_ID;
+			}
+			String warmUpSourceId = sourceId;
+			Thread thread = new Thread(() -> {
+				long now = System.currentTimeMillis();
+				try {
+					cacheHandler.warmUp(warmUpSourceId, now - Duration.ofDays(cacheWarmUpDays).toMillis(), now);
+				} catch (RuntimeException e) {
+					LOGGER.error("Could not warm up caches", e);
+				}
+			}, "cache-warm-up");
+			thread.setDaemon(true);
+			thread.start();
+		}
 	}
 	@Bean
 	public CacheHandler cacheHandler() {
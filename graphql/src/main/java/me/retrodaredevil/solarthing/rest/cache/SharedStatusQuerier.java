@@ -0,0 +1,145 @@
+package me.retrodaredevil.solarthing.rest.cache;
+
+import me.retrodaredevil.solarthing.database.MillisDatabase;
+import me.retrodaredevil.solarthing.database.MillisQueryBuilder;
+import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
+import me.retrodaredevil.solarthing.packets.collection.StoredPacketGroup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Queries status packets for time ranges that may overlap each other. Every millisecond is only queried once: if a requested range overlaps a range
+ * that has already been queried (or is being queried by another thread), the packets from that range are reused and only the gaps are queried.
+ * <p>
+ * This is used by {@link CacheHandler} so that the {@link CacheHandler#INFO_DURATION} lookback of one chunk reuses the packets queried for the previous chunk.
+ * Call {@link #removeBefore(long)} once older ranges are no longer needed so that memory usage stays bounded.
+ */
+final class SharedStatusQuerier {
+	private final MillisDatabase database;
+	/** Disjoint ranges keyed by their start date. Must be synchronized on. */
+	private final TreeMap<Long, Range> rangeMap = new TreeMap<>();
+
+	SharedStatusQuerier(MillisDatabase database) {
+		requireNonNull(this.database = database);
+	}
+
+	/**
+	 * @param startDateMillis The start of the range (inclusive)
+	 * @param endDateMillis The end of the range (exclusive)
+	 * @return The status packets in the range, sorted by date
+	 */
+	List<StoredPacketGroup> query(long startDateMillis, long endDateMillis) throws SolarThingDatabaseException {
+		if (endDateMillis < startDateMillis) {
+			throw new IllegalArgumentException("endDateMillis cannot be less than startDateMillis! startDateMillis: " + startDateMillis + " endDateMillis: " + endDateMillis);
+		}
+		List<Range> neededRanges = new ArrayList<>();
+		List<Range> createdRanges = new ArrayList<>();
+		synchronized (rangeMap) {
+			long cursor = startDateMillis;
+			Long floorKey = rangeMap.floorKey(startDateMillis);
+			for (Range range : rangeMap.tailMap(floorKey == null ? startDateMillis : floorKey, true).values()) {
+				if (range.endDateMillis <= cursor) {
+					continue;
+				}
+				if (range.startDateMillis >= endDateMillis) {
+					break;
+				}
+				if (range.startDateMillis > cursor) {
+					Range gap = new Range(cursor, range.startDateMillis);
+					neededRanges.add(gap);
+					createdRanges.add(gap);
+				}
+				neededRanges.add(range);
+				cursor = range.endDateMillis;
+				if (cursor >= endDateMillis) {
+					break;
+				}
+			}
+			if (cursor < endDateMillis) {
+				Range gap = new Range(cursor, endDateMillis);
+				neededRanges.add(gap);
+				createdRanges.add(gap);
+			}
+			for (Range range : createdRanges) {
+				rangeMap.put(range.startDateMillis, range);
+			}
+		}
+		for (Range range : createdRanges) {
+			range.task.run();
+		}
+		List<StoredPacketGroup> r = new ArrayList<>();
+		for (Range range : neededRanges) {
+			for (StoredPacketGroup packetGroup : range.get()) {
+				long dateMillis = packetGroup.getDateMillis();
+				if (dateMillis >= startDateMillis && dateMillis < endDateMillis) {
+					r.add(packetGroup);
+				}
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Forgets about ranges that end before or at {@code dateMillis}
+	 */
+	void removeBefore(long dateMillis) {
+		synchronized (rangeMap) {
+			for (Iterator<Range> iterator = rangeMap.values().iterator(); iterator.hasNext(); ) {
+				Range range = iterator.next();
+				if (range.endDateMillis > dateMillis) {
+					break;
+				}
+				iterator.remove();
+			}
+		}
+	}
+
+	private void remove(Range range) {
+		synchronized (rangeMap) {
+			rangeMap.remove(range.startDateMillis, range);
+		}
+	}
+
+	private final class Range {
+		private final long startDateMillis;
+		private final long endDateMillis;
+		private final FutureTask<List<StoredPacketGroup>> task;
+
+		private Range(long startDateMillis, long endDateMillis) {
+			this.startDateMillis = startDateMillis;
+			this.endDateMillis = endDateMillis;
+			task = new FutureTask<>(() -> database.query(new MillisQueryBuilder()
+					.startKey(startDateMillis)
+					.endKey(endDateMillis)
+					.inclusiveEnd(false)
+					.build()
+			));
+		}
+
+		private List<StoredPacketGroup> get() throws SolarThingDatabaseException {
+			try {
+				return task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SolarThingDatabaseException("Interrupted while waiting for query", e);
+			} catch (ExecutionException e) {
+				remove(this); // a failed range should be queried again next time
+				Throwable cause = e.getCause();
+				if (cause instanceof SolarThingDatabaseException) {
+					throw new SolarThingDatabaseException(cause.getMessage(), cause);
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+}
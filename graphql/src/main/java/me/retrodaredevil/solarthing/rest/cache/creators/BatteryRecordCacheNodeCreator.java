@@ -2,6 +2,7 @@ package me.retrodaredevil.solarthing.rest.cache.creators;
 
 import me.retrodaredevil.solarthing.packets.TimestampedPacket;
 import me.retrodaredevil.solarthing.packets.identification.IdentifierFragment;
+import me.retrodaredevil.solarthing.rest.cache.CacheCalc;
 import me.retrodaredevil.solarthing.rest.cache.CacheHandler;
 import me.retrodaredevil.solarthing.solar.common.BatteryVoltage;
 import me.retrodaredevil.solarthing.type.cache.packets.IdentificationCacheNode;
@@ -11,6 +12,7 @@ import me.retrodaredevil.solarthing.util.integration.TrapezoidalRuleAccumulator;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 public class BatteryRecordCacheNodeCreator implements IdentificationCacheNodeCreator<BatteryRecordDataCache, BatteryVoltage> {
@@ -31,23 +33,8 @@ public class BatteryRecordCacheNodeCreator implements IdentificationCacheNodeCre
 		long unknownCutOffDateMillis = periodStartDateMillis - CacheHandler.INFO_DURATION.toMillis();
 		long periodEndDateMillis = periodStart.toEpochMilli() + periodDuration.toMillis();
 
-
-		boolean firstInPeriod = true;
-		// initializations to -1 are necessary. We will use firstInPeriod to know if they have been initialized
-		float min = -1;
-		long minDateMillis = -1;
-		float max = -1;
-		long maxDateMillis = -1;
-
-		MutableIntegral mainVoltHourIntegral = new TrapezoidalRuleAccumulator();
-
-		TimestampedPacket<BatteryVoltage> lastDataBeforePreviousPeriodStart = null;
-		TimestampedPacket<BatteryVoltage> lastDataBeforePeriodStart = null;
-		TimestampedPacket<BatteryVoltage> firstDataAfterPeriodStart = null;
-		TimestampedPacket<BatteryVoltage> lastDataBeforePeriodEnd = null;
-
+		PeriodRecord periodRecord = new PeriodRecord();
 		for (TimestampedPacket<BatteryVoltage> packet : timestampedPackets) {
-			final float voltage = packet.getPacket().getBatteryVoltage();
 			final long dateMillis = packet.getDateMillis();
 			if (dateMillis >= periodEndDateMillis) {
 				break;
@@ -57,83 +44,136 @@ public class BatteryRecordCacheNodeCreator implements IdentificationCacheNodeCre
 			}
 
 			if (dateMillis < previousPeriodStartDateMillis) {
-				lastDataBeforePreviousPeriodStart = packet;
+				periodRecord.lastDataBeforePreviousPeriodStart = packet;
 			} else if (dateMillis < periodStartDateMillis) {
-				lastDataBeforePeriodStart = packet;
+				periodRecord.lastDataBeforePeriodStart = packet;
 			} else {
-				if (firstDataAfterPeriodStart == null) {
-					firstDataAfterPeriodStart = packet;
-				}
-				lastDataBeforePeriodEnd = packet;
+				periodRecord.acceptInPeriod(packet);
+			}
+		}
+		return periodRecord.createNode(identifierFragment);
+	}
 
-				if (firstInPeriod || voltage < min) {
-					min = voltage;
-					minDateMillis = dateMillis;
-				}
-				if (firstInPeriod || voltage > max) {
-					max = voltage;
-					maxDateMillis = dateMillis;
-				}
-				if (firstInPeriod && lastDataBeforePeriodStart != null) {
-					double hours = lastDataBeforePeriodStart.getDateMillis() / (1000.0 * 60 * 60);
-					mainVoltHourIntegral.add(hours, lastDataBeforePeriodStart.getPacket().getBatteryVoltage());
+	@Override
+	public List<IdentificationCacheNode<BatteryRecordDataCache>> createAll(IdentifierFragment identifierFragment, List<TimestampedPacket<BatteryVoltage>> timestampedPackets, List<Instant> periodStarts, Duration periodDuration) {
+		if (!CacheCalc.isSortedByDate(timestampedPackets)) {
+			return IdentificationCacheNodeCreator.super.createAll(identifierFragment, timestampedPackets, periodStarts, periodDuration);
+		}
+		List<IdentificationCacheNode<BatteryRecordDataCache>> r = new ArrayList<>(periodStarts.size());
+		for (Instant periodStart : periodStarts) {
+			CacheCalc.PeriodIndices indices = new CacheCalc.PeriodIndices(timestampedPackets, periodStart.toEpochMilli(), periodDuration);
+			PeriodRecord periodRecord = new PeriodRecord();
+			if (indices.lastBeforePreviousPeriodStart != -1) {
+				periodRecord.lastDataBeforePreviousPeriodStart = timestampedPackets.get(indices.lastBeforePreviousPeriodStart);
+			}
+			if (indices.lastBeforePeriodStart != -1) {
+				periodRecord.lastDataBeforePeriodStart = timestampedPackets.get(indices.lastBeforePeriodStart);
+			}
+			if (indices.firstAfterPeriodStart != -1) {
+				for (TimestampedPacket<BatteryVoltage> packet : timestampedPackets.subList(indices.firstAfterPeriodStart, indices.lastBeforePeriodEnd + 1)) {
+					periodRecord.acceptInPeriod(packet);
 				}
-				double hours = dateMillis / (1000.0 * 60 * 60);
-				mainVoltHourIntegral.add(hours, voltage);
-				firstInPeriod = false;
 			}
+			r.add(periodRecord.createNode(identifierFragment));
+		}
+		return r;
+	}
+
+	/**
+	 * Keeps track of the data needed to create the record of a single period
+	 */
+	private static final class PeriodRecord {
+		private boolean firstInPeriod = true;
+		// initializations to -1 are necessary. We will use firstInPeriod to know if they have been initialized
+		private float min = -1;
+		private long minDateMillis = -1;
+		private float max = -1;
+		private long maxDateMillis = -1;
+
+		private final MutableIntegral mainVoltHourIntegral = new TrapezoidalRuleAccumulator();
+
+		private TimestampedPacket<BatteryVoltage> lastDataBeforePreviousPeriodStart = null;
+		private TimestampedPacket<BatteryVoltage> lastDataBeforePeriodStart = null;
+		private TimestampedPacket<BatteryVoltage> firstDataAfterPeriodStart = null;
+		private TimestampedPacket<BatteryVoltage> lastDataBeforePeriodEnd = null;
+
+		private void acceptInPeriod(TimestampedPacket<BatteryVoltage> packet) {
+			final float voltage = packet.getPacket().getBatteryVoltage();
+			final long dateMillis = packet.getDateMillis();
+			if (firstDataAfterPeriodStart == null) {
+				firstDataAfterPeriodStart = packet;
+			}
+			lastDataBeforePeriodEnd = packet;
 
+			if (firstInPeriod || voltage < min) {
+				min = voltage;
+				minDateMillis = dateMillis;
+			}
+			if (firstInPeriod || voltage > max) {
+				max = voltage;
+				maxDateMillis = dateMillis;
+			}
+			if (firstInPeriod && lastDataBeforePeriodStart != null) {
+				double hours = lastDataBeforePeriodStart.getDateMillis() / (1000.0 * 60 * 60);
+				mainVoltHourIntegral.add(hours, lastDataBeforePeriodStart.getPacket().getBatteryVoltage());
+			}
+			double hours = dateMillis / (1000.0 * 60 * 60);
+			mainVoltHourIntegral.add(hours, voltage);
+			firstInPeriod = false;
 		}
-		final BatteryRecordDataCache.Record record;
-		final Long firstDateMillis;
-		final Long lastDateMillis;
-		final Long unknownStartDateMillis;
 
-		if (firstInPeriod) {
-			record = null;
-			firstDateMillis = null;
-			lastDateMillis = null;
-			unknownStartDateMillis = null;
-		} else {
-			final double unknownBatteryVoltageHours;
-			final long unknownDurationMillis;
-			if (lastDataBeforePeriodStart == null) { // we have no data from the previous period
-				firstDateMillis = firstDataAfterPeriodStart.getDateMillis();
-				// we will only have "unknown" data if there is no data in the previous period and we were able to get data from before the previous period
-				if (lastDataBeforePreviousPeriodStart == null) {
+		private IdentificationCacheNode<BatteryRecordDataCache> createNode(IdentifierFragment identifierFragment) {
+			final BatteryRecordDataCache.Record record;
+			final Long firstDateMillis;
+			final Long lastDateMillis;
+			final Long unknownStartDateMillis;
+
+			if (firstInPeriod) {
+				record = null;
+				firstDateMillis = null;
+				lastDateMillis = null;
+				unknownStartDateMillis = null;
+			} else {
+				final double unknownBatteryVoltageHours;
+				final long unknownDurationMillis;
+				if (lastDataBeforePeriodStart == null) { // we have no data from the previous period
+					firstDateMillis = firstDataAfterPeriodStart.getDateMillis();
+					// we will only have "unknown" data if there is no data in the previous period and we were able to get data from before the previous period
+					if (lastDataBeforePreviousPeriodStart == null) {
+						unknownStartDateMillis = null;
+						unknownDurationMillis = 0;
+						unknownBatteryVoltageHours = 0.0;
+					} else {
+						unknownStartDateMillis = lastDataBeforePreviousPeriodStart.getDateMillis();
+						unknownDurationMillis = firstDataAfterPeriodStart.getDateMillis() - unknownStartDateMillis;
+						double unknownPeriodAverageVoltage = (lastDataBeforePreviousPeriodStart.getPacket().getBatteryVoltage() + firstDataAfterPeriodStart.getPacket().getBatteryVoltage()) / 2.0;
+						double hours = unknownDurationMillis / (1000.0 * 60 * 60);
+						unknownBatteryVoltageHours = unknownPeriodAverageVoltage * hours;
+					}
+				} else {
+					firstDateMillis = lastDataBeforePeriodStart.getDateMillis();
 					unknownStartDateMillis = null;
 					unknownDurationMillis = 0;
 					unknownBatteryVoltageHours = 0.0;
-				} else {
-					unknownStartDateMillis = lastDataBeforePreviousPeriodStart.getDateMillis();
-					unknownDurationMillis = firstDataAfterPeriodStart.getDateMillis() - unknownStartDateMillis;
-					double unknownPeriodAverageVoltage = (lastDataBeforePreviousPeriodStart.getPacket().getBatteryVoltage() + firstDataAfterPeriodStart.getPacket().getBatteryVoltage()) / 2.0;
-					double hours = unknownDurationMillis / (1000.0 * 60 * 60);
-					unknownBatteryVoltageHours = unknownPeriodAverageVoltage * hours;
 				}
-			} else {
-				firstDateMillis = lastDataBeforePeriodStart.getDateMillis();
-				unknownStartDateMillis = null;
-				unknownDurationMillis = 0;
-				unknownBatteryVoltageHours = 0.0;
+				lastDateMillis = lastDataBeforePeriodEnd.getDateMillis();
+				record = new BatteryRecordDataCache.Record(
+						min, minDateMillis,
+						max, maxDateMillis,
+						unknownBatteryVoltageHours, unknownDurationMillis,
+						mainVoltHourIntegral.getIntegral(),
+						lastDataBeforePeriodEnd.getDateMillis() - firstDateMillis,
+						0.0, 0L
+				);
 			}
-			lastDateMillis = lastDataBeforePeriodEnd.getDateMillis();
-			record = new BatteryRecordDataCache.Record(
-					min, minDateMillis,
-					max, maxDateMillis,
-					unknownBatteryVoltageHours, unknownDurationMillis,
-					mainVoltHourIntegral.getIntegral(),
-					lastDataBeforePeriodEnd.getDateMillis() - firstDateMillis,
-					0.0, 0L
+			return new IdentificationCacheNode<>(
+					identifierFragment.getFragmentId(),
+					new BatteryRecordDataCache(
+							identifierFragment.getIdentifier(),
+							firstDateMillis, lastDateMillis, unknownStartDateMillis,
+							record
+					)
 			);
 		}
-		return new IdentificationCacheNode<>(
-				identifierFragment.getFragmentId(),
-				new BatteryRecordDataCache(
-						identifierFragment.getIdentifier(),
-						firstDateMillis, lastDateMillis, unknownStartDateMillis,
-						record
-				)
-		);
 	}
 }
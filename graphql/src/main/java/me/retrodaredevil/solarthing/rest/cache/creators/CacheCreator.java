@@ -5,6 +5,7 @@ import me.retrodaredevil.solarthing.packets.collection.InstancePacketGroup;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface CacheCreator {
@@ -17,4 +18,17 @@ public interface CacheCreator {
 	 * @return The created packet
 	 */
 	CacheDataPacket createFrom(String sourceId, List<InstancePacketGroup> packetGroups, Instant periodStart, Duration periodDuration);
+
+	/**
+	 * Creates a {@link CacheDataPacket} for each period. The result must be the same as calling {@link #createFrom(String, List, Instant, Duration)} for each period.
+	 * @param periodStarts The start of each period in ascending order
+	 * @return A list with one packet for each element in {@code periodStarts}
+	 */
+	default List<? extends CacheDataPacket> createFrom(String sourceId, List<InstancePacketGroup> packetGroups, List<Instant> periodStarts, Duration periodDuration) {
+		List<CacheDataPacket> r = new ArrayList<>(periodStarts.size());
+		for (Instant periodStart : periodStarts) {
+			r.add(createFrom(sourceId, packetGroups, periodStart, periodDuration));
+		}
+		return r;
+	}
 }
@@ -32,4 +32,13 @@ public class ChargeControllerAccumulationCacheNodeCreator implements Identificat
 				FloatAccumulationValue::getValue, ChargeControllerAccumulationDataCache::new
 		);
 	}
+
+	@Override
+	public List<IdentificationCacheNode<ChargeControllerAccumulationDataCache>> createAll(IdentifierFragment identifierFragment, List<TimestampedPacket<DailyChargeController>> timestampedPackets, List<Instant> periodStarts, Duration periodDuration) {
+		return CacheCalc.calculateCaches(
+				identifierFragment, timestampedPackets, periodStarts, periodDuration,
+				FloatAccumulationValue.convert(DailyChargeController::getDailyKWH), FloatAccumulationValueFactory.getInstance(),
+				FloatAccumulationValue::getValue, ChargeControllerAccumulationDataCache::new
+		);
+	}
 }
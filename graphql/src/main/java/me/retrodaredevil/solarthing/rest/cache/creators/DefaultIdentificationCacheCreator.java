@@ -52,6 +52,35 @@ public class DefaultIdentificationCacheCreator<T extends IdentificationCacheData
 				nodes
 		);
 	}
+	@Override
+	public List<IdentificationCacheDataPacket<T>> createFrom(String sourceId, List<InstancePacketGroup> packetGroups, List<Instant> periodStarts, Duration periodDuration) {
+		// packets are only converted once for all the periods
+		Class<U> acceptedType = identificationCacheNodeCreator.getAcceptedType();
+		Map<String, Map<IdentifierFragment, List<TimestampedPacket<U>>>> mappedPackets = convertPackets(packetGroups, acceptedType);
+		Map<IdentifierFragment, List<TimestampedPacket<U>>> identifierFragmentMap = mappedPackets.getOrDefault(sourceId, Collections.emptyMap());
+
+		List<List<IdentificationCacheNode<T>>> periodNodesList = new ArrayList<>(periodStarts.size());
+		for (int i = 0; i < periodStarts.size(); i++) {
+			periodNodesList.add(new ArrayList<>(identifierFragmentMap.size()));
+		}
+		for (Map.Entry<IdentifierFragment, List<TimestampedPacket<U>>> entry : identifierFragmentMap.entrySet()) {
+			List<IdentificationCacheNode<T>> nodes = identificationCacheNodeCreator.createAll(entry.getKey(), entry.getValue(), periodStarts, periodDuration);
+			for (int i = 0; i < periodStarts.size(); i++) {
+				periodNodesList.get(i).add(nodes.get(i));
+			}
+		}
+		List<IdentificationCacheDataPacket<T>> r = new ArrayList<>(periodStarts.size());
+		for (int i = 0; i < periodStarts.size(); i++) {
+			r.add(new DefaultIdentificationCacheDataPacket<>(
+					periodStarts.get(i).toEpochMilli(),
+					periodDuration.toMillis(),
+					sourceId,
+					identificationCacheNodeCreator.getCacheName(),
+					periodNodesList.get(i)
+			));
+		}
+		return r;
+	}
 	@SuppressWarnings("unchecked")
 	private static <T extends Identifiable> Map<String, Map<IdentifierFragment, List<TimestampedPacket<T>>>> convertPackets(List<? extends FragmentedPacketGroup> packetGroups, Class<T> acceptedType) {
 		Map<String, Map<IdentifierFragment, List<TimestampedPacket<T>>>> r = new HashMap<>();
@@ -30,4 +30,13 @@ public class FXAccumulationCacheNodeCreator implements IdentificationCacheNodeCr
 				data -> data, FXAccumulationDataCache::createFromIdentifier
 		);
 	}
+
+	@Override
+	public List<IdentificationCacheNode<FXAccumulationDataCache>> createAll(IdentifierFragment identifierFragment, List<TimestampedPacket<DailyFXPacket>> timestampedPackets, List<Instant> periodStarts, Duration periodDuration) {
+		return CacheCalc.calculateCaches(
+				identifierFragment, timestampedPackets, periodStarts, periodDuration,
+				FXAccumulationDataCache::convert, FXAccumulationDataCache.getDataFactory(),
+				data -> data, FXAccumulationDataCache::createFromIdentifier
+		);
+	}
 }
@@ -8,6 +8,7 @@ import me.retrodaredevil.solarthing.packets.identification.IdentifierFragment;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface IdentificationCacheNodeCreator<T extends IdentificationCacheData, U extends Identifiable> {
@@ -25,4 +26,19 @@ public interface IdentificationCacheNodeCreator<T extends IdentificationCacheDat
 	 * @return
 	 */
 	IdentificationCacheNode<T> create(IdentifierFragment identifierFragment, List<TimestampedPacket<U>> packets, Instant periodStart, Duration periodDuration);
+
+	/**
+	 * Creates an {@link IdentificationCacheNode} for each period. Implementations should override this when they can reuse calculations between periods.
+	 * The result must be the same as calling {@link #create(IdentifierFragment, List, Instant, Duration)} for each period.
+	 *
+	 * @param periodStarts The start of each period in ascending order
+	 * @return A list with one node for each element in {@code periodStarts}
+	 */
+	default List<IdentificationCacheNode<T>> createAll(IdentifierFragment identifierFragment, List<TimestampedPacket<U>> packets, List<Instant> periodStarts, Duration periodDuration) {
+		List<IdentificationCacheNode<T>> r = new ArrayList<>(periodStarts.size());
+		for (Instant periodStart : periodStarts) {
+			r.add(create(identifierFragment, packets, periodStart, periodDuration));
+		}
+		return r;
+	}
 }
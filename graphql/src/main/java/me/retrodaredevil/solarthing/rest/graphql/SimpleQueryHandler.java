@@ -12,6 +12,7 @@ import me.retrodaredevil.solarthing.database.MillisQueryBuilder;
 import me.retrodaredevil.solarthing.database.SolarThingDatabase;
 import me.retrodaredevil.solarthing.database.UpdateToken;
 import me.retrodaredevil.solarthing.database.VersionedPacket;
+import me.retrodaredevil.solarthing.database.cache.CachingMillisDatabase;
 import me.retrodaredevil.solarthing.database.couchdb.CouchDbSolarThingDatabase;
 import me.retrodaredevil.solarthing.database.exception.NotFoundSolarThingDatabaseException;
 import me.retrodaredevil.solarthing.database.exception.SolarThingDatabaseException;
@@ -49,6 +50,8 @@ public class SimpleQueryHandler {
 	private final DefaultInstanceOptions defaultInstanceOptions;
 
 	private final SolarThingDatabase database;
+	private final MillisDatabase statusDatabase;
+	private final MillisDatabase eventDatabase;
 
 	private VersionedPacket<RootMetaPacket> metadataCache = null;
 	private Long lastMetadataCacheNanos = null;
@@ -61,6 +64,9 @@ public class SimpleQueryHandler {
 		CouchDbInstance instance = CouchDbUtil.createInstance(couchDbDatabaseSettings.getCouchProperties(), couchDbDatabaseSettings.getOkHttpProperties());
 		// Notice that objectMapper is likely not lenient, but that's OK. We expect the user to keep this program up to date
 		database = new CouchDbSolarThingDatabase(instance, PacketParsingErrorHandler.DO_NOTHING, objectMapper);
+		// Grafana refreshes the same ranges over and over, so we keep older data in memory and only query the recent data
+		statusDatabase = CachingMillisDatabase.createDefault(database.getStatusDatabase());
+		eventDatabase = CachingMillisDatabase.createForEvents(database.getEventDatabase());
 	}
 
 	/**
@@ -159,10 +165,10 @@ public class SimpleQueryHandler {
 		throw new NoSuchElementException("No element with sourceId: '" + sourceId + "' available keys are: " + map.keySet());
 	}
 	public List<? extends InstancePacketGroup> queryStatus(long from, long to, String sourceId) {
-		return queryPackets(database.getStatusDatabase(), from, to, sourceId);
+		return queryPackets(statusDatabase, from, to, sourceId);
 	}
 	public List<? extends InstancePacketGroup> queryEvent(long from, long to, String sourceId) {
-		return queryPackets(database.getEventDatabase(), from, to, sourceId);
+		return queryPackets(eventDatabase, from, to, sourceId);
 	}
 
 	public MetaDatabase queryMeta() {
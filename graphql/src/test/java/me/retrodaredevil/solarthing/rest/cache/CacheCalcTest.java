@@ -0,0 +1,82 @@
+package me.retrodaredevil.solarthing.rest.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.retrodaredevil.solarthing.packets.TimestampedPacket;
+import me.retrodaredevil.solarthing.packets.identification.Identifiable;
+import me.retrodaredevil.solarthing.packets.identification.IdentifierFragment;
+import me.retrodaredevil.solarthing.rest.cache.creators.BatteryRecordCacheNodeCreator;
+import me.retrodaredevil.solarthing.rest.cache.creators.ChargeControllerAccumulationCacheNodeCreator;
+import me.retrodaredevil.solarthing.rest.cache.creators.IdentificationCacheNodeCreator;
+import me.retrodaredevil.solarthing.solar.SolarStatusPacket;
+import me.retrodaredevil.solarthing.type.cache.packets.IdentificationCacheNode;
+import me.retrodaredevil.solarthing.type.cache.packets.data.IdentificationCacheData;
+import me.retrodaredevil.solarthing.util.JacksonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CacheCalcTest {
+	private static final ObjectMapper MAPPER = JacksonUtil.defaultMapper();
+	private static final Duration DURATION = Duration.ofMinutes(15);
+
+	private static <U> List<TimestampedPacket<U>> createPackets(Class<U> type, long startDateMillis) throws IOException {
+		ObjectNode template = (ObjectNode) MAPPER.readTree(new File("../testing/packets/mx/mx_3_2019-07-13.json"));
+		Random random = new Random(42);
+		List<TimestampedPacket<U>> r = new ArrayList<>();
+		float dailyKWH = 3.0f;
+		long dateMillis = startDateMillis;
+		while (dateMillis < startDateMillis + Duration.ofHours(40).toMillis()) {
+			if (random.nextInt(30) == 0) {
+				dateMillis += Duration.ofMinutes(50 + random.nextInt(60)).toMillis(); // gap in data
+			} else {
+				dateMillis += Duration.ofMinutes(1 + random.nextInt(6)).toMillis();
+			}
+			if (random.nextInt(150) == 0) {
+				dailyKWH = 0; // new day
+			} else {
+				dailyKWH += random.nextInt(3) / 10.0f;
+			}
+			ObjectNode json = template.deepCopy();
+			json.put("dailyKWH", Math.round(dailyKWH * 10) / 10.0);
+			json.put("batteryVoltage", 24 + random.nextInt(40) / 10.0);
+			r.add(new TimestampedPacket<>(type.cast(MAPPER.treeToValue(json, SolarStatusPacket.class)), dateMillis));
+		}
+		return r;
+	}
+
+	private static <T extends IdentificationCacheData, U extends Identifiable> void assertCreateAllSame(IdentificationCacheNodeCreator<T, U> creator) throws IOException {
+		long startDateMillis = Instant.parse("2021-05-03T20:00:00Z").toEpochMilli();
+		List<TimestampedPacket<U>> packets = createPackets(creator.getAcceptedType(), startDateMillis);
+		IdentifierFragment identifierFragment = IdentifierFragment.create(1, packets.get(0).getPacket().getIdentifier());
+
+		List<Instant> periodStarts = new ArrayList<>();
+		for (int i = 0; i < 4 * 40; i++) {
+			periodStarts.add(Instant.ofEpochMilli(startDateMillis).plus(DURATION.multipliedBy(i)));
+		}
+		List<IdentificationCacheNode<T>> nodes = creator.createAll(identifierFragment, packets, periodStarts, DURATION);
+		assertEquals(periodStarts.size(), nodes.size());
+		for (int i = 0; i < periodStarts.size(); i++) {
+			IdentificationCacheNode<T> expected = creator.create(identifierFragment, packets, periodStarts.get(i), DURATION);
+			assertEquals(MAPPER.valueToTree(expected), MAPPER.valueToTree(nodes.get(i)), "period: " + periodStarts.get(i));
+		}
+	}
+
+	@Test
+	void testAccumulationCreateAllSameAsCreate() throws IOException {
+		assertCreateAllSame(new ChargeControllerAccumulationCacheNodeCreator());
+	}
+
+	@Test
+	void testBatteryRecordCreateAllSameAsCreate() throws IOException {
+		assertCreateAllSame(new BatteryRecordCacheNodeCreator());
+	}
+}